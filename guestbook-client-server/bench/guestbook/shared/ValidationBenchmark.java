@@ -0,0 +1,136 @@
+package guestbook.shared;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ *  Measures the cost of validating a guest record three ways: String.matches, which
+ *  the setters used to call, precompiled Patterns, and ValidationUtils. Before timing,
+ *  it checks that ValidationUtils accepts and rejects the same values as the regular
+ *  expressions for a set of random strings built from the characters the rules care about.
+ *      Run with "make bench".
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class ValidationBenchmark {
+
+    private static final int RECORDS = 200000;
+    private static final int ROUNDS = 5;
+    private static final int FUZZ_CASES = 200000;
+    private static final String FUZZ_CHARS = "aZz09 -'()@.\t_[`^\\x#";
+
+    private static final Pattern NAME = Pattern.compile(ValidationUtils.NAME_REGEX);
+    private static final Pattern ADDRESS = Pattern.compile(ValidationUtils.ADDRESS_REGEX);
+    private static final Pattern CITY = Pattern.compile(ValidationUtils.CITY_REGEX);
+    private static final Pattern POSTCODE = Pattern.compile(ValidationUtils.POSTCODE_REGEX);
+    private static final Pattern TELEPHONE = Pattern.compile(ValidationUtils.TELEPHONE_REGEX);
+    private static final Pattern EMAIL = Pattern.compile(ValidationUtils.EMAIL_REGEX);
+
+    public static void main(String[] args) {
+        checkEquivalence();
+
+        String[][] records = new String[RECORDS][];
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = new String[]{ "Ann O'Neil-Smith", "12 Water Street", "St John's", (i % 2 == 0) ? "A1B 2C3" : "A1B2C3",
+                                       "(709) 555-0100", "guest" + i + "@example.com" };
+        }
+
+        for (int round = 1; round <= ROUNDS; round++) {
+            long t0 = System.nanoTime();
+            int a = validateMatches(records);
+            long t1 = System.nanoTime();
+            int b = validatePatterns(records);
+            long t2 = System.nanoTime();
+            int c = validateUtils(records);
+            long t3 = System.nanoTime();
+
+            if (a != RECORDS || b != RECORDS || c != RECORDS) throw new IllegalStateException("A sample record was rejected");
+            System.out.println("Round " + round + " (ns per record): String.matches " + (t1 - t0) / RECORDS
+                               + ", precompiled Pattern " + (t2 - t1) / RECORDS
+                               + ", ValidationUtils " + (t3 - t2) / RECORDS);
+        }
+    }
+
+    /**
+     *  @param records the records to validate
+     *  @return int the number of valid records
+     */
+    private static int validateMatches(String[][] records) {
+        int valid = 0;
+        for (String[] r : records) {
+            if ( r[0].matches(ValidationUtils.NAME_REGEX) && r[1].matches(ValidationUtils.ADDRESS_REGEX)
+                    && r[2].matches(ValidationUtils.CITY_REGEX) && r[3].matches(ValidationUtils.POSTCODE_REGEX)
+                    && r[4].matches(ValidationUtils.TELEPHONE_REGEX) && r[5].matches(ValidationUtils.EMAIL_REGEX) ) valid++;
+        }
+        return valid;
+    }
+
+    /**
+     *  @param records the records to validate
+     *  @return int the number of valid records
+     */
+    private static int validatePatterns(String[][] records) {
+        int valid = 0;
+        for (String[] r : records) {
+            if ( NAME.matcher(r[0]).matches() && ADDRESS.matcher(r[1]).matches() && CITY.matcher(r[2]).matches()
+                    && POSTCODE.matcher(r[3]).matches() && TELEPHONE.matcher(r[4]).matches()
+                    && EMAIL.matcher(r[5]).matches() ) valid++;
+        }
+        return valid;
+    }
+
+    /**
+     *  @param records the records to validate
+     *  @return int the number of valid records
+     */
+    private static int validateUtils(String[][] records) {
+        int valid = 0;
+        for (String[] r : records) {
+            if ( ValidationUtils.isName(r[0]) && ValidationUtils.isAddress(r[1]) && ValidationUtils.isCity(r[2])
+                    && ValidationUtils.isPostcode(r[3]) && ValidationUtils.isTelephone(r[4])
+                    && ValidationUtils.isEmail(r[5]) ) valid++;
+        }
+        return valid;
+    }
+
+    /**
+     *  Compares each check with its expression on random strings.
+     *  @throws IllegalStateException if a check and its expression disagree
+     */
+    private static void checkEquivalence() {
+        Random random = new Random(20110408);
+        char[] buffer = new char[12];
+
+        for (int i = 0; i < FUZZ_CASES; i++) {
+            int length = random.nextInt(buffer.length + 1);
+            for (int j = 0; j < length; j++) buffer[j] = FUZZ_CHARS.charAt( random.nextInt(FUZZ_CHARS.length()) );
+            String s = new String(buffer, 0, length);
+
+            // Postcodes need letters and digits in place to be accepted often enough to test
+            if (i % 4 == 0) s = "" + (char)('A' + random.nextInt(26)) + random.nextInt(10) + "b"
+                                + (random.nextBoolean() ? " " : "") + random.nextInt(10) + "c" + s;
+
+            check("name", s, NAME, ValidationUtils.isName(s));
+            check("address", s, ADDRESS, ValidationUtils.isAddress(s));
+            check("city", s, CITY, ValidationUtils.isCity(s));
+            check("postcode", s, POSTCODE, ValidationUtils.isPostcode(s));
+            check("telephone", s, TELEPHONE, ValidationUtils.isTelephone(s));
+            check("email", s, EMAIL, ValidationUtils.isEmail(s));
+        }
+        System.out.println("ValidationUtils agrees with the expressions on " + FUZZ_CASES + " random values.");
+    }
+
+    /**
+     *  @param rule the name of the rule
+     *  @param s the value checked
+     *  @param expected the rule's expression
+     *  @param actual the result of the rule's check
+     *  @throws IllegalStateException if the check and the expression disagree
+     */
+    private static void check(String rule, String s, Pattern expected, boolean actual) {
+        if (expected.matcher(s).matches() != actual) {
+            throw new IllegalStateException("The " + rule + " check disagrees with its expression on \"" + s + "\"");
+        }
+    }
+}
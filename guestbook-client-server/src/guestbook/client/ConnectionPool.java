@@ -0,0 +1,463 @@
+package guestbook.client;
+
+import guestbook.shared.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ *  A ConnectionPool keeps open connections to one or more guest book servers, so that
+ *  a request does not pay for a new connection, and spreads requests across the servers.
+ *      Each server is an Endpoint. A request goes to the less loaded of two healthy
+ *  endpoints picked at random, where the load of an endpoint is its outstanding requests
+ *  times its recent latency. An endpoint which cannot be connected to, or whose new
+ *  connection fails, is marked down and the request is tried on another endpoint; a
+ *  health checker pings the down endpoints every HEALTH_INTERVAL and brings them back
+ *  once they answer. While every endpoint is down, the one which went down first is tried.
+ *      A connection is kept for further requests, up to MAX_IDLE per endpoint, until it
+ *  has been idle for IDLE_TIMEOUT, which is shorter than the server's keep-alive. A
+ *  request which fails on a kept connection, which the server may have given up, is
+ *  tried once more on a new connection.
+ *      A request may be given a timeout. Each attempt sends the time left with the request,
+ *  so that the server can drop it once the client has stopped waiting, and waits no
+ *  longer than that for the response. A request which times out is not retried, and its
+ *  connection is closed.
+ *      A request is only retried when its connection fails, but a server may have acted
+ *  on it before failing, so a retried update or delete may be applied twice. The
+ *  endpoints should serve the same database.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class ConnectionPool {
+    public static final int MAX_IDLE = 4;               // connections kept per endpoint
+    public static final int IDLE_TIMEOUT = 10000;       // ms a connection is kept unused
+    public static final int CONNECT_TIMEOUT = 3000;     // ms allowed to connect to a server
+    public static final int HEALTH_INTERVAL = 2000;     // ms between pings of down endpoints
+
+    private static final double LATENCY_WEIGHT = 0.2;  // weight of the newest latency in an endpoint's average
+
+    private ArrayList<Endpoint> endpoints = new ArrayList<Endpoint>();
+    private Random random = new Random();
+    private ScheduledExecutorService healthChecker;     // Started when an endpoint first goes down
+    private boolean closed;
+
+    /**
+     *  Adds a server to the pool.
+     *  @param host address of the server
+     *  @param port port the server is listening on
+     */
+    public synchronized void addEndpoint(String host, int port) {
+        endpoints.add( new Endpoint(host, port) );
+        closed = false;
+    }
+
+    /**
+     *  Removes every server from the pool, closing their idle connections.
+     */
+    public synchronized void clear() {
+        for (Endpoint e : endpoints) e.closeIdle();
+        endpoints.clear();
+    }
+
+    /**
+     *  Removes every server and stops the health checker. Connections in use are
+     *  closed when they are returned.
+     */
+    public synchronized void close() {
+        clear();
+        closed = true;
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            healthChecker = null;
+        }
+    }
+
+    /**
+     *  Sends a request to one of the servers and reads its response, failing over to
+     *  another server if the connection fails.
+     *  @param request the request to send
+     *  @return ServerResponse the server's response
+     *  @throws IOException if no server could answer the request
+     */
+    public ServerResponse getRequestResponse( ClientRequest request ) throws IOException {
+        return getRequestResponse( request, 0 );
+    }
+
+    /**
+     *  Sends a request to one of the servers and reads its response, failing over to
+     *  another server if the connection fails, unless the timeout has passed.
+     *  @param request the request to send
+     *  @param timeout the ms to wait for the response, or 0 to wait indefinitely
+     *  @return ServerResponse the server's response
+     *  @throws SocketTimeoutException if the response did not arrive within the timeout
+     *  @throws IOException if no server could answer the request
+     */
+    public ServerResponse getRequestResponse( ClientRequest request, long timeout ) throws IOException {
+        IOException failure = null;
+        int attempts = endpointCount() + 1;
+        long deadline = System.nanoTime() + timeout * 1000000L;
+
+        for (int i = 0; i < attempts; i++) {
+            if ( Thread.interrupted() ) throw new InterruptedIOException("NETWORK ERROR: The request was cancelled.");
+            
+            long left = 0;
+            if (timeout > 0) {
+                left = (deadline - System.nanoTime()) / 1000000L;
+                if (left <= 0) throw timedOut(timeout);
+            }
+            
+            Endpoint endpoint = choose();
+            if (endpoint == null) break;
+
+            // Use a kept connection if there is one
+            Connection connection = endpoint.takeIdle();
+            boolean kept = connection != null;
+            if (connection == null) {
+                try {
+                    connection = new Connection( endpoint, connect(endpoint) );
+                }
+                catch (IOException connectEx) {
+                    markDown(endpoint);
+                    failure = connectEx;
+                    continue;
+                }
+            }
+
+            endpoint.begin();
+            long start = System.nanoTime();
+            try {
+                ServerResponse response = connection.exchange( request, left );
+                endpoint.end( System.nanoTime() - start );
+                release( connection );
+                return response;
+            }
+            catch (SocketTimeoutException timeoutEx) {
+                // The server is slow rather than down, and another would be too late
+                endpoint.end( System.nanoTime() - start );
+                connection.close();
+                throw timedOut(timeout);
+            }
+            catch (IOException exchangeEx) {
+                endpoint.end( System.nanoTime() - start );
+                connection.close();
+                failure = exchangeEx;
+
+                // A kept connection may have been given up by the server, as may the
+                // others kept with it; a new connection which fails means the server has
+                if (kept) endpoint.closeIdle();
+                else markDown(endpoint);
+            }
+        }
+
+        if (failure == null) throw new IOException("NETWORK ERROR: No server has been set.");
+        throw new IOException("NETWORK ERROR: No server could answer the request.\n" + failure);
+    }
+
+    /**
+     *  @param timeout the ms the request was given
+     *  @return SocketTimeoutException saying the request timed out
+     */
+    private static SocketTimeoutException timedOut(long timeout) {
+        return new SocketTimeoutException("NETWORK ERROR: The server did not answer within " + timeout + " ms.");
+    }
+
+    /**
+     *  Opens a connection which is not pooled, to a server chosen as for a request.
+     *  @return Socket the connection
+     *  @throws IOException if no server could be connected to
+     */
+    public Socket openSocket() throws IOException {
+        IOException failure = null;
+        int attempts = endpointCount();
+
+        for (int i = 0; i < attempts; i++) {
+            Endpoint endpoint = choose();
+            if (endpoint == null) break;
+            try {
+                return connect(endpoint);
+            }
+            catch (IOException connectEx) {
+                markDown(endpoint);
+                failure = connectEx;
+            }
+        }
+
+        if (failure == null) throw new IOException("NETWORK ERROR: No server has been set.");
+        throw new IOException("NETWORK ERROR: Could not establish connection to server.\n" + failure);
+    }
+
+    /**
+     *  @return int the number of servers
+     */
+    public synchronized int endpointCount() { return endpoints.size(); }
+
+    /**
+     *  Chooses the endpoint for a request: the less loaded of two healthy endpoints picked
+     *  at random, or if every endpoint is down, the one which went down first.
+     *  @return Endpoint the endpoint, or null if there are none
+     */
+    private synchronized Endpoint choose() {
+        ArrayList<Endpoint> healthy = new ArrayList<Endpoint>( endpoints.size() );
+        Endpoint firstDown = null;
+        for (Endpoint e : endpoints) {
+            if (e.downSince == 0) healthy.add(e);
+            else if (firstDown == null || e.downSince < firstDown.downSince) firstDown = e;
+        }
+
+        if ( healthy.isEmpty() ) return firstDown;
+        if ( healthy.size() == 1 ) return healthy.get(0);
+
+        int a = random.nextInt( healthy.size() );
+        int b = random.nextInt( healthy.size() - 1 );
+        if (b >= a) b++;
+        Endpoint first = healthy.get(a), second = healthy.get(b);
+        return ( first.load() <= second.load() ) ? first : second;
+    }
+
+    /**
+     *  Marks an endpoint down, starting the health checker if it is not running.
+     *  @param endpoint the endpoint which failed
+     */
+    private synchronized void markDown(Endpoint endpoint) {
+        endpoint.closeIdle();
+        if (endpoint.downSince == 0) endpoint.downSince = System.currentTimeMillis();
+
+        if (healthChecker == null && closed == false) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread checker = new Thread(r, "GuestBook health checker");
+                    checker.setDaemon(true);
+                    return checker;
+                }
+            });
+            healthChecker.scheduleWithFixedDelay( new Runnable() {
+                public void run() { checkHealth(); }
+            }, HEALTH_INTERVAL, HEALTH_INTERVAL, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     *  Pings each down endpoint, bringing back those which answer. The connection of a
+     *  successful ping is kept for the next request.
+     */
+    private void checkHealth() {
+        ArrayList<Endpoint> down = new ArrayList<Endpoint>();
+        synchronized (this) {
+            for (Endpoint e : endpoints) if (e.downSince != 0) down.add(e);
+        }
+
+        for (Endpoint endpoint : down) {
+            Connection connection = null;
+            try {
+                connection = new Connection( endpoint, connect(endpoint) );
+                ServerResponse pong = connection.exchange( new ClientRequest( NetUtils.CR_PING, null ), CONNECT_TIMEOUT );
+                if ( pong.getType().equals(NetUtils.SR_PING) == false ) throw new IOException("Unexpected response: " + pong.getType());
+            }
+            catch (IOException pingEx) {
+                if (connection != null) connection.close();
+                continue;
+            }
+
+            synchronized (this) {
+                endpoint.downSince = 0;
+            }
+            release( connection );
+        }
+    }
+
+    /**
+     *  Returns a connection to its endpoint to be kept, or closes it if the endpoint
+     *  already keeps MAX_IDLE connections or has been removed from the pool.
+     *  @param connection the connection, which must not have failed
+     */
+    private void release(Connection connection) {
+        boolean keep;
+        synchronized (this) {
+            keep = endpoints.contains( connection.endpoint );
+        }
+        if ( keep == false || connection.endpoint.putIdle(connection) == false ) connection.close();
+    }
+
+    /**
+     *  @param endpoint the server to connect to
+     *  @return Socket the connection
+     *  @throws IOException if the server could not be connected to
+     */
+    private static Socket connect(Endpoint endpoint) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect( new InetSocketAddress(endpoint.host, endpoint.port), CONNECT_TIMEOUT );
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+        catch (IOException connectEx) {
+            socket.close();
+            throw connectEx;
+        }
+    }
+
+    /**
+     *  A server in the pool, with its kept connections and load.
+     */
+    private static class Endpoint {
+        private String host;
+        private int port;
+        private ArrayDeque<Connection> idle = new ArrayDeque<Connection>();  // Most recently used first
+        private int outstanding;        // Requests being answered
+        private double latency;         // Moving average of request latency, in ns
+        private long downSince;         // ms time the endpoint went down, or 0 if it is up; guarded by the pool
+
+        /**
+         *  @param h address of the server
+         *  @param p port the server is listening on
+         */
+        Endpoint(String h, int p) {
+            host = h;
+            port = p;
+        }
+
+        /**
+         *  @return Connection the most recently used connection which has not been idle
+         *  for IDLE_TIMEOUT, or null if there is none
+         */
+        synchronized Connection takeIdle() {
+            long now = System.currentTimeMillis();
+            while ( idle.isEmpty() == false ) {
+                Connection c = idle.pollFirst();
+                if (now - c.lastUsed < IDLE_TIMEOUT) return c;
+                c.close();
+            }
+            return null;
+        }
+
+        /**
+         *  @param c the connection to keep
+         *  @return boolean false if the endpoint already keeps MAX_IDLE connections
+         */
+        synchronized boolean putIdle(Connection c) {
+            if (idle.size() >= MAX_IDLE) return false;
+            idle.addFirst(c);
+            return true;
+        }
+
+        /**
+         *  Closes the kept connections.
+         */
+        synchronized void closeIdle() {
+            for (Connection c : idle) c.close();
+            idle.clear();
+        }
+
+        /**
+         *  Counts a request which is starting.
+         */
+        synchronized void begin() { outstanding++; }
+
+        /**
+         *  Counts a request which has finished, adding its latency to the average.
+         *  @param nanos the time the request took
+         */
+        synchronized void end(long nanos) {
+            outstanding--;
+            if (latency == 0) latency = nanos;
+            else latency += LATENCY_WEIGHT * (nanos - latency);
+        }
+
+        /**
+         *  @return double the outstanding requests, including the next, times the average latency
+         */
+        synchronized double load() {
+            return (outstanding + 1) * Math.max(latency, 1);
+        }
+    }
+
+    /**
+     *  A connection to a server over which requests are sent one at a time.
+     */
+    private static class Connection {
+        private Endpoint endpoint;
+        private Socket socket;
+        private ObjectOutputStream out;
+        private ObjectInputStream in;
+        private boolean used;       // Whether a request has been sent
+        private long lastUsed;      // ms time the last response was read
+
+        // Codecs for compressed responses, kept for the connection
+        private HashMap<String, PayloadCodec> decoders = new HashMap<String, PayloadCodec>();
+
+        /**
+         *  @param e the endpoint connected to
+         *  @param s the connection
+         *  @throws IOException if the streams could not be opened
+         */
+        Connection(Endpoint e, Socket s) throws IOException {
+            endpoint = e;
+            socket = s;
+            try {
+                out = new ObjectOutputStream( new BufferedOutputStream( socket.getOutputStream() ) );
+                out.flush();
+                in = new ObjectInputStream( new BufferedInputStream( socket.getInputStream() ) );
+            }
+            catch (IOException streamEx) {
+                close();
+                throw new IOException("NETWORK ERROR: Could not open streams to the server.\n" + streamEx);
+            }
+        }
+
+        /**
+         *  Sends a request and reads the response. Large responses are asked to be compressed,
+         *  unless the server is on this machine.
+         *  @param request the request to send
+         *  @param timeout the ms to wait for the response, which is sent with the request,
+         *  or 0 to wait indefinitely
+         *  @return ServerResponse the server's response
+         *  @throws SocketTimeoutException if the response did not arrive within the timeout
+         *  @throws IOException if the connection fails
+         */
+        ServerResponse exchange(ClientRequest request, long timeout) throws IOException {
+            if ( socket.getInetAddress().isLoopbackAddress() ) request.setAcceptedCodecs( null );
+            else request.setAcceptedCodecs( NetUtils.getCodecNames() );
+            request.setTimeout( timeout );
+            socket.setSoTimeout( (int)Math.min(timeout, Integer.MAX_VALUE) );
+
+            // Forget the objects sent with the last request
+            if (used) out.reset();
+            used = true;
+
+            NetUtils.sendRequest( request, out );
+            out.flush();
+            ServerResponse response = NetUtils.getResponse( in, decoders );
+            lastUsed = System.currentTimeMillis();
+            return response;
+        }
+
+        /**
+         *  Closes the connection and its codecs.
+         */
+        void close() {
+            try { socket.close(); }
+            catch (IOException ioEx) {}
+
+            for (PayloadCodec codec : decoders.values()) codec.close();
+            decoders.clear();
+        }
+    }
+}
@@ -1,449 +1,1008 @@
-
-package guestbook.client;
-
-import guestbook.shared.*;
-
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
-
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
-
-import java.util.ArrayList;
-import java.util.Arrays;
-
-
-/**
- * A GuestBookClient provides a program with an interface to
- * connect to a server hosting a guest book database.
- * The GuestBookClient creates and sends requests for information to
- * the server, and deals with any responses or errors that occur.
- *              
- *  @author Joram Benham 200801274
- *  @version April 8, 2011
- */
-public class GuestBookClient {
-    private ObjectInputStream serverIn;     // used to read server messages
-    private ObjectOutputStream serverOut;   // used to send messages to the server
-
-    private Socket server;  // connection socket
-    private String host;    // address of the server
-    private int port;       // port the server is listening on
-    
-    private boolean connected;  // indicates if connection to server is successful
-    
-    /** 
-     *  Intially the client is not connected. The setDetails method should be called before
-     *  a connection is made.
-     */
-    public GuestBookClient() {
-       connected = false;
-    }
-    
-    /** 
-     *  Sets the connection details: i.e. the address and port of the server
-     *  @param theHost address for the server
-     *  @param thePort port # the server is on
-     *  @throws IllegalArgumentException
-     */
-    public void setDetails(String theHost, String thePort) throws IllegalArgumentException {
-        try {
-            int portNum = Integer.parseInt( thePort );
-            setDetails(theHost, portNum);
-        }
-        catch ( NumberFormatException formatEx ) {
-            throw new IllegalArgumentException("Port number must be an integer.");
-        }
-    }
-    
-    /** setDetails with port as int
-     *  Sets the connection details: i.e. the address and port of the server
-     *  @param theHost address for the server
-     *  @param thePort port # the server is on
-     *  @throws IllegalArgumentException
-     */
-    public void setDetails(String theHost, int thePort) throws IllegalArgumentException {
-        
-        if ( GUIUtils.isNullOrEmpty(theHost) ) {
-            throw new IllegalArgumentException("IP Address cannot be null.");
-        }
-        host = theHost;        
-        
-        if (thePort < 0 || thePort > 65535) {
-            throw new IllegalArgumentException("Port number must be between 0 and 65535");
-        }
-        port = thePort;
-    }
-    
-    /** 
-     *  Attempts to open a socket with the server, and open input/output streams to the server.
-     *  @throws IOException if there is a network error
-     */
-    public void connect() throws IOException {
-        try { 
-            server = new Socket(host, port); 
-        }
-        catch (IOException socketEx) {
-            throw new IOException("NETWORK ERROR: Could not establish connection to server.\n" + socketEx);
-        }
-
-        try {            
-            serverOut = new ObjectOutputStream( server.getOutputStream() );
-        }
-        catch (IOException outputEx) {
-            throw new IOException("NETWORK ERROR: Could not get server's output stream.\n" + outputEx);
-        }
-
-        try {
-            serverIn = new ObjectInputStream( server.getInputStream() );
-        }
-        catch (IOException inputEx) {
-            throw new IOException("NETWORK ERROR: Could not get server's input stream.\n" + inputEx);
-        }
-        
-        connected = true;
-    }
-    
-    /** 
-     *  Attempts to close the connection socket with the server.
-     */
-    public void disconnect() {
-        try { server.close(); }
-        catch (IOException ioEx) {}
-        connected = false;
-    }
-    
-    /** 
-     *  @return boolean true if the client is connected
-     */
-    public boolean isConnected() { return connected; }
-    
-    /**
-     *  Uses shared.NetUtils to send a request to the server, and to read the
-     *  server's response.
-     *  @param request the request to send
-     *  @return ServerResponse the server's response
-     *  @throws IOException if there is a network error
-     */
-    public ServerResponse getRequestResponse( ClientRequest request ) throws IOException {
-        connect();
-        
-        try {
-            NetUtils.sendRequest( request, serverOut );
-        }
-        catch (IOException ioSendEx) { 
-            throw new IOException("NETWORK ERROR: failed to send client request.\n" + ioSendEx );
-        }
-        
-        ServerResponse response;
-        try {
-            response = NetUtils.getResponse( serverIn );
-            return response;
-        }
-        catch (IOException ioGetEx) {
-            ioGetEx.printStackTrace();
-            throw new IOException("NETWORK ERROR: failed to retrieve server response.\n" + ioGetEx );
-            
-        }
-        
-        finally {
-            disconnect();
-        }
-    }
-    
-    /** 
-     *  Sends a login request to the server. The return value indicates the login success/failure:
-     *  - 0 indicates the login failed
-     *  - 1 indicates the login succeeded and the user is a regular user
-     *  - 2 indicates the login succeeded and the user is an administrator
-     *  @param email the user email
-     *  @param password the user password
-     *  @return int indicates login status
-     *  @throws IOException if there is a network error
-     *  @throws Exception
-     */
-    public int login(String email, String password) throws IOException, Exception {  
-        
-        // Send the request and get the response
-        ClientRequest loginRequest = new ClientRequest( NetUtils.CR_LOGIN, new String[]{email, password} );
-        ServerResponse loginResponse = getRequestResponse( loginRequest );
-        
-        // Get the response fields
-        String type = loginResponse.getType();
-        Object[] replyData = loginResponse.getData();
-        
-        // If the response is non-error, return whether or not the login was successful
-        if ( type.equals(NetUtils.SR_LOGIN) ) {
-            Boolean validLogin = (Boolean)(replyData[0]);
-            Boolean isAdmin = (Boolean)(replyData[1]);
-            
-            if ( validLogin == false ) return 0;
-            if ( validLogin && !isAdmin ) return 1;
-            if (validLogin && isAdmin) return 2;
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( loginResponse.getEx() );
-        }
-        
-        return 0;
-    }
-    
-    /** 
-     *  Sends a register request to the server. The return value indicates the register success/failure:
-     *  - false indicates the registration failed, the email already exists
-     *  - true indicates the registration succeeded
-     *  @param email the user email
-     *  @return boolean indicates registration status
-     *  @throws IOException if there is a network error
-     *  @throws Exception
-     */
-    public boolean register(String email) throws IOException, Exception {
-        
-        // Send the request and get the response
-        ClientRequest registerRequest = new ClientRequest( NetUtils.CR_REGISTER, new String[]{email} );
-        ServerResponse registerResponse = getRequestResponse( registerRequest );
-        
-        // Get the response fields
-        String type = registerResponse.getType();
-        Object[] replyData = registerResponse.getData();
-        Boolean registerSuccess = false;
-        
-        // If the response is non-error, return whether or not the register was successful
-        if ( type.equals(NetUtils.SR_REGISTER) ) {
-            registerSuccess = (Boolean)(replyData[0]);
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( registerResponse.getEx() );    
-        }
-        
-        return registerSuccess;
-    }
-
-    /** 
-     *  Sends a record update request to the server.
-     *  @param updatedGuest contains the data to update a guest in the database
-     *  @return boolean true if successful
-     *  @throws IOException if there is a network error
-     */
-    public boolean updateRecord(GuestInfo updatedGuest) throws IOException, Exception {
-        
-        // Send the request and get the response
-        ClientRequest updateRequest = new ClientRequest( NetUtils.CR_GUEST_UPDATE, new GuestInfo[]{ updatedGuest } );
-        ServerResponse updateResponse = getRequestResponse( updateRequest );
-        
-        // Get the response fields
-        String type = updateResponse.getType();
-        Object[] reply = updateResponse.getData();
-        Boolean updateSuccess = false;
-        
-        // If the response is non-error, return whether or not the update was successful
-        if ( type.equals( NetUtils.SR_GUEST_UPDATE ) ) {
-            updateSuccess = (Boolean)(reply[0]);    
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( updateResponse.getEx() );    
-        }
-        
-        return updateSuccess;
-    }
-    
-    /** 
-     *  Sends a retrieval request to the server.
-     *  @param target the guest to retrieve
-     *  @return GuestInfo the retrieved record, null if no such record exists
-     *  @throws IOException if there is a network error
-     *  @throws Exception
-     */
-    public GuestInfo retrieveRecord(GuestInfo target) throws IOException, Exception {
-        
-        // Send the request and get the response
-        ClientRequest retrieveRequest = new ClientRequest( NetUtils.CR_GUEST_RETRIEVE, new GuestInfo[]{ target } );
-        ServerResponse retrieveResponse = getRequestResponse( retrieveRequest );
-        
-        // Get the response fields
-        String type = retrieveResponse.getType();
-        Object[] reply = retrieveResponse.getData();
-        Boolean retrieveSuccess = false;
-        GuestInfo retrievedGuest = null;
-        
-        // If the response is non-error, return the retrieved record successful
-        if ( type.equals( NetUtils.SR_GUEST_RETRIEVE ) ) {
-            retrieveSuccess = (Boolean)(reply[0]);   
-            if (retrieveSuccess) retrievedGuest = (GuestInfo)(reply[1]);
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( retrieveResponse.getEx() );    
-        }
-        
-        return retrievedGuest;
-    }
-    
-    /** 
-     *  Sends a record delete request to the server.
-     *  @param target the guest to delete
-     *  @return boolean true if successful
-     *  @throws IOException if there is a network error
-     *  @throws Exception
-     */
-    public boolean deleteRecord(GuestInfo target) throws IOException, Exception {
-        
-        // Send the request and get the response
-        ClientRequest deleteRequest = new ClientRequest( NetUtils.CR_GUEST_DELETE, new GuestInfo[]{ target } );
-        ServerResponse deleteResponse = getRequestResponse( deleteRequest );
-        
-        // Get the response fields
-        String type = deleteResponse.getType();
-        Object[] reply = deleteResponse.getData();
-        Boolean deleted = false;
-        
-        // If the response is non-error, return whether or not the deletion was successful
-        if ( type.equals( NetUtils.SR_GUEST_DELETE ) ) {
-            deleted = (Boolean)(reply[0]);
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( deleteResponse.getEx() );    
-        }
-
-        return deleted;
-    }
-    
-    /** 
-     *  Sends a guest book comment submission request to the server.
-     *  @param  comment the new comment to add to the guest book
-     *  @return boolean true if successful
-     *  @throws IOException if there is a network error
-     *  @throws Exception
-     */
-    public boolean submitComment(GuestEntry comment) throws IOException, Exception {
-        
-        // Send the request and get the response
-        ClientRequest submitRequest = new ClientRequest( NetUtils.CR_SUBMIT_COMMENT, new GuestEntry[]{comment} );
-        ServerResponse submitResponse = getRequestResponse( submitRequest );
-        
-        // Get the response fields
-        String type = submitResponse.getType();
-        Object[] reply = submitResponse.getData();
-        Boolean submitted = false;
-        
-        // If the response is non-error, return whether or not the submission was successful
-        if ( type.equals( NetUtils.SR_SUBMIT_COMMENT ) ) {
-            submitted = (Boolean)(reply[0]);
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( submitResponse.getEx() );    
-        }
-
-        return submitted;
-    }
-    
-    /** 
-     *  Sends a request for all guest book comment entries to the server.
-     *  @return ArrayList<GuestEntry> of the entries
-     *  @throws IOException if there is a network error
-     *  @throws Exception
-     */
-    public ArrayList<GuestEntry> getEntries() throws IOException, Exception {
-        
-        // Send the request and get the response
-        ClientRequest entriesRequest = new ClientRequest( NetUtils.CR_GET_ENTRIES, null );
-        ServerResponse entriesResponse = getRequestResponse( entriesRequest );
-        
-        // Get the response fields
-        String type = entriesResponse.getType();
-        Object[] reply = entriesResponse.getData();  
-        if (reply.length < 1) return null;
-        ArrayList<GuestEntry> entries = null;
-        
-        // If the response is non-error, return the ArrayList of guest book entries
-        if ( type.equals(NetUtils.SR_GET_ENTRIES) ) { 
-            entries = new ArrayList<GuestEntry>();
-            
-            for (int i = 0; i < reply.length; i++) {
-                entries.add( (GuestEntry)reply[i] );
-            }
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( entriesResponse.getEx() );    
-        }
-        
-        return entries;
-    }
-    
-    /** 
-     *  Sends a request for all guest book server logs to the server.
-     *  @return ArrayList<GuestLog> of the logs
-     *  @throws IOException if there is a network error
-     *  @throws Exception
-     */
-    public ArrayList<GuestLog> getLogs() throws IOException, Exception {
-        
-        // Send the request and get the response
-        ClientRequest logsRequest = new ClientRequest( NetUtils.CR_GET_LOGS, null );
-        ServerResponse logsResponse = getRequestResponse( logsRequest );
-        
-        // Get the response fields
-        String type = logsResponse.getType();
-        Object[] reply = logsResponse.getData();
-        if (reply.length < 1) return null;
-        ArrayList<GuestLog> logs = null;
-        
-        // If the response is non-error, return the ArrayList of server logs 
-        if ( type.equals(NetUtils.SR_GET_LOGS) ) {
-            logs = new ArrayList<GuestLog>();
-            
-            for (int i = 0; i < reply.length; i++) {
-                logs.add( (GuestLog)reply[i] );
-            }
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( logsResponse.getEx() );    
-        }
-        
-        return logs;
-    }
-    
-    /** 
-     *  Sends a request for all guest book guests to the server.
-     *  @param criteria
-     *  @return ArrayList<GuestInfo> of the guests
-     *  @throws IOException if there is a network error
-     *  @throws Exception
-     */
-    public ArrayList<GuestInfo> getUsers(GuestInfo criteria) throws IOException, Exception {
-        
-        // Send the request and get the response
-        ClientRequest usersRequest = new ClientRequest( NetUtils.CR_GET_USERS, new GuestInfo[]{ criteria } );
-        ServerResponse usersResponse = getRequestResponse( usersRequest );
-        
-        // Get the response fields
-        String type = usersResponse.getType();
-        Object[] reply = usersResponse.getData();
-        if (reply.length < 1) return null;
-        ArrayList<GuestInfo> users = null;
-        
-        // If the response is non-error, return the ArrayList of guests in the database
-        if ( type.equals(NetUtils.SR_GET_USERS) ) {            
-            users = new ArrayList<GuestInfo>();
-            
-            for (int i = 0; i < reply.length; i++) {
-                users.add( (GuestInfo)reply[i] );
-            }
-        }
-        
-        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
-            throw new Exception( usersResponse.getEx() );    
-        }
-        
-        return users;
-    }
-}
+
+package guestbook.client;
+
+import guestbook.shared.*;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A GuestBookClient provides a program with an interface to
+ * connect to a server hosting a guest book database.
+ * The GuestBookClient creates and sends requests for information to
+ * the server, and deals with any responses or errors that occur.
+ * Requests are sent through a ConnectionPool, which keeps connections open between
+ * requests and, when several servers are given, spreads the requests across them and
+ * fails over from a server which stops answering.
+ * Each request method has an asynchronous form, named with "Async", which returns a
+ * CompletableFuture at once and sends the request on a small pool of I/O threads.
+ * The future completes on an I/O thread, so a GUI should update itself through
+ * SwingUtilities.invokeLater. withTimeout fails a future which is not answered in
+ * time; a future which is cancelled or times out before its request is sent never
+ * sends it, but a request already sent is still answered by the server.
+ *              
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class GuestBookClient {
+    private ObjectInputStream serverIn;     // used to read server messages
+    private ObjectOutputStream serverOut;   // used to send messages to the server
+
+    private Socket server;  // connection socket, for connect
+    private ConnectionPool pool = new ConnectionPool();   // connections for requests
+    
+    private boolean connected;  // indicates if connection to server is successful
+    private long requestTimeout;    // ms each request waits for its response, or 0 to wait indefinitely
+    private String session = UUID.randomUUID().toString();  // sent with each request, so the server can show this client its own writes
+    private volatile String token;  // session token of the last successful login, sent with each request
+    
+    public static final int IO_THREADS = 4;    // requests the Async methods send at once
+    
+    private ThreadPoolExecutor ioExecutor;          // sends the Async methods' requests, once one is made
+    private static ScheduledExecutorService timer;  // fails futures which time out, once one is set
+    
+    private static final int EXPORT_BUFFER = 64 * 1024;    // bytes read at a time by an export
+    
+    /** 
+     *  Intially the client is not connected. The setDetails method should be called before
+     *  a connection is made.
+     */
+    public GuestBookClient() {
+       connected = false;
+    }
+    
+    /** 
+     *  Sets the connection details: i.e. the address and port of the server. Several
+     *  servers may be given as a comma separated list, each of which may have its own port
+     *  as host:port; the port given is used for the others.
+     *  @param theHost address for the server
+     *  @param thePort port # the server is on
+     *  @throws IllegalArgumentException
+     */
+    public void setDetails(String theHost, String thePort) throws IllegalArgumentException {
+        try {
+            int portNum = Integer.parseInt( thePort );
+            setDetails(theHost, portNum);
+        }
+        catch ( NumberFormatException formatEx ) {
+            throw new IllegalArgumentException("Port number must be an integer.");
+        }
+    }
+    
+    /** setDetails with port as int
+     *  Sets the connection details: i.e. the address and port of the server, replacing
+     *  any servers set before. Several servers may be given as for setDetails(String, String).
+     *  @param theHost address for the server
+     *  @param thePort port # the server is on
+     *  @throws IllegalArgumentException
+     */
+    public void setDetails(String theHost, int thePort) throws IllegalArgumentException {
+        
+        if ( GUIUtils.isNullOrEmpty(theHost) ) {
+            throw new IllegalArgumentException("IP Address cannot be null.");
+        }
+        checkPort(thePort);
+        
+        // Check every server before replacing the old ones
+        ArrayList<String> hosts = new ArrayList<String>();
+        ArrayList<Integer> ports = new ArrayList<Integer>();
+        for (String address : theHost.split(",")) {
+            address = address.trim();
+            int portNum = thePort;
+            
+            int colon = address.indexOf(':');
+            if (colon >= 0 && colon == address.lastIndexOf(':')) {
+                try {
+                    portNum = Integer.parseInt( address.substring(colon + 1).trim() );
+                }
+                catch ( NumberFormatException formatEx ) {
+                    throw new IllegalArgumentException("Port number must be an integer.");
+                }
+                checkPort(portNum);
+                address = address.substring(0, colon).trim();
+            }
+            
+            if ( GUIUtils.isNullOrEmpty(address) ) {
+                throw new IllegalArgumentException("IP Address cannot be null.");
+            }
+            hosts.add(address);
+            ports.add(portNum);
+        }
+        
+        pool.clear();
+        for (int i = 0; i < hosts.size(); i++) pool.addEndpoint( hosts.get(i), ports.get(i) );
+    }
+    
+    /** 
+     *  Adds a server to those requests are spread across.
+     *  @param theHost address for the server
+     *  @param thePort port # the server is on
+     *  @throws IllegalArgumentException
+     */
+    public void addEndpoint(String theHost, int thePort) throws IllegalArgumentException {
+        if ( GUIUtils.isNullOrEmpty(theHost) ) {
+            throw new IllegalArgumentException("IP Address cannot be null.");
+        }
+        checkPort(thePort);
+        pool.addEndpoint(theHost, thePort);
+    }
+    
+    /** 
+     *  @param thePort the port # to check
+     *  @throws IllegalArgumentException if the port is out of range
+     */
+    private static void checkPort(int thePort) throws IllegalArgumentException {
+        if (thePort < 0 || thePort > 65535) {
+            throw new IllegalArgumentException("Port number must be between 0 and 65535");
+        }
+    }
+    
+    /** 
+     *  Closes the connections kept to the servers and forgets the servers. setDetails
+     *  should be called before the client is used again.
+     */
+    public void close() {
+        pool.close();
+        
+        synchronized (this) {
+            if (ioExecutor != null) {
+                ioExecutor.shutdownNow();
+                ioExecutor = null;
+            }
+        }
+    }
+    
+    /** 
+     *  Attempts to open a socket with a server, and open input/output streams to the server.
+     *  The connection is not pooled; requests do not need it.
+     *  @throws IOException if there is a network error
+     */
+    public void connect() throws IOException {
+        server = pool.openSocket();
+
+        try {            
+            serverOut = new ObjectOutputStream( server.getOutputStream() );
+        }
+        catch (IOException outputEx) {
+            throw new IOException("NETWORK ERROR: Could not get server's output stream.\n" + outputEx);
+        }
+
+        try {
+            serverIn = new ObjectInputStream( server.getInputStream() );
+        }
+        catch (IOException inputEx) {
+            throw new IOException("NETWORK ERROR: Could not get server's input stream.\n" + inputEx);
+        }
+        
+        connected = true;
+    }
+    
+    /** 
+     *  Attempts to close the connection socket with the server.
+     */
+    public void disconnect() {
+        try { server.close(); }
+        catch (IOException ioEx) {}
+        connected = false;
+    }
+    
+    /** 
+     *  @return boolean true if the client is connected
+     */
+    public boolean isConnected() { return connected; }
+    
+    /**
+     *  Uses the ConnectionPool to send a request to a server, and to read the
+     *  server's response. The request is sent with this client's session id, and the
+     *  token of its last login, which is replaced by any renewed token the response carries.
+     *  @param request the request to send
+     *  @return ServerResponse the server's response
+     *  @throws IOException if there is a network error
+     */
+    public ServerResponse getRequestResponse( ClientRequest request ) throws IOException {
+        request.setSession( session );
+        request.setToken( token );
+        ServerResponse response = pool.getRequestResponse( request, requestTimeout );
+        if ( response.getToken() != null ) token = response.getToken();
+        return response;
+    }
+    
+    /** 
+     *  Sets how long each request waits for its response. The timeout is sent with the
+     *  request, so that a server does not service a request the client has stopped
+     *  waiting for. Exports are not limited.
+     *  @param ms the timeout in ms, or 0 to wait indefinitely (the default)
+     *  @throws IllegalArgumentException if the timeout is negative
+     */
+    public void setRequestTimeout(long ms) throws IllegalArgumentException {
+        if (ms < 0) throw new IllegalArgumentException("Timeout cannot be negative.");
+        requestTimeout = ms;
+    }
+    
+    /** 
+     *  @return long the ms each request waits for its response, or 0 if it waits indefinitely
+     */
+    public long getRequestTimeout() { return requestTimeout; }
+    
+    /** 
+     *  Sends a login request to the server. The return value indicates the login success/failure:
+     *  - 0 indicates the login failed
+     *  - 1 indicates the login succeeded and the user is a regular user
+     *  - 2 indicates the login succeeded and the user is an administrator
+     *  The session token the server issues is sent with every later request, to any of
+     *  the servers, until the next login; the servers must share a session key.
+     *  @param email the user email
+     *  @param password the user password
+     *  @return int indicates login status
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public int login(String email, String password) throws IOException, Exception {  
+        
+        // Send the request and get the response
+        ClientRequest loginRequest = new ClientRequest( NetUtils.CR_LOGIN, new String[]{email, password} );
+        ServerResponse loginResponse = getRequestResponse( loginRequest );
+        
+        // Get the response fields
+        String type = loginResponse.getType();
+        Object[] replyData = loginResponse.getData();
+        
+        // If the response is non-error, return whether or not the login was successful
+        if ( type.equals(NetUtils.SR_LOGIN) ) {
+            token = loginResponse.getToken();
+            Boolean validLogin = (Boolean)(replyData[0]);
+            Boolean isAdmin = (Boolean)(replyData[1]);
+            
+            if ( validLogin == false ) return 0;
+            if ( validLogin && !isAdmin ) return 1;
+            if (validLogin && isAdmin) return 2;
+        }
+        
+        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( loginResponse.getEx() );
+        }
+        
+        return 0;
+    }
+    
+    /** 
+     *  Sends a register request to the server. The return value indicates the register success/failure:
+     *  - false indicates the registration failed, the email already exists
+     *  - true indicates the registration succeeded
+     *  @param email the user email
+     *  @return boolean indicates registration status
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public boolean register(String email) throws IOException, Exception {
+        
+        // Send the request and get the response
+        ClientRequest registerRequest = new ClientRequest( NetUtils.CR_REGISTER, new String[]{email} );
+        ServerResponse registerResponse = getRequestResponse( registerRequest );
+        
+        // Get the response fields
+        String type = registerResponse.getType();
+        Object[] replyData = registerResponse.getData();
+        Boolean registerSuccess = false;
+        
+        // If the response is non-error, return whether or not the register was successful
+        if ( type.equals(NetUtils.SR_REGISTER) ) {
+            registerSuccess = (Boolean)(replyData[0]);
+        }
+        
+        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( registerResponse.getEx() );    
+        }
+        
+        return registerSuccess;
+    }
+
+    /** 
+     *  Sends a record update request to the server.
+     *  @param updatedGuest contains the data to update a guest in the database
+     *  @return boolean true if successful
+     *  @throws IOException if there is a network error
+     */
+    public boolean updateRecord(GuestInfo updatedGuest) throws IOException, Exception {
+        
+        // Send the request and get the response
+        ClientRequest updateRequest = new ClientRequest( NetUtils.CR_GUEST_UPDATE, new GuestInfo[]{ updatedGuest } );
+        ServerResponse updateResponse = getRequestResponse( updateRequest );
+        
+        // Get the response fields
+        String type = updateResponse.getType();
+        Object[] reply = updateResponse.getData();
+        Boolean updateSuccess = false;
+        
+        // If the response is non-error, return whether or not the update was successful
+        if ( type.equals( NetUtils.SR_GUEST_UPDATE ) ) {
+            updateSuccess = (Boolean)(reply[0]);    
+        }
+        
+        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( updateResponse.getEx() );    
+        }
+        
+        return updateSuccess;
+    }
+    
+    /** 
+     *  Sends a retrieval request to the server.
+     *  @param target the guest to retrieve
+     *  @return GuestInfo the retrieved record, null if no such record exists
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public GuestInfo retrieveRecord(GuestInfo target) throws IOException, Exception {
+        ClientRequest retrieveRequest = new ClientRequest( NetUtils.CR_GUEST_RETRIEVE, new GuestInfo[]{ target } );
+        return readRetrieve( getRequestResponse( retrieveRequest ) );
+    }
+    
+    /** 
+     *  Reads the response to a retrieval request.
+     *  @param retrieveResponse the response
+     *  @return GuestInfo the retrieved record, null if no such record exists
+     *  @throws Exception if the response is an error
+     */
+    public GuestInfo readRetrieve(ServerResponse retrieveResponse) throws Exception {
+        
+        // Get the response fields
+        String type = retrieveResponse.getType();
+        Object[] reply = retrieveResponse.getData();
+        Boolean retrieveSuccess = false;
+        GuestInfo retrievedGuest = null;
+        
+        // If the response is non-error, return the retrieved record successful
+        if ( type.equals( NetUtils.SR_GUEST_RETRIEVE ) ) {
+            retrieveSuccess = (Boolean)(reply[0]);   
+            if (retrieveSuccess) retrievedGuest = (GuestInfo)(reply[1]);
+        }
+        
+        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( retrieveResponse.getEx() );    
+        }
+        
+        return retrievedGuest;
+    }
+    
+    /** 
+     *  Sends a record delete request to the server.
+     *  @param target the guest to delete
+     *  @return boolean true if successful
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public boolean deleteRecord(GuestInfo target) throws IOException, Exception {
+        ClientRequest deleteRequest = new ClientRequest( NetUtils.CR_GUEST_DELETE, new GuestInfo[]{ target } );
+        return readDelete( getRequestResponse( deleteRequest ) );
+    }
+    
+    /** 
+     *  Reads the response to a delete request.
+     *  @param deleteResponse the response
+     *  @return boolean true if the record was deleted
+     *  @throws Exception if the response is an error
+     */
+    public boolean readDelete(ServerResponse deleteResponse) throws Exception {
+        
+        // Get the response fields
+        String type = deleteResponse.getType();
+        Object[] reply = deleteResponse.getData();
+        Boolean deleted = false;
+        
+        // If the response is non-error, return whether or not the deletion was successful
+        if ( type.equals( NetUtils.SR_GUEST_DELETE ) ) {
+            deleted = (Boolean)(reply[0]);
+        }
+        
+        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( deleteResponse.getEx() );    
+        }
+
+        return deleted;
+    }
+    
+    /** 
+     *  Sends several requests to the server in one batch, which it answers in one response.
+     *  @param requests the requests, which cannot include batch or export requests
+     *  @return ServerResponse[] the response to each request, in order; read them with
+     *  readRetrieve, readDelete, readEntries and so on
+     *  @throws IOException if there is a network error
+     *  @throws Exception if the batch as a whole failed
+     */
+    public ServerResponse[] sendBatch(ClientRequest[] requests) throws IOException, Exception {
+        ServerResponse batchResponse = getRequestResponse( new ClientRequest( NetUtils.CR_BATCH, requests ) );
+        
+        if ( batchResponse.getType().equals(NetUtils.SR_DB_ERROR) ) throw new Exception( batchResponse.getEx() );
+        
+        Object[] reply = batchResponse.getData();
+        ServerResponse[] responses = new ServerResponse[reply.length];
+        for (int i = 0; i < reply.length; i++) responses[i] = (ServerResponse)reply[i];
+        return responses;
+    }
+    
+    /** 
+     *  Retrieves several records in one batch.
+     *  @param targets the guests to retrieve, at most NetUtils.MAX_BATCH
+     *  @return GuestInfo[] the retrieved records, with null for each which does not exist
+     *  @throws IOException if there is a network error
+     *  @throws Exception if a retrieval failed
+     */
+    public GuestInfo[] retrieveRecords(List<GuestInfo> targets) throws IOException, Exception {
+        ClientRequest[] requests = new ClientRequest[ targets.size() ];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new ClientRequest( NetUtils.CR_GUEST_RETRIEVE, new GuestInfo[]{ targets.get(i) } );
+        }
+        
+        ServerResponse[] responses = sendBatch( requests );
+        GuestInfo[] retrieved = new GuestInfo[ responses.length ];
+        for (int i = 0; i < responses.length; i++) retrieved[i] = readRetrieve( responses[i] );
+        return retrieved;
+    }
+    
+    /** 
+     *  Deletes several records in one batch. Every delete is attempted even if
+     *  another fails.
+     *  @param targets the guests to delete, at most NetUtils.MAX_BATCH
+     *  @return boolean[] true for each record which was deleted
+     *  @throws IOException if there is a network error
+     *  @throws Exception if a delete failed; the others have still been made
+     */
+    public boolean[] deleteRecords(List<GuestInfo> targets) throws IOException, Exception {
+        ClientRequest[] requests = new ClientRequest[ targets.size() ];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = new ClientRequest( NetUtils.CR_GUEST_DELETE, new GuestInfo[]{ targets.get(i) } );
+        }
+        
+        ServerResponse[] responses = sendBatch( requests );
+        boolean[] deleted = new boolean[ responses.length ];
+        Exception failure = null;
+        for (int i = 0; i < responses.length; i++) {
+            try {
+                deleted[i] = readDelete( responses[i] );
+            }
+            catch (Exception ex) {
+                if (failure == null) failure = ex;
+            }
+        }
+        
+        if (failure != null) throw failure;
+        return deleted;
+    }
+    
+    /** 
+     *  Sends a guest book comment submission request to the server.
+     *  @param  comment the new comment to add to the guest book
+     *  @return boolean true if successful
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public boolean submitComment(GuestEntry comment) throws IOException, Exception {
+        
+        // Send the request and get the response
+        ClientRequest submitRequest = new ClientRequest( NetUtils.CR_SUBMIT_COMMENT, new GuestEntry[]{comment} );
+        ServerResponse submitResponse = getRequestResponse( submitRequest );
+        
+        // Get the response fields
+        String type = submitResponse.getType();
+        Object[] reply = submitResponse.getData();
+        Boolean submitted = false;
+        
+        // If the response is non-error, return whether or not the submission was successful
+        if ( type.equals( NetUtils.SR_SUBMIT_COMMENT ) ) {
+            submitted = (Boolean)(reply[0]);
+        }
+        
+        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( submitResponse.getEx() );    
+        }
+
+        return submitted;
+    }
+    
+    /** 
+     *  Sends a request for all guest book comment entries to the server.
+     *  @return ArrayList<GuestEntry> of the entries
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public ArrayList<GuestEntry> getEntries() throws IOException, Exception {
+        ClientRequest entriesRequest = new ClientRequest( NetUtils.CR_GET_ENTRIES, null );
+        return readEntries( getRequestResponse( entriesRequest ) );
+    }
+    
+    /** 
+     *  Reads the response to a request for the guest book entries.
+     *  @param entriesResponse the response
+     *  @return ArrayList<GuestEntry> of the entries, null if there are none
+     *  @throws Exception if the response is an error
+     */
+    public ArrayList<GuestEntry> readEntries(ServerResponse entriesResponse) throws Exception {
+        
+        // Get the response fields
+        String type = entriesResponse.getType();
+        if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( entriesResponse.getEx() );    
+        }
+        
+        Object[] reply = entriesResponse.getData();  
+        if (reply.length < 1) return null;
+        ArrayList<GuestEntry> entries = null;
+        
+        // If the response is non-error, return the ArrayList of guest book entries
+        if ( type.equals(NetUtils.SR_GET_ENTRIES) ) { 
+            entries = new ArrayList<GuestEntry>();
+            
+            for (int i = 0; i < reply.length; i++) {
+                entries.add( (GuestEntry)reply[i] );
+            }
+        }
+        
+        return entries;
+    }
+    
+    /** 
+     *  Sends a request for all guest book server logs to the server.
+     *  @return ArrayList<GuestLog> of the logs
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public ArrayList<GuestLog> getLogs() throws IOException, Exception {
+        
+        // Send the request and get the response
+        ClientRequest logsRequest = new ClientRequest( NetUtils.CR_GET_LOGS, null );
+        ServerResponse logsResponse = getRequestResponse( logsRequest );
+        
+        // Get the response fields
+        String type = logsResponse.getType();
+        if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( logsResponse.getEx() );    
+        }
+        
+        Object[] reply = logsResponse.getData();
+        if (reply.length < 1) return null;
+        ArrayList<GuestLog> logs = null;
+        
+        // If the response is non-error, return the ArrayList of server logs 
+        if ( type.equals(NetUtils.SR_GET_LOGS) ) {
+            logs = new ArrayList<GuestLog>();
+            
+            for (int i = 0; i < reply.length; i++) {
+                logs.add( (GuestLog)reply[i] );
+            }
+        }
+        
+        return logs;
+    }
+    
+    /** 
+     *  Sends a request for all guest book server logs to the server, which sends them
+     *  as a ColumnarTable.
+     *  @return ColumnarTable.Model of the logs, in the ColumnarTable.LOG_COLUMNS order
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public ColumnarTable.Model getLogsTable() throws IOException, Exception {
+        ServerResponse logsResponse = getRequestResponse( new ClientRequest( NetUtils.CR_GET_LOGS_COLUMNAR, null ) );
+        return decodeColumnar( logsResponse, NetUtils.SR_GET_LOGS_COLUMNAR );
+    }
+    
+    /** 
+     *  Sends a request for the guests matching the criteria to the server, which sends
+     *  them as a ColumnarTable.
+     *  @param criteria the values the guests must have; empty fields match any value
+     *  @return ColumnarTable.Model of the guests, in the ColumnarTable.GUEST_COLUMNS order
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public ColumnarTable.Model getUsersTable(GuestInfo criteria) throws IOException, Exception {
+        ServerResponse usersResponse = getRequestResponse( new ClientRequest( NetUtils.CR_GET_USERS_COLUMNAR, new GuestInfo[]{ criteria } ) );
+        return decodeColumnar( usersResponse, NetUtils.SR_GET_USERS_COLUMNAR );
+    }
+    
+    /** 
+     *  @param response the response holding a ColumnarTable
+     *  @param expected the type of the response if it is not an error
+     *  @return ColumnarTable.Model the decoded table
+     *  @throws Exception if the response is an error
+     */
+    private ColumnarTable.Model decodeColumnar(ServerResponse response, String expected) throws Exception {
+        if ( response.getType().equals(NetUtils.SR_DB_ERROR) ) throw new Exception( response.getEx() );
+        if ( response.getType().equals(expected) == false ) throw new Exception("Unexpected response: " + response.getType());
+        return ( (ColumnarTable)response.getData()[0] ).decode();
+    }
+    
+    /** 
+     *  Sends delimited guest records to the server to be added in bulk.
+     *  @param records the guest records, in the form AddressBook.importGuestInfos reads
+     *  @param recordDelimRegex the regex separating the records
+     *  @param fieldDelimRegex the regex separating the fields of a record
+     *  @return ArrayList<String> a summary line, then one line per record which was not added
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public ArrayList<String> bulkLoad(String records, String recordDelimRegex, String fieldDelimRegex) throws IOException, Exception {
+        
+        // Send the request and get the response
+        ClientRequest loadRequest = new ClientRequest( NetUtils.CR_BULK_LOAD, new String[]{ records, recordDelimRegex, fieldDelimRegex } );
+        ServerResponse loadResponse = getRequestResponse( loadRequest );
+        
+        // Get the response fields
+        String type = loadResponse.getType();
+        Object[] reply = loadResponse.getData();
+        ArrayList<String> report = null;
+        
+        // If the response is non-error, return the report lines
+        if ( type.equals(NetUtils.SR_BULK_LOAD) ) {
+            report = new ArrayList<String>();
+            
+            for (int i = 0; i < reply.length; i++) {
+                report.add( (String)reply[i] );
+            }
+        }
+        
+        else if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( loadResponse.getEx() );    
+        }
+        
+        return report;
+    }
+    
+    /** 
+     *  Exports a table from the server, copying the rows to out as they arrive. See the
+     *  server's ExportWriter for the delimited and binary formats. The export has a
+     *  connection of its own, so other requests may be sent while it runs.
+     *  @param table one of the NetUtils.EXPORT_TABLES
+     *  @param format NetUtils.EXPORT_DELIMITED or NetUtils.EXPORT_BINARY
+     *  @param compress true if the rows should be compressed on the network
+     *  @param out the stream to copy the rows to; it is not closed
+     *  @return long the number of rows exported
+     *  @throws IOException if there is a network error
+     *  @throws Exception if the server could not export the table
+     */
+    public long exportTable(String table, String format, boolean compress, OutputStream out) throws IOException, Exception {
+        Socket exportSocket = pool.openSocket();
+        try {
+            ObjectOutputStream exportOut = new ObjectOutputStream( exportSocket.getOutputStream() );
+            ObjectInputStream exportIn = new ObjectInputStream( exportSocket.getInputStream() );
+            ClientRequest exportRequest = new ClientRequest( NetUtils.CR_EXPORT, new String[]{ table, format, String.valueOf(compress) } );
+            exportRequest.setSession( session );
+            exportRequest.setToken( token );
+            NetUtils.sendRequest( exportRequest, exportOut );
+            
+            ServerResponse header = NetUtils.getResponse( exportIn );
+            if ( header.getType().equals(NetUtils.SR_DB_ERROR) ) throw new Exception( header.getEx() );
+            
+            // The rows end where the trailing response begins
+            InputStream body = exportIn;
+            if (compress) body = new GZIPInputStream( exportIn, EXPORT_BUFFER );
+            byte[] buffer = new byte[EXPORT_BUFFER];
+            IOException bodyEx = null;
+            try {
+                for (int n = body.read(buffer); n >= 0; n = body.read(buffer)) out.write(buffer, 0, n);
+            }
+            catch (IOException ioEx) {
+                bodyEx = ioEx;  // The trailer will say why the rows stopped, if the server knows
+            }
+            
+            ServerResponse trailer = NetUtils.getResponse( exportIn );
+            if ( trailer.getType().equals(NetUtils.SR_DB_ERROR) ) throw new Exception( trailer.getEx() );
+            if (bodyEx != null) throw bodyEx;
+            return Long.parseLong( (String)trailer.getData()[0] );
+        }
+        finally {
+            try { exportSocket.close(); }
+            catch (IOException ioEx) {}
+        }
+    }
+    
+    /** 
+     *  Sends a request for all guest book guests to the server.
+     *  @param criteria
+     *  @return ArrayList<GuestInfo> of the guests
+     *  @throws IOException if there is a network error
+     *  @throws Exception
+     */
+    public ArrayList<GuestInfo> getUsers(GuestInfo criteria) throws IOException, Exception {
+        
+        // Send the request and get the response
+        ClientRequest usersRequest = new ClientRequest( NetUtils.CR_GET_USERS, new GuestInfo[]{ criteria } );
+        ServerResponse usersResponse = getRequestResponse( usersRequest );
+        
+        // Get the response fields
+        String type = usersResponse.getType();
+        if ( type.equals(NetUtils.SR_DB_ERROR) ) {
+            throw new Exception( usersResponse.getEx() );    
+        }
+        
+        Object[] reply = usersResponse.getData();
+        if (reply.length < 1) return null;
+        ArrayList<GuestInfo> users = null;
+        
+        // If the response is non-error, return the ArrayList of guests in the database
+        if ( type.equals(NetUtils.SR_GET_USERS) ) {            
+            users = new ArrayList<GuestInfo>();
+            
+            for (int i = 0; i < reply.length; i++) {
+                users.add( (GuestInfo)reply[i] );
+            }
+        }
+        
+        return users;
+    }
+    
+    /** 
+     *  Sends settings for the server to apply while it runs, which only an administrator
+     *  may do. When several servers are given, only the one the request is sent to is
+     *  changed.
+     *  @param settings "setting=value" Strings, each setting one of GuestBookServer.SETTINGS;
+     *  none to only read the settings
+     *  @return String[] every setting's current "setting=value" on the server
+     *  @throws IOException if there is a network error
+     *  @throws Exception if a setting was refused; the settings before it were applied
+     */
+    public String[] configure(String[] settings) throws IOException, Exception {
+        ServerResponse configureResponse = getRequestResponse( new ClientRequest( NetUtils.CR_CONFIGURE, settings ) );
+        
+        if ( configureResponse.getType().equals(NetUtils.SR_DB_ERROR) ) throw new Exception( configureResponse.getEx() );
+        
+        Object[] reply = configureResponse.getData();
+        return Arrays.copyOf( reply, reply.length, String[].class );
+    }
+    
+    /** 
+     *  @param email the user email
+     *  @param password the user password
+     *  @return CompletableFuture<Integer> the result of login
+     */
+    public CompletableFuture<Integer> loginAsync(String email, String password) {
+        return supply( () -> login(email, password) );
+    }
+    
+    /** 
+     *  @param email the user email
+     *  @return CompletableFuture<Boolean> the result of register
+     */
+    public CompletableFuture<Boolean> registerAsync(String email) {
+        return supply( () -> register(email) );
+    }
+    
+    /** 
+     *  @param updatedGuest contains the data to update a guest in the database
+     *  @return CompletableFuture<Boolean> the result of updateRecord
+     */
+    public CompletableFuture<Boolean> updateRecordAsync(GuestInfo updatedGuest) {
+        return supply( () -> updateRecord(updatedGuest) );
+    }
+    
+    /** 
+     *  @param target the guest to retrieve
+     *  @return CompletableFuture<GuestInfo> the result of retrieveRecord
+     */
+    public CompletableFuture<GuestInfo> retrieveRecordAsync(GuestInfo target) {
+        return supply( () -> retrieveRecord(target) );
+    }
+    
+    /** 
+     *  @param target the guest to delete
+     *  @return CompletableFuture<Boolean> the result of deleteRecord
+     */
+    public CompletableFuture<Boolean> deleteRecordAsync(GuestInfo target) {
+        return supply( () -> deleteRecord(target) );
+    }
+    
+    /** 
+     *  @param requests the requests to send
+     *  @return CompletableFuture<ServerResponse[]> the result of sendBatch
+     */
+    public CompletableFuture<ServerResponse[]> sendBatchAsync(ClientRequest[] requests) {
+        return supply( () -> sendBatch(requests) );
+    }
+    
+    /** 
+     *  @param targets the guests to retrieve
+     *  @return CompletableFuture<GuestInfo[]> the result of retrieveRecords
+     */
+    public CompletableFuture<GuestInfo[]> retrieveRecordsAsync(List<GuestInfo> targets) {
+        return supply( () -> retrieveRecords(targets) );
+    }
+    
+    /** 
+     *  @param targets the guests to delete
+     *  @return CompletableFuture<boolean[]> the result of deleteRecords
+     */
+    public CompletableFuture<boolean[]> deleteRecordsAsync(List<GuestInfo> targets) {
+        return supply( () -> deleteRecords(targets) );
+    }
+    
+    /** 
+     *  @param comment the entry to submit
+     *  @return CompletableFuture<Boolean> the result of submitComment
+     */
+    public CompletableFuture<Boolean> submitCommentAsync(GuestEntry comment) {
+        return supply( () -> submitComment(comment) );
+    }
+    
+    /** 
+     *  @return CompletableFuture<ArrayList<GuestEntry>> the result of getEntries
+     */
+    public CompletableFuture<ArrayList<GuestEntry>> getEntriesAsync() {
+        return supply( () -> getEntries() );
+    }
+    
+    /** 
+     *  @return CompletableFuture<ArrayList<GuestLog>> the result of getLogs
+     */
+    public CompletableFuture<ArrayList<GuestLog>> getLogsAsync() {
+        return supply( () -> getLogs() );
+    }
+    
+    /** 
+     *  @return CompletableFuture<ColumnarTable.Model> the result of getLogsTable
+     */
+    public CompletableFuture<ColumnarTable.Model> getLogsTableAsync() {
+        return supply( () -> getLogsTable() );
+    }
+    
+    /** 
+     *  @param criteria the guests to match
+     *  @return CompletableFuture<ArrayList<GuestInfo>> the result of getUsers
+     */
+    public CompletableFuture<ArrayList<GuestInfo>> getUsersAsync(GuestInfo criteria) {
+        return supply( () -> getUsers(criteria) );
+    }
+    
+    /** 
+     *  @param criteria the guests to match
+     *  @return CompletableFuture<ColumnarTable.Model> the result of getUsersTable
+     */
+    public CompletableFuture<ColumnarTable.Model> getUsersTableAsync(GuestInfo criteria) {
+        return supply( () -> getUsersTable(criteria) );
+    }
+    
+    /** 
+     *  @param records the delimited guest records
+     *  @param recordDelimRegex separates the records
+     *  @param fieldDelimRegex separates the fields of a record
+     *  @return CompletableFuture<ArrayList<String>> the result of bulkLoad
+     */
+    public CompletableFuture<ArrayList<String>> bulkLoadAsync(String records, String recordDelimRegex, String fieldDelimRegex) {
+        return supply( () -> bulkLoad(records, recordDelimRegex, fieldDelimRegex) );
+    }
+    
+    /** 
+     *  @param table one of the NetUtils.EXPORT_TABLES
+     *  @param format NetUtils.EXPORT_DELIMITED or NetUtils.EXPORT_BINARY
+     *  @param compress true if the rows should be compressed on the network
+     *  @param out the stream to copy the rows to; it is not closed
+     *  @return CompletableFuture<Long> the result of exportTable
+     */
+    public CompletableFuture<Long> exportTableAsync(String table, String format, boolean compress, OutputStream out) {
+        return supply( () -> exportTable(table, format, compress, out) );
+    }
+    
+    /** 
+     *  @param settings the "setting=value" Strings to apply
+     *  @return CompletableFuture<String[]> the result of configure
+     */
+    public CompletableFuture<String[]> configureAsync(String[] settings) {
+        return supply( () -> configure(settings) );
+    }
+    
+    /** 
+     *  Fails a future with a SocketTimeoutException if it has not completed within the
+     *  timeout. A request which has not been sent by then is not sent.
+     *  @param future the future returned by one of the Async methods
+     *  @param timeout how long to wait
+     *  @param unit the unit of the timeout
+     *  @return CompletableFuture<T> the future
+     */
+    public static <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, long timeout, TimeUnit unit) {
+        String message = "NETWORK ERROR: The server did not answer within " + unit.toMillis(timeout) + " ms.";
+        ScheduledFuture<?> expiry = getTimer().schedule( () -> {
+            future.completeExceptionally( new SocketTimeoutException(message) );
+        }, timeout, unit );
+        
+        future.whenComplete( (value, failure) -> expiry.cancel(false) );
+        return future;
+    }
+    
+    /** 
+     *  Throws the exception a future failed with, as the blocking method would have thrown
+     *  it, so that it can be caught as before.
+     *  @param failure the failure given to a whenComplete or handle callback, or null
+     *  @throws Exception the failure, unwrapped, if it is not null
+     */
+    public static void rethrow(Throwable failure) throws Exception {
+        while ( (failure instanceof CompletionException || failure instanceof ExecutionException) && failure.getCause() != null ) {
+            failure = failure.getCause();
+        }
+        
+        if (failure == null) return;
+        if (failure instanceof Exception) throw (Exception)failure;
+        throw (Error)failure;
+    }
+    
+    /** 
+     *  Runs a request on an I/O thread. If the future is cancelled or fails before the
+     *  request is sent, the request is not sent; if it has been sent, the I/O thread is
+     *  interrupted, and the response is dropped.
+     *  @param call the request
+     *  @return CompletableFuture<T> completed with the result of the call
+     */
+    private <T> CompletableFuture<T> supply(Callable<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<T>();
+        Future<?> task = getExecutor().submit( () -> {
+            if ( result.isDone() ) return;
+            try {
+                result.complete( call.call() );
+            }
+            catch (Throwable failure) {
+                result.completeExceptionally( failure );
+            }
+        });
+        
+        result.whenComplete( (value, failure) -> {
+            if (failure != null) task.cancel(true);
+        });
+        return result;
+    }
+    
+    /** 
+     *  @return ThreadPoolExecutor the I/O threads, which are started as they are needed
+     */
+    private synchronized ThreadPoolExecutor getExecutor() {
+        if (ioExecutor == null) {
+            ioExecutor = new ThreadPoolExecutor( IO_THREADS, IO_THREADS, 30, TimeUnit.SECONDS,
+                                                 new LinkedBlockingQueue<Runnable>(), daemonThreads("GuestBook client I/O") );
+            ioExecutor.allowCoreThreadTimeOut(true);
+        }
+        return ioExecutor;
+    }
+    
+    /** 
+     *  @return ScheduledExecutorService the timer for withTimeout
+     */
+    private static synchronized ScheduledExecutorService getTimer() {
+        if (timer == null) timer = Executors.newSingleThreadScheduledExecutor( daemonThreads("GuestBook client timer") );
+        return timer;
+    }
+    
+    /** 
+     *  @param name the name of the threads
+     *  @return ThreadFactory making daemon threads, which do not keep the program running
+     */
+    private static ThreadFactory daemonThreads(String name) {
+        return (Runnable r) -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -1,304 +1,876 @@
-
-package guestbook.server;
-
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
-
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
-
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
-
-import java.util.Scanner;
-import java.util.Vector;
-import java.util.ArrayList;
-import java.util.GregorianCalendar;
-
-import java.sql.SQLException;
-import javax.swing.JLabel;
-
-import guestbook.shared.*;
-
-/** 
- *  A ClientHandler deals with incoming service requests to the server.
- *  Valid requests are of the type ClientRequest when read from the
- *  client's input stream.
- *  The server will send valid responses of type ServerResponse.
- *  For each request, the handler determines the type of request,
- *  and performs the appropriate query on the database.
- * 
- * @author Joram Benham, 200801274
- * @version April 8, 2011
- */
-public class ClientHandler implements Runnable {
-    private Socket client;
-    private RealDatabaseHandler db;
-    private ObjectOutputStream clientOut;
-    private ObjectInputStream clientIn;
-
-    /** 
-     * @param theClient client
-     * @param dbHandler access to database
-     * @throws IOException if there is a problem connecting to the client
-     */
-    public ClientHandler(Socket theClient, RealDatabaseHandler dbHandler) throws IOException {
-        client = theClient;
-        db = dbHandler;
-
-        try {
-            clientIn = new ObjectInputStream( client.getInputStream() );
-        }
-        catch (IOException inputEx) {
-            disconnect();
-            throw new IOException("NETWORK ERROR: Could not get client's input stream.\n" + inputEx);
-        }        
-               
-        try {
-            clientOut = new ObjectOutputStream( client.getOutputStream() );
-        }
-        catch (IOException outputEx) {
-            disconnect();
-            throw new IOException("NETWORK ERROR: Could not get client's output stream.\n" + outputEx);
-        }
-    }
-
-    /** 
-     * Closes the client socket.
-     */
-    private void disconnect() {
-        try { client.close(); }
-        catch(IOException ioEx) {}
-    }
-    
-    /** 
-     *  Attempts to service the client request based on the type of ClientRequest
-     */
-    public void run() {
-        if (client.isClosed()) return;
-        
-        // Get the request from the client
-        ClientRequest request;        
-        try {
-            request = NetUtils.getRequest(clientIn);
-        }
-        catch (IOException ioGetEx) {
-            // Send an error message to the client
-            sendErrorMessage(ioGetEx);
-            return;
-        }
-        
-        // Service the request
-        ServerResponse response;
-        try {
-            response = serviceRequest( request );
-        }
-        catch( Exception ex ) {
-            // Send an error message to the client
-            sendErrorMessage(ex);
-            return;
-        }
-        
-        // Send the response
-        try {
-            NetUtils.sendResponse(response, clientOut);
-        }
-        catch (IOException ioSendEx) {} // Do nothing
-        
-        // Disconnect
-        disconnect();        
-    }
-
-    /** 
-     *  Performs a different method based on the type of ClientRequest.
-     * @param r the request
-     * @return ServerResponse the configured response
-     */
-    private ServerResponse serviceRequest( ClientRequest r ) {
-        String type = r.getType();
-        Object[] info = r.getData();        
-        ServerResponse response = null;
-        
-        try {
-            
-            if ( type.equals(NetUtils.CR_LOGIN) ) response = doLogin( info );    
-            else if ( type.equals(NetUtils.CR_REGISTER) ) response = doRegister( info );  
-            else if ( type.equals(NetUtils.CR_GUEST_UPDATE) ) response = doGuestUpdate( info );
-            else if ( type.equals(NetUtils.CR_GUEST_RETRIEVE) ) response = doGuestRetrieve( info );
-            else if ( type.equals(NetUtils.CR_GUEST_DELETE) ) response = doGuestDelete( info );
-            else if ( type.equals(NetUtils.CR_SUBMIT_COMMENT) ) response = doSubmitComment( info );
-            else if ( type.equals(NetUtils.CR_GET_ENTRIES) ) response = doGetEntries();
-            else if ( type.equals(NetUtils.CR_GET_LOGS) ) response = doGetLogs();
-            else if ( type.equals(NetUtils.CR_GET_USERS) ) response = doGetUsers( info );
-            
-        }
-        catch (SQLException sqlEx) {
-            response = new ServerResponse(NetUtils.SR_DB_ERROR, sqlEx); 
-        }
-        
-        return response;
-    }
-
-    /** 
-     *  Sends an error message to the client.
-     *  @param ex the exception causing the problem
-     */
-    private void sendErrorMessage( Exception ex ) {
-        ServerResponse errorMsg = new ServerResponse(NetUtils.SR_DB_ERROR, ex);
-        try { 
-            NetUtils.sendResponse(errorMsg, clientOut); 
-        }
-        catch (IOException ioEx) { 
-            disconnect(); 
-        }
-    }
-    
-    /** 
-     * @param info the data from the ClientRequest
-     * @return ServerResponse with an array of users matching the criteria in the
-     * ClientRequest
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doGetUsers(Object[] info) throws SQLException {
-        GuestInfo criteria = (GuestInfo)(info[0]);       
-        ArrayList<GuestInfo> users = db.retrieveUsers( criteria );
-        return new ServerResponse( NetUtils.SR_GET_USERS, users.toArray() );
-    }
-
-    /** 
-     * @return ServerResponse with an array of all records in the GuestLog
-     * database table
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doGetLogs() throws SQLException {
-        ArrayList<GuestLog> logs = db.getGuestLogs();
-        return new ServerResponse( NetUtils.SR_GET_LOGS, logs.toArray() );
-    }
-
-    /** 
-     * @return ServerResponse with an array of entries from the GuestEntry table (i.e.
-     * these are entries in the guest book).
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doGetEntries() throws SQLException {
-        ArrayList<GuestEntry> entries = db.getGuestEntries();
-        return new ServerResponse( NetUtils.SR_GET_ENTRIES, entries.toArray() );
-    }
-  
-    /** 
-     * @param info the data from the ClientRequest - the comment to submit
-     * @return ServerResponse indicating the operation's success.
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doSubmitComment(Object[] info) throws SQLException {
-        GuestEntry comment = (GuestEntry)(info[0]);
-        long nextGEID = db.getMaxGEID() + 1;
-        comment.setGEID( nextGEID );
-        
-        db.addGuestEntry(comment);
-        return new ServerResponse( NetUtils.SR_SUBMIT_COMMENT, new Boolean[]{true} );        
-    }
-
-    /** 
-     * @param info the data from the ClientRequest - the Guest to delete
-     * @return ServerResponse indicating the operation's success.
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doGuestDelete(Object[] info) throws SQLException {
-        GuestInfo target = (GuestInfo)(info[0]);
-        Boolean deleteSuccess = false;
-        
-        if ( db.userExists(target.getEmail()) ) {
-            db.deleteRecord(target);
-            deleteSuccess = true;
-        }
-        else deleteSuccess = false;       
-        
-        return new ServerResponse( NetUtils.SR_GUEST_DELETE, new Boolean[]{ deleteSuccess } );
-    }
-    
-    /** 
-     * @param info the data from the ClientRequest - the guest to get information on
-     * @return ServerResponse indicating the operation's success, and the retrieved GuestInfo
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doGuestRetrieve(Object[] info) throws SQLException {       
-        GuestInfo target = (GuestInfo)(info[0]);
-        Boolean retrieveSuccess = false;
-        
-        if ( db.userExists(target.getEmail()) ) {
-            target = db.retrieveRecord( target );
-            retrieveSuccess = true;
-        }
-        else retrieveSuccess = false;
-
-        return new ServerResponse( NetUtils.SR_GUEST_RETRIEVE, new Object[]{ retrieveSuccess, target } );
-    }
-
-    /** 
-     * @param info the data from the ClientRequest - the update GuestInfo to submit
-     * @return ServerResponse indicating the operation's success.
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doGuestUpdate(Object[] info) throws SQLException {
-        String email = ((GuestInfo)(info[0])).getEmail();
-        Boolean updateSuccess;
-        
-        if ( db.userExists(email) ) {
-            GuestInfo updatedGuest = (GuestInfo)(info[0]);
-            db.updateRecord(updatedGuest);
-            updateSuccess = true;
-        }
-        else updateSuccess = false;
-        
-        return new ServerResponse( NetUtils.SR_GUEST_UPDATE, new Boolean[]{ updateSuccess } );
-    }
- 
-    /** 
-     * @param info the data from the ClientRequest - the new email to add
-     * @return ServerResponse indicating the operation's success.
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doRegister(Object[] info) throws SQLException {
-        String email = (String)(info[0]);
-        Boolean emailExists;
-        Boolean registerSuccess;
-        
-        emailExists = db.userExists(email);
-            
-        if (emailExists) registerSuccess = false;
-        else {
-            db.addRecord( new GuestInfo("", "", "", "", "", email, email) );
-            registerSuccess = true;
-        }
-        
-        return new ServerResponse( NetUtils.SR_REGISTER, new Boolean[]{registerSuccess} );
-    }
-  
-    /** 
-     * @param info the data from the ClientRequest - the email and password to check
-     * @return ServerResponse indicating the operation's success.
-     * @throws SQLException if there is a database error
-     */
-    private ServerResponse doLogin(Object[] info) throws SQLException {
-        String email = (String)(info[0]);
-        String pass = (String)(info[1]);
-        Boolean validLogin = false;
-        Boolean isAdmin = false;
-        
-        validLogin = db.validLogin(email, pass);
-        isAdmin = db.adminExists(email);
-        
-        if (validLogin) {
-            long nextGLID = db.getMaxGLID() + 1;
-            GuestLog newLog = new GuestLog( nextGLID, email, client.getInetAddress().getHostName(), new GregorianCalendar() );
-            db.addGuestLog( newLog );
-        }
-        
-        return new ServerResponse(NetUtils.SR_LOGIN, new Boolean[]{validLogin, isAdmin});        
-    }   
-    
-}
+
+package guestbook.server;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+import java.io.StringReader;
+import java.io.OutputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+
+import java.util.Scanner;
+import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+
+import java.sql.SQLException;
+import javax.swing.JLabel;
+
+import guestbook.shared.*;
+
+/** 
+ *  A ClientHandler deals with incoming service requests to the server.
+ *  Valid requests are of the type ClientRequest when read from the
+ *  client's input stream.
+ *  The server will send valid responses of type ServerResponse.
+ *  For each request, the handler determines the type of request,
+ *  and performs the appropriate query on the database.
+ *  An export request is answered with a header response, the exported rows
+ *  written straight to the stream (compressed with GZIP if requested), and a
+ *  trailing response with the row count or the error which ended the export.
+ *  A request may carry a timeout, the time the client will wait for its response.
+ *  Its RequestDeadline is counted from when the request arrived, which for the first
+ *  request of a connection is when the connection was accepted, so time spent queued
+ *  for a handler counts against it. A request whose deadline has passed before it is
+ *  serviced, as may each request of a batch, gets an SR_DB_ERROR response instead.
+ *  The request's session and lane are set as its RequestSession while it is serviced.
+ *  If the handler has a SessionTable, a successful login is answered with a session
+ *  token, and every other request must carry a valid token: a guest may read the guest
+ *  book, submit comments and view or change their own record, and only an administrator
+ *  may do anything else. The token is checked against the table, without querying the
+ *  database, and a response carries a renewed token once half of the token's TTL has
+ *  passed. An unauthorized request gets an SR_DB_ERROR response holding a
+ *  SecurityException; each request of a batch is authorized on its own.
+ *  If the handler has a RateLimiter, a request its client has sent too fast is answered
+ *  at once with an SR_DB_ERROR response, before any other work is done for it.
+ *  If the handler has a RequestScheduler, each request waits for it before it is
+ *  serviced, which counts against the request's deadline.
+ *  Reads and writes may be given separate schedulers and database handlers, one per
+ *  RequestScheduler lane; each request waits in, and is serviced through, its own lane.
+ *  A request turned away because its lane's queue is full gets an SR_DB_ERROR response.
+ *  If the handler has its GuestBookServer, an administrator's configure request changes
+ *  the server's settings while it runs; the request waits for no lane, as it uses no
+ *  database, so capacity can be raised while the lanes are full.
+ *  A client may send further requests over the same connection, which is kept until
+ *  it has been idle for KEEP_ALIVE_TIMEOUT; an idle connection is given up sooner if
+ *  other clients are waiting for a handler. Once the pool running the handler has been
+ *  shut down, so that the server can drain, the connection ends after its current
+ *  response; a connection's first request is still serviced while the server drains.
+ *  An export ends the connection.
+ *  Other responses are compressed with the first codec the client accepts if they
+ *  are large enough (see NetUtils), unless the client is on the loopback interface.
+ * 
+ * @author Joram Benham, 200801274
+ * @version April 8, 2011
+ */
+public class ClientHandler implements Runnable {
+    public static final int EXPORT_BUFFER = 64 * 1024;  // bytes buffered before an export write
+    public static final int KEEP_ALIVE_TIMEOUT = 15000; // ms a connection may wait between requests
+    public static final int IDLE_POLL = 250;            // ms between checks of an idle connection
+    
+    private Socket client;
+    private DatabaseHandler db;                 // The handler of the request's lane
+    private DatabaseHandler writer;             // Services the write lane
+    private DatabaseHandler reader;             // Services the read lane
+    private ObjectOutputStream clientOut;
+    private ObjectInputStream clientIn;
+    private BufferedInputStream clientBuffer;   // Under clientIn, to wait for a request without reading it
+    private ThreadPoolExecutor handlers;        // The pool running this handler, or null
+    private RequestScheduler writeLane;         // Decides when each write is serviced, or null
+    private RequestScheduler readLane;          // Decides when each read is serviced, or null
+    private PayloadCodec codec;     // Compresses large responses, if negotiated
+    private SessionTable sessions;  // Issues and verifies session tokens, or null to trust every request
+    private RateLimiter limiter;    // Limits how fast the client may send requests, or null
+    private GuestBookServer server; // Reconfigured by configure requests, or null to refuse them
+    private long accepted;          // nanoTime the connection was accepted
+
+    /** 
+     * @param theClient client
+     * @param dbHandler access to database
+     * @throws IOException if there is a problem connecting to the client
+     */
+    public ClientHandler(Socket theClient, DatabaseHandler dbHandler) throws IOException {
+        this(theClient, dbHandler, null);
+    }
+
+    /** 
+     * @param theClient client
+     * @param dbHandler access to database
+     * @param pool the pool which will run the handler; while other clients are queued for it,
+     * the handler gives up its connection as soon as the connection is idle
+     * @throws IOException if there is a problem connecting to the client
+     */
+    public ClientHandler(Socket theClient, DatabaseHandler dbHandler, ThreadPoolExecutor pool) throws IOException {
+        this(theClient, dbHandler, pool, null);
+    }
+
+    /** 
+     * @param theClient client
+     * @param dbHandler access to database
+     * @param pool the pool which will run the handler, or null
+     * @param requestScheduler decides when each request is serviced, or null to service
+     * each request as soon as it is read
+     * @throws IOException if there is a problem connecting to the client
+     */
+    public ClientHandler(Socket theClient, DatabaseHandler dbHandler, ThreadPoolExecutor pool,
+                         RequestScheduler requestScheduler) throws IOException {
+        this(theClient, dbHandler, dbHandler, pool, requestScheduler, requestScheduler);
+    }
+
+    /** 
+     * @param theClient client
+     * @param writeHandler access to database for the write lane
+     * @param readHandler access to database for the read lane
+     * @param pool the pool which will run the handler, or null
+     * @param writeScheduler decides when each write is serviced, or null
+     * @param readScheduler decides when each read is serviced, or null
+     * @throws IOException if there is a problem connecting to the client
+     */
+    public ClientHandler(Socket theClient, DatabaseHandler writeHandler, DatabaseHandler readHandler,
+                         ThreadPoolExecutor pool, RequestScheduler writeScheduler,
+                         RequestScheduler readScheduler) throws IOException {
+        this(theClient, writeHandler, readHandler, pool, writeScheduler, readScheduler, null);
+    }
+
+    /** 
+     * @param theClient client
+     * @param writeHandler access to database for the write lane
+     * @param readHandler access to database for the read lane
+     * @param pool the pool which will run the handler, or null
+     * @param writeScheduler decides when each write is serviced, or null
+     * @param readScheduler decides when each read is serviced, or null
+     * @param sessionTable issues and verifies session tokens, or null to trust every request
+     * @throws IOException if there is a problem connecting to the client
+     */
+    public ClientHandler(Socket theClient, DatabaseHandler writeHandler, DatabaseHandler readHandler,
+                         ThreadPoolExecutor pool, RequestScheduler writeScheduler,
+                         RequestScheduler readScheduler, SessionTable sessionTable) throws IOException {
+        this(theClient, writeHandler, readHandler, pool, writeScheduler, readScheduler, sessionTable, null);
+    }
+
+    /** 
+     * @param theClient client
+     * @param writeHandler access to database for the write lane
+     * @param readHandler access to database for the read lane
+     * @param pool the pool which will run the handler, or null
+     * @param writeScheduler decides when each write is serviced, or null
+     * @param readScheduler decides when each read is serviced, or null
+     * @param sessionTable issues and verifies session tokens, or null to trust every request
+     * @param rateLimiter limits how fast the client may send requests, or null
+     * @throws IOException if there is a problem connecting to the client
+     */
+    public ClientHandler(Socket theClient, DatabaseHandler writeHandler, DatabaseHandler readHandler,
+                         ThreadPoolExecutor pool, RequestScheduler writeScheduler,
+                         RequestScheduler readScheduler, SessionTable sessionTable,
+                         RateLimiter rateLimiter) throws IOException {
+        this(theClient, writeHandler, readHandler, pool, writeScheduler, readScheduler, sessionTable, rateLimiter, null);
+    }
+
+    /** 
+     * @param theClient client
+     * @param writeHandler access to database for the write lane
+     * @param readHandler access to database for the read lane
+     * @param pool the pool which will run the handler, or null
+     * @param writeScheduler decides when each write is serviced, or null
+     * @param readScheduler decides when each read is serviced, or null
+     * @param sessionTable issues and verifies session tokens, or null to trust every request
+     * @param rateLimiter limits how fast the client may send requests, or null
+     * @param theServer the server which configure requests change, or null to refuse them
+     * @throws IOException if there is a problem connecting to the client
+     */
+    public ClientHandler(Socket theClient, DatabaseHandler writeHandler, DatabaseHandler readHandler,
+                         ThreadPoolExecutor pool, RequestScheduler writeScheduler,
+                         RequestScheduler readScheduler, SessionTable sessionTable,
+                         RateLimiter rateLimiter, GuestBookServer theServer) throws IOException {
+        client = theClient;
+        sessions = sessionTable;
+        limiter = rateLimiter;
+        server = theServer;
+        db = writeHandler;
+        writer = writeHandler;
+        reader = readHandler;
+        handlers = pool;
+        writeLane = writeScheduler;
+        readLane = readScheduler;
+        accepted = System.nanoTime();
+
+        try {
+            client.setTcpNoDelay(true);
+            clientBuffer = new BufferedInputStream( client.getInputStream() );
+            clientIn = new ObjectInputStream( clientBuffer );
+        }
+        catch (IOException inputEx) {
+            disconnect();
+            throw new IOException("NETWORK ERROR: Could not get client's input stream.\n" + inputEx);
+        }        
+               
+        try {
+            clientOut = new ObjectOutputStream( client.getOutputStream() );
+        }
+        catch (IOException outputEx) {
+            disconnect();
+            throw new IOException("NETWORK ERROR: Could not get client's output stream.\n" + outputEx);
+        }
+    }
+
+    /** 
+     * Closes the connection of a handler which will not be run, such as one still
+     * queued when the server stopped draining.
+     */
+    void abandon() {
+        disconnect();
+    }
+    
+    /** 
+     * Closes the client socket.
+     */
+    private void disconnect() {
+        try { client.close(); }
+        catch(IOException ioEx) {}
+        
+        if (codec != null) {
+            codec.close();
+            codec = null;
+        }
+    }
+    
+    /** 
+     *  Services the client's requests until the client disconnects, the connection has
+     *  been idle for KEEP_ALIVE_TIMEOUT, other clients are waiting for a handler, or the
+     *  server drains.
+     *  A connection is given up after a response while others are waiting, even if its
+     *  client has sent another request; the client sends it again on a new connection.
+     */
+    public void run() {
+        if (client.isClosed()) return;
+        
+        int served = 0;
+        while ( (served == 0 || draining() == false) && waitForRequest() ) {
+            long arrival = (served == 0) ? accepted : System.nanoTime();
+            
+            // Get the request from the client
+            ClientRequest request;        
+            try {
+                request = NetUtils.getRequest(clientIn);
+            }
+            catch (IOException ioGetEx) {
+                // Send an error message to the client
+                sendErrorMessage(ioGetEx);
+                break;
+            }
+            
+            // Turn away a malformed request, such as a batch without requests, and a client
+            // sending requests too fast, before any work is done for them
+            boolean allowed;
+            int lane;
+            try {
+                allowed = limiter == null || limiter.allowRequest( client.getInetAddress(), request );
+                lane = RequestScheduler.lane(request);
+            }
+            catch (RuntimeException malformedEx) {
+                sendErrorMessage( new IllegalArgumentException("The request is malformed: " + malformedEx) );
+                break;
+            }
+            if (allowed == false) {
+                Exception limitEx = new RejectedExecutionException("Too many requests have been sent from "
+                                                                   + client.getInetAddress().getHostAddress()
+                                                                   + ". Please wait before trying again.");
+                if ( request.getType().equals(NetUtils.CR_EXPORT) ) {
+                    sendErrorMessage(limitEx);
+                    break;
+                }
+                if ( send( new ServerResponse(NetUtils.SR_DB_ERROR, limitEx), served++ > 0 ) ) continue;
+                break;
+            }
+            
+            // Note who sent the request, and in which lane it is serviced
+            SessionTable.Session user = (sessions == null) ? null : sessions.verify( request.getToken() );
+            RequestSession.set( request.getSession(), lane == RequestScheduler.LANE_WRITE, user );
+            
+            // Exports write their rows to the client as they are read
+            if ( request.getType().equals(NetUtils.CR_EXPORT) ) {
+                try {
+                    authorize(request);
+                    acquire(request);
+                    try {
+                        doExport( request.getData() );
+                    }
+                    finally {
+                        release(request);
+                    }
+                }
+                catch (Exception ex) {
+                    sendErrorMessage(ex);
+                }
+                finally {
+                    RequestSession.clear();
+                }
+                break;
+            }
+            
+            // Negotiate compression, which is not worth its time on a loopback connection
+            if ( client.getInetAddress().isLoopbackAddress() == false ) {
+                String[] accepted = request.getAcceptedCodecs();
+                if ( codec == null || accepted == null || Arrays.asList(accepted).contains( codec.getName() ) == false ) {
+                    if (codec != null) codec.close();
+                    codec = NetUtils.chooseCodec( accepted );
+                }
+            }
+            
+            // Service the request, within the time the client will wait for it
+            ServerResponse response;
+            RequestDeadline.set( arrival, request.getTimeout() );
+            try {
+                response = scheduleRequest( request );
+            }
+            catch( Exception ex ) {
+                // Send an error message to the client
+                sendErrorMessage(ex);
+                break;
+            }
+            finally {
+                RequestDeadline.clear();
+                RequestSession.clear();
+            }
+            
+            // Renew a session which is used after half its TTL, unless a login replaced it
+            if (user != null && response != null && response.getToken() == null) response.setToken( sessions.renew(user) );
+            
+            // Send the response
+            if ( send( response, served++ > 0 ) == false ) break;
+            
+            // Give the handler to a waiting connection rather than keep it for a busy one
+            if ( handlers != null && handlers.getQueue().isEmpty() == false ) break;
+            
+            // Let the server drain rather than keep serving a busy connection
+            if ( draining() ) break;
+        }
+        
+        // Disconnect
+        disconnect();        
+    }
+    
+    /** 
+     *  @return boolean true if the pool running the handler has been shut down
+     */
+    private boolean draining() {
+        return handlers != null && handlers.isShutdown();
+    }
+    
+    /** 
+     *  Sends a response to the client, compressed if a codec has been negotiated.
+     *  @param response the response
+     *  @param reset true to forget the objects sent with the last response
+     *  @return boolean true if the response was sent; false if the connection has failed
+     */
+    private boolean send( ServerResponse response, boolean reset ) {
+        try {
+            if (reset) clientOut.reset();
+            NetUtils.sendResponse(response, clientOut, codec);
+            clientOut.flush();
+            return true;
+        }
+        catch (IOException ioSendEx) {
+            return false;
+        }
+    }
+    
+    /** 
+     *  Waits for the first byte of the next request without consuming it, polling every
+     *  IDLE_POLL so that an idle connection can be given up.
+     *  @return boolean true if a request is arriving; false if the client has disconnected,
+     *  the connection has been idle too long, other clients are waiting for a handler, or
+     *  the server is draining or stopping
+     */
+    private boolean waitForRequest() {
+        try {
+            if ( clientBuffer.available() > 0 ) return true;
+            
+            client.setSoTimeout( IDLE_POLL );
+            for (int idle = 0; idle < KEEP_ALIVE_TIMEOUT; idle += IDLE_POLL) {
+                try {
+                    clientBuffer.mark(1);
+                    int next = clientBuffer.read();
+                    clientBuffer.reset();
+                    client.setSoTimeout( 0 );
+                    return next >= 0;
+                }
+                catch (SocketTimeoutException idleEx) {
+                    if ( Thread.currentThread().isInterrupted() ) return false;
+                    if ( handlers != null && handlers.getQueue().isEmpty() == false ) return false;
+                    if ( draining() ) return false;
+                }
+            }
+        }
+        catch (IOException ioEx) {} // The connection has failed
+        return false;
+    }
+
+    /** 
+     *  Services a request once the scheduler lets it through, or answers with an error if
+     *  its deadline passes while it waits or its lane is too busy to queue it.
+     * @param r the request
+     * @return ServerResponse the configured response
+     * @throws InterruptedException if the server is stopping
+     */
+    private ServerResponse scheduleRequest( ClientRequest r ) throws InterruptedException {
+        // Reconfiguring uses no database, and must get through while the lanes are full
+        if ( r.getType().equals(NetUtils.CR_CONFIGURE) ) return serviceRequest( r );
+        
+        try {
+            acquire(r);
+        }
+        catch (TimeoutException expiredEx) {
+            return new ServerResponse(NetUtils.SR_DB_ERROR, expiredEx);
+        }
+        catch (RejectedExecutionException saturatedEx) {
+            return new ServerResponse(NetUtils.SR_DB_ERROR, saturatedEx);
+        }
+        
+        try {
+            return serviceRequest( r );
+        }
+        finally {
+            release( r );
+        }
+    }
+    
+    /** 
+     *  Waits until the scheduler of the request's lane lets it through, for no longer than
+     *  its deadline, and services the request through the lane's database handler.
+     * @param r the request
+     * @throws TimeoutException if the request's deadline passed while it waited
+     * @throws RejectedExecutionException if the lane's queue is full
+     * @throws InterruptedException if the server is stopping
+     */
+    private void acquire( ClientRequest r ) throws TimeoutException, InterruptedException {
+        boolean read = RequestScheduler.lane(r) == RequestScheduler.LANE_READ;
+        RequestScheduler scheduler = read ? readLane : writeLane;
+        
+        db = read ? reader : writer;
+        if (scheduler != null) scheduler.acquire( RequestScheduler.classify(r), RequestDeadline.remainingMillis() );
+    }
+    
+    /** 
+     * @param r a request let through by acquire, which has been serviced
+     */
+    private void release( ClientRequest r ) {
+        RequestScheduler scheduler = (RequestScheduler.lane(r) == RequestScheduler.LANE_READ) ? readLane : writeLane;
+        if (scheduler != null) scheduler.release( RequestScheduler.classify(r) );
+    }
+    
+    /** 
+     *  Performs a different method based on the type of ClientRequest.
+     * @param r the request
+     * @return ServerResponse the configured response
+     */
+    private ServerResponse serviceRequest( ClientRequest r ) {
+        String type = r.getType();
+        Object[] info = r.getData();        
+        ServerResponse response = null;
+        
+        try {
+            RequestDeadline.check();
+            authorize( r );
+            
+            if ( type.equals(NetUtils.CR_LOGIN) ) response = doLogin( info );    
+            else if ( type.equals(NetUtils.CR_REGISTER) ) response = doRegister( info );  
+            else if ( type.equals(NetUtils.CR_GUEST_UPDATE) ) response = doGuestUpdate( info );
+            else if ( type.equals(NetUtils.CR_GUEST_RETRIEVE) ) response = doGuestRetrieve( info );
+            else if ( type.equals(NetUtils.CR_GUEST_DELETE) ) response = doGuestDelete( info );
+            else if ( type.equals(NetUtils.CR_SUBMIT_COMMENT) ) response = doSubmitComment( info );
+            else if ( type.equals(NetUtils.CR_GET_ENTRIES) ) response = doGetEntries();
+            else if ( type.equals(NetUtils.CR_GET_LOGS) ) response = doGetLogs();
+            else if ( type.equals(NetUtils.CR_GET_USERS) ) response = doGetUsers( info );
+            else if ( type.equals(NetUtils.CR_GET_LOGS_COLUMNAR) ) response = doGetLogsColumnar();
+            else if ( type.equals(NetUtils.CR_GET_USERS_COLUMNAR) ) response = doGetUsersColumnar( info );
+            else if ( type.equals(NetUtils.CR_BULK_LOAD) ) response = doBulkLoad( info );
+            else if ( type.equals(NetUtils.CR_BATCH) ) response = doBatch( info );
+            else if ( type.equals(NetUtils.CR_PING) ) response = new ServerResponse( NetUtils.SR_PING, (Object[])null );
+            else if ( type.equals(NetUtils.CR_CONFIGURE) ) response = doConfigure( info );
+            
+        }
+        catch (Exception dbEx) {
+            response = new ServerResponse(NetUtils.SR_DB_ERROR, dbEx); 
+        }
+        
+        return response;
+    }
+
+    /** 
+     *  Checks that the guest whose token the request was sent with may make it. Logins,
+     *  registrations, pings and batches need no token; the requests of a batch are
+     *  authorized as they are serviced.
+     * @param r the request
+     * @throws SecurityException if the request has no valid token, or its guest may not
+     * make the request
+     */
+    private void authorize( ClientRequest r ) throws SecurityException {
+        if (sessions == null) return;
+        
+        String type = r.getType();
+        if ( type.equals(NetUtils.CR_LOGIN) || type.equals(NetUtils.CR_REGISTER) ) return;
+        if ( type.equals(NetUtils.CR_PING) || type.equals(NetUtils.CR_BATCH) ) return;
+        
+        SessionTable.Session user = RequestSession.getUser();
+        if (user == null) throw new SecurityException("Not logged in, or the session has expired. Please log in again.");
+        if ( user.isAdmin() ) return;
+        
+        Object[] info = r.getData();
+        if ( type.equals(NetUtils.CR_GET_ENTRIES) ) return;
+        if ( type.equals(NetUtils.CR_GUEST_RETRIEVE) || type.equals(NetUtils.CR_GUEST_UPDATE) ) {
+            if ( ((GuestInfo)info[0]).getEmail().equals( user.getEmail() ) ) return;
+        }
+        if ( type.equals(NetUtils.CR_SUBMIT_COMMENT) ) {
+            if ( ((GuestEntry)info[0]).getEmail().equals( user.getEmail() ) ) return;
+        }
+        
+        throw new SecurityException("Request '" + type + "' is not allowed for " + user.getEmail() + ".");
+    }
+
+    /** 
+     *  Changes the server's settings.
+     * @param info the data from the ClientRequest - the "setting=value" Strings to apply
+     * @return ServerResponse holding every setting's current "setting=value"
+     * @throws UnsupportedOperationException if the handler has no server to configure
+     * @throws IllegalArgumentException if a setting is unknown or its value is invalid
+     */
+    private ServerResponse doConfigure(Object[] info) throws Exception {
+        if (server == null) throw new UnsupportedOperationException("The server cannot be configured remotely.");
+        
+        String[] settings = null;
+        if (info != null) settings = Arrays.copyOf( info, info.length, String[].class );
+        return new ServerResponse( NetUtils.SR_CONFIGURE, server.configure( settings ) );
+    }
+
+    /** 
+     *  Services each request of a batch in order, keeping the database connection for
+     *  the whole batch.
+     * @param info the data from the ClientRequest - the requests to service
+     * @return ServerResponse holding a response for each request; a request which fails,
+     * or which cannot be batched, gets an SR_DB_ERROR response
+     * @throws Exception if the database cannot be released
+     */
+    private ServerResponse doBatch(Object[] info) throws Exception {
+        if (info.length > NetUtils.MAX_BATCH) throw new IllegalArgumentException("A batch can hold at most " + NetUtils.MAX_BATCH + " requests.");
+        ServerResponse[] responses = new ServerResponse[info.length];
+        
+        db.beginBatch();
+        try {
+            for (int i = 0; i < info.length; i++) {
+                ClientRequest sub = (ClientRequest)info[i];
+                String type = sub.getType();
+                
+                if ( type.equals(NetUtils.CR_BATCH) == false ) responses[i] = serviceRequest( sub );
+                if ( responses[i] == null ) {
+                    responses[i] = new ServerResponse( NetUtils.SR_DB_ERROR, new IllegalArgumentException("Request '" + type + "' cannot be batched.") );
+                }
+            }
+        }
+        finally {
+            db.endBatch();
+        }
+        
+        return new ServerResponse( NetUtils.SR_BATCH, responses );
+    }
+
+    /** 
+     *  Sends an error message to the client.
+     *  @param ex the exception causing the problem
+     */
+    private void sendErrorMessage( Exception ex ) {
+        ServerResponse errorMsg = new ServerResponse(NetUtils.SR_DB_ERROR, ex);
+        try { 
+            NetUtils.sendResponse(errorMsg, clientOut); 
+        }
+        catch (IOException ioEx) { 
+            disconnect(); 
+        }
+    }
+    
+    /** 
+     * @param info the data from the ClientRequest
+     * @return ServerResponse with an array of users matching the criteria in the
+     * ClientRequest
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doGetUsers(Object[] info) throws Exception {
+        GuestInfo criteria = (GuestInfo)(info[0]);       
+        ArrayList<GuestInfo> users = db.retrieveUsers( criteria );
+        return new ServerResponse( NetUtils.SR_GET_USERS, users.toArray() );
+    }
+
+    /** 
+     * @param info the data from the ClientRequest
+     * @return ServerResponse with the users matching the criteria in the ClientRequest,
+     * encoded as a ColumnarTable
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doGetUsersColumnar(Object[] info) throws Exception {
+        GuestInfo criteria = (GuestInfo)(info[0]);
+        ArrayList<GuestInfo> users = db.retrieveUsers( criteria );
+        return new ServerResponse( NetUtils.SR_GET_USERS_COLUMNAR, new ColumnarTable[]{ ColumnarTable.encodeGuests(users) } );
+    }
+
+    /** 
+     * @param info the data from the ClientRequest - the delimited guest records, the
+     * record delimiter regex and the field delimiter regex, as AddressBook.importGuestInfos
+     * takes them
+     * @return ServerResponse with a summary line followed by one line for each record
+     * which was not added. Guests are added in chunks of the server's bulkChunk setting.
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doBulkLoad(Object[] info) throws Exception {
+        final ArrayList<String> report = new ArrayList<String>();
+        
+        // Parse and validate the records, dropping duplicates within the input
+        AddressBook staged = new AddressBook();
+        staged.importGuestInfos( new StringReader( (String)info[0] ), (String)info[1], (String)info[2],
+                                 new ImportListener() {
+            public void importProgress(int recordsRead, int recordsAdded) {}
+            public void recordFailed(int recordNumber, String record, String reason) {
+                report.add( "Record " + recordNumber + ": " + reason );
+            }
+        });
+        
+        // Reject the guests too wide for the Guest table, rather than fail the whole load
+        ArrayList<GuestInfo> guests = new ArrayList<GuestInfo>();
+        for (GuestInfo g : staged.getGuestInfos()) {
+            String tooWide = DatabaseUtils.checkWidths(g);
+            if (tooWide == null) guests.add(g);
+            else report.add( g.getEmail() + ": " + tooWide );
+        }
+        
+        int chunk = (server == null) ? DatabaseUtils.DEFAULT_BULK_CHUNK : server.getBulkChunk();
+        boolean[] added = db.bulkAddRecords( guests, chunk );
+        
+        int addedCount = 0;
+        for (int i = 0; i < added.length; i++) {
+            if (added[i]) addedCount++;
+            else report.add( guests.get(i).getEmail() + ": Email already exists" );
+        }
+        report.add( 0, addedCount + " guest(s) added, " + report.size() + " record(s) rejected." );
+        
+        return new ServerResponse( NetUtils.SR_BULK_LOAD, report.toArray( new String[report.size()] ) );
+    }
+
+    /** 
+     *  Streams a table to the client. The rows are written as block data on the object
+     *  stream, between a header response and a trailer response. If the export fails
+     *  the rows written so far are ended as usual, and the trailer holds the error.
+     * @param info the data from the ClientRequest - the table, the format and "true"
+     * if the rows should be compressed
+     */
+    private void doExport(Object[] info) {
+        String table = (String)info[0];
+        String format = (String)info[1];
+        boolean compress = Boolean.parseBoolean( (String)info[2] );
+        
+        ExportWriter writer;
+        GZIPOutputStream zip = null;
+        try {
+            if ( Arrays.asList(NetUtils.EXPORT_TABLES).contains(table) == false ) {
+                throw new IllegalArgumentException("Unknown export table: " + table);
+            }
+            if ( format.equals(NetUtils.EXPORT_DELIMITED) == false && format.equals(NetUtils.EXPORT_BINARY) == false ) {
+                throw new IllegalArgumentException("Unknown export format: " + format);
+            }
+            
+            NetUtils.sendResponse( new ServerResponse( NetUtils.SR_EXPORT, new String[]{ table, format, String.valueOf(compress) } ), clientOut );
+            OutputStream body = clientOut;
+            if (compress) body = zip = new GZIPOutputStream( clientOut, EXPORT_BUFFER );
+            writer = new ExportWriter( new BufferedOutputStream( body, EXPORT_BUFFER ), format );
+        }
+        catch (Exception ex) {
+            sendErrorMessage(ex);
+            return;
+        }
+        
+        ServerResponse trailer;
+        try {
+            if ( table.equals(NetUtils.EXPORT_GUESTS) ) db.exportGuests(writer);
+            else if ( table.equals(NetUtils.EXPORT_ENTRIES) ) db.exportGuestEntries(writer);
+            else db.exportGuestLogs(writer);
+            
+            trailer = new ServerResponse( NetUtils.SR_EXPORT, new String[]{ String.valueOf( writer.getRowCount() ) } );
+        }
+        catch (Exception ex) {
+            trailer = new ServerResponse( NetUtils.SR_DB_ERROR, ex );
+        }
+        finally {
+            // End the body even if the export failed, so the client can read the trailer after it
+            try {
+                writer.finish();
+                if (zip != null) zip.finish();
+            }
+            catch (IOException ioEx) {} // The client has gone; sending the trailer fails too
+        }
+        
+        try {
+            NetUtils.sendResponse( trailer, clientOut );
+            clientOut.flush();
+        }
+        catch (IOException ioEx) {} // The client has gone
+    }
+    
+    /** 
+     * @return ServerResponse with an array of all records in the GuestLog
+     * database table
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doGetLogs() throws Exception {
+        ArrayList<GuestLog> logs = db.getGuestLogs();
+        return new ServerResponse( NetUtils.SR_GET_LOGS, logs.toArray() );
+    }
+
+    /** 
+     * @return ServerResponse with all records in the GuestLog database table,
+     * encoded as a ColumnarTable
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doGetLogsColumnar() throws Exception {
+        ArrayList<GuestLog> logs = db.getGuestLogs();
+        return new ServerResponse( NetUtils.SR_GET_LOGS_COLUMNAR, new ColumnarTable[]{ ColumnarTable.encodeLogs(logs) } );
+    }
+
+    /** 
+     * @return ServerResponse with an array of entries from the GuestEntry table (i.e.
+     * these are entries in the guest book).
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doGetEntries() throws Exception {
+        ArrayList<GuestEntry> entries = db.getGuestEntries();
+        return new ServerResponse( NetUtils.SR_GET_ENTRIES, entries.toArray() );
+    }
+  
+    /** 
+     * @param info the data from the ClientRequest - the comment to submit
+     * @return ServerResponse indicating the operation's success.
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doSubmitComment(Object[] info) throws Exception {
+        GuestEntry comment = (GuestEntry)(info[0]);
+        comment.setGEID( db.nextGEID() );
+        
+        db.addGuestEntry(comment);
+        return new ServerResponse( NetUtils.SR_SUBMIT_COMMENT, new Boolean[]{true} );        
+    }
+
+    /** 
+     * @param info the data from the ClientRequest - the Guest to delete
+     * @return ServerResponse indicating the operation's success.
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doGuestDelete(Object[] info) throws Exception {
+        GuestInfo target = (GuestInfo)(info[0]);
+        Boolean deleteSuccess = false;
+        
+        if ( db.userExists(target.getEmail()) ) {
+            db.deleteRecord(target);
+            if (sessions != null) sessions.revoke( target.getEmail() );
+            deleteSuccess = true;
+        }
+        else deleteSuccess = false;       
+        
+        return new ServerResponse( NetUtils.SR_GUEST_DELETE, new Boolean[]{ deleteSuccess } );
+    }
+    
+    /** 
+     * @param info the data from the ClientRequest - the guest to get information on
+     * @return ServerResponse indicating the operation's success, and the retrieved GuestInfo
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doGuestRetrieve(Object[] info) throws Exception {       
+        GuestInfo target = (GuestInfo)(info[0]);
+        Boolean retrieveSuccess = false;
+        
+        if ( db.userExists(target.getEmail()) ) {
+            target = db.retrieveRecord( target );
+            retrieveSuccess = true;
+        }
+        else retrieveSuccess = false;
+
+        return new ServerResponse( NetUtils.SR_GUEST_RETRIEVE, new Object[]{ retrieveSuccess, target } );
+    }
+
+    /** 
+     * @param info the data from the ClientRequest - the update GuestInfo to submit
+     * @return ServerResponse indicating the operation's success.
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doGuestUpdate(Object[] info) throws Exception {
+        String email = ((GuestInfo)(info[0])).getEmail();
+        Boolean updateSuccess;
+        
+        if ( db.userExists(email) ) {
+            GuestInfo updatedGuest = (GuestInfo)(info[0]);
+            db.updateRecord(updatedGuest);
+            updateSuccess = true;
+        }
+        else updateSuccess = false;
+        
+        return new ServerResponse( NetUtils.SR_GUEST_UPDATE, new Boolean[]{ updateSuccess } );
+    }
+ 
+    /** 
+     * @param info the data from the ClientRequest - the new email to add
+     * @return ServerResponse indicating the operation's success.
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doRegister(Object[] info) throws Exception {
+        String email = (String)(info[0]);
+        Boolean emailExists;
+        Boolean registerSuccess;
+        
+        emailExists = db.userExists(email);
+            
+        if (emailExists) registerSuccess = false;
+        else {
+            db.addRecord( new GuestInfo("", "", "", "", "", email, email) );
+            registerSuccess = true;
+        }
+        
+        return new ServerResponse( NetUtils.SR_REGISTER, new Boolean[]{registerSuccess} );
+    }
+  
+    /** 
+     * @param info the data from the ClientRequest - the email and password to check
+     * @return ServerResponse indicating the operation's success, with a session token if
+     * the login is valid
+     * @throws Exception if there is a database error
+     */
+    private ServerResponse doLogin(Object[] info) throws Exception {
+        String email = (String)(info[0]);
+        String pass = (String)(info[1]);
+        Boolean validLogin = false;
+        Boolean isAdmin = false;
+        
+        validLogin = db.validLogin(email, pass);
+        isAdmin = db.adminExists(email);
+        
+        if (validLogin) {
+            GuestLog newLog = new GuestLog( db.nextGLID(), email, client.getInetAddress().getHostName(), new GregorianCalendar() );
+            db.addGuestLog( newLog );
+        }
+        
+        // Start a session, whose token the client sends with its later requests
+        ServerResponse response = new ServerResponse(NetUtils.SR_LOGIN, new Boolean[]{validLogin, isAdmin});
+        if (validLogin && sessions != null) response.setToken( sessions.issue(email, isAdmin) );
+        return response;
+    }   
+    
+}
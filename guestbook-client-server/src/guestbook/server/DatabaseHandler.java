@@ -1,20 +1,57 @@
-
-package guestbook.server;
-
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import guestbook.shared.*;
-
-/**  
- * The DatabaseHandler interface provides generic interaction with 
- * a database of undefined type.
- *              
- *  @author Joram Benham 200801274
- *  @version April 8, 2011
- */
-public interface DatabaseHandler {    
-    public void addRecord(GuestInfo info) throws Exception;
-    public GuestInfo retrieveRecord(GuestInfo target) throws Exception;
-    public void updateRecord(GuestInfo updatedGuest) throws Exception;
-    public void deleteRecord(GuestInfo target) throws Exception;
-}
+package guestbook.server;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import guestbook.shared.*;
+
+/**
+ * The DatabaseHandler interface provides generic interaction with
+ * a database of undefined type. It covers every operation a ClientHandler
+ * performs: guest records, logins, admins, guest book entries, server logs
+ * and ID allocation.
+ *  nextGEID and nextGLID allocate the ID of a new entry or log, never handing out the
+ * same ID twice, so requests adding entries or logs at the same time do not share one.
+ * Adding an entry or log whose ID is already stored fails rather than replacing it.
+ *  bulkAddRecords adds many guests at once, committing every chunkSize guests,
+ * and returns for each guest whether it was added (false if its email exists).
+ *  The export methods pass every row of a table to an ExportWriter as it is read,
+ * without collecting the table in memory first.
+ *  beginBatch and endBatch bracket the calls made for one batch request, so that a
+ * handler which connects per call can keep one connection for the whole batch. Calls
+ * between them still commit one at a time. Every beginBatch must be matched by endBatch.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public interface DatabaseHandler {
+    public void addRecord(GuestInfo info) throws Exception;
+    public boolean[] bulkAddRecords(List<GuestInfo> guests, int chunkSize) throws Exception;
+    public GuestInfo retrieveRecord(GuestInfo target) throws Exception;
+    public void updateRecord(GuestInfo updatedGuest) throws Exception;
+    public void deleteRecord(GuestInfo target) throws Exception;
+    public ArrayList<GuestInfo> retrieveUsers(GuestInfo criteria) throws Exception;
+
+    public boolean userExists(String email) throws Exception;
+    public boolean adminExists(String email) throws Exception;
+    public boolean validLogin(String email, String pass) throws Exception;
+
+    public void addGuestLog(GuestLog log) throws Exception;
+    public void addGuestEntry(GuestEntry entry) throws Exception;
+    public ArrayList<GuestLog> getGuestLogs() throws Exception;
+    public ArrayList<GuestEntry> getGuestEntries() throws Exception;
+    public long getMaxGEID() throws Exception;
+    public long getMaxGLID() throws Exception;
+    public long nextGEID() throws Exception;
+    public long nextGLID() throws Exception;
+
+    public void exportGuests(ExportWriter out) throws Exception;
+    public void exportGuestEntries(ExportWriter out) throws Exception;
+    public void exportGuestLogs(ExportWriter out) throws Exception;
+
+    public void beginBatch() throws Exception;
+    public void endBatch() throws Exception;
+
+    public void close() throws Exception;
+}
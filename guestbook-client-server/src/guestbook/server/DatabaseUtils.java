@@ -0,0 +1,102 @@
+package guestbook.server;
+
+import java.util.Comparator;
+
+import guestbook.shared.*;
+
+/**
+ *  DatabaseUtils provides the record matching and merging rules shared by the
+ *  DatabaseHandler implementations which do not run on Oracle, so that they
+ *  answer queries the same way the RealDatabaseHandler's SQL does.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class DatabaseUtils {
+
+    /** Guests added per commit by a bulk load, unless the server is set otherwise. */
+    public static final int DEFAULT_BULK_CHUNK = 500;
+
+    /** Column widths of the Guest table, in GuestInfo constructor order:
+        name, address, city, postcode, telephone, email, password. */
+    public static final int[] GUEST_COLUMN_WIDTHS = { 30, 30, 15, 8, 15, 30, 30 };
+    private static final String[] GUEST_COLUMN_NAMES = { "Name", "Address", "City", "Postcode", "Telephone", "Email", "Password" };
+
+    /** Orders guests by name, as "ORDER BY Name" does for retrieveUsers. */
+    public static final Comparator<GuestInfo> BY_NAME = new Comparator<GuestInfo>() {
+        public int compare(GuestInfo a, GuestInfo b) {
+            return a.getName().compareTo( b.getName() );
+        }
+    };
+
+    /**
+     *  Checks a guest against a set of search criteria. Empty criteria fields,
+     *  and an email equal to RealDatabaseHandler.DUMMY_EMAIL, match anything.
+     *  @param criteria a GuestInfo object with its fields set to the search criteria
+     *  @param guest the guest to check
+     *  @return boolean true if every criteria field matches the guest
+     */
+    public static boolean matchesCriteria(GuestInfo criteria, GuestInfo guest) {
+        if (criteria.getEmail().equals(RealDatabaseHandler.DUMMY_EMAIL) == false
+                && criteria.getEmail().equals(guest.getEmail()) == false) return false;
+        if (fieldMatches(criteria.getName(), guest.getName()) == false) return false;
+        if (fieldMatches(criteria.getAddress(), guest.getAddress()) == false) return false;
+        if (fieldMatches(criteria.getCity(), guest.getCity()) == false) return false;
+        if (fieldMatches(criteria.getPostcode(), guest.getPostcode()) == false) return false;
+        if (fieldMatches(criteria.getTelephone(), guest.getTelephone()) == false) return false;
+        if (fieldMatches(criteria.getPassword(), guest.getPassword()) == false) return false;
+        return true;
+    }
+
+    /**
+     *  Checks a guest's fields against the Guest table's column widths, which Oracle and
+     *  the MappedDatabaseHandler both enforce.
+     *  @param info the guest
+     *  @return String why the guest does not fit, or null if it does
+     */
+    public static String checkWidths(GuestInfo info) {
+        String[] fields = { info.getName(), info.getAddress(), info.getCity(), info.getPostcode(),
+                            info.getTelephone(), info.getEmail(), info.getPassword() };
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].length() > GUEST_COLUMN_WIDTHS[i]) {
+                return GUEST_COLUMN_NAMES[i] + " is longer than " + GUEST_COLUMN_WIDTHS[i] + " characters";
+            }
+        }
+        return null;
+    }
+
+    /**
+     *  Applies an update to an existing record the way RealDatabaseHandler.updateRecord
+     *  does: only the non-empty fields of the update replace the existing values.
+     *  @param existing the stored record
+     *  @param update the record holding the new values
+     *  @return GuestInfo the merged record
+     */
+    public static GuestInfo mergeUpdate(GuestInfo existing, GuestInfo update) {
+        return new GuestInfo( pick(update.getName(), existing.getName()),
+                              pick(update.getAddress(), existing.getAddress()),
+                              pick(update.getCity(), existing.getCity()),
+                              pick(update.getPostcode(), existing.getPostcode()),
+                              pick(update.getTelephone(), existing.getTelephone()),
+                              existing.getEmail(),
+                              pick(update.getPassword(), existing.getPassword()) );
+    }
+
+    /**
+     * @param criterion the criteria value, "" if unused
+     * @param value the record value
+     * @return boolean true if the criterion is unused or equal to the value
+     */
+    private static boolean fieldMatches(String criterion, String value) {
+        return criterion.equals("") || criterion.equals(value);
+    }
+
+    /**
+     * @param update the new value, "" if unchanged
+     * @param existing the current value
+     * @return String the value to keep
+     */
+    private static String pick(String update, String existing) {
+        return update.equals("") ? existing : update;
+    }
+}
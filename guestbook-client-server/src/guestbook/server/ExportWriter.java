@@ -0,0 +1,124 @@
+package guestbook.server;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import guestbook.shared.*;
+
+/**
+ *  An ExportWriter encodes the rows of an export onto a stream as they are read from
+ *  the database, so that the export is never held in memory. Two formats are written:
+ *      - NetUtils.EXPORT_DELIMITED: one line per row, with the fields separated by tabs.
+ *        Tabs, line breaks and backslashes within a field are escaped as \t, \n, \r
+ *        and \\. Guests are written in the field order AddressBook.importGuestInfos
+ *        reads, so a guest export can be imported again with a tab field delimiter.
+ *      - NetUtils.EXPORT_BINARY: for each row a ROW byte, the number of fields as a
+ *        short, then each field written with writeUTF; the export ends with an END byte.
+ *  Guest rows hold name, address, city, postcode, telephone, email and password; entry
+ *  rows hold GEID, email, entry and date; log rows hold GLID, email, IP address and date.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class ExportWriter {
+
+    public static final byte ROW = 1;   // Binary format row marker
+    public static final byte END = 0;   // Binary format end marker
+
+    private DataOutputStream out;
+    private boolean binary;
+    private long rows;
+
+    /**
+     *  Constructor
+     *  @param output the stream to write to, which should be buffered
+     *  @param format NetUtils.EXPORT_DELIMITED or NetUtils.EXPORT_BINARY
+     *  @throws IllegalArgumentException if the format is unknown
+     */
+    public ExportWriter(OutputStream output, String format) throws IllegalArgumentException {
+        if ( NetUtils.EXPORT_BINARY.equals(format) ) binary = true;
+        else if ( NetUtils.EXPORT_DELIMITED.equals(format) ) binary = false;
+        else throw new IllegalArgumentException("Unknown export format: " + format);
+
+        out = new DataOutputStream(output);
+        rows = 0;
+    }
+
+    /**
+     *  @param g the guest to write
+     *  @throws IOException if the stream cannot be written
+     */
+    public void writeGuest(GuestInfo g) throws IOException {
+        writeRow( new String[]{ g.getName(), g.getAddress(), g.getCity(), g.getPostcode(),
+                                g.getTelephone(), g.getEmail(), g.getPassword() } );
+    }
+
+    /**
+     *  @param e the guest book entry to write
+     *  @throws IOException if the stream cannot be written
+     */
+    public void writeEntry(GuestEntry e) throws IOException {
+        writeRow( new String[]{ String.valueOf(e.getGEID()), e.getEmail(), e.getEntry(), e.getDate() } );
+    }
+
+    /**
+     *  @param l the server log to write
+     *  @throws IOException if the stream cannot be written
+     */
+    public void writeLog(GuestLog l) throws IOException {
+        writeRow( new String[]{ String.valueOf(l.getGLID()), l.getEmail(), l.getIP(), l.getDate() } );
+    }
+
+    /**
+     *  Ends the export and flushes the stream, without closing it.
+     *  @throws IOException if the stream cannot be written
+     */
+    public void finish() throws IOException {
+        if (binary) out.writeByte(END);
+        out.flush();
+    }
+
+    /**
+     *  @return long the number of rows written
+     */
+    public long getRowCount() { return rows; }
+
+    /**
+     *  @param fields the fields of the row
+     *  @throws IOException if the stream cannot be written
+     */
+    private void writeRow(String[] fields) throws IOException {
+        if (binary) {
+            out.writeByte(ROW);
+            out.writeShort(fields.length);
+            for (String f : fields) out.writeUTF(f);
+        }
+        else {
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) out.write('\t');
+                writeEscaped(fields[i]);
+            }
+            out.write('\n');
+        }
+        rows++;
+    }
+
+    /**
+     *  Writes a delimited field as UTF-8, escaping tabs, line breaks and backslashes.
+     *  @param field the field
+     *  @throws IOException if the stream cannot be written
+     */
+    private void writeEscaped(String field) throws IOException {
+        StringBuilder escaped = new StringBuilder( field.length() + 8 );
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\t') escaped.append("\\t");
+            else if (c == '\n') escaped.append("\\n");
+            else if (c == '\r') escaped.append("\\r");
+            else if (c == '\\') escaped.append("\\\\");
+            else escaped.append(c);
+        }
+        out.write( escaped.toString().getBytes("UTF-8") );
+    }
+}
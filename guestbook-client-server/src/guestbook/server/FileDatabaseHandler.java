@@ -1,84 +1,475 @@
-package guestbook.server;
-
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
-import java.io.FileOutputStream;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.EOFException;
-import java.io.FileNotFoundException;
-import java.io.File;
-
-import guestbook.shared.*;
-
-/** 
- *  The FileDatabaseHandler class allows a user to interface with an AddressBook of
- *  GuestInfo records stored in a data file. Methods to add, remove, view, and update
- *  records are provided, implemented via the methods of the AddressBook class.
- *              
- *  @author Joram Benham 200801274
- *  @version April 8, 2011
- */
-public class FileDatabaseHandler implements DatabaseHandler {
-
-    private final File DATA_FILE;    
-    private AddressBook dataSource;
-    
-    /** 
-     *  Constructor
-     *  @param dataFile the file containing the address book with the guest records
-     */
-    public FileDatabaseHandler(File dataFile) throws IOException, ClassNotFoundException, NullPointerException, IllegalArgumentException {
-        if (dataFile == null) throw new NullPointerException("FileDatabaseHandler constructor parameter is null");
-        if (dataFile.exists() == false) throw new IllegalArgumentException("FileDatabaseHandler constructor parameter file does not exist");
-        
-        DATA_FILE = dataFile;        
-        dataSource = new AddressBook();
-        
-        try {
-            dataSource.load(DATA_FILE);
-        }
-        
-        catch (EOFException eofEx) {
-            // Write out the initial new AddressBook if the data file is empty
-            dataSource.save(DATA_FILE);
-        }
-    }
-
-    /** 
-     *  Adds a record to the file database.
-     *  @param info the new info for a guest
-     */
-    public synchronized void addRecord(GuestInfo info) throws IOException, ClassNotFoundException {
-        dataSource.addGuestInfo(info);
-        dataSource.save(DATA_FILE);
-    }
-    
-    /** 
-     *  Retrieves a record from the file database.
-     *  @param target a dummy GuestInfo object containing the email address of the record to retrieve.
-     */
-    public GuestInfo retrieveRecord(GuestInfo target) throws IOException, ClassNotFoundException {
-        return dataSource.viewGuestInfo( target );
-    }
-    
-    /** 
-     *  Updates a record in the file database.
-     *  @param updatedGuest a guest with updated info, but with the same email address as an existing record.
-     */
-    public synchronized void updateRecord(GuestInfo updatedGuest) throws IOException {
-        dataSource.updateGuestInfo(updatedGuest);
-        dataSource.save(DATA_FILE);
-    }
-    
-    /** 
-     *  Deletes a record from the file database.
-     *  @param target a dummy GuestInfo object containing the email address of the record to delete.
-     */
-    public synchronized void deleteRecord(GuestInfo target) throws IOException {
-        dataSource.deleteGuestInfo(target);
-        dataSource.save(DATA_FILE);
-    }
-    
-
-}
+package guestbook.server;
+
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.File;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import guestbook.shared.*;
+
+/** 
+ *  The FileDatabaseHandler class allows a user to interface with an AddressBook of
+ *  GuestInfo records stored in a data file. Methods to add, remove, view, and update
+ *  records are provided, implemented via the methods of the AddressBook class.
+ *      The data file holds a snapshot of the AddressBook. Changes made since the snapshot
+ *  are appended to a MutationLog beside it (the data file name plus ".log"), so a change
+ *  costs one small append instead of rewriting the whole book. Once the log holds
+ *  snapshotInterval records a new snapshot is saved and the log is emptied. When the
+ *  handler is created the log is replayed over the snapshot to recover any changes
+ *  made after it.
+ *      With the SYNC_GROUP policy changes are buffered and forced to disk in batches
+ *  (group commit). A change is then acknowledged once it is buffered, and is durable
+ *  at the next flush; a handler created with durableWrites instead makes each change
+ *  wait for the flush holding it, sharing one force among concurrent writers. Any
+ *  caller can also wait for the changes made so far with awaitDurable().
+ *      Point reads never lock. Writers take turns on the handler's lock, and each applies
+ *  its change to the AddressBook, logs it and then publishes the changed guest in a
+ *  ConcurrentHashMap of the guests, which point reads use. A change therefore costs the
+ *  same however many guests there are, and readers see each change once it is logged.
+ *  Scans (retrieveUsers and exportGuests) instead read an unmodifiable list of the guests
+ *  as they were after one write, so a scan never sees half of a bulk chunk or a guest
+ *  which was deleted before another it saw was added. Each write discards the list, and
+ *  the first scan after it copies the guests once under the handler's lock. The
+ *  AddressBook is only read to save snapshots.
+ *      Only guest records are stored in the data file. Admins, guest book entries
+ *  and server logs are held by a MemoryDatabaseHandler which snapshots them to a file
+ *  beside it (the data file name plus ".tables") every few seconds and on close, so a
+ *  crash loses those made since the last snapshot.
+ *              
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class FileDatabaseHandler implements DatabaseHandler {
+
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 1000;   // log records between snapshots
+
+    private final File DATA_FILE;    
+    private AddressBook dataSource;     // Every guest, in the order added; changed under the handler's lock
+    private ConcurrentHashMap<String, GuestInfo> guests = new ConcurrentHashMap<String, GuestInfo>();   // Published guests, by ID
+    private volatile List<GuestInfo> scanView;  // The published guests as of the last write, null until a scan needs them
+    private MemoryDatabaseHandler tables;   // Holds the admins, entries and logs
+    private MutationLog log;                // Changes since the last snapshot
+    private int snapshotInterval;           // Log records allowed before a snapshot is taken
+    private boolean durableWrites;          // True if changes wait until they are on disk
+    
+    /** 
+     *  Constructor which syncs every change to disk and snapshots every
+     *  DEFAULT_SNAPSHOT_INTERVAL changes.
+     *  @param dataFile the file containing the address book with the guest records
+     */
+    public FileDatabaseHandler(File dataFile) throws IOException, ClassNotFoundException, NullPointerException, IllegalArgumentException {
+        this(dataFile, MutationLog.SYNC_EVERY_WRITE, DEFAULT_SNAPSHOT_INTERVAL);
+    }
+    
+    /** 
+     *  Constructor
+     *  @param dataFile the file containing the address book with the guest records
+     *  @param syncPolicy one of the MutationLog sync policies
+     *  @param interval the number of logged changes between snapshots
+     */
+    public FileDatabaseHandler(File dataFile, int syncPolicy, int interval) throws IOException, ClassNotFoundException, NullPointerException, IllegalArgumentException {
+        this(dataFile, syncPolicy, interval, MutationLog.DEFAULT_GROUP_WINDOW, MutationLog.DEFAULT_GROUP_BATCH, false);
+    }
+    
+    /** 
+     *  Constructor for a group commit handler.
+     *  @param dataFile the file containing the address book with the guest records
+     *  @param interval the number of logged changes between snapshots
+     *  @param window the longest time in ms a change waits to be flushed
+     *  @param batch the number of pending changes which trigger a flush
+     *  @param durable true if each change should wait until it is on disk
+     */
+    public FileDatabaseHandler(File dataFile, int interval, long window, int batch, boolean durable) throws IOException, ClassNotFoundException, NullPointerException, IllegalArgumentException {
+        this(dataFile, MutationLog.SYNC_GROUP, interval, window, batch, durable);
+    }
+    
+    /** 
+     *  Constructor
+     *  @param dataFile the file containing the address book with the guest records
+     *  @param syncPolicy one of the MutationLog sync policies
+     *  @param interval the number of logged changes between snapshots
+     *  @param window the longest time in ms a SYNC_GROUP change waits to be flushed
+     *  @param batch the number of pending SYNC_GROUP changes which trigger a flush
+     *  @param durable true if each change should wait until it is on disk
+     */
+    private FileDatabaseHandler(File dataFile, int syncPolicy, int interval, long window, int batch, boolean durable) throws IOException, ClassNotFoundException, NullPointerException, IllegalArgumentException {
+        if (dataFile == null) throw new NullPointerException("FileDatabaseHandler constructor parameter is null");
+        if (dataFile.exists() == false) throw new IllegalArgumentException("FileDatabaseHandler constructor parameter file does not exist");
+        if (interval < 1) throw new IllegalArgumentException("Snapshot interval must be > 0.");
+        
+        DATA_FILE = dataFile;        
+        AddressBook book = new AddressBook();
+        tables = new MemoryDatabaseHandler( new File(DATA_FILE.getPath() + ".tables"), MemoryDatabaseHandler.DEFAULT_SNAPSHOT_INTERVAL );
+        snapshotInterval = interval;
+        durableWrites = durable;
+        
+        try {
+            book.load(DATA_FILE);
+        }
+        
+        catch (EOFException eofEx) {
+            // Write out the initial new AddressBook if the data file is empty
+            book.save(DATA_FILE);
+        }
+        
+        // Recover the changes made after the snapshot, then fold them into a new one
+        log = new MutationLog( new File(DATA_FILE.getPath() + ".log"), syncPolicy, window, batch );
+        int recovered = log.replay(book);
+        dataSource = book;
+        for (GuestInfo g : book.getGuestInfos()) guests.put( g.getID(), g );
+        if (recovered > 0) snapshot();
+    }
+
+    /** 
+     *  Adds a record to the file database.
+     *  @param info the new info for a guest
+     */
+    public void addRecord(GuestInfo info) throws IOException, ClassNotFoundException {
+        awaitIfDurable( applyAdd(info) );
+    }
+    
+    /** 
+     *  @param info the new info for a guest
+     *  @return long the log sequence number of the change, 0 if nothing changed
+     */
+    private synchronized long applyAdd(GuestInfo info) throws IOException {
+        if ( dataSource.addGuestInfo(info).equals(AddressBook.ADD_SUCCESS) == false ) return 0;
+        
+        long sequence = log.appendPut(info);
+        guests.put( info.getID(), info );
+        scanView = null;
+        snapshotIfDue();
+        return sequence;
+    }
+    
+    /** 
+     *  Adds many records to the file database. Each chunk of guests is added under one
+     *  hold of the handler's lock, and with durableWrites the call waits once for the
+     *  last change rather than once per guest.
+     *  @param guests the guests to add
+     *  @param chunkSize the number of guests added per hold of the lock, at least 1
+     *  @return boolean[] true for each guest which was added
+     */
+    public boolean[] bulkAddRecords(List<GuestInfo> guests, int chunkSize) throws IOException {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be > 0.");
+        boolean[] added = new boolean[ guests.size() ];
+        long sequence = 0;
+        
+        for (int from = 0; from < added.length; from += chunkSize) {
+            long last = applyBulkAdd( guests, from, Math.min(from + chunkSize, added.length), added );
+            if (last > 0) sequence = last;
+        }
+        
+        awaitIfDurable(sequence);
+        return added;
+    }
+    
+    /** 
+     *  @param newGuests the guests being added
+     *  @param from the index of the chunk's first guest
+     *  @param to the index after the chunk's last guest
+     *  @param added set to true for each guest which is added
+     *  @return long the log sequence number of the last change, 0 if nothing changed
+     */
+    private synchronized long applyBulkAdd(List<GuestInfo> newGuests, int from, int to, boolean[] added) throws IOException {
+        long sequence = 0;
+        
+        for (int i = from; i < to; i++) {
+            GuestInfo g = newGuests.get(i);
+            if ( dataSource.addGuestInfo(g).equals(AddressBook.ADD_SUCCESS) == false ) continue;
+            sequence = log.appendPut(g);
+            guests.put( g.getID(), g );
+            added[i] = true;
+        }
+        
+        if (sequence == 0) return 0;
+        scanView = null;
+        snapshotIfDue();
+        return sequence;
+    }
+    
+    /** 
+     *  Retrieves a record from the file database.
+     *  @param target a dummy GuestInfo object containing the email address of the record to retrieve.
+     */
+    public GuestInfo retrieveRecord(GuestInfo target) throws IOException, ClassNotFoundException {
+        return guests.get( target.getID() );
+    }
+    
+    /** 
+     *  Updates a record in the file database.
+     *  @param updatedGuest a guest with updated info, but with the same email address as an existing record.
+     */
+    public void updateRecord(GuestInfo updatedGuest) throws IOException {
+        awaitIfDurable( applyUpdate(updatedGuest) );
+    }
+    
+    /** 
+     *  @param updatedGuest a guest with updated info
+     *  @return long the log sequence number of the change, 0 if nothing changed
+     */
+    private synchronized long applyUpdate(GuestInfo updatedGuest) throws IOException {
+        GuestInfo existing = guests.get( updatedGuest.getID() );
+        if (existing == null) return 0;
+        
+        GuestInfo merged = DatabaseUtils.mergeUpdate(existing, updatedGuest);
+        dataSource.updateGuestInfo(merged);
+        
+        long sequence = log.appendPut(merged);
+        guests.put( merged.getID(), merged );
+        scanView = null;
+        snapshotIfDue();
+        return sequence;
+    }
+    
+    /** 
+     *  Deletes a record from the file database.
+     *  @param target a dummy GuestInfo object containing the email address of the record to delete.
+     */
+    public void deleteRecord(GuestInfo target) throws IOException {
+        awaitIfDurable( applyDelete(target) );
+    }
+    
+    /** 
+     *  @param target a dummy GuestInfo object containing the email address of the record to delete.
+     *  @return long the log sequence number of the change, 0 if nothing changed
+     */
+    private synchronized long applyDelete(GuestInfo target) throws IOException {
+        if ( dataSource.deleteGuestInfo(target).equals(AddressBook.DELETE_SUCCESS) == false ) return 0;
+        
+        long sequence = log.appendDelete( target.getEmail() );
+        guests.remove( target.getID() );
+        scanView = null;
+        tables.deleteRecord(target);
+        snapshotIfDue();
+        return sequence;
+    }
+    
+    /** 
+     *  Waits until every change made so far is on disk.
+     *  @throws IOException if the log cannot be forced, or the wait is interrupted
+     */
+    public void awaitDurable() throws IOException {
+        awaitSequence( log.lastSequence() );
+    }
+    
+    /** 
+     *  Waits for a change to reach the disk if the handler has durableWrites.
+     *  @param sequence the log sequence number of the change, 0 if nothing changed
+     *  @throws IOException if the log cannot be forced, or the wait is interrupted
+     */
+    private void awaitIfDurable(long sequence) throws IOException {
+        if (durableWrites && sequence > 0) awaitSequence(sequence);
+    }
+    
+    /** 
+     *  @param sequence the log sequence number to wait for
+     *  @throws IOException if the log cannot be forced, or the wait is interrupted
+     */
+    private void awaitSequence(long sequence) throws IOException {
+        try {
+            log.awaitSync(sequence);
+        }
+        catch (InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the mutation log to sync.");
+        }
+    }
+    
+    /** 
+     *  Takes a snapshot if the log has reached the snapshot interval.
+     *  @throws IOException if the snapshot cannot be written
+     */
+    private void snapshotIfDue() throws IOException {
+        if (log.size() >= snapshotInterval) snapshot();
+    }
+    
+    /** 
+     *  Saves the address book to the data file and empties the log.
+     *  @throws IOException if the snapshot cannot be written
+     */
+    private synchronized void snapshot() throws IOException {
+        dataSource.save(DATA_FILE);
+        log.reset();
+    }
+    
+    /** 
+     *  @return List<GuestInfo> an unmodifiable list of every guest as of the last write
+     */
+    private List<GuestInfo> scanView() {
+        List<GuestInfo> view = scanView;
+        if (view != null) return view;
+        
+        synchronized (this) {
+            if (scanView == null) scanView = Collections.unmodifiableList( new ArrayList<GuestInfo>( guests.values() ) );
+            return scanView;
+        }
+    }
+    
+    /** 
+     *  Retrieves the records matching a set of criteria.
+     *  @param criteria a GuestInfo object with its fields set to the search criteria
+     *  @return ArrayList<GuestInfo> of the matching records, ordered by name
+     */
+    public ArrayList<GuestInfo> retrieveUsers(GuestInfo criteria) {
+        ArrayList<GuestInfo> users = new ArrayList<GuestInfo>();
+        for (GuestInfo g : scanView()) {
+            if (DatabaseUtils.matchesCriteria(criteria, g)) users.add(g);
+        }
+        Collections.sort(users, DatabaseUtils.BY_NAME);
+        return users;
+    }
+    
+    /** 
+     *  @param email the email to check
+     *  @return boolean true if a guest with the email exists
+     */
+    public boolean userExists(String email) {
+        return guests.containsKey( new GuestInfo(email).getID() );
+    }
+    
+    /** 
+     *  @param email the email to check
+     *  @return boolean true if the email belongs to an admin
+     */
+    public boolean adminExists(String email) {
+        return tables.adminExists(email);
+    }
+    
+    /** 
+     *  Gives an existing guest admin rights.
+     *  @param email the email of the guest
+     *  @return boolean true if the guest exists and is now an admin
+     */
+    public boolean addAdmin(String email) {
+        if (userExists(email) == false) return false;
+        tables.addRecord( new GuestInfo(email) );
+        return tables.addAdmin(email);
+    }
+    
+    /** 
+     *  @param email the email to check for
+     *  @param pass the password for the email
+     *  @return boolean indicating if email and pass are valid
+     */
+    public boolean validLogin(String email, String pass) {
+        GuestInfo g = guests.get( new GuestInfo(email).getID() );
+        return g != null && g.getPassword().equals(pass);
+    }
+    
+    /** 
+     *  @param log the GuestLog to add
+     */
+    public void addGuestLog(GuestLog log) {
+        tables.addGuestLog(log);
+    }
+    
+    /** 
+     *  @param entry the GuestEntry to add
+     */
+    public void addGuestEntry(GuestEntry entry) {
+        tables.addGuestEntry(entry);
+    }
+    
+    /** 
+     *  @return ArrayList<GuestLog> of the logs, newest first
+     */
+    public ArrayList<GuestLog> getGuestLogs() {
+        return tables.getGuestLogs();
+    }
+    
+    /** 
+     *  @return ArrayList<GuestEntry> of the entries, newest first
+     */
+    public ArrayList<GuestEntry> getGuestEntries() {
+        return tables.getGuestEntries();
+    }
+    
+    /** 
+     *  @return long the maximum GEID
+     */
+    public long getMaxGEID() {
+        return tables.getMaxGEID();
+    }
+    
+    /** 
+     *  @return long the maximum GLID
+     */
+    public long getMaxGLID() {
+        return tables.getMaxGLID();
+    }
+    
+    /** 
+     *  @return long a new GEID, never handed out before
+     */
+    public long nextGEID() {
+        return tables.nextGEID();
+    }
+    
+    /** 
+     *  @return long a new GLID, never handed out before
+     */
+    public long nextGLID() {
+        return tables.nextGLID();
+    }
+    
+    /** 
+     *  Writes every guest as they were after one write; changes made during the export
+     *  are not written.
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuests(ExportWriter out) throws IOException {
+        for (GuestInfo g : scanView()) out.writeGuest(g);
+    }
+    
+    /** 
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuestEntries(ExportWriter out) throws IOException {
+        tables.exportGuestEntries(out);
+    }
+    
+    /** 
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuestLogs(ExportWriter out) throws IOException {
+        tables.exportGuestLogs(out);
+    }
+    
+    /**
+     *  Nothing to hold; every call already shares the same address book.
+     */
+    public void beginBatch() {}
+
+    /**
+     *  Nothing to release.
+     */
+    public void endBatch() {}
+
+    /** 
+     *  Saves a final snapshot of the guests and of the other tables, and closes the log.
+     *  @throws IOException if a snapshot cannot be written
+     */
+    public synchronized void close() throws IOException {
+        try {
+            snapshot();
+            log.close();
+        }
+        finally {
+            tables.close();
+        }
+    }
+}
@@ -1,230 +1,797 @@
-
-package guestbook.server;
-
-import java.io.IOException;
-
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
-
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
-import java.util.Scanner;
-
-import java.sql.SQLException;
-import javax.swing.JLabel;
-
-
-/**
- *      A GuestBookServer is a threaded application. When run it listens to the
- *  specified port for incoming service requests. When it receives a request
- *  it creates a new ClientHandler thread to handle the request, and continues
- *  listening at the port for further connection attempts.
- *      The GuestBookServer connects to an Oracle server via a RealDatabaseHandler.
- *  The server will fail to start if the server is not found, as it cannot service requests
- *  without the database.
- * 
- * @author Joram Benham, 200801274
- * @version April 8, 2011
- */
-public class GuestBookServer extends Thread {  
-
-    public static final int DEFAULT_PORT = 1012;
-    public static final int DEFAULT_HANDLERS = 10;
-    public static final int DEFAULT_TIMEOUT = 2000;
-
-    private RealDatabaseHandler dbHandler;  // Handles database interaction
-    
-    private ServerSocket listener;          // Socket to listen on
-    private ExecutorService handlerPool;    // Executes new ClientHandlers
-    
-    private int port;       // Port to listen on
-    private int numHandlers;    // Max number of handlers to spawn
-    private int timeout;    // Length of time to wait for a request before checking the serverEnabled member
-    private boolean terminated;     // Indicates if the server is terminated
-    private boolean serverEnabled;  // Indicates if the server should stop listening and try to terminate
-    private boolean dbFound;    // Indicates if the database has been found
-    
-    private JLabel statusLabel;
-
-    /** 
-     *  Initializes the server, setting the port, number of handlers, and listen timeout
-     *  to their defaults. The driver for the database is also loaded.
-     *  @param update optional JLabel (can be null) for status updates
-     *  @throws ClassNotFoundException if the JDBC-Oracle driver is not found
-     */
-    public GuestBookServer(JLabel update) throws ClassNotFoundException {
-        if (update != null) statusLabel = update; 
-        dbHandler = new RealDatabaseHandler();  // Attempt to load database driver
-        
-        // Set up server variables
-        port = DEFAULT_PORT;
-        numHandlers = DEFAULT_HANDLERS;
-        timeout = DEFAULT_TIMEOUT;
-        
-        // Set up status variables
-        terminated = true;
-        serverEnabled = false; 
-        dbFound = false;
-        if (statusLabel != null) statusLabel.setText("Stopped");
-    }
-    
-    /** 
-     *  While the server is running, listens for connection attempts and creates
-     *  handlers to deal with client connections.
-     */
-    public void run() {
-        if (serverEnabled == false) return;
-        if (dbFound == false) return;
-        if (statusLabel != null) statusLabel.setText("Running");
-
-        Socket client = null;       
-      
-        // Listen while the server is enabled
-        while (serverEnabled) {            
-            try {
-                if (statusLabel != null) statusLabel.setText("Listening");
-                client = listener.accept();
-                
-                if (statusLabel != null) statusLabel.setText("Connecting");
-                handlerPool.execute( new ClientHandler(client, dbHandler) );
-            }
-            catch (SocketTimeoutException noConnectionEx) {
-                // do nothing, just loop again and see if it should stop running
-            }   
-            catch (IOException ioEx) {
-                System.err.println("Connection error: " + ioEx);
-                ioEx.printStackTrace();
-            }            
-        }               
-        
-        try {
-            listener.close();
-        }        
-        catch (IOException listenerCloseEx) {
-            System.out.println(listenerCloseEx);
-        }
-        
-        // Try to shutdown all ClientHandlers. Wait for 10 seconds after every attempt.
-        handlerPool.shutdownNow();
-        while (handlerPool.isTerminated() == false) {
-            if (statusLabel != null) statusLabel.setText("Terminating connections");
-            
-            try { 
-                handlerPool.awaitTermination( 10, TimeUnit.SECONDS ); 
-            }
-            catch(InterruptedException intEx) {}
-            
-            handlerPool.shutdownNow();
-        }
-        
-        // Update to terminated status
-        terminated = true;
-        if (statusLabel != null) statusLabel.setText("Stopped");
-    }     
-    
-    /** 
-     *  Initializes the database, and attempts a connection, setting dbFound to true 
-     *  if the connection is successful.
-     *  @param dbUser the username to log in with
-     *  @param dbPass the password for the given username
-     *  @param dbURL the host name/URL of the database
-     *  @throws SQLException if there is a database error
-     */
-    public void initDatabase(String dbUser, String dbPass, String dbURL) throws SQLException {
-        dbHandler.setConnectionDetails(dbUser, dbPass, dbURL);
-        dbHandler.attemptConnection();
-        dbFound = true;
-    }
-    
-    /**
-     *  @return boolean true if the database is running
-     */
-    public boolean isRunning() { return !terminated; }
-    
-    /** 
-     * @return boolean true if the database has been found successfully
-     */
-    public boolean dbFound() { return dbFound; }
-    
-    /** 
-     *  Initializes the server; sets the port number to listen on, the number of client handlers to
-     *  make available at maximum, and the timeout between listening attempts.
-     *  @param thePort the port number
-     *  @param handlers number of handlers
-     *  @param time server timeout time
-     *  @return boolean indicating intialization success
-     *  @throws IllegalArgumentException if a parameter is invalid
-     */
-    public boolean init(int thePort, int handlers, int time) throws IllegalArgumentException {
-        if (serverEnabled || !dbFound) return false;  // Can not initialize when server is running.        
-        
-        setPort( thePort );
-        setNumHandlers( handlers );
-        setTimeout( time );
-        
-        return true;    // Initialization was successful - no exceptions, and the server was not running
-    }
-    
-    /** 
-     *  Creates the handlerPool for client connections and starts the server listening on the
-     *  specified port if it is not already running.
-     *  @throws IOException if there is a network error
-     */
-    public synchronized void startListening() throws IOException {
-        if ( serverEnabled == false && dbFound ) {  
-            handlerPool = Executors.newFixedThreadPool(numHandlers);
-            listener = new ServerSocket(port);    // Create the server socket
-            listener.setSoTimeout( timeout );
-            
-            terminated = false;
-            serverEnabled = true;
-            start();
-        }
-    }    
-    
-    /** 
-     *  Terminates the server by setting serverEnabled to false.
-     */
-    public synchronized void terminate() {
-        serverEnabled = false;
-    }      
-    
-    /** 
-     *  Sets the port number to listen on.
-     *  @param portNum the port to listen on
-     *  @throws IllegalArgumentException if the portNum is < 0
-     */
-    public void setPort( int portNum ) throws IllegalArgumentException {
-        if (portNum < 0) {
-            throw new IllegalArgumentException("Value '" + portNum + "'is invalid. The port number must be > 0.");
-        }
-        port = portNum; // Otherwise set the port
-    }
-    
-    /** 
-     *  Sets the number of client handlers available in the handlerPool
-     *  @param num the number of handlers
-     *  @throws IllegalArgumentException if num < 1
-     */
-    public void setNumHandlers(int num) throws IllegalArgumentException {
-        if (num < 1) {
-            throw new IllegalArgumentException("Value '" + num + "' is invalid. The number of client handlers must be > 1.");
-        }
-        numHandlers = num; // Otherwise set the number of handlers
-    }
-    
-    /** 
-     *  Sets the maximum amount of time the server will wait for a client connection before it
-     *  stops and checks to see if it should terminate.
-     *  @param time the server timeout time
-     *  @throws IllegalArgumentException if time value is invalid
-     */
-    public void setTimeout(int time) throws IllegalArgumentException {
-        if (time < 10 || time > 200) {
-            throw new IllegalArgumentException("Value '" + time + "' is invalid. The minimum timeout is 100ms; the maximum is 10000ms");
-        }
-        timeout = time; // Otherwise set the timeout
-    }
-}
+
+package guestbook.server;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.Scanner;
+
+import java.sql.SQLException;
+import javax.swing.JLabel;
+
+
+/**
+ *      A GuestBookServer is a threaded application. When run it listens to the
+ *  specified port for incoming service requests. When it receives a request
+ *  it creates a new ClientHandler thread to handle the request, and continues
+ *  listening at the port for further connection attempts.
+ *      Up to CONNECTIONS_PER_HANDLER connections per handler are read at once, but only
+ *  as many requests as there are handlers are serviced at once, and the database is
+ *  used by no more requests at once than that. A RequestScheduler
+ *  decides which waiting request goes next, weighting interactive requests over reports
+ *  and capping how many requests of each class run at once, so a slow report does not
+ *  hold up logins. setClassWeight and setClassCap configure it.
+ *      Reads and writes run in separate lanes, each with a RequestScheduler and handlers
+ *  of its own (setLaneHandlers), so writes stalled on locks or commits cannot hold up
+ *  reads, nor the reverse. A lane may queue up to CONNECTIONS_PER_HANDLER - 1 requests
+ *  per handler (setQueueDepth); further requests are rejected, so one lane cannot take
+ *  the connection threads of the other. getLane gives each lane's saturation metrics. An Oracle
+ *  database is read through a read-only RealDatabaseHandler of its own, or through
+ *  read replicas by a ReplicatedDatabaseHandler if any are given.
+ *      A login starts a session in the server's SessionTable, and every later request must
+ *  carry its token; only administrators may list users or logs, delete guests, bulk load
+ *  or export. setSessionTTL sets how long an unused session lasts. Servers which share a
+ *  database, and whose clients spread their requests across them, must be given the same
+ *  key (setSessionKey), so that each accepts the tokens the others issue.
+ *      A RateLimiter limits how fast each client address may open connections and send
+ *  requests of each class. A connection over the limit is closed as soon as it is
+ *  accepted, and a request over the limit is answered with an error before any database
+ *  work is done for it. setConnectionRate and setClassRate change the limits, at once.
+ *      When terminated the server drains: it stops accepting connections, lets the
+ *  requests already sent and the connections already queued be serviced until the drain
+ *  timeout (setDrainTimeout) has passed, then closes whatever is left and flushes the
+ *  database. getDrainReport tells what the last drain abandoned.
+ *      The handlers, queue depth, timeout, class weights and caps, rate limits, session TTL
+ *  and drain timeout may all be changed while the server is running, without rebinding
+ *  the listener or dropping clients, so that capacity can be raised during a traffic
+ *  spike. A lane which shrinks lets no more requests through until enough of those
+ *  running have finished, and connection threads beyond the new pool size end once their
+ *  connections do. configure applies settings given by name, as sent by an administrator
+ *  in a NetUtils.CR_CONFIGURE request.
+ *      The GuestBookServer stores its data through a DatabaseHandler. The backend is chosen
+ *  when the database is initialized: an Oracle server via a RealDatabaseHandler, a data
+ *  file via a FileDatabaseHandler, memory via a MemoryDatabaseHandler, or a memory-mapped
+ *  file via a MappedDatabaseHandler. Administrators of the last three are given by addAdmin.
+ *  The server will fail to start if the database is not found, as it cannot service requests
+ *  without the database.
+ * 
+ * @author Joram Benham, 200801274
+ * @version April 8, 2011
+ */
+public class GuestBookServer extends Thread {  
+
+    public static final int DEFAULT_PORT = 1012;
+    public static final int DEFAULT_HANDLERS = 10;
+    public static final int DEFAULT_TIMEOUT = 2000;
+    public static final int CONNECTIONS_PER_HANDLER = 4;    // connections read at once per handler
+    public static final long DEFAULT_DRAIN_TIMEOUT = 10000;  // ms requests may finish in once terminated
+    
+    // Settings which configure applies by name; a rate is "perSecond" or "perSecond/burst"
+    public static final String[] SETTINGS = { "handlers", "readHandlers", "writeHandlers", "queueDepth", "timeout",
+                                              "drainTimeout", "sessionTTL", "bulkChunk", "connectionRate", "interactiveRate",
+                                              "standardRate", "reportRate" };
+    
+    // Database backends which can be passed to initDatabase
+    public static final String BACKEND_ORACLE = "Oracle";
+    public static final String BACKEND_FILE = "File";
+    public static final String BACKEND_MEMORY = "Memory";
+    public static final String BACKEND_MAPPED = "Mapped";
+    public static final String[] BACKENDS = { BACKEND_ORACLE, BACKEND_FILE, BACKEND_MEMORY, BACKEND_MAPPED };
+
+    private DatabaseHandler dbHandler;  // Handles database interaction
+    private DatabaseHandler readHandler;    // Handles the read lane's database interaction
+    
+    private ServerSocket listener;          // Socket to listen on
+    private ThreadPoolExecutor handlerPool; // Executes new ClientHandlers
+    private RequestScheduler[] lanes;       // Decide when each request of each lane is serviced
+    private int[] laneHandlers = new int[RequestScheduler.LANES.length];   // 0 keeps the default
+    private long readYourWrites = ReplicatedDatabaseHandler.DEFAULT_READ_YOUR_WRITES;  // ms a client reads the primary after writing
+    private SessionTable sessions = new SessionTable();     // Sessions of logged in guests, kept while the server stops
+    private RateLimiter limiter = new RateLimiter();        // Limits how fast each client address may connect and send requests
+    private int[] classWeights = RequestScheduler.DEFAULT_WEIGHTS.clone();
+    private int[] classCaps = new int[RequestScheduler.CLASSES.length];    // 0 keeps the default cap
+    private int queueDepth = CONNECTIONS_PER_HANDLER - 1;  // requests a lane may queue per handler
+    private volatile long drainTimeout = DEFAULT_DRAIN_TIMEOUT;
+    private volatile String drainReport;    // What the last drain abandoned
+    private volatile int bulkChunk = DatabaseUtils.DEFAULT_BULK_CHUNK;    // guests added per commit by a bulk load
+    
+    private int port;       // Port to listen on
+    private int numHandlers;    // Max number of handlers to spawn
+    private int timeout;    // Length of time to wait for a request before checking the serverEnabled member
+    private boolean terminated;     // Indicates if the server is terminated
+    private boolean serverEnabled;  // Indicates if the server should stop listening and try to terminate
+    private boolean dbFound;    // Indicates if the database has been found
+    
+    private JLabel statusLabel;
+
+    /** 
+     *  Initializes the server, setting the port, number of handlers, and listen timeout
+     *  to their defaults. The database is chosen later by initDatabase.
+     *  @param update optional JLabel (can be null) for status updates
+     */
+    public GuestBookServer(JLabel update) {
+        if (update != null) statusLabel = update; 
+        
+        // Set up server variables
+        port = DEFAULT_PORT;
+        numHandlers = DEFAULT_HANDLERS;
+        timeout = DEFAULT_TIMEOUT;
+        
+        // Set up status variables
+        terminated = true;
+        serverEnabled = false; 
+        dbFound = false;
+        if (statusLabel != null) statusLabel.setText("Stopped");
+    }
+    
+    /** 
+     *  While the server is running, listens for connection attempts and creates
+     *  handlers to deal with client connections.
+     */
+    public void run() {
+        if (serverEnabled == false) return;
+        if (dbFound == false) return;
+        if (statusLabel != null) statusLabel.setText("Running");
+
+        Socket client = null;       
+      
+        // Listen while the server is enabled
+        while (serverEnabled) {            
+            try {
+                if (statusLabel != null) statusLabel.setText("Listening");
+                client = listener.accept();
+                
+                // Drop a connection from an address opening them too fast, before a handler is made
+                if ( limiter.allowConnection( client.getInetAddress() ) == false ) {
+                    client.close();
+                    continue;
+                }
+                
+                if (statusLabel != null) statusLabel.setText("Connecting");
+                handlerPool.execute( new ClientHandler(client, dbHandler, readHandler, handlerPool,
+                                                       lanes[RequestScheduler.LANE_WRITE],
+                                                       lanes[RequestScheduler.LANE_READ], sessions, limiter,
+                                                       this) );
+            }
+            catch (SocketTimeoutException noConnectionEx) {
+                // do nothing, just loop again and see if it should stop running
+            }   
+            catch (IOException ioEx) {
+                System.err.println("Connection error: " + ioEx);
+                ioEx.printStackTrace();
+            }            
+        }               
+        
+        try {
+            listener.close();
+        }        
+        catch (IOException listenerCloseEx) {
+            System.out.println(listenerCloseEx);
+        }
+        
+        drain();
+        
+        // Try to shutdown all remaining ClientHandlers. Wait for 10 seconds after every attempt.
+        while (handlerPool.isTerminated() == false) {
+            if (statusLabel != null) statusLabel.setText("Terminating connections");
+            
+            try { 
+                handlerPool.awaitTermination( 10, TimeUnit.SECONDS ); 
+            }
+            catch(InterruptedException intEx) {}
+            
+            handlerPool.shutdownNow();
+        }
+        
+        // Release the database, flushing its pending writes
+        if (statusLabel != null) statusLabel.setText("Flushing database");
+        try {
+            if (readHandler != dbHandler) readHandler.close();
+            dbHandler.close();
+        }
+        catch (Exception closeEx) {
+            System.err.println("Database close error: " + closeEx);
+            drainReport += "; database close failed: " + closeEx;
+        }
+        
+        // Update to terminated status
+        terminated = true;
+        if (statusLabel != null) statusLabel.setText("Stopped");
+    }     
+    
+    /** 
+     *  Lets the handlers finish the requests already sent, and the connections already
+     *  queued, until the drain timeout has passed; then interrupts the handlers still
+     *  running and closes the connections which were never handled. The listener must
+     *  already be closed. Sets drainReport to what was abandoned.
+     */
+    private void drain() {
+        if (statusLabel != null) statusLabel.setText("Draining connections");
+        long start = System.currentTimeMillis();
+        handlerPool.shutdown();     // Queued connections still run; idle ones end
+        
+        try { 
+            handlerPool.awaitTermination( drainTimeout, TimeUnit.MILLISECONDS ); 
+        }
+        catch(InterruptedException intEx) {
+            Thread.currentThread().interrupt();
+        }
+        
+        // Count what is left before it is stopped
+        int running = 0, queued = 0;
+        for (RequestScheduler lane : lanes) {
+            running += lane.getRunning();
+            queued += lane.getQueued();
+        }
+        int connections = handlerPool.getActiveCount();
+        
+        List<Runnable> unhandled = handlerPool.shutdownNow();
+        for (Runnable handler : unhandled) ((ClientHandler)handler).abandon();
+        
+        if (running + queued + connections + unhandled.size() == 0) {
+            drainReport = "Drained in " + (System.currentTimeMillis() - start) + " ms; nothing abandoned";
+        }
+        else {
+            drainReport = "Drain timed out after " + drainTimeout + " ms; abandoned " + running + " running and "
+                          + queued + " queued requests, " + connections + " open and " + unhandled.size()
+                          + " unhandled connections";
+        }
+    }
+    
+    /** 
+     *  Initializes an Oracle database, and attempts a connection, setting dbFound to true 
+     *  if the connection is successful.
+     *      dbURL may list several URLs separated by commas: the first is the primary, and
+     *  the rest are read replicas, which are reached with the same login. Reads are then
+     *  spread across the replicas by a ReplicatedDatabaseHandler. A replica which cannot
+     *  be reached is added as down.
+     *  @param dbUser the username to log in with
+     *  @param dbPass the password for the given username
+     *  @param dbURL the host name/URL of the database, followed by those of any replicas
+     *  @throws ClassNotFoundException if the JDBC-Oracle driver is not found
+     *  @throws SQLException if there is a database error
+     */
+    public void initDatabase(String dbUser, String dbPass, String dbURL) throws ClassNotFoundException, SQLException {
+        String[] urls = dbURL.split(",");
+        String primaryURL = urls[0].trim();
+        
+        RealDatabaseHandler oracle = new RealDatabaseHandler();  // Attempt to load database driver
+        oracle.setConnectionDetails(dbUser, dbPass, primaryURL);
+        oracle.attemptConnection();
+        
+        RealDatabaseHandler oracleReader = new RealDatabaseHandler(true);
+        oracleReader.setConnectionDetails(dbUser, dbPass, primaryURL);
+        
+        if (urls.length == 1) {
+            dbHandler = oracle;
+            readHandler = oracleReader;
+        }
+        else {
+            ReplicatedDatabaseHandler replicated = new ReplicatedDatabaseHandler(oracle, oracleReader);
+            replicated.setReadYourWrites(readYourWrites);
+            for (int i = 1; i < urls.length; i++) {
+                if ( urls[i].trim().equals("") ) continue;
+                RealDatabaseHandler replica = new RealDatabaseHandler(true);
+                replica.setConnectionDetails(dbUser, dbPass, urls[i].trim());
+                replicated.addReplica(replica);
+            }
+            dbHandler = replicated;
+            readHandler = replicated;
+        }
+        dbFound = true;
+    }
+    
+    /** 
+     *  Sets how long after a client writes its reads go to the primary database rather
+     *  than a replica, so that it sees its own writes. Takes effect when an Oracle database
+     *  with replicas is next initialized.
+     *  @param ms the period, or 0 to let every read go to a replica
+     *  @throws IllegalArgumentException if ms < 0
+     */
+    public void setReadYourWrites(long ms) throws IllegalArgumentException {
+        if (ms < 0) {
+            throw new IllegalArgumentException("Value '" + ms + "' is invalid. The read-your-writes period cannot be negative.");
+        }
+        readYourWrites = ms;
+    }
+    
+    /** 
+     *  Initializes the database using one of the BACKENDS, setting dbFound to true if
+     *  the database is available.
+     *      - BACKEND_ORACLE connects to dbURL using dbUser and dbPass, and to any replicas
+     *        listed after it.
+     *      - BACKEND_FILE stores guests in the data file at dbURL, which is created if needed.
+     *        Changes are group committed, and each request waits until its change is on disk.
+     *        Admins, entries and logs are snapshotted beside it, as with BACKEND_MEMORY.
+     *      - BACKEND_MEMORY keeps everything in memory, snapshotting to the file at dbURL
+     *        unless dbURL is empty.
+     *      - BACKEND_MAPPED stores guests in the memory-mapped record file at dbURL, which
+     *        is created if needed, with its hash index and snapshotted admins, entries and
+     *        logs beside it.
+     *  @param backend one of the BACKENDS
+     *  @param dbUser the username to log in with (Oracle only)
+     *  @param dbPass the password for the given username (Oracle only)
+     *  @param dbURL the host name/URL of the database, or the path of its file
+     *  @throws IllegalArgumentException if the backend is unknown
+     *  @throws Exception if the database cannot be opened
+     */
+    public void initDatabase(String backend, String dbUser, String dbPass, String dbURL) throws Exception {
+        if ( BACKEND_ORACLE.equals(backend) ) {
+            initDatabase(dbUser, dbPass, dbURL);
+        }
+        else if ( BACKEND_FILE.equals(backend) ) {
+            File dataFile = new File(dbURL);
+            dataFile.createNewFile();
+            dbHandler = new FileDatabaseHandler( dataFile, FileDatabaseHandler.DEFAULT_SNAPSHOT_INTERVAL,
+                                                 MutationLog.DEFAULT_GROUP_WINDOW, MutationLog.DEFAULT_GROUP_BATCH, true );
+            readHandler = dbHandler;
+            dbFound = true;
+        }
+        else if ( BACKEND_MEMORY.equals(backend) ) {
+            if (dbURL == null || dbURL.trim().equals("")) dbHandler = new MemoryDatabaseHandler();
+            else dbHandler = new MemoryDatabaseHandler( new File(dbURL), MemoryDatabaseHandler.DEFAULT_SNAPSHOT_INTERVAL );
+            readHandler = dbHandler;
+            dbFound = true;
+        }
+        else if ( BACKEND_MAPPED.equals(backend) ) {
+            dbHandler = new MappedDatabaseHandler( new File(dbURL) );
+            readHandler = dbHandler;
+            dbFound = true;
+        }
+        else {
+            throw new IllegalArgumentException("Unknown database backend: " + backend);
+        }
+    }
+    
+    /** 
+     *  Gives an existing guest administrator rights in a File, Memory or Mapped database,
+     *  which keeps them with its other tables. An Oracle database's administrators are
+     *  rows of its GuestAdmin table, and are added there.
+     *  @param email the guest's email
+     *  @return boolean true if the guest exists and is now an administrator
+     *  @throws IllegalStateException if no database is initialized, or it is an Oracle database
+     *  @throws Exception if the database cannot be written
+     */
+    public boolean addAdmin(String email) throws Exception {
+        if (dbHandler instanceof FileDatabaseHandler) return ((FileDatabaseHandler)dbHandler).addAdmin(email);
+        if (dbHandler instanceof MemoryDatabaseHandler) return ((MemoryDatabaseHandler)dbHandler).addAdmin(email);
+        if (dbHandler instanceof MappedDatabaseHandler) return ((MappedDatabaseHandler)dbHandler).addAdmin(email);
+        if (dbHandler == null) throw new IllegalStateException("No database has been initialized.");
+        throw new IllegalStateException("Administrators of an Oracle database are added to its GuestAdmin table.");
+    }
+    
+    /**
+     *  @return boolean true if the database is running
+     */
+    public boolean isRunning() { return !terminated; }
+    
+    /** 
+     * @return boolean true if the database has been found successfully
+     */
+    public boolean dbFound() { return dbFound; }
+    
+    /** 
+     *  Initializes the server; sets the port number to listen on, the number of client handlers to
+     *  make available at maximum, and the timeout between listening attempts. While the server
+     *  is running the handlers and timeout are changed at once, but the port cannot be.
+     *  @param thePort the port number
+     *  @param handlers number of handlers
+     *  @param time server timeout time
+     *  @return boolean indicating intialization success
+     *  @throws IllegalArgumentException if a parameter is invalid
+     */
+    public synchronized boolean init(int thePort, int handlers, int time) throws IllegalArgumentException {
+        if (!dbFound) return false;
+        if (serverEnabled && thePort != port) return false;    // The listener is not rebound while running
+        
+        setPort( thePort );
+        setNumHandlers( handlers );
+        setTimeout( time );
+        
+        return true;    // Initialization was successful - no exceptions, and the server was not running
+    }
+    
+    /** 
+     *  Creates the handlerPool for client connections and starts the server listening on the
+     *  specified port if it is not already running.
+     *  @throws IOException if there is a network error
+     */
+    public synchronized void startListening() throws IOException {
+        if ( serverEnabled == false && dbFound ) {  
+            lanes = new RequestScheduler[RequestScheduler.LANES.length];
+            int connections = 0;
+            for (int lane = 0; lane < lanes.length; lane++) {
+                int permits = getLaneHandlers(lane);
+                lanes[lane] = new RequestScheduler( permits );
+                lanes[lane].setQueueLimit( permits * queueDepth );
+                for (int c = 0; c < RequestScheduler.CLASSES.length; c++) {
+                    lanes[lane].setWeight( c, classWeights[c] );
+                    if (classCaps[c] > 0) lanes[lane].setCap( c, classCaps[c] );
+                }
+                connections += permits * (queueDepth + 1);
+            }
+            handlerPool = new ThreadPoolExecutor( connections, connections, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>() );
+
+            listener = new ServerSocket(port);    // Create the server socket
+            listener.setSoTimeout( timeout );
+            
+            terminated = false;
+            serverEnabled = true;
+            start();
+        }
+    }    
+    
+    /** 
+     *  Resizes the lanes and the handlerPool to the current handler counts and queue depth,
+     *  if the server is running.
+     */
+    private synchronized void resize() {
+        if (serverEnabled == false) return;
+        
+        int connections = 0;
+        for (int lane = 0; lane < lanes.length; lane++) {
+            int permits = getLaneHandlers(lane);
+            lanes[lane].setPermits( permits );
+            lanes[lane].setQueueLimit( permits * queueDepth );
+            connections += permits * (queueDepth + 1);
+        }
+        
+        // The core size may not pass the maximum size
+        if (connections > handlerPool.getMaximumPoolSize()) {
+            handlerPool.setMaximumPoolSize( connections );
+            handlerPool.setCorePoolSize( connections );
+        }
+        else {
+            handlerPool.setCorePoolSize( connections );
+            handlerPool.setMaximumPoolSize( connections );
+        }
+    }
+    
+    /** 
+     *  Applies settings given by name, each as "setting=value", in order. The settings
+     *  before an invalid one are applied.
+     *  @param settings the settings, which are among SETTINGS, or null to apply none
+     *  @return String[] every setting's current "setting=value"
+     *  @throws IllegalArgumentException if a setting is unknown or its value is invalid
+     */
+    public synchronized String[] configure(String[] settings) throws IllegalArgumentException {
+        if (settings != null) {
+            for (String setting : settings) {
+                int equals = setting.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Value '" + setting + "' is invalid. A setting must have the form setting=value.");
+                }
+                applySetting( setting.substring(0, equals).trim(), setting.substring(equals + 1).trim() );
+            }
+        }
+        return getSettings();
+    }
+    
+    /** 
+     *  @param name one of the SETTINGS
+     *  @param value the setting's value
+     *  @throws IllegalArgumentException if the setting is unknown or its value is invalid
+     */
+    private void applySetting(String name, String value) throws IllegalArgumentException {
+        if ( name.equals("handlers") ) setNumHandlers( Integer.parseInt(value) );
+        else if ( name.equals("readHandlers") ) setLaneHandlers( RequestScheduler.LANE_READ, Integer.parseInt(value) );
+        else if ( name.equals("writeHandlers") ) setLaneHandlers( RequestScheduler.LANE_WRITE, Integer.parseInt(value) );
+        else if ( name.equals("queueDepth") ) setQueueDepth( Integer.parseInt(value) );
+        else if ( name.equals("timeout") ) setTimeout( Integer.parseInt(value) );
+        else if ( name.equals("drainTimeout") ) setDrainTimeout( Long.parseLong(value) );
+        else if ( name.equals("sessionTTL") ) setSessionTTL( Long.parseLong(value) );
+        else if ( name.equals("bulkChunk") ) setBulkChunk( Integer.parseInt(value) );
+        else if ( name.equals("connectionRate") ) {
+            double[] rate = parseRate(value);
+            setConnectionRate( rate[0], rate[1] );
+        }
+        else {
+            for (int c = 0; c < RequestScheduler.CLASSES.length; c++) {
+                if ( name.equals( RequestScheduler.CLASSES[c].toLowerCase() + "Rate" ) ) {
+                    double[] rate = parseRate(value);
+                    setClassRate( c, rate[0], rate[1] );
+                    return;
+                }
+            }
+            throw new IllegalArgumentException("Unknown setting: " + name);
+        }
+    }
+    
+    /** 
+     *  @param value a rate, as "perSecond" or "perSecond/burst"; the burst is twice the
+     *  rate if not given
+     *  @return double[] the rate and the burst
+     *  @throws NumberFormatException if the rate or burst is not a number
+     */
+    private static double[] parseRate(String value) throws NumberFormatException {
+        int slash = value.indexOf('/');
+        if (slash >= 0) {
+            return new double[]{ Double.parseDouble( value.substring(0, slash).trim() ),
+                                 Double.parseDouble( value.substring(slash + 1).trim() ) };
+        }
+        double perSecond = Double.parseDouble(value);
+        return new double[]{ perSecond, Math.max(1, 2 * perSecond) };
+    }
+    
+    /** 
+     *  @return String[] every setting's current "setting=value", in the SETTINGS order
+     */
+    public synchronized String[] getSettings() {
+        ArrayList<String> settings = new ArrayList<String>();
+        settings.add( "handlers=" + numHandlers );
+        settings.add( "readHandlers=" + getLaneHandlers(RequestScheduler.LANE_READ) );
+        settings.add( "writeHandlers=" + getLaneHandlers(RequestScheduler.LANE_WRITE) );
+        settings.add( "queueDepth=" + queueDepth );
+        settings.add( "timeout=" + timeout );
+        settings.add( "drainTimeout=" + drainTimeout );
+        settings.add( "sessionTTL=" + sessions.getTTL() );
+        settings.add( "bulkChunk=" + bulkChunk );
+        settings.add( "connectionRate=" + limiter.getConnectionRate() );
+        for (int c = 0; c < RequestScheduler.CLASSES.length; c++) {
+            settings.add( RequestScheduler.CLASSES[c].toLowerCase() + "Rate=" + limiter.getRate(c) );
+        }
+        return settings.toArray( new String[settings.size()] );
+    }
+    
+    /** 
+     *  Terminates the server by setting serverEnabled to false. The server stops listening
+     *  and drains before it stops; isRunning is true until it has.
+     */
+    public synchronized void terminate() {
+        serverEnabled = false;
+    }      
+    
+    /** 
+     *  Sets the port number to listen on.
+     *  @param portNum the port to listen on
+     *  @throws IllegalArgumentException if the portNum is < 0
+     */
+    public void setPort( int portNum ) throws IllegalArgumentException {
+        if (portNum < 0) {
+            throw new IllegalArgumentException("Value '" + portNum + "'is invalid. The port number must be > 0.");
+        }
+        port = portNum; // Otherwise set the port
+    }
+    
+    /** 
+     *  Sets the number of client handlers available in the handlerPool. Takes effect at once.
+     *  @param num the number of handlers
+     *  @throws IllegalArgumentException if num < 1
+     */
+    public synchronized void setNumHandlers(int num) throws IllegalArgumentException {
+        if (num < 1) {
+            throw new IllegalArgumentException("Value '" + num + "' is invalid. The number of client handlers must be > 1.");
+        }
+        numHandlers = num; // Otherwise set the number of handlers
+        resize();
+    }
+    
+    /** 
+     *  Sets how many requests each lane may queue per handler, beyond which requests are
+     *  rejected. Each handler is given a connection thread for each request it may queue,
+     *  and one for the request it services. Takes effect at once.
+     *  @param depth the requests queued per handler
+     *  @throws IllegalArgumentException if depth < 0
+     */
+    public synchronized void setQueueDepth(int depth) throws IllegalArgumentException {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Value '" + depth + "' is invalid. The queue depth cannot be negative.");
+        }
+        queueDepth = depth;
+        resize();
+    }
+    
+    /** 
+     *  Sets how long requests already sent may take to finish once the server is
+     *  terminated, before they are abandoned.
+     *  @param ms the drain timeout, or 0 to abandon them at once
+     *  @throws IllegalArgumentException if ms < 0
+     */
+    public void setDrainTimeout(long ms) throws IllegalArgumentException {
+        if (ms < 0) {
+            throw new IllegalArgumentException("Value '" + ms + "' is invalid. The drain timeout cannot be negative.");
+        }
+        drainTimeout = ms;
+    }
+    
+    /** 
+     *  Sets how many guests a bulk load adds per commit. Takes effect from the next bulk load.
+     *  @param guests the guests per commit
+     *  @throws IllegalArgumentException if guests < 1
+     */
+    public void setBulkChunk(int guests) throws IllegalArgumentException {
+        if (guests < 1) {
+            throw new IllegalArgumentException("Value '" + guests + "' is invalid. A bulk load chunk must hold at least 1 guest.");
+        }
+        bulkChunk = guests;
+    }
+    
+    /** 
+     *  @return int the guests a bulk load adds per commit
+     */
+    public int getBulkChunk() { return bulkChunk; }
+    
+    /** 
+     *  @return String what the last drain abandoned and whether the database was closed,
+     *  or null if the server has not yet stopped
+     */
+    public String getDrainReport() { return drainReport; }
+    
+    /** 
+     *  Sets how long a session lasts unused before its guest must log in again.
+     *  @param ms the TTL
+     *  @throws IllegalArgumentException if ms < 1
+     */
+    public void setSessionTTL(long ms) throws IllegalArgumentException {
+        sessions.setTTL(ms);
+    }
+    
+    /** 
+     *  Sets the key session tokens are signed with, which servers sharing a database should
+     *  share. Tokens issued under the previous key are no longer accepted.
+     *  @param secret the key, at least SessionTable.MIN_KEY_LENGTH characters
+     *  @throws IllegalArgumentException if the key is too short
+     */
+    public void setSessionKey(String secret) throws IllegalArgumentException {
+        sessions.setKey(secret);
+    }
+    
+    /** 
+     *  @return SessionTable the sessions of the guests who have logged in
+     */
+    public SessionTable getSessions() { return sessions; }
+    
+    /** 
+     *  Sets how fast each client address may open connections. Takes effect at once.
+     *  @param perSecond the connections a second, or 0 for no limit
+     *  @param burst the most connections opened at once
+     *  @throws IllegalArgumentException if perSecond < 0 or burst < 1
+     */
+    public void setConnectionRate(double perSecond, double burst) throws IllegalArgumentException {
+        limiter.setConnectionRate(perSecond, burst);
+    }
+    
+    /** 
+     *  Sets how fast each client address may send requests of a class. Takes effect at once.
+     *  @param requestClass one of the RequestScheduler.CLASSES
+     *  @param perSecond the requests a second, or 0 for no limit
+     *  @param burst the most requests sent at once
+     *  @throws IllegalArgumentException if the class is unknown, perSecond < 0 or burst < 1
+     */
+    public void setClassRate(int requestClass, double perSecond, double burst) throws IllegalArgumentException {
+        checkClass(requestClass);
+        limiter.setRate(requestClass, perSecond, burst);
+    }
+    
+    /** 
+     *  @return RateLimiter the limits on each client address, with counters of the
+     *  connections and requests it has allowed and rejected
+     */
+    public RateLimiter getRateLimiter() { return limiter; }
+    
+    /** 
+     *  Sets the number of handlers of a lane. By default the read lane has numHandlers
+     *  and the write lane half as many. Takes effect at once.
+     *  @param lane one of the RequestScheduler.LANES
+     *  @param num the number of handlers, or 0 for the default
+     *  @throws IllegalArgumentException if the lane is unknown or num < 0
+     */
+    public synchronized void setLaneHandlers(int lane, int num) throws IllegalArgumentException {
+        checkLane(lane);
+        if (num < 0) {
+            throw new IllegalArgumentException("Value '" + num + "' is invalid. The number of lane handlers cannot be negative.");
+        }
+        laneHandlers[lane] = num;
+        resize();
+    }
+    
+    /** 
+     *  @param lane one of the RequestScheduler.LANES
+     *  @return int the number of handlers of the lane
+     *  @throws IllegalArgumentException if the lane is unknown
+     */
+    public int getLaneHandlers(int lane) throws IllegalArgumentException {
+        checkLane(lane);
+        if (laneHandlers[lane] > 0) return laneHandlers[lane];
+        return (lane == RequestScheduler.LANE_READ) ? numHandlers : Math.max(1, numHandlers / 2);
+    }
+    
+    /** 
+     *  @param lane one of the RequestScheduler.LANES
+     *  @return RequestScheduler the lane's scheduler, whose metrics show how saturated the
+     *  lane is, or null if the server has not started listening
+     *  @throws IllegalArgumentException if the lane is unknown
+     */
+    public RequestScheduler getLane(int lane) throws IllegalArgumentException {
+        checkLane(lane);
+        RequestScheduler[] current = lanes;
+        return (current == null) ? null : current[lane];
+    }
+    
+    /** 
+     *  @param lane the lane to check
+     *  @throws IllegalArgumentException if the lane is not one of the RequestScheduler.LANES
+     */
+    private static void checkLane(int lane) throws IllegalArgumentException {
+        if (lane < 0 || lane >= RequestScheduler.LANES.length) {
+            throw new IllegalArgumentException("Unknown lane: " + lane);
+        }
+    }
+    
+    /** 
+     *  Sets the share of the handlers a class of request gets while other classes are
+     *  waiting. Takes effect at once.
+     *  @param requestClass one of the RequestScheduler.CLASSES
+     *  @param weight the weight of the class
+     *  @throws IllegalArgumentException if the class is unknown or weight < 1
+     */
+    public synchronized void setClassWeight(int requestClass, int weight) throws IllegalArgumentException {
+        checkClass(requestClass);
+        if (weight < 1) {
+            throw new IllegalArgumentException("Value '" + weight + "' is invalid. A class weight must be at least 1.");
+        }
+        classWeights[requestClass] = weight;
+        if (serverEnabled) {
+            for (RequestScheduler lane : lanes) lane.setWeight( requestClass, weight );
+        }
+    }
+    
+    /** 
+     *  Sets the most requests of a class which are serviced at once. Takes effect at once.
+     *  @param requestClass one of the RequestScheduler.CLASSES
+     *  @param cap the cap, which is limited to the number of handlers of each lane
+     *  @throws IllegalArgumentException if the class is unknown or cap < 1
+     */
+    public synchronized void setClassCap(int requestClass, int cap) throws IllegalArgumentException {
+        checkClass(requestClass);
+        if (cap < 1) {
+            throw new IllegalArgumentException("Value '" + cap + "' is invalid. A class cap must be at least 1.");
+        }
+        classCaps[requestClass] = cap;
+        if (serverEnabled) {
+            for (RequestScheduler lane : lanes) lane.setCap( requestClass, cap );
+        }
+    }
+    
+    /** 
+     *  @param requestClass the class to check
+     *  @throws IllegalArgumentException if the class is not one of the RequestScheduler.CLASSES
+     */
+    private static void checkClass(int requestClass) throws IllegalArgumentException {
+        if (requestClass < 0 || requestClass >= RequestScheduler.CLASSES.length) {
+            throw new IllegalArgumentException("Unknown request class: " + requestClass);
+        }
+    }
+    
+    /** 
+     *  Sets the maximum amount of time the server will wait for a client connection before it
+     *  stops and checks to see if it should terminate. Takes effect from the next wait.
+     *  @param time the server timeout time
+     *  @throws IllegalArgumentException if time value is invalid
+     */
+    public synchronized void setTimeout(int time) throws IllegalArgumentException {
+        if (time < 10 || time > 200) {
+            throw new IllegalArgumentException("Value '" + time + "' is invalid. The minimum timeout is 100ms; the maximum is 10000ms");
+        }
+        timeout = time; // Otherwise set the timeout
+        
+        if (serverEnabled) {
+            try {
+                listener.setSoTimeout( timeout );
+            }
+            catch (SocketException timeoutEx) {
+                System.err.println("Listener timeout error: " + timeoutEx);
+            }
+        }
+    }
+}
@@ -0,0 +1,772 @@
+package guestbook.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import guestbook.shared.*;
+
+/**
+ *  The MappedDatabaseHandler stores guest records in a memory-mapped file of fixed-width
+ *  slots, with a memory-mapped hash index beside it (the record file name plus ".idx").
+ *  A lookup hashes the email, probes the index and reads one slot, and an update rewrites
+ *  its slot in place, so only the pages holding that guest are touched. Opening the handler
+ *  maps the files rather than reading them, and the heap does not grow with the guest count.
+ *      The record file is a header followed by the slots. Each slot holds a state byte,
+ *  the next free slot when it is free, and every GuestInfo field as a length and a fixed
+ *  area of chars sized to the Guest table's column widths (FIELD_LIMITS). A guest with a
+ *  longer field is rejected, as Oracle rejects it. Deleted slots are chained into a free
+ *  list which is reused before the file grows; the file doubles when it is full.
+ *      The index is an open addressing table of (hash, slot) pairs. It holds nothing that
+ *  cannot be found in the record file, and is rebuilt from it when it is missing, too full,
+ *  or was not closed cleanly. The record header's clean flag is cleared while the handler
+ *  is open; after a crash the free list and the index are rebuilt by scanning the slots.
+ *  With syncWrites each change is forced to disk before it returns. An update is written
+ *  in place, so a power failure during one can leave a mix of old and new fields.
+ *      Reads share a read lock and changes take the write lock. Admins, guest book entries
+ *  and server logs are held by a MemoryDatabaseHandler which snapshots them to a file
+ *  beside the record file (its name plus ".tables") every few seconds and on close, so a
+ *  crash loses those made since the last snapshot.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class MappedDatabaseHandler implements DatabaseHandler {
+
+    // Column widths of the Guest table, in GuestInfo constructor order:
+    // name, address, city, postcode, telephone, email, password
+    public static final int[] FIELD_LIMITS = DatabaseUtils.GUEST_COLUMN_WIDTHS;
+    private static final int EMAIL_FIELD = 5;
+
+    public static final int INITIAL_CAPACITY = 1024;   // slots in a new record file
+    private static final int EXPORT_BATCH = 256;        // slots read per read lock during an export
+
+    // Record file header
+    private static final int RECORD_MAGIC = 0x47424D31;    // "GBM1"
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0, H_SLOT_SIZE = 4, H_CAPACITY = 8, H_HIGH_WATER = 12,
+                             H_FREE_HEAD = 16, H_COUNT = 20, H_CLEAN = 24;
+
+    // Slot layout
+    private static final byte SLOT_FREE = 0, SLOT_USED = 1;
+    private static final int S_STATE = 0, S_NEXT_FREE = 1, S_FIELDS = 5;
+    private static final int[] FIELD_OFFSETS = new int[FIELD_LIMITS.length];
+    private static final int SLOT_SIZE;
+    static {
+        int offset = S_FIELDS;
+        for (int i = 0; i < FIELD_LIMITS.length; i++) {
+            FIELD_OFFSETS[i] = offset;
+            offset += 2 + 2 * FIELD_LIMITS[i];  // short length, then the chars
+        }
+        SLOT_SIZE = (offset + 7) & ~7;
+    }
+
+    // Index file
+    private static final int INDEX_MAGIC = 0x47424931;     // "GBI1"
+    private static final int INDEX_HEADER = 16;
+    private static final int I_MAGIC = 0, I_CAPACITY = 4, I_USED = 8, I_LIVE = 12;
+    private static final int ENTRY_SIZE = 8;                // int hash, int slot + 1
+    private static final int EMPTY = 0, DELETED = -1;
+
+    private final File RECORD_FILE;
+    private final File INDEX_FILE;
+    private final boolean syncWrites;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private MemoryDatabaseHandler tables;   // Holds the admins, entries and logs
+
+    private RandomAccessFile recordAccess;
+    private FileChannel recordChannel;
+    private MappedByteBuffer records;
+    private RandomAccessFile indexAccess;
+    private FileChannel indexChannel;
+    private MappedByteBuffer index;
+    private boolean recoveredCleanly = true;    // False if the record file was not closed cleanly
+    private boolean closed;
+
+    /**
+     *  Constructor which forces every change to disk.
+     *  @param recordFile the record file, created if it does not exist
+     *  @throws IOException if the files cannot be opened or are not guest files
+     */
+    public MappedDatabaseHandler(File recordFile) throws IOException {
+        this(recordFile, true);
+    }
+
+    /**
+     *  Constructor
+     *  @param recordFile the record file, created if it does not exist
+     *  @param sync true if each change should be forced to disk before it returns
+     *  @throws IOException if the files cannot be opened or are not guest files
+     */
+    public MappedDatabaseHandler(File recordFile, boolean sync) throws IOException {
+        if (recordFile == null) throw new NullPointerException("MappedDatabaseHandler constructor parameter is null");
+
+        RECORD_FILE = recordFile;
+        INDEX_FILE = new File(recordFile.getPath() + ".idx");
+        syncWrites = sync;
+        try {
+            tables = new MemoryDatabaseHandler( new File(recordFile.getPath() + ".tables"), MemoryDatabaseHandler.DEFAULT_SNAPSHOT_INTERVAL );
+        }
+        catch (ClassNotFoundException snapshotEx) {
+            throw new IOException("Not a guest tables file: " + recordFile.getPath() + ".tables", snapshotEx);
+        }
+
+        recordAccess = new RandomAccessFile(RECORD_FILE, "rw");
+        recordChannel = recordAccess.getChannel();
+        try {
+            openRecords();
+            openIndex();
+        }
+        catch (IOException ioEx) {
+            closeFiles();
+            tables.close();
+            throw ioEx;
+        }
+    }
+
+    /**
+     *  Maps the record file, creating its header if it is empty, and recovers the
+     *  free list if the file was not closed cleanly.
+     *  @throws IOException if the file cannot be mapped or is not a record file
+     */
+    private void openRecords() throws IOException {
+        if (recordAccess.length() == 0) {
+            recordAccess.setLength( HEADER_SIZE + (long)INITIAL_CAPACITY * SLOT_SIZE );
+            records = recordChannel.map( FileChannel.MapMode.READ_WRITE, 0, recordAccess.length() );
+            records.putInt(H_MAGIC, RECORD_MAGIC);
+            records.putInt(H_SLOT_SIZE, SLOT_SIZE);
+            records.putInt(H_CAPACITY, INITIAL_CAPACITY);
+            records.putInt(H_HIGH_WATER, 0);
+            records.putInt(H_FREE_HEAD, -1);
+            records.putInt(H_COUNT, 0);
+            records.put(H_CLEAN, (byte)1);
+        }
+        else {
+            if (recordAccess.length() < HEADER_SIZE) throw new IOException(RECORD_FILE + " is not a guest record file");
+            records = recordChannel.map( FileChannel.MapMode.READ_WRITE, 0, recordAccess.length() );
+            if (records.getInt(H_MAGIC) != RECORD_MAGIC) throw new IOException(RECORD_FILE + " is not a guest record file");
+            if (records.getInt(H_SLOT_SIZE) != SLOT_SIZE) throw new IOException(RECORD_FILE + " has an unsupported slot size");
+            if (HEADER_SIZE + (long)capacity() * SLOT_SIZE > recordAccess.length()) {
+                throw new IOException(RECORD_FILE + " is shorter than its header states");
+            }
+        }
+
+        if (records.get(H_CLEAN) == 0) rebuildFreeList();
+        records.put(H_CLEAN, (byte)0);
+        records.force();
+    }
+
+    /**
+     *  Maps the index file, rebuilding it unless it matches a cleanly closed record file.
+     *  @throws IOException if the file cannot be mapped
+     */
+    private void openIndex() throws IOException {
+        indexAccess = new RandomAccessFile(INDEX_FILE, "rw");
+        indexChannel = indexAccess.getChannel();
+
+        boolean valid = false;
+        if (indexAccess.length() >= INDEX_HEADER) {
+            index = indexChannel.map( FileChannel.MapMode.READ_WRITE, 0, indexAccess.length() );
+            int cap = index.getInt(I_CAPACITY);
+            valid = index.getInt(I_MAGIC) == INDEX_MAGIC
+                    && cap > 0 && (cap & (cap - 1)) == 0
+                    && INDEX_HEADER + (long)cap * ENTRY_SIZE == indexAccess.length()
+                    && index.getInt(I_LIVE) == count()
+                    && recoveredCleanly;
+        }
+        if (valid == false) rebuildIndex( indexCapacityFor( count() ) );
+    }
+
+    /**
+     *  Adds a record to the record file.
+     *  @param info the new info for a guest
+     *  @throws IllegalArgumentException if a field is wider than its column
+     *  @throws IOException if the record file cannot grow
+     */
+    public void addRecord(GuestInfo info) throws IOException {
+        String[] fields = fieldsOf(info);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if ( insert(fields) && syncWrites ) records.force();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *  Adds many records, taking the write lock and forcing the file once per chunk.
+     *  A guest with a field wider than its column is not added, and the others still are.
+     *  @param guests the guests to add
+     *  @param chunkSize the number of guests per chunk, at least 1
+     *  @return boolean[] true for each guest which was added; false if its email exists
+     *  or it is too wide
+     *  @throws IOException if the record file cannot grow
+     */
+    public boolean[] bulkAddRecords(List<GuestInfo> guests, int chunkSize) throws IOException {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be > 0.");
+        String[][] fields = new String[ guests.size() ][];
+        for (int i = 0; i < fields.length; i++) {
+            try {
+                fields[i] = fieldsOf( guests.get(i) );
+            }
+            catch (IllegalArgumentException tooWideEx) {
+                fields[i] = null;   // Rejected
+            }
+        }
+
+        boolean[] added = new boolean[ fields.length ];
+        for (int from = 0; from < fields.length; from += chunkSize) {
+            lock.writeLock().lock();
+            try {
+                checkOpen();
+                for (int i = from; i < Math.min(from + chunkSize, fields.length); i++) {
+                    if (fields[i] != null) added[i] = insert( fields[i] );
+                }
+                if (syncWrites) records.force();
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return added;
+    }
+
+    /**
+     *  Writes a guest to a free slot and indexes it. The write lock must be held.
+     *  @param fields the guest's fields in FIELD_LIMITS order
+     *  @return boolean false if the email is already stored
+     *  @throws IOException if the record file cannot grow
+     */
+    private boolean insert(String[] fields) throws IOException {
+        String email = fields[EMAIL_FIELD];
+        if (find(email) >= 0) return false;
+
+        int slot = allocateSlot();
+        writeFields(slot, fields);
+        records.put(slotOffset(slot) + S_STATE, SLOT_USED);
+        records.putInt(H_COUNT, count() + 1);
+        indexInsert(email, slot);
+        return true;
+    }
+
+    /**
+     *  Retrieves a record from the record file.
+     *  @param target a dummy GuestInfo containing the email of the record to retrieve
+     *  @return GuestInfo the record, null if none exists
+     */
+    public GuestInfo retrieveRecord(GuestInfo target) throws IOException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            int entry = find( target.getEmail() );
+            return entry < 0 ? null : readGuest( entrySlot(entry) );
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *  Updates the non-empty fields of a record in place.
+     *  @param updatedGuest a guest with updated info, but with the same email address as an existing record
+     *  @throws IllegalArgumentException if a field is wider than its column
+     */
+    public void updateRecord(GuestInfo updatedGuest) throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            int entry = find( updatedGuest.getEmail() );
+            if (entry < 0) return;
+
+            int slot = entrySlot(entry);
+            GuestInfo merged = DatabaseUtils.mergeUpdate( readGuest(slot), updatedGuest );
+            writeFields( slot, fieldsOf(merged) );
+            if (syncWrites) records.force();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     *  Deletes a record, returning its slot to the free list.
+     *  @param target a dummy GuestInfo containing the email of the record to delete
+     */
+    public void deleteRecord(GuestInfo target) throws IOException {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            int entry = find( target.getEmail() );
+            if (entry < 0) return;
+
+            int slot = entrySlot(entry);
+            int offset = slotOffset(slot);
+            records.put(offset + S_STATE, SLOT_FREE);
+            records.putInt(offset + S_NEXT_FREE, records.getInt(H_FREE_HEAD));
+            records.putInt(H_FREE_HEAD, slot);
+            records.putInt(H_COUNT, count() - 1);
+            indexRemove(entry);
+            if (syncWrites) records.force();
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+        tables.deleteRecord(target);
+    }
+
+    /**
+     *  Retrieves the records matching a set of criteria by scanning the slots.
+     *  @param criteria a GuestInfo object with its fields set to the search criteria
+     *  @return ArrayList<GuestInfo> of the matching records, ordered by name
+     */
+    public ArrayList<GuestInfo> retrieveUsers(GuestInfo criteria) throws IOException {
+        ArrayList<GuestInfo> users = new ArrayList<GuestInfo>();
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            int highWater = records.getInt(H_HIGH_WATER);
+            for (int slot = 0; slot < highWater; slot++) {
+                if (records.get(slotOffset(slot) + S_STATE) != SLOT_USED) continue;
+                GuestInfo g = readGuest(slot);
+                if (DatabaseUtils.matchesCriteria(criteria, g)) users.add(g);
+            }
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+        Collections.sort(users, DatabaseUtils.BY_NAME);
+        return users;
+    }
+
+    /**
+     *  @param email the email to check
+     *  @return boolean true if a guest with the email exists
+     */
+    public boolean userExists(String email) throws IOException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return find(email) >= 0;
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *  @param email the email to check
+     *  @return boolean true if the email belongs to an admin
+     */
+    public boolean adminExists(String email) {
+        return tables.adminExists(email);
+    }
+
+    /**
+     *  Gives an existing guest admin rights.
+     *  @param email the email of the guest
+     *  @return boolean true if the guest exists and is now an admin
+     */
+    public boolean addAdmin(String email) throws IOException {
+        if (userExists(email) == false) return false;
+        tables.addRecord( new GuestInfo(email) );
+        return tables.addAdmin(email);
+    }
+
+    /**
+     *  @param email the email to check for
+     *  @param pass the password for the email
+     *  @return boolean indicating if email and pass are valid
+     */
+    public boolean validLogin(String email, String pass) throws IOException {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            int entry = find(email);
+            return entry >= 0 && readField( entrySlot(entry), FIELD_LIMITS.length - 1 ).equals(pass);
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     *  @param log the GuestLog to add
+     */
+    public void addGuestLog(GuestLog log) {
+        tables.addGuestLog(log);
+    }
+
+    /**
+     *  @param entry the GuestEntry to add
+     */
+    public void addGuestEntry(GuestEntry entry) {
+        tables.addGuestEntry(entry);
+    }
+
+    /**
+     *  @return ArrayList<GuestLog> of the logs, newest first
+     */
+    public ArrayList<GuestLog> getGuestLogs() {
+        return tables.getGuestLogs();
+    }
+
+    /**
+     *  @return ArrayList<GuestEntry> of the entries, newest first
+     */
+    public ArrayList<GuestEntry> getGuestEntries() {
+        return tables.getGuestEntries();
+    }
+
+    /**
+     *  @return long the maximum GEID
+     */
+    public long getMaxGEID() {
+        return tables.getMaxGEID();
+    }
+
+    /**
+     *  @return long the maximum GLID
+     */
+    public long getMaxGLID() {
+        return tables.getMaxGLID();
+    }
+
+    /**
+     *  @return long a new GEID, never handed out before
+     */
+    public long nextGEID() {
+        return tables.nextGEID();
+    }
+
+    /**
+     *  @return long a new GLID, never handed out before
+     */
+    public long nextGLID() {
+        return tables.nextGLID();
+    }
+
+    /**
+     *  Writes every guest. The slots are read in batches of EXPORT_BATCH under the read
+     *  lock, and each batch is written out after the lock is released, so a slow client
+     *  does not hold up changes.
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuests(ExportWriter out) throws IOException {
+        ArrayList<GuestInfo> batch = new ArrayList<GuestInfo>(EXPORT_BATCH);
+        int slot = 0;
+        boolean more = true;
+
+        while (more) {
+            lock.readLock().lock();
+            try {
+                checkOpen();
+                int highWater = records.getInt(H_HIGH_WATER);
+                int end = Math.min(slot + EXPORT_BATCH, highWater);
+                for (; slot < end; slot++) {
+                    if (records.get(slotOffset(slot) + S_STATE) == SLOT_USED) batch.add( readGuest(slot) );
+                }
+                more = slot < highWater;
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+
+            for (GuestInfo g : batch) out.writeGuest(g);
+            batch.clear();
+        }
+    }
+
+    /**
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuestEntries(ExportWriter out) throws IOException {
+        tables.exportGuestEntries(out);
+    }
+
+    /**
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuestLogs(ExportWriter out) throws IOException {
+        tables.exportGuestLogs(out);
+    }
+
+    /**
+     *  Nothing to hold; every call already shares the same mapped files.
+     */
+    public void beginBatch() {}
+
+    /**
+     *  Nothing to release.
+     */
+    public void endBatch() {}
+
+    /**
+     *  Forces both files to disk, marks the record file as cleanly closed and closes them,
+     *  then snapshots the admins, entries and logs.
+     *  @throws IOException if the files cannot be closed or the snapshot cannot be written
+     */
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            if (closed) return;
+            index.force();
+            records.force();
+            records.put(H_CLEAN, (byte)1);
+            records.force();
+            closed = true;
+        }
+        finally {
+            closeFiles();
+            lock.writeLock().unlock();
+            tables.close();
+        }
+    }
+
+    /**
+     *  Closes the files without marking them clean.
+     */
+    private void closeFiles() {
+        try { recordChannel.close(); } catch (IOException ioEx) { }
+        try { if (indexChannel != null) indexChannel.close(); } catch (IOException ioEx) { }
+        closed = true;
+    }
+
+    /**
+     *  @throws IOException if the handler has been closed
+     */
+    private void checkOpen() throws IOException {
+        if (closed) throw new IOException("MappedDatabaseHandler is closed");
+    }
+
+    /**
+     *  @return int the number of guests stored
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count();
+        }
+        finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---- Record file ----
+
+    private int capacity() { return records.getInt(H_CAPACITY); }
+    private int count() { return records.getInt(H_COUNT); }
+    private int slotOffset(int slot) { return HEADER_SIZE + slot * SLOT_SIZE; }
+
+    /**
+     *  Takes a slot from the free list, or the next unused slot, growing the file if needed.
+     *  @return int the slot
+     *  @throws IOException if the file cannot grow
+     */
+    private int allocateSlot() throws IOException {
+        int free = records.getInt(H_FREE_HEAD);
+        if (free >= 0) {
+            records.putInt(H_FREE_HEAD, records.getInt(slotOffset(free) + S_NEXT_FREE));
+            return free;
+        }
+
+        int slot = records.getInt(H_HIGH_WATER);
+        if (slot == capacity()) growRecords();
+        records.putInt(H_HIGH_WATER, slot + 1);
+        return slot;
+    }
+
+    /**
+     *  Doubles the number of slots in the record file and maps it again.
+     *  @throws IOException if the file cannot grow
+     */
+    private void growRecords() throws IOException {
+        int newCapacity = capacity() * 2;
+        long length = HEADER_SIZE + (long)newCapacity * SLOT_SIZE;
+        if (length > Integer.MAX_VALUE) throw new IOException(RECORD_FILE + " is full");
+
+        records.force();
+        recordAccess.setLength(length);
+        records = recordChannel.map( FileChannel.MapMode.READ_WRITE, 0, length );
+        records.putInt(H_CAPACITY, newCapacity);
+    }
+
+    /**
+     *  Rebuilds the free list and guest count from the slot states, after a crash.
+     */
+    private void rebuildFreeList() {
+        int highWater = records.getInt(H_HIGH_WATER);
+        int freeHead = -1;
+        int count = 0;
+        for (int slot = highWater - 1; slot >= 0; slot--) {
+            int offset = slotOffset(slot);
+            if (records.get(offset + S_STATE) == SLOT_USED) count++;
+            else {
+                records.putInt(offset + S_NEXT_FREE, freeHead);
+                freeHead = slot;
+            }
+        }
+        records.putInt(H_FREE_HEAD, freeHead);
+        records.putInt(H_COUNT, count);
+        recoveredCleanly = false;
+    }
+
+    /**
+     *  @param info the guest
+     *  @return String[] the guest's fields in FIELD_LIMITS order
+     *  @throws IllegalArgumentException if a field is wider than its column
+     */
+    private static String[] fieldsOf(GuestInfo info) {
+        String tooWide = DatabaseUtils.checkWidths(info);
+        if (tooWide != null) throw new IllegalArgumentException(tooWide);
+        return new String[]{ info.getName(), info.getAddress(), info.getCity(), info.getPostcode(),
+                             info.getTelephone(), info.getEmail(), info.getPassword() };
+    }
+
+    /**
+     *  @param slot the slot to write to
+     *  @param fields the fields in FIELD_LIMITS order
+     */
+    private void writeFields(int slot, String[] fields) {
+        int base = slotOffset(slot);
+        for (int i = 0; i < fields.length; i++) {
+            int offset = base + FIELD_OFFSETS[i];
+            String value = fields[i];
+            records.putShort(offset, (short)value.length());
+            for (int c = 0; c < value.length(); c++) records.putChar(offset + 2 + 2 * c, value.charAt(c));
+        }
+    }
+
+    /**
+     *  @param slot the slot to read
+     *  @param field the index of the field in FIELD_LIMITS
+     *  @return String the field's value
+     */
+    private String readField(int slot, int field) {
+        int offset = slotOffset(slot) + FIELD_OFFSETS[field];
+        char[] chars = new char[ records.getShort(offset) ];
+        for (int c = 0; c < chars.length; c++) chars[c] = records.getChar(offset + 2 + 2 * c);
+        return new String(chars);
+    }
+
+    /**
+     *  @param slot the slot to read
+     *  @return GuestInfo the guest stored in the slot
+     */
+    private GuestInfo readGuest(int slot) {
+        return new GuestInfo( readField(slot, 0), readField(slot, 1), readField(slot, 2), readField(slot, 3),
+                              readField(slot, 4), readField(slot, 5), readField(slot, 6) );
+    }
+
+    // ---- Index file ----
+
+    private int indexCapacity() { return index.getInt(I_CAPACITY); }
+    private int entryOffset(int entry) { return INDEX_HEADER + entry * ENTRY_SIZE; }
+    private int entrySlot(int entry) { return index.getInt(entryOffset(entry) + 4) - 1; }
+
+    /**
+     *  @param email the email to hash
+     *  @return int the hash
+     */
+    private static int hash(String email) {
+        int h = email.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     *  @param live the number of guests to index
+     *  @return int a power of two table size that keeps the index at most half full
+     */
+    private static int indexCapacityFor(int live) {
+        int cap = 1024;
+        while (cap < live * 2) cap *= 2;
+        return cap;
+    }
+
+    /**
+     *  @param email the email to look up
+     *  @return int the index entry holding the email, -1 if it is not stored
+     */
+    private int find(String email) {
+        int h = hash(email);
+        int mask = indexCapacity() - 1;
+        for (int entry = h & mask; ; entry = (entry + 1) & mask) {
+            int offset = entryOffset(entry);
+            int ref = index.getInt(offset + 4);
+            if (ref == EMPTY) return -1;
+            if (ref != DELETED && index.getInt(offset) == h && readField(ref - 1, EMAIL_FIELD).equals(email)) return entry;
+        }
+    }
+
+    /**
+     *  Adds an email which is not yet indexed, rebuilding the index first if it is too full.
+     *  @param email the guest's email
+     *  @param slot the guest's slot
+     *  @throws IOException if the index cannot be rebuilt
+     */
+    private void indexInsert(String email, int slot) throws IOException {
+        int used = index.getInt(I_USED);
+        if ( (used + 1) * 4L > indexCapacity() * 3L ) {
+            rebuildIndex( indexCapacityFor( count() ) );   // count() already includes this guest
+            return;
+        }
+
+        int h = hash(email);
+        int mask = indexCapacity() - 1;
+        int entry = h & mask;
+        while (index.getInt(entryOffset(entry) + 4) > 0) entry = (entry + 1) & mask;
+
+        if (index.getInt(entryOffset(entry) + 4) == EMPTY) index.putInt(I_USED, used + 1);
+        index.putInt(entryOffset(entry), h);
+        index.putInt(entryOffset(entry) + 4, slot + 1);
+        index.putInt(I_LIVE, index.getInt(I_LIVE) + 1);
+    }
+
+    /**
+     *  @param entry the index entry to mark deleted
+     */
+    private void indexRemove(int entry) {
+        index.putInt(entryOffset(entry) + 4, DELETED);
+        index.putInt(I_LIVE, index.getInt(I_LIVE) - 1);
+    }
+
+    /**
+     *  Empties the index file, resizes it and indexes every used slot.
+     *  @param cap the new number of index entries, a power of two
+     *  @throws IOException if the index file cannot be resized
+     */
+    private void rebuildIndex(int cap) throws IOException {
+        long length = INDEX_HEADER + (long)cap * ENTRY_SIZE;
+        indexAccess.setLength(0);
+        indexAccess.setLength(length);
+        index = indexChannel.map( FileChannel.MapMode.READ_WRITE, 0, length );
+        index.putInt(I_MAGIC, INDEX_MAGIC);
+        index.putInt(I_CAPACITY, cap);
+
+        int mask = cap - 1;
+        int live = 0;
+        int highWater = records.getInt(H_HIGH_WATER);
+        for (int slot = 0; slot < highWater; slot++) {
+            if (records.get(slotOffset(slot) + S_STATE) != SLOT_USED) continue;
+            int h = hash( readField(slot, EMAIL_FIELD) );
+            int entry = h & mask;
+            while (index.getInt(entryOffset(entry) + 4) != EMPTY) entry = (entry + 1) & mask;
+            index.putInt(entryOffset(entry), h);
+            index.putInt(entryOffset(entry) + 4, slot + 1);
+            live++;
+        }
+        index.putInt(I_USED, live);
+        index.putInt(I_LIVE, live);
+    }
+}
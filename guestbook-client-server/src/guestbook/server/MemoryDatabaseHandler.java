@@ -0,0 +1,401 @@
+package guestbook.server;
+
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+import java.io.FileOutputStream;
+import java.io.FileInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.File;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import guestbook.shared.*;
+
+/**
+ *  The MemoryDatabaseHandler keeps every table in concurrent in-memory structures:
+ *  guests and admins are keyed by email, while entries and logs are kept in
+ *  skip lists keyed by their numeric ID so that the newest records come first.
+ *      Optionally the handler writes a snapshot of its contents to a file at a fixed
+ *  interval (and on close), and reloads that snapshot when it is created. Without a
+ *  snapshot file the data lives only as long as the server.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class MemoryDatabaseHandler implements DatabaseHandler {
+
+    public static final long DEFAULT_SNAPSHOT_INTERVAL = 30000;    // ms
+
+    private final ConcurrentHashMap<String, GuestInfo> guests;
+    private final Set<String> admins;
+    private final ConcurrentSkipListMap<Long, GuestEntry> entries;
+    private final ConcurrentSkipListMap<Long, GuestLog> logs;
+    private final AtomicLong lastGEID = new AtomicLong(0);     // Highest GEID allocated or stored
+    private final AtomicLong lastGLID = new AtomicLong(0);     // Highest GLID allocated or stored
+
+    private final File snapshotFile;            // null if snapshots are disabled
+    private final AtomicBoolean dirty;          // true if changed since the last snapshot
+    private ScheduledExecutorService snapshotter;
+
+    /**
+     *  Creates an empty handler without snapshots.
+     */
+    public MemoryDatabaseHandler() {
+        guests = new ConcurrentHashMap<String, GuestInfo>();
+        admins = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+        entries = new ConcurrentSkipListMap<Long, GuestEntry>();
+        logs = new ConcurrentSkipListMap<Long, GuestLog>();
+        dirty = new AtomicBoolean(false);
+        snapshotFile = null;
+    }
+
+    /**
+     *  Creates a handler which loads its contents from the snapshot file, if it exists,
+     *  and snapshots back to it every interval milliseconds.
+     *  @param snapshot the file to load from and save to
+     *  @param interval the time between snapshots in milliseconds
+     *  @throws IOException if the snapshot cannot be read
+     *  @throws ClassNotFoundException if the snapshot file is not a valid snapshot
+     */
+    public MemoryDatabaseHandler(File snapshot, long interval) throws IOException, ClassNotFoundException {
+        if (snapshot == null) throw new NullPointerException("MemoryDatabaseHandler snapshot file is null");
+        if (interval < 1) throw new IllegalArgumentException("Snapshot interval must be > 0.");
+
+        guests = new ConcurrentHashMap<String, GuestInfo>();
+        admins = Collections.newSetFromMap( new ConcurrentHashMap<String, Boolean>() );
+        entries = new ConcurrentSkipListMap<Long, GuestEntry>();
+        logs = new ConcurrentSkipListMap<Long, GuestLog>();
+        dirty = new AtomicBoolean(false);
+        snapshotFile = snapshot;
+
+        if (snapshotFile.exists() && snapshotFile.length() > 0) loadSnapshot();
+
+        snapshotter = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "MemoryDatabaseHandler snapshot");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        snapshotter.scheduleWithFixedDelay( new Runnable() {
+            public void run() {
+                try { saveSnapshot(); }
+                catch (IOException ioEx) {
+                    System.err.println("Snapshot error: " + ioEx);
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS );
+    }
+
+    /**
+     *  Adds a guest record.
+     *  @param info the new guest
+     */
+    public void addRecord(GuestInfo info) {
+        if (guests.putIfAbsent(info.getEmail(), info) == null) dirty.set(true);
+    }
+
+    /**
+     *  Adds many guest records. Every change is already in memory, so there is
+     *  nothing to commit between chunks.
+     *  @param newGuests the guests to add
+     *  @param chunkSize the number of guests per commit, at least 1
+     *  @return boolean[] true for each guest which was added
+     */
+    public boolean[] bulkAddRecords(List<GuestInfo> newGuests, int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be > 0.");
+        boolean[] added = new boolean[ newGuests.size() ];
+        for (int i = 0; i < added.length; i++) {
+            GuestInfo g = newGuests.get(i);
+            added[i] = guests.putIfAbsent( g.getEmail(), g ) == null;
+        }
+        dirty.set(true);
+        return added;
+    }
+
+    /**
+     *  Retrieves a guest record.
+     *  @param target a dummy GuestInfo containing the email of the record to retrieve
+     *  @return GuestInfo the record, null if none exists
+     */
+    public GuestInfo retrieveRecord(GuestInfo target) {
+        return guests.get( target.getEmail() );
+    }
+
+    /**
+     *  Updates the non-empty fields of a guest record.
+     *  @param updatedGuest the guest with updated info
+     */
+    public void updateRecord(GuestInfo updatedGuest) {
+        String email = updatedGuest.getEmail();
+        GuestInfo existing;
+
+        do {
+            existing = guests.get(email);
+            if (existing == null) return;
+        } while ( guests.replace(email, existing, DatabaseUtils.mergeUpdate(existing, updatedGuest)) == false );
+
+        dirty.set(true);
+    }
+
+    /**
+     *  Deletes a guest record, and the admin rights attached to it.
+     *  @param target a dummy GuestInfo containing the email of the record to delete
+     */
+    public void deleteRecord(GuestInfo target) {
+        if (guests.remove( target.getEmail() ) != null) dirty.set(true);
+        admins.remove( target.getEmail() );
+    }
+
+    /**
+     *  @param criteria a GuestInfo object with its fields set to the search criteria
+     *  @return ArrayList<GuestInfo> of the matching records, ordered by name
+     */
+    public ArrayList<GuestInfo> retrieveUsers(GuestInfo criteria) {
+        ArrayList<GuestInfo> users = new ArrayList<GuestInfo>();
+        for (GuestInfo g : guests.values()) {
+            if (DatabaseUtils.matchesCriteria(criteria, g)) users.add(g);
+        }
+        Collections.sort(users, DatabaseUtils.BY_NAME);
+        return users;
+    }
+
+    /**
+     *  @param email the email to check
+     *  @return boolean true if a guest with the email exists
+     */
+    public boolean userExists(String email) {
+        return guests.containsKey(email);
+    }
+
+    /**
+     *  @param email the email to check
+     *  @return boolean true if the email belongs to an admin
+     */
+    public boolean adminExists(String email) {
+        return admins.contains(email);
+    }
+
+    /**
+     *  Gives an existing guest admin rights.
+     *  @param email the email of the guest
+     *  @return boolean true if the guest exists and is now an admin
+     */
+    public boolean addAdmin(String email) {
+        if (guests.containsKey(email) == false) return false;
+        if (admins.add(email)) dirty.set(true);
+        return true;
+    }
+
+    /**
+     *  @param email the email to check for
+     *  @param pass the password for the email
+     *  @return boolean indicating if email and pass are valid
+     */
+    public boolean validLogin(String email, String pass) {
+        GuestInfo g = guests.get(email);
+        return g != null && g.getPassword().equals(pass);
+    }
+
+    /**
+     *  @param log the GuestLog to add
+     *  @throws IllegalArgumentException if a log with its GLID is already stored
+     */
+    public void addGuestLog(GuestLog log) throws IllegalArgumentException {
+        if (logs.putIfAbsent( log.getGLID(), log ) != null) {
+            throw new IllegalArgumentException("Value '" + log.getGLID() + "' is invalid. A log with this GLID already exists.");
+        }
+        lastGLID.accumulateAndGet( log.getGLID(), Math::max );
+        dirty.set(true);
+    }
+
+    /**
+     *  @param entry the GuestEntry to add
+     *  @throws IllegalArgumentException if an entry with its GEID is already stored
+     */
+    public void addGuestEntry(GuestEntry entry) throws IllegalArgumentException {
+        if (entries.putIfAbsent( entry.getGEID(), entry ) != null) {
+            throw new IllegalArgumentException("Value '" + entry.getGEID() + "' is invalid. An entry with this GEID already exists.");
+        }
+        lastGEID.accumulateAndGet( entry.getGEID(), Math::max );
+        dirty.set(true);
+    }
+
+    /**
+     *  @return ArrayList<GuestLog> of the logs, newest first
+     */
+    public ArrayList<GuestLog> getGuestLogs() {
+        return new ArrayList<GuestLog>( logs.descendingMap().values() );
+    }
+
+    /**
+     *  @return ArrayList<GuestEntry> of the entries, newest first
+     */
+    public ArrayList<GuestEntry> getGuestEntries() {
+        return new ArrayList<GuestEntry>( entries.descendingMap().values() );
+    }
+
+    /**
+     *  @return long the maximum GEID, 0 if there are no entries
+     */
+    public long getMaxGEID() {
+        return entries.isEmpty() ? 0 : entries.lastKey();
+    }
+
+    /**
+     *  @return long the maximum GLID, 0 if there are no logs
+     */
+    public long getMaxGLID() {
+        return logs.isEmpty() ? 0 : logs.lastKey();
+    }
+
+    /**
+     *  @return long a GEID above every one allocated or stored
+     */
+    public long nextGEID() {
+        return lastGEID.incrementAndGet();
+    }
+
+    /**
+     *  @return long a GLID above every one allocated or stored
+     */
+    public long nextGLID() {
+        return lastGLID.incrementAndGet();
+    }
+
+    /**
+     *  Writes every guest, iterating the map directly.
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuests(ExportWriter out) throws IOException {
+        for (GuestInfo g : guests.values()) out.writeGuest(g);
+    }
+
+    /**
+     *  Writes every entry, oldest first.
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuestEntries(ExportWriter out) throws IOException {
+        for (GuestEntry e : entries.values()) out.writeEntry(e);
+    }
+
+    /**
+     *  Writes every log, oldest first.
+     *  @param out the export to write to
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuestLogs(ExportWriter out) throws IOException {
+        for (GuestLog l : logs.values()) out.writeLog(l);
+    }
+
+    /**
+     *  Nothing to hold; every call already shares the same tables.
+     */
+    public void beginBatch() {}
+
+    /**
+     *  Nothing to release.
+     */
+    public void endBatch() {}
+
+    /**
+     *  Stops the snapshot thread and writes a final snapshot.
+     *  @throws IOException if the snapshot cannot be written
+     */
+    public void close() throws IOException {
+        if (snapshotter == null) return;
+        snapshotter.shutdown();
+        saveSnapshot();
+    }
+
+    /**
+     *  Writes the handler's contents to a temporary file and renames it over the
+     *  snapshot file, so a crash leaves the previous snapshot intact.
+     *  @throws IOException if the snapshot cannot be written
+     */
+    private synchronized void saveSnapshot() throws IOException {
+        if (dirty.getAndSet(false) == false) return;
+
+        Snapshot snap = new Snapshot();
+        snap.guests = new ArrayList<GuestInfo>( guests.values() );
+        snap.admins = new ArrayList<String>( admins );
+        snap.entries = new ArrayList<GuestEntry>( entries.values() );
+        snap.logs = new ArrayList<GuestLog>( logs.values() );
+
+        File temp = new File( snapshotFile.getPath() + ".tmp" );
+        FileOutputStream fileOut = new FileOutputStream(temp);
+        ObjectOutputStream out = new ObjectOutputStream( new BufferedOutputStream(fileOut) );
+        try {
+            out.writeObject(snap);
+            out.flush();
+            fileOut.getChannel().force(true);
+        }
+        catch (IOException ioEx) {
+            dirty.set(true);
+            throw ioEx;
+        }
+        finally {
+            out.close();
+        }
+
+        try {
+            Files.move( temp.toPath(), snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        }
+        catch (IOException ioEx) {
+            dirty.set(true);
+            throw ioEx;
+        }
+    }
+
+    /**
+     *  Loads the handler's contents from the snapshot file.
+     *  @throws IOException if the snapshot cannot be read
+     *  @throws ClassNotFoundException if the file is not a valid snapshot
+     */
+    private void loadSnapshot() throws IOException, ClassNotFoundException {
+        ObjectInputStream in = new ObjectInputStream( new BufferedInputStream( new FileInputStream(snapshotFile) ) );
+        Snapshot snap;
+        try {
+            snap = (Snapshot)in.readObject();
+        }
+        finally {
+            in.close();
+        }
+
+        for (GuestInfo g : snap.guests) guests.put( g.getEmail(), g );
+        admins.addAll( snap.admins );
+        for (GuestEntry e : snap.entries) entries.put( e.getGEID(), e );
+        for (GuestLog l : snap.logs) logs.put( l.getGLID(), l );
+        lastGEID.set( getMaxGEID() );
+        lastGLID.set( getMaxGLID() );
+    }
+
+    /**
+     *  The serialized form of a MemoryDatabaseHandler's contents.
+     */
+    private static class Snapshot implements Serializable {
+        private static final long serialVersionUID = 20110408; // yyyy/mm/dd
+        ArrayList<GuestInfo> guests;
+        ArrayList<String> admins;
+        ArrayList<GuestEntry> entries;
+        ArrayList<GuestLog> logs;
+    }
+}
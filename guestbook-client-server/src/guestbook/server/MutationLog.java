@@ -0,0 +1,409 @@
+package guestbook.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import guestbook.shared.*;
+
+/**
+ *  A MutationLog is an append-only file of changes made to an AddressBook since
+ *  its last snapshot. Every change is stored as the resulting state of one guest
+ *  (a PUT of the whole record, or a DELETE of its email), so replaying the log over
+ *  a snapshot is safe even if some of the changes are already in the snapshot.
+ *      Each record is framed as [length][payload][CRC32]. A record cut short by a
+ *  crash fails its length or checksum, and is dropped from the log during replay.
+ *      How often the log is forced to disk is set by its sync policy. With SYNC_GROUP,
+ *  appends are only buffered, and a flusher thread writes and forces them in one batch
+ *  once groupBatch records are pending or groupWindow milliseconds have passed since the
+ *  first of them, whichever comes first. Every append returns a sequence number that
+ *  can be passed to awaitSync() by callers which must wait until their change is on disk;
+ *  a waiting caller ends the window early, and callers who arrive while a force is in
+ *  progress are flushed together in the next one.
+ *      If the flusher fails to force the log, the log is failed: the flusher stops, and
+ *  every waiting and later caller of awaitSync or an append gets the flusher's error,
+ *  so that a write is never reported durable when it is not. getFailure returns it.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class MutationLog {
+
+    // Sync policies
+    public static final int SYNC_EVERY_WRITE = 0;  // force to disk before each append returns
+    public static final int SYNC_GROUP = 1;        // force to disk in batches from a flusher thread
+    public static final int SYNC_NONE = 2;         // leave flushing to the operating system
+
+    public static final long DEFAULT_GROUP_WINDOW = 20;    // ms
+    public static final int DEFAULT_GROUP_BATCH = 64;      // records
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    private static final int MAX_RECORD = 1 << 16;  // Longer lengths can only come from a torn record
+
+    private final File logFile;
+    private final int syncPolicy;
+
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private int records;    // Number of records appended since the last reset
+    private long appended;  // Sequence number of the last record appended
+    private long synced;    // Sequence number of the last record known to be on disk
+
+    private long groupWindow;   // SYNC_GROUP: longest time a record waits to be flushed
+    private int groupBatch;     // SYNC_GROUP: pending records which trigger an early flush
+    private Thread flusher;     // SYNC_GROUP: performs the flushes
+    private int waiters;        // SYNC_GROUP: callers blocked in awaitSync
+    private IOException failure;    // SYNC_GROUP: why the flusher stopped, or null
+
+    /**
+     *  Creates a log on the given file. replay() must be called before any appends;
+     *  it removes a torn record from the end of the file and opens the log.
+     *  A SYNC_GROUP log uses DEFAULT_GROUP_WINDOW and DEFAULT_GROUP_BATCH.
+     *  @param file the log file, created if it does not exist
+     *  @param policy one of the sync policies
+     *  @throws IllegalArgumentException if the policy is invalid
+     */
+    public MutationLog(File file, int policy) throws IllegalArgumentException {
+        this(file, policy, DEFAULT_GROUP_WINDOW, DEFAULT_GROUP_BATCH);
+    }
+
+    /**
+     *  Creates a log on the given file, with the flush triggers used by SYNC_GROUP.
+     *  @param file the log file, created if it does not exist
+     *  @param policy one of the sync policies
+     *  @param window the longest time in ms a SYNC_GROUP record waits to be flushed
+     *  @param batch the number of pending SYNC_GROUP records which trigger a flush
+     *  @throws IllegalArgumentException if a parameter is invalid
+     */
+    public MutationLog(File file, int policy, long window, int batch) throws IllegalArgumentException {
+        if (policy < SYNC_EVERY_WRITE || policy > SYNC_NONE) {
+            throw new IllegalArgumentException("Invalid sync policy: " + policy);
+        }
+        if (window < 1) throw new IllegalArgumentException("Group commit window must be > 0.");
+        if (batch < 1) throw new IllegalArgumentException("Group commit batch must be > 0.");
+
+        logFile = file;
+        syncPolicy = policy;
+        groupWindow = window;
+        groupBatch = batch;
+        records = 0;
+        appended = 0;
+        synced = 0;
+    }
+
+    /**
+     *  Applies every complete record in the log to the book, then truncates any torn
+     *  record from the end of the file and opens the log for appending.
+     *  @param book the book to apply the records to
+     *  @return int the number of records applied
+     *  @throws IOException if the log cannot be read
+     */
+    public synchronized int replay(AddressBook book) throws IOException {
+        long goodLength = 0;
+        int applied = 0;
+
+        if (logFile.exists()) {
+            DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream(logFile) ) );
+            CRC32 crc = new CRC32();
+
+            try {
+                while (true) {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD) break;
+
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    long checksum = in.readLong();
+
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if (crc.getValue() != checksum) break;
+
+                    apply(book, payload);
+                    applied++;
+                    goodLength += 4 + length + 8;
+                }
+            }
+            catch (EOFException tornRecord) {
+                // A partial record at the end of the log; everything before it was applied
+            }
+            finally {
+                in.close();
+            }
+
+            if (goodLength < logFile.length()) truncate(goodLength);
+        }
+
+        records = applied;
+        open();
+
+        if (syncPolicy == SYNC_GROUP && flusher == null) {
+            flusher = new Thread( new Runnable() {
+                public void run() { flushLoop(); }
+            }, "MutationLog group commit" );
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+        return applied;
+    }
+
+    /**
+     *  Appends the new state of a guest record.
+     *  @param guest the record as it now stands
+     *  @return long the sequence number of the record
+     *  @throws IOException if the record cannot be written
+     */
+    public long appendPut(GuestInfo guest) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream payload = new DataOutputStream(bytes);
+
+        payload.writeByte(OP_PUT);
+        payload.writeUTF(guest.getEmail());
+        payload.writeUTF(guest.getName());
+        payload.writeUTF(guest.getAddress());
+        payload.writeUTF(guest.getCity());
+        payload.writeUTF(guest.getPostcode());
+        payload.writeUTF(guest.getTelephone());
+        payload.writeUTF(guest.getPassword());
+
+        return append( bytes.toByteArray() );
+    }
+
+    /**
+     *  Appends the deletion of a guest record.
+     *  @param email the email of the deleted record
+     *  @return long the sequence number of the record
+     *  @throws IOException if the record cannot be written
+     */
+    public long appendDelete(String email) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream payload = new DataOutputStream(bytes);
+
+        payload.writeByte(OP_DELETE);
+        payload.writeUTF(email);
+
+        return append( bytes.toByteArray() );
+    }
+
+    /**
+     *  Forces any records appended since the last sync to disk.
+     *  @throws IOException if the log cannot be forced
+     */
+    public synchronized void sync() throws IOException {
+        if (appended == synced || out == null) return;
+        out.flush();
+        fileOut.getChannel().force(false);
+        synced = appended;
+        notifyAll();
+    }
+
+    /**
+     *  Waits until the record with the given sequence number is on disk. Under
+     *  SYNC_GROUP this waits for the flusher, which skips the rest of its window while
+     *  anyone is waiting; callers arriving during a force share the next one. Under
+     *  the other policies the log is synced immediately.
+     *  @param sequence the sequence number returned by an append
+     *  @throws IOException if the log cannot be forced, or the flusher has failed
+     *  @throws InterruptedException if the wait is interrupted
+     */
+    public synchronized void awaitSync(long sequence) throws IOException, InterruptedException {
+        if (syncPolicy != SYNC_GROUP) {
+            if (synced < sequence) sync();
+            return;
+        }
+        waiters++;
+        notifyAll();    // A waiting caller ends the window early
+        try {
+            while (synced < sequence && out != null) {
+                if (failure != null) throw new IOException("Mutation log could not be forced: " + logFile, failure);
+                wait();
+            }
+        }
+        finally {
+            waiters--;
+        }
+    }
+
+    /**
+     *  @return IOException the error which stopped the flusher, or null if it has not failed
+     */
+    public synchronized IOException getFailure() { return failure; }
+
+    /**
+     *  @return long the sequence number of the last record appended
+     */
+    public synchronized long lastSequence() { return appended; }
+
+    /**
+     *  Empties the log. Called once a snapshot holding every logged change is written.
+     *  @throws IOException if the log cannot be truncated
+     */
+    public synchronized void reset() throws IOException {
+        out.flush();
+        fileOut.getChannel().truncate(0);
+        fileOut.getChannel().force(true);
+        records = 0;
+        synced = appended;  // The snapshot now holds every record
+        notifyAll();
+    }
+
+    /**
+     * @return int the number of records in the log
+     */
+    public synchronized int size() { return records; }
+
+    /**
+     * @return int the sync policy of the log
+     */
+    public int getSyncPolicy() { return syncPolicy; }
+
+    /**
+     *  Syncs and closes the log.
+     *  @throws IOException if the log cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        if (out == null) return;
+        if (failure != null) {
+            out = null;
+            fileOut.close();
+            notifyAll();
+            throw new IOException("Mutation log could not be forced: " + logFile, failure);
+        }
+        sync();
+        out.close();
+        out = null;
+        notifyAll();    // Releases the flusher and any waiting callers
+    }
+
+    /**
+     *  Frames and writes a payload, syncing it if the policy demands it.
+     *  @param payload the encoded record
+     *  @throws IOException if the record cannot be written, or the flusher has failed
+     */
+    private synchronized long append(byte[] payload) throws IOException {
+        if (out == null) throw new IOException("Mutation log is not open: " + logFile);
+        if (failure != null) throw new IOException("Mutation log could not be forced: " + logFile, failure);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeLong(crc.getValue());
+        records++;
+        appended++;
+
+        if (syncPolicy == SYNC_EVERY_WRITE) sync();
+        else if (syncPolicy == SYNC_NONE) out.flush();
+        else if (appended - synced == 1 || appended - synced >= groupBatch) notifyAll();  // Start a window, or end it early
+        return appended;
+    }
+
+    /**
+     *  Run by the flusher thread under SYNC_GROUP. Waits for a record to be appended,
+     *  then for the batch to fill, the window to pass or a caller to wait on it, and flushes
+     *  everything appended so far in one force. Appends are not blocked while the force is in progress.
+     *  If a flush fails, records the failure, wakes the waiting callers and stops.
+     */
+    private void flushLoop() {
+        while (true) {
+            long target;
+            FileOutputStream forceOut;
+
+            try {
+                synchronized (this) {
+                    while (out != null && appended == synced) wait();
+                    if (out == null) return;
+
+                    long deadline = System.currentTimeMillis() + groupWindow;
+                    long remaining = groupWindow;
+                    while (out != null && appended - synced < groupBatch && waiters == 0 && remaining > 0) {
+                        wait(remaining);
+                        remaining = deadline - System.currentTimeMillis();
+                    }
+                    if (out == null) return;
+
+                    out.flush();
+                    target = appended;
+                    forceOut = fileOut;
+                }
+
+                forceOut.getChannel().force(false);
+
+                synchronized (this) {
+                    if (target > synced) synced = target;
+                    notifyAll();
+                }
+            }
+            catch (InterruptedException intEx) {
+                return;
+            }
+            catch (IOException ioEx) {
+                synchronized (this) {
+                    failure = ioEx;
+                    notifyAll();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     *  Applies one decoded record to a book.
+     *  @param book the book to change
+     *  @param payload the encoded record
+     *  @throws IOException if the record is not a valid operation
+     */
+    private void apply(AddressBook book, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream(payload) );
+        byte op = in.readByte();
+        String email = in.readUTF();
+
+        if (op == OP_PUT) {
+            GuestInfo guest = new GuestInfo( in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(),
+                                             in.readUTF(), email, in.readUTF() );
+            if ( book.viewGuestInfo(guest) == null ) book.addGuestInfo(guest);
+            else book.updateGuestInfo(guest);
+        }
+        else if (op == OP_DELETE) {
+            book.deleteGuestInfo( new GuestInfo(email) );
+        }
+        else throw new IOException("Unknown mutation log operation: " + op);
+    }
+
+    /**
+     *  Opens the log file for appending.
+     *  @throws IOException if the file cannot be opened
+     */
+    private void open() throws IOException {
+        fileOut = new FileOutputStream(logFile, true);
+        out = new DataOutputStream( new BufferedOutputStream(fileOut) );
+    }
+
+    /**
+     *  Cuts the log file down to the given length.
+     *  @param length the length to keep
+     *  @throws IOException if the file cannot be truncated
+     */
+    private void truncate(long length) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(logFile, "rw");
+        try {
+            raf.setLength(length);
+            raf.getFD().sync();
+        }
+        finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package guestbook.server;
+
+import java.net.InetAddress;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import guestbook.shared.*;
+
+/**
+ *  A RateLimiter limits how fast each client address may open connections, and how fast
+ *  it may send requests of each of the RequestScheduler.CLASSES, so that one client cannot
+ *  keep the database busy for everyone else.
+ *      Each address has a token bucket for its connections and one per request class.
+ *  A bucket holds up to its burst of tokens and gains rate tokens a second. A connection
+ *  or request takes one token, a batch one per request it holds, and is rejected if the
+ *  bucket has too few. A bucket is kept as the time at which it will next be full, which
+ *  is updated by compare-and-set, so no lock is taken. Once there are many buckets, each
+ *  new one is made after checking the next few for any which have filled up, which are
+ *  forgotten; the check continues where the last stopped, so no request scans them all.
+ *      By default an address may open DEFAULT_CONNECTION_RATE connections a second, and
+ *  send DEFAULT_RATES requests a second of each class, with bursts of twice as many.
+ *  A rate of 0 removes the limit. Counters of the allowed and rejected connections and
+ *  requests are kept for each class.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class RateLimiter {
+    public static final double DEFAULT_CONNECTION_RATE = 20;
+    public static final double[] DEFAULT_RATES = { 20, 10, 2 };     // Interactive, Standard, Report
+    private static final int PRUNE_SIZE = 10000;    // buckets held before the full ones are forgotten
+    private static final int PRUNE_STEP = 8;        // buckets checked for each new one while there are many
+
+    private Limit connections = new Limit(DEFAULT_CONNECTION_RATE, 2 * DEFAULT_CONNECTION_RATE);
+    private Limit[] classes = new Limit[RequestScheduler.CLASSES.length];
+
+    /**
+     *  Sets the default rates.
+     */
+    public RateLimiter() {
+        for (int c = 0; c < classes.length; c++) classes[c] = new Limit(DEFAULT_RATES[c], 2 * DEFAULT_RATES[c]);
+    }
+
+    /**
+     *  Takes a token for a new connection from an address.
+     *  @param address the client's address
+     *  @return boolean true if the connection is allowed
+     */
+    public boolean allowConnection(InetAddress address) {
+        return connections.take(address, 1);
+    }
+
+    /**
+     *  Takes the tokens for a request from an address, one for each request a batch holds.
+     *  @param address the client's address
+     *  @param request the request
+     *  @return boolean true if the request is allowed
+     */
+    public boolean allowRequest(InetAddress address, ClientRequest request) {
+        int cost = 1;
+        if ( request.getType().equals(NetUtils.CR_BATCH) ) cost = Math.max(1, request.getData().length);
+        return classes[ RequestScheduler.classify(request) ].take(address, cost);
+    }
+
+    /**
+     *  Sets how fast an address may open connections.
+     *  @param perSecond the connections a second, or 0 for no limit
+     *  @param burst the most connections opened at once
+     *  @throws IllegalArgumentException if perSecond < 0 or burst < 1
+     */
+    public void setConnectionRate(double perSecond, double burst) throws IllegalArgumentException {
+        connections.setRate(perSecond, burst);
+    }
+
+    /**
+     *  Sets how fast an address may send requests of a class.
+     *  @param requestClass one of the RequestScheduler.CLASSES
+     *  @param perSecond the requests a second, or 0 for no limit
+     *  @param burst the most requests sent at once
+     *  @throws IllegalArgumentException if perSecond < 0 or burst < 1
+     */
+    public void setRate(int requestClass, double perSecond, double burst) throws IllegalArgumentException {
+        classes[requestClass].setRate(perSecond, burst);
+    }
+
+    /**
+     *  @return double the connections a second an address may open, or 0 for no limit
+     */
+    public double getConnectionRate() { return connections.rate; }
+
+    /**
+     *  @param requestClass one of the RequestScheduler.CLASSES
+     *  @return double the requests of the class a second an address may send, or 0 for no limit
+     */
+    public double getRate(int requestClass) { return classes[requestClass].rate; }
+
+    /**
+     *  @return long the number of connections allowed
+     */
+    public long getAllowedConnections() { return connections.allowed.sum(); }
+
+    /**
+     *  @return long the number of connections rejected
+     */
+    public long getRejectedConnections() { return connections.rejected.sum(); }
+
+    /**
+     *  @param requestClass one of the RequestScheduler.CLASSES
+     *  @return long the number of requests of the class allowed
+     */
+    public long getAllowed(int requestClass) { return classes[requestClass].allowed.sum(); }
+
+    /**
+     *  @param requestClass one of the RequestScheduler.CLASSES
+     *  @return long the number of requests of the class rejected
+     */
+    public long getRejected(int requestClass) { return classes[requestClass].rejected.sum(); }
+
+    /**
+     *  The buckets of every address for connections or for one request class.
+     */
+    private static class Limit {
+        private ConcurrentHashMap<InetAddress, AtomicLong> buckets = new ConcurrentHashMap<InetAddress, AtomicLong>();
+        private volatile double rate;           // tokens gained a second; 0 for no limit
+        private volatile long interval;         // ns to gain one token
+        private volatile long capacity;         // ns to fill an empty bucket
+        private LongAdder allowed = new LongAdder();
+        private LongAdder rejected = new LongAdder();
+        private Iterator<AtomicLong> pruning;   // Where pruning continues; used while holding pruner
+        private AtomicBoolean pruner = new AtomicBoolean(false);
+
+        /**
+         *  @param perSecond the tokens gained a second, or 0 for no limit
+         *  @param burst the most tokens held
+         */
+        Limit(double perSecond, double burst) { setRate(perSecond, burst); }
+
+        /**
+         *  @param perSecond the tokens gained a second, or 0 for no limit
+         *  @param burst the most tokens held
+         *  @throws IllegalArgumentException if perSecond < 0 or burst < 1
+         */
+        void setRate(double perSecond, double burst) throws IllegalArgumentException {
+            if (perSecond < 0) throw new IllegalArgumentException("Value '" + perSecond + "' is invalid. A rate cannot be negative.");
+            if (burst < 1) throw new IllegalArgumentException("Value '" + burst + "' is invalid. A burst must be at least 1.");
+            if (perSecond > 0) {
+                interval = (long)(1e9 / perSecond);
+                capacity = (long)(burst * interval);
+            }
+            rate = perSecond;
+            buckets.clear();
+        }
+
+        /**
+         *  Takes tokens from an address's bucket, if it holds enough.
+         *  @param address the client's address
+         *  @param cost the tokens to take; at most a full bucket is taken
+         *  @return boolean true if the tokens were taken
+         */
+        boolean take(InetAddress address, int cost) {
+            if (rate == 0) {
+                allowed.increment();
+                return true;
+            }
+
+            long now = System.nanoTime();
+            long step = interval, full = capacity;
+            long charge = Math.min( cost * step, full );
+
+            AtomicLong bucket = buckets.get(address);
+            if (bucket == null) {
+                if (buckets.size() > PRUNE_SIZE) pruneSome(now);
+                AtomicLong fresh = new AtomicLong(now);
+                bucket = buckets.putIfAbsent(address, fresh);
+                if (bucket == null) bucket = fresh;
+            }
+
+            // The bucket is full at fullAt, and holds (full - (fullAt - now)) / step tokens now
+            while (true) {
+                long fullAt = bucket.get();
+                long next = Math.max(fullAt, now) + charge;
+                if (next - now > full) {
+                    rejected.increment();
+                    return false;
+                }
+                if ( bucket.compareAndSet(fullAt, next) ) {
+                    allowed.increment();
+                    return true;
+                }
+            }
+        }
+
+        /**
+         *  Checks the next PRUNE_STEP buckets and forgets those which have filled up. Does
+         *  nothing if another thread is pruning.
+         *  @param now the current System.nanoTime()
+         */
+        private void pruneSome(long now) {
+            if ( pruner.compareAndSet(false, true) == false ) return;
+            try {
+                for (int i = 0; i < PRUNE_STEP; i++) {
+                    if (pruning == null || pruning.hasNext() == false) pruning = buckets.values().iterator();
+                    if (pruning.hasNext() == false) return;
+                    if (pruning.next().get() - now <= 0) pruning.remove();
+                }
+            }
+            finally {
+                pruner.set(false);
+            }
+        }
+    }
+}
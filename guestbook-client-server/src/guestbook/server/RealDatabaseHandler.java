@@ -1,495 +1,860 @@
-
-package guestbook.server;
-
-import java.sql.DriverManager;
-import java.sql.Statement;
-import java.sql.Connection;
-import java.sql.SQLException;
-import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
-
-import java.util.Vector;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.ArrayList;
-
-import guestbook.shared.*;
-
-
-/** 
- *  The RealDatabaseHandler class allows a user to interface with an Oracle 
- *  database containg GuestInfo records.
- *              
- *  @author Joram Benham 200801274
- *  @version April 6, 2011
- */
-public class RealDatabaseHandler implements DatabaseHandler {
-    public static final String DUMMY_EMAIL = "x@x.x";
-
-    private Connection guestConn;
-    private Statement statement;
-    private ResultSet results;
-    private boolean isOpen;
-    
-    private String url;
-    private String user;
-    private String password;
-
-    /** 
-     * Loads the driver.
-     * @throws ClassNotFoundException if the driver is not found
-     */
-    public RealDatabaseHandler() throws ClassNotFoundException {
-        // Load the driver
-        Class.forName("oracle.jdbc.driver.OracleDriver");
-        isOpen = false;
-    }
-        
-    /** 
-     *  Sets the database host name, user login, and password.
-     *  @param dbUser the username to log in with
-     *  @param dbPass the password for the given username
-     *  @param dbURL the host name/URL of the database
-     */
-    public synchronized void setConnectionDetails(String dbUser, String dbPass, String dbURL) {
-        url = dbURL;
-        user = dbUser;
-        password = dbPass;        
-    }
-    
-    /** 
-     *  Attemps a connection, throws an exception if not possible.
-     */
-    public synchronized void attemptConnection() throws SQLException {
-        createConnection();
-        closeConnection(false);
-    }
-    
-    /** 
-     *  Returns TRUE if the connection is open.
-     *  @return boolean
-     */
-    public boolean isOpen() { return isOpen; }
-    
-    /** 
-     *  Allows a user to INSERT a new guest record into the database.
-     *  @param info the field values for the new record
-     *  @throws SQLException if the INSERT fails to execute
-      */
-    public void addRecord(GuestInfo info) throws SQLException {
-        // Create the INSERT command
-        String insert;
-        insert  = "INSERT INTO Guest "
-                + "VALUES ('" + info.getEmail() + "','"
-                + info.getName() + "','" + info.getAddress() + "','"
-                + info.getCity() + "','" + info.getPostcode() + "','"
-                + info.getTelephone() + "','" + info.getPassword() 
-                + "')";
-        
-        // Run the command
-        executeCommand(insert);
-    }
-    
-    /** 
-     *  Allows a user to retrieve a record from the database.
-     *  @param target indicates the record to retrieve
-     *  @return GuestInfo, the retrieved record (null if no record was found)
-     *  @throws SQLException if the UPDATE fails to execute
-     */
-    public synchronized GuestInfo retrieveRecord(GuestInfo target) throws SQLException {
-        GuestInfo guest = null;
-        ResultSet rs;
-        String query;
-        
-        // Create the query
-        query = "SELECT * FROM Guest WHERE Email = '" + target.getEmail() + "' ";
-        rs = executeQuery(query);
-        
-        // Get the guest
-        if (rs.next()) {
-            guest = new GuestInfo( rs.getString("NAME"),
-                                   rs.getString("ADDRESS"),
-                                   rs.getString("CITY"),
-                                   rs.getString("POSTCODE"),
-                                   rs.getString("TELEPHONE"),
-                                   rs.getString("EMAIL"),
-                                   rs.getString("PASSWORD") );
-        }
-        
-        closeConnection(true);        
-        return guest;
-    }
-    
-    /** 
-     *  Allows a user to UPDATE a guest record in the database.
-     *  @param target indicates the record to update, and the information to update with
-     *  @throws SQLException if the UPDATE fails to execute
-     */
-    public void updateRecord(GuestInfo target) throws SQLException {
-        // Create the UPDATE command
-        String update;
-        String set = "";
-        if ( target.getName().equals("") == false ) set += " Name = '" + target.getName() + "', ";
-        if ( target.getAddress().equals("") == false ) set += " Address = '" + target.getAddress() + "', ";
-        if ( target.getCity().equals("") == false ) set += " City = '" + target.getCity() + "', ";
-        if ( target.getPostcode().equals("") == false ) set += " Postcode = '" + target.getPostcode() + "', ";
-        if ( target.getTelephone().equals("") == false ) set += " Telephone = '" + target.getTelephone() + "', ";
-        if ( target.getPassword().equals("") == false ) set += " Password = '" + target.getPassword() + "', ";
-        
-        set = set.substring(0, set.length()-2); // Remove last comma
-        set = " SET " + set;
-        
-        update  = "UPDATE Guest " + set  + " WHERE Email = '" + target.getEmail() + "' ";
-        
-        // Run the command
-        executeCommand(update);
-    }
-    
-    /** 
-     *  Allows a user to DELETE a guest record from the database.
-     *  @param target indicates the record to delete
-     *  @throws SQLException if the DELETE fails to execute
-     */
-    public void deleteRecord(GuestInfo target) throws SQLException {
-        // Create the DELETE command
-        String delete = "DELETE FROM Guest ";
-        delete += "WHERE email = '" + target.getEmail() + "'";
-        
-        // Run the command
-        executeCommand(delete);
-    }
-
-    /** 
-     *  Executes an update (INSERT, UPDATE, DELETE) or a query (SELECT) on the database.
-     *  @param sql the SQL statement to execute.
-     *  @throws ClassNotFoundException if the OracleDriver is not found
-     */
-    private synchronized void executeCommand(String sql) throws SQLException {
-        boolean error = false;
-        String msg = "";
-        
-        // Attempt to create the connection
-        createConnection();
-        createStatement();
-        
-        // Run the SQL statement
-        try { 
-            statement.executeUpdate( sql );
-        }
-        catch (SQLException sqlEx) {
-            error = true;
-            msg = "\nExecution Error:\n" + sqlEx;
-        }
-
-        // Attempt to close the connection       
-        try {
-            closeConnection(true);   
-        }
-        catch (SQLException sqlEx) {
-            error = true;
-            msg = "\nDisconnect Error:\n" + sqlEx;            
-        }
-        
-        // Throw exception if necessary
-        if ( error ) throw new SQLException( msg );
-    }
-    
-    /** 
-     *  Executes a query
-     *  @return ResultSet
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    private synchronized ResultSet executeQuery(String query) throws SQLException {
-        createConnection();
-        createStatement();        
-        return statement.executeQuery(query);
-    }
-    
-    /** 
-     *  This method uses a GuestInfo object to contain the criteria to query
-     * the database on. 
-     *  One problem with this is that the 'email' field of a GuestInfo object cannot be null.
-     * Because of this, the email field of the GuestInfo should be a valid dummy value, e.g.
-     * 'x@x.x'.
-     *  Fields in the GuestInfo which are null/empty will not be included in the query.
-     *  
-     * @param criteria a GuestInfo object with its fields set to the search criteria
-     * @return ArrayList<GuestInfo> of the matching records
-     * @throws SQLException if there is a problem accessing the database
-     */
-    public synchronized ArrayList<GuestInfo> retrieveUsers(GuestInfo criteria) throws SQLException {
-        String selection = "";
-        String condition = "";
-        
-        // Get the GuestInfo fields being used as criteria
-        HashMap<String, String> fields = new HashMap<String, String>(6);
-        if (criteria.getEmail().equals(DUMMY_EMAIL) == false) fields.put("EMAIL", criteria.getEmail());
-        if (criteria.getName().equals("") == false) fields.put("NAME", criteria.getName());
-        if (criteria.getAddress().equals("") == false) fields.put("ADDRESS", criteria.getAddress());
-        if (criteria.getCity().equals("") == false) fields.put("CITY", criteria.getCity());
-        if (criteria.getPostcode().equals("") == false) fields.put("POSTCODE", criteria.getPostcode());
-        if (criteria.getTelephone().equals("") == false) fields.put("TELEPHONE", criteria.getTelephone());
-        if (criteria.getPassword().equals("") == false) fields.put("PASSWORD", criteria.getPassword());
-        
-        // Construct the SELECT fields and the WHERE conditions
-        if (fields.isEmpty() == false) {
-            HashSet<String> fieldNames = new HashSet<String>( fields.keySet() );
-            String key;
-            Iterator<String> iter = fieldNames.iterator();
-            condition += " WHERE ";
-            
-            while (iter.hasNext()) {
-                key = iter.next();
-                condition += key + " = '" + fields.get( key ) + "' ";            
-                if (iter.hasNext()) condition += " AND ";
-            }
-        }
-
-        // Construct and execute the query
-        String query = "SELECT * FROM Guest" + condition + " ORDER BY Name ";
-        ResultSet rs = executeQuery( query );
-        
-        // Get the records from the ResultSet
-        ArrayList<GuestInfo> users = new ArrayList<GuestInfo>();
-        GuestInfo nextGuest;
-        while (rs.next()) {
-            nextGuest = new GuestInfo( rs.getString("NAME"),
-                                   rs.getString("ADDRESS"),
-                                   rs.getString("CITY"),
-                                   rs.getString("POSTCODE"),
-                                   rs.getString("TELEPHONE"),
-                                   rs.getString("EMAIL"),
-                                   rs.getString("PASSWORD") );
-            users.add(nextGuest);
-        }
-        
-        closeConnection(false);
-        return users;
-    }
-    
-    
-    /** 
-     *  Checks if an admin exists
-     *  @param email the email to query for
-     *  @return boolean indicating if user is an admin
-     *  @throws SQLException if there is a problem accessing the database
-     */    
-     public boolean adminExists(String email) throws SQLException {
-        return recordExists("GuestAdmin", "EMAIL", email);
-    }
-    
-    /** 
-     *  Checks if a user exists
-     *  @param email the email to query for
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    public boolean userExists(String email) throws SQLException {
-        return recordExists("Guest", "EMAIL", email);
-    }
-    
-    /** 
-     *  Verifies that a login is valid
-     *  @param email the email to check for
-     *  @param pass the password for the email
-     *  @return boolean indicating if email and pass are valid
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    public synchronized boolean validLogin(String email, String pass) throws SQLException {
-        boolean exists = false;
-        String query = "SELECT * FROM Guest WHERE Email = '" + email + "' AND Password = '" + pass + "'";
-        
-        ResultSet rs = executeQuery(query);
-        if (rs.next()) exists = true;
-        
-        closeConnection(false);
-        return exists;
-    }
-    
-    /** 
-     *  Checks if a record with the given value exists in a table
-     *  @param table the table to query
-     *  @param attribute the column to check
-     *  @param value the value of the attribute to search for
-     *  @return boolean indicating if the record exists
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    private synchronized boolean recordExists(String table, String attribute, String value) throws SQLException {
-        boolean exists = false;
-        String query = "SELECT " + attribute + " FROM " + table + " WHERE " + attribute + " = '" + value + "' ";
-        ResultSet rs = executeQuery(query);
-        
-        if (rs.next()) exists = true;
-        
-        closeConnection(false);        
-        return exists;
-    }
-
-    /**  
-     * Adds a server log to the database
-     * @param log the GuestLog to add
-     * @throws SQLException if there is a problem accessing the database
-     */
-    public void addGuestLog(GuestLog log) throws SQLException {
-        // Create the INSERT command
-        String dateFormat = "YYYY-MM-DD HH24:MI:SS";
-        String insert = "INSERT INTO GuestLog VALUES( "
-                      + log.getGLID() + ","
-                      + "'" + log.getEmail() + "',"
-                      + "'" + log.getIP() + "',"
-                      + "to_date('" + log.getDate() + "','" + dateFormat + "') "
-                      + ") ";
-        executeCommand(insert);        
-    }
-    
-    /**  
-     * Adds and entry to the guest book
-     * @param entry the GuestEntry to add
-     * @throws SQLException if there is a problem accessing the database
-     */
-    public void addGuestEntry(GuestEntry entry) throws SQLException {
-        // Create the INSERT command
-        String dateFormat = "YYYY-MM-DD HH24:MI:SS";
-        String insert = "INSERT INTO GuestEntry VALUES( "
-                      + entry.getGEID() + ","
-                      + "'" + entry.getEmail() + "',"
-                      + "'" + entry.getEntry() + "',"
-                      + "to_date('" + entry.getDate() + "','" + dateFormat + "') "
-                      + ") ";
-        executeCommand(insert);        
-    }
-    
-    /** 
-     *  Retrieves all GuestLog records from the database.
-     *  @return ArrayList<GuestLog> of the records
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    public synchronized ArrayList<GuestLog> getGuestLogs() throws SQLException {
-        ArrayList<GuestLog> logs = new ArrayList<GuestLog>();
-        GuestLog nextLog;
-        
-        ResultSet rs = executeQuery("SELECT GLID, EMAIL, IPADDRESS, TO_CHAR(LOGDATE, 'YYYY-MM-DD HH24:MI:SS') AS LDATE FROM GUESTLOG ORDER BY LDATE DESC ");
-        while(rs.next()) {
-            nextLog = new GuestLog( rs.getLong("GLID"), rs.getString("EMAIL"),
-                                    rs.getString("IPADDRESS"), rs.getString("LDATE") );
-            logs.add( nextLog );
-        }
-        
-        closeConnection(false);        
-        return logs;
-    }
-
-    /**  
-     *  Retrieves all GuestEntry records from the database.
-     *  @return ArrayList<GuestEntry> of the records
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    public synchronized ArrayList<GuestEntry> getGuestEntries() throws SQLException {
-        ArrayList<GuestEntry> entries = new ArrayList<GuestEntry>();
-        GuestEntry nextEntry;
-        
-        ResultSet rs = executeQuery("SELECT GEID, EMAIL, ENTRY, TO_CHAR(ENTRYDATE, 'YYYY-MM-DD HH24:MI:SS') AS EDATE FROM GUESTENTRY ORDER BY EDATE DESC ");
-        while(rs.next()) {
-            nextEntry = new GuestEntry( rs.getLong("GEID"), rs.getString("EMAIL"),
-                                        rs.getString("ENTRY"), rs.getString("EDATE") );
-            entries.add( nextEntry );
-        }
-        
-        closeConnection(false);        
-        return entries;
-    }    
-    
-    /** 
-     *  Retrieves the maximum GEID in the database
-     *  @return long indicating the maximum GEID
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    public long getMaxGEID() throws SQLException {
-        return getMaxID("GEID", "GuestEntry");
-    }    
-    
-    /** 
-     *  Retrieves the maximum GLID in the database
-     *  @return long indicating the maximum GLID
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    public long getMaxGLID() throws SQLException {
-        return getMaxID("GLID", "GuestLog");
-    }
-    
-    /** 
-     *  Returns the highest ID from a table.
-     *  @param idName the name of the column to get the id from
-     *  @param table the table to query
-     *  @return long indicating the max ID in a relation
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    private synchronized long getMaxID(String idName, String table) throws SQLException {
-        long max = -1;
-        String query = "SELECT MAX(" + idName + ") FROM " + table + " ";
-        ResultSet rs = executeQuery(query);
-        
-        if (rs.next()) max = rs.getLong(1);
-        
-        closeConnection(false);        
-        return max;
-    }
-    
-    /** 
-     *  Attempts to create a connection to the indicated Oracle database.
-     *  @throws SQLException if there is a problem accessing the database
-     */
-    private synchronized void createConnection() throws SQLException {        
-        // Create the connection
-        try { guestConn = DriverManager.getConnection(url, user, password); }
-        catch (SQLException sqlEx) {
-            throw new SQLException( sqlEx.getMessage() + "\nSPECIFIC: Connection to database failed.");
-        }
-        
-        try { guestConn.setAutoCommit(false); }
-        catch (SQLException sqlEx) {
-            closeConnection(false);
-            throw new SQLException( sqlEx.getMessage() + "\nSPECIFIC: AutoCommit configuration failed.");    
-        }
-        
-        try { guestConn.setReadOnly(false); }
-        catch (SQLException sqlEx) {
-            closeConnection(false);
-            throw new SQLException( sqlEx.getMessage() + "\nSPECIFIC: ReadOnly configuration failed.");
-        }
-        
-        // Only executed if the connection is successful
-        isOpen = true;  
-    }
-    
-    /** 
-     *  Attempts to close the connection to the database
-     *  @param doCommit indicates whether or not a COMMIT should be performed on closing.
-     *  @throws SQLException if the database cannot be accessed
-     */
-    private synchronized void closeConnection(boolean doCommit) throws SQLException {
-        if (isOpen() == false) return;
-        
-        if (doCommit) guestConn.commit();
-        else guestConn.rollback();
-        
-        try { guestConn.close(); }
-        catch (SQLException sqlEx) {
-            throw new SQLException(sqlEx.getMessage() + "\nSPECIFIC: Closing connection failed.");
-        }
-        
-        finally {
-            isOpen = false;
-        }
-    }
-    
-    /** 
-     *  Attempts to create a statement with the open connection.
-     *  @throws SQLException if the Statement cannot be created.
-     */
-    private synchronized void createStatement() throws SQLException {
-        if ( isOpen ) {
-            statement = guestConn.createStatement();
-        }
-    }      
-}
+
+package guestbook.server;
+
+import java.io.IOException;
+
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.sql.PreparedStatement;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+
+import java.util.Vector;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+
+import guestbook.shared.*;
+
+
+/** 
+ *  The RealDatabaseHandler class allows a user to interface with an Oracle 
+ *  database containg GuestInfo records.
+ *  If the request being serviced has a RequestDeadline, no connection is made once it
+ *  has passed, and each statement's query timeout is set to the time left.
+ *  A handler made read-only opens read-only connections, and so cannot change the
+ *  database; the server gives its read lane one of its own, so that reads do not wait
+ *  on the handler's lock or connections while writes are stalled.
+ *  A batch keeps one connection for the thread which began it; the other threads
+ *  connect per statement as usual, and never share it.
+ *              
+ *  @author Joram Benham 200801274
+ *  @version April 6, 2011
+ */
+public class RealDatabaseHandler implements DatabaseHandler {
+    public static final String DUMMY_EMAIL = "x@x.x";
+    private static final int ORA_UNIQUE_VIOLATION = 1;     // ORA-00001: unique constraint violated
+    private static final int MAX_IN_LIST = 1000;           // Oracle's limit on IN (...) expressions
+    private static final int EXPORT_FETCH_SIZE = 1000;     // Rows fetched per round trip by an export
+
+    private Connection guestConn;
+    private Statement statement;
+    private ResultSet results;
+    private boolean isOpen;
+    private ThreadLocal<Integer> batchDepth = ThreadLocal.withInitial( () -> 0 );   // The thread's open beginBatch calls
+    private long lastGEID;      // Highest GEID handed out by nextGEID
+    private long lastGLID;      // Highest GLID handed out by nextGLID
+    private ThreadLocal<Connection> batchConn = new ThreadLocal<Connection>();     // The connection kept for the thread's batch
+    private boolean readOnly;   // Connections are opened read-only
+    
+    private String url;
+    private String user;
+    private String password;
+
+    /** 
+     * Loads the driver.
+     * @throws ClassNotFoundException if the driver is not found
+     */
+    public RealDatabaseHandler() throws ClassNotFoundException {
+        this(false);
+    }
+    
+    /** 
+     *  Loads the driver.
+     *  @param readOnlyConnections true to open every connection read-only
+     *  @throws ClassNotFoundException if the driver is not found
+     */
+    public RealDatabaseHandler(boolean readOnlyConnections) throws ClassNotFoundException {
+        // Load the driver
+        Class.forName("oracle.jdbc.driver.OracleDriver");
+        isOpen = false;
+        readOnly = readOnlyConnections;
+    }
+        
+    /** 
+     *  Sets the database host name, user login, and password.
+     *  @param dbUser the username to log in with
+     *  @param dbPass the password for the given username
+     *  @param dbURL the host name/URL of the database
+     */
+    public synchronized void setConnectionDetails(String dbUser, String dbPass, String dbURL) {
+        url = dbURL;
+        user = dbUser;
+        password = dbPass;        
+    }
+    
+    /** 
+     *  @return boolean true if connections are opened read-only
+     */
+    public boolean isReadOnly() { return readOnly; }
+    
+    /** 
+     *  Attemps a connection, throws an exception if not possible.
+     */
+    public synchronized void attemptConnection() throws SQLException {
+        createConnection();
+        closeConnection(false);
+    }
+    
+    /** 
+     *  Returns TRUE if the connection is open.
+     *  @return boolean
+     */
+    public boolean isOpen() { return isOpen; }
+    
+    /** 
+     *  Nothing to release; connections are closed after every statement.
+     */
+    public void close() {}
+    
+    /** 
+     *  Keeps the next connection the calling thread opens until its matching endBatch,
+     *  instead of closing it after each statement. Each statement still commits or rolls
+     *  back as it would otherwise.
+     */
+    public void beginBatch() {
+        batchDepth.set( batchDepth.get() + 1 );
+    }
+    
+    /** 
+     *  Closes the connection kept by the calling thread's beginBatch, once every
+     *  beginBatch it made has been ended.
+     *  @throws SQLException if the connection cannot be closed
+     */
+    public void endBatch() throws SQLException {
+        int depth = batchDepth.get();
+        if (depth == 0) return;
+        if (depth > 1) {
+            batchDepth.set( depth - 1 );
+            return;
+        }
+        
+        Connection kept = batchConn.get();
+        batchDepth.remove();
+        batchConn.remove();
+        if (kept == null) return;
+        
+        try {
+            kept.rollback();
+            kept.close();
+        }
+        catch (SQLException sqlEx) {
+            throw new SQLException(sqlEx.getMessage() + "\nSPECIFIC: Closing connection failed.");
+        }
+    }
+    
+    /** 
+     *  Allows a user to INSERT a new guest record into the database.
+     *  @param info the field values for the new record
+     *  @throws SQLException if the INSERT fails to execute
+      */
+    public void addRecord(GuestInfo info) throws SQLException {
+        // Create the INSERT command
+        String insert;
+        insert  = "INSERT INTO Guest "
+                + "VALUES ('" + info.getEmail() + "','"
+                + info.getName() + "','" + info.getAddress() + "','"
+                + info.getCity() + "','" + info.getPostcode() + "','"
+                + info.getTelephone() + "','" + info.getPassword() 
+                + "')";
+        
+        // Run the command
+        executeCommand(insert);
+    }
+    
+    /** 
+     *  Adds many guest records over a connection of its own, so the handler is not locked
+     *  while the load runs and other requests go on between its chunks. For each chunk of
+     *  guests, the emails which already exist are looked up in one query, the rest are sent
+     *  as one JDBC batch of INSERTs and the chunk is committed. If the batch hits a duplicate
+     *  added since the lookup, the chunk is rolled back and inserted row by row instead.
+     *      Chunks committed before an error stay in the database.
+     *  @param guests the guests to add
+     *  @param chunkSize the number of guests per commit, at least 1
+     *  @return boolean[] true for each guest which was added
+     *  @throws SQLException if the inserts fail for a reason other than a duplicate email
+     */
+    public boolean[] bulkAddRecords(List<GuestInfo> guests, int chunkSize) throws SQLException {
+        if (chunkSize < 1) throw new IllegalArgumentException("Chunk size must be > 0.");
+        boolean[] added = new boolean[ guests.size() ];
+        
+        // Do not start work the client has stopped waiting for
+        if ( RequestDeadline.isExpired() ) {
+            throw new SQLTimeoutException("The client's deadline passed before the database was reached.");
+        }
+        
+        String dbURL, dbUser, dbPass;
+        synchronized (this) {
+            dbURL = url;
+            dbUser = user;
+            dbPass = password;
+        }
+        
+        Connection conn = DriverManager.getConnection(dbURL, dbUser, dbPass);
+        PreparedStatement insert = null;
+        try {
+            conn.setAutoCommit(false);
+            conn.setReadOnly(readOnly);
+            insert = conn.prepareStatement("INSERT INTO Guest VALUES (?, ?, ?, ?, ?, ?, ?)");
+            applyDeadline(insert);
+            
+            for (int from = 0; from < added.length; from += chunkSize) {
+                int to = Math.min(from + chunkSize, added.length);
+                HashSet<String> existing = existingEmails(conn, guests, from, to);
+                
+                for (int i = from; i < to; i++) {
+                    GuestInfo g = guests.get(i);
+                    if ( existing.add( g.getEmail() ) == false ) continue;
+                    setGuestParameters(insert, g);
+                    insert.addBatch();
+                    added[i] = true;
+                }
+                
+                try {
+                    insert.executeBatch();
+                    conn.commit();
+                }
+                catch (BatchUpdateException batchEx) {
+                    conn.rollback();
+                    insert.clearBatch();
+                    insertEach(insert, guests, from, to, added);
+                    conn.commit();
+                }
+            }
+        }
+        finally {
+            try {
+                if (insert != null) insert.close();
+                conn.rollback();    // Closing would otherwise commit a chunk left half done
+            }
+            finally {
+                conn.close();
+            }
+        }
+        
+        return added;
+    }
+    
+    /** 
+     *  Inserts the guests of a chunk marked in added one at a time, unmarking those
+     *  whose email already exists.
+     *  @param insert the prepared INSERT
+     *  @param guests the guests being added
+     *  @param from the index of the chunk's first guest
+     *  @param to the index after the chunk's last guest
+     *  @param added the guests to insert
+     *  @throws SQLException if an insert fails for a reason other than a duplicate email
+     */
+    private void insertEach(PreparedStatement insert, List<GuestInfo> guests, int from, int to, boolean[] added) throws SQLException {
+        for (int i = from; i < to; i++) {
+            if (added[i] == false) continue;
+            setGuestParameters(insert, guests.get(i));
+            try {
+                insert.executeUpdate();
+            }
+            catch (SQLException sqlEx) {
+                if (sqlEx.getErrorCode() != ORA_UNIQUE_VIOLATION) throw sqlEx;
+                added[i] = false;
+            }
+        }
+    }
+    
+    /** 
+     *  @param conn the bulk load's connection
+     *  @param guests the guests being added
+     *  @param from the index of the first guest to check
+     *  @param to the index after the last guest to check
+     *  @return HashSet<String> the emails of those guests which are already in the Guest table
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    private HashSet<String> existingEmails(Connection conn, List<GuestInfo> guests, int from, int to) throws SQLException {
+        HashSet<String> existing = new HashSet<String>();
+        
+        for (int start = from; start < to; start += MAX_IN_LIST) {
+            int end = Math.min(start + MAX_IN_LIST, to);
+            StringBuilder query = new StringBuilder("SELECT Email FROM Guest WHERE Email IN (?");
+            for (int i = start + 1; i < end; i++) query.append(", ?");
+            query.append(")");
+            
+            PreparedStatement select = conn.prepareStatement( query.toString() );
+            try {
+                applyDeadline(select);
+                for (int i = start; i < end; i++) select.setString( i - start + 1, guests.get(i).getEmail() );
+                ResultSet rs = select.executeQuery();
+                while (rs.next()) existing.add( rs.getString(1) );
+            }
+            finally {
+                select.close();
+            }
+        }
+        
+        return existing;
+    }
+    
+    /** 
+     *  Sets the parameters of an INSERT INTO Guest statement, in column order.
+     *  @param insert the prepared INSERT
+     *  @param info the guest to insert
+     *  @throws SQLException if a parameter cannot be set
+     */
+    private void setGuestParameters(PreparedStatement insert, GuestInfo info) throws SQLException {
+        insert.setString(1, info.getEmail());
+        insert.setString(2, info.getName());
+        insert.setString(3, info.getAddress());
+        insert.setString(4, info.getCity());
+        insert.setString(5, info.getPostcode());
+        insert.setString(6, info.getTelephone());
+        insert.setString(7, info.getPassword());
+    }
+    
+    /** 
+     *  Allows a user to retrieve a record from the database.
+     *  @param target indicates the record to retrieve
+     *  @return GuestInfo, the retrieved record (null if no record was found)
+     *  @throws SQLException if the UPDATE fails to execute
+     */
+    public synchronized GuestInfo retrieveRecord(GuestInfo target) throws SQLException {
+        GuestInfo guest = null;
+        ResultSet rs;
+        String query;
+        
+        // Create the query
+        query = "SELECT * FROM Guest WHERE Email = '" + target.getEmail() + "' ";
+        rs = executeQuery(query);
+        
+        // Get the guest
+        if (rs.next()) {
+            guest = new GuestInfo( rs.getString("NAME"),
+                                   rs.getString("ADDRESS"),
+                                   rs.getString("CITY"),
+                                   rs.getString("POSTCODE"),
+                                   rs.getString("TELEPHONE"),
+                                   rs.getString("EMAIL"),
+                                   rs.getString("PASSWORD") );
+        }
+        
+        closeConnection(true);        
+        return guest;
+    }
+    
+    /** 
+     *  Allows a user to UPDATE a guest record in the database.
+     *  @param target indicates the record to update, and the information to update with
+     *  @throws SQLException if the UPDATE fails to execute
+     */
+    public void updateRecord(GuestInfo target) throws SQLException {
+        // Create the UPDATE command
+        String update;
+        String set = "";
+        if ( target.getName().equals("") == false ) set += " Name = '" + target.getName() + "', ";
+        if ( target.getAddress().equals("") == false ) set += " Address = '" + target.getAddress() + "', ";
+        if ( target.getCity().equals("") == false ) set += " City = '" + target.getCity() + "', ";
+        if ( target.getPostcode().equals("") == false ) set += " Postcode = '" + target.getPostcode() + "', ";
+        if ( target.getTelephone().equals("") == false ) set += " Telephone = '" + target.getTelephone() + "', ";
+        if ( target.getPassword().equals("") == false ) set += " Password = '" + target.getPassword() + "', ";
+        
+        set = set.substring(0, set.length()-2); // Remove last comma
+        set = " SET " + set;
+        
+        update  = "UPDATE Guest " + set  + " WHERE Email = '" + target.getEmail() + "' ";
+        
+        // Run the command
+        executeCommand(update);
+    }
+    
+    /** 
+     *  Allows a user to DELETE a guest record from the database.
+     *  @param target indicates the record to delete
+     *  @throws SQLException if the DELETE fails to execute
+     */
+    public void deleteRecord(GuestInfo target) throws SQLException {
+        // Create the DELETE command
+        String delete = "DELETE FROM Guest ";
+        delete += "WHERE email = '" + target.getEmail() + "'";
+        
+        // Run the command
+        executeCommand(delete);
+    }
+
+    /** 
+     *  Executes an update (INSERT, UPDATE, DELETE) or a query (SELECT) on the database.
+     *  @param sql the SQL statement to execute.
+     *  @throws ClassNotFoundException if the OracleDriver is not found
+     */
+    private synchronized void executeCommand(String sql) throws SQLException {
+        boolean error = false;
+        String msg = "";
+        
+        // Attempt to create the connection
+        createConnection();
+        createStatement();
+        
+        // Run the SQL statement
+        try { 
+            statement.executeUpdate( sql );
+        }
+        catch (SQLException sqlEx) {
+            error = true;
+            msg = "\nExecution Error:\n" + sqlEx;
+        }
+
+        // Attempt to close the connection       
+        try {
+            closeConnection(true);   
+        }
+        catch (SQLException sqlEx) {
+            error = true;
+            msg = "\nDisconnect Error:\n" + sqlEx;            
+        }
+        
+        // Throw exception if necessary
+        if ( error ) throw new SQLException( msg );
+    }
+    
+    /** 
+     *  Executes a query
+     *  @return ResultSet
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    private synchronized ResultSet executeQuery(String query) throws SQLException {
+        createConnection();
+        createStatement();        
+        return statement.executeQuery(query);
+    }
+    
+    /** 
+     *  This method uses a GuestInfo object to contain the criteria to query
+     * the database on. 
+     *  One problem with this is that the 'email' field of a GuestInfo object cannot be null.
+     * Because of this, the email field of the GuestInfo should be a valid dummy value, e.g.
+     * 'x@x.x'.
+     *  Fields in the GuestInfo which are null/empty will not be included in the query.
+     *  
+     * @param criteria a GuestInfo object with its fields set to the search criteria
+     * @return ArrayList<GuestInfo> of the matching records
+     * @throws SQLException if there is a problem accessing the database
+     */
+    public synchronized ArrayList<GuestInfo> retrieveUsers(GuestInfo criteria) throws SQLException {
+        String selection = "";
+        String condition = "";
+        
+        // Get the GuestInfo fields being used as criteria
+        HashMap<String, String> fields = new HashMap<String, String>(6);
+        if (criteria.getEmail().equals(DUMMY_EMAIL) == false) fields.put("EMAIL", criteria.getEmail());
+        if (criteria.getName().equals("") == false) fields.put("NAME", criteria.getName());
+        if (criteria.getAddress().equals("") == false) fields.put("ADDRESS", criteria.getAddress());
+        if (criteria.getCity().equals("") == false) fields.put("CITY", criteria.getCity());
+        if (criteria.getPostcode().equals("") == false) fields.put("POSTCODE", criteria.getPostcode());
+        if (criteria.getTelephone().equals("") == false) fields.put("TELEPHONE", criteria.getTelephone());
+        if (criteria.getPassword().equals("") == false) fields.put("PASSWORD", criteria.getPassword());
+        
+        // Construct the SELECT fields and the WHERE conditions
+        if (fields.isEmpty() == false) {
+            HashSet<String> fieldNames = new HashSet<String>( fields.keySet() );
+            String key;
+            Iterator<String> iter = fieldNames.iterator();
+            condition += " WHERE ";
+            
+            while (iter.hasNext()) {
+                key = iter.next();
+                condition += key + " = '" + fields.get( key ) + "' ";            
+                if (iter.hasNext()) condition += " AND ";
+            }
+        }
+
+        // Construct and execute the query
+        String query = "SELECT * FROM Guest" + condition + " ORDER BY Name ";
+        ResultSet rs = executeQuery( query );
+        
+        // Get the records from the ResultSet
+        ArrayList<GuestInfo> users = new ArrayList<GuestInfo>();
+        GuestInfo nextGuest;
+        while (rs.next()) {
+            nextGuest = new GuestInfo( rs.getString("NAME"),
+                                   rs.getString("ADDRESS"),
+                                   rs.getString("CITY"),
+                                   rs.getString("POSTCODE"),
+                                   rs.getString("TELEPHONE"),
+                                   rs.getString("EMAIL"),
+                                   rs.getString("PASSWORD") );
+            users.add(nextGuest);
+        }
+        
+        closeConnection(false);
+        return users;
+    }
+    
+    
+    /** 
+     *  Checks if an admin exists
+     *  @param email the email to query for
+     *  @return boolean indicating if user is an admin
+     *  @throws SQLException if there is a problem accessing the database
+     */    
+     public boolean adminExists(String email) throws SQLException {
+        return recordExists("GuestAdmin", "EMAIL", email);
+    }
+    
+    /** 
+     *  Checks if a user exists
+     *  @param email the email to query for
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    public boolean userExists(String email) throws SQLException {
+        return recordExists("Guest", "EMAIL", email);
+    }
+    
+    /** 
+     *  Verifies that a login is valid
+     *  @param email the email to check for
+     *  @param pass the password for the email
+     *  @return boolean indicating if email and pass are valid
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    public synchronized boolean validLogin(String email, String pass) throws SQLException {
+        boolean exists = false;
+        String query = "SELECT * FROM Guest WHERE Email = '" + email + "' AND Password = '" + pass + "'";
+        
+        ResultSet rs = executeQuery(query);
+        if (rs.next()) exists = true;
+        
+        closeConnection(false);
+        return exists;
+    }
+    
+    /** 
+     *  Checks if a record with the given value exists in a table
+     *  @param table the table to query
+     *  @param attribute the column to check
+     *  @param value the value of the attribute to search for
+     *  @return boolean indicating if the record exists
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    private synchronized boolean recordExists(String table, String attribute, String value) throws SQLException {
+        boolean exists = false;
+        String query = "SELECT " + attribute + " FROM " + table + " WHERE " + attribute + " = '" + value + "' ";
+        ResultSet rs = executeQuery(query);
+        
+        if (rs.next()) exists = true;
+        
+        closeConnection(false);        
+        return exists;
+    }
+
+    /**  
+     * Adds a server log to the database
+     * @param log the GuestLog to add
+     * @throws SQLException if there is a problem accessing the database
+     */
+    public void addGuestLog(GuestLog log) throws SQLException {
+        // Create the INSERT command
+        String dateFormat = "YYYY-MM-DD HH24:MI:SS";
+        String insert = "INSERT INTO GuestLog VALUES( "
+                      + log.getGLID() + ","
+                      + "'" + log.getEmail() + "',"
+                      + "'" + log.getIP() + "',"
+                      + "to_date('" + log.getDate() + "','" + dateFormat + "') "
+                      + ") ";
+        executeCommand(insert);        
+    }
+    
+    /**  
+     * Adds and entry to the guest book
+     * @param entry the GuestEntry to add
+     * @throws SQLException if there is a problem accessing the database
+     */
+    public void addGuestEntry(GuestEntry entry) throws SQLException {
+        // Create the INSERT command
+        String dateFormat = "YYYY-MM-DD HH24:MI:SS";
+        String insert = "INSERT INTO GuestEntry VALUES( "
+                      + entry.getGEID() + ","
+                      + "'" + entry.getEmail() + "',"
+                      + "'" + entry.getEntry() + "',"
+                      + "to_date('" + entry.getDate() + "','" + dateFormat + "') "
+                      + ") ";
+        executeCommand(insert);        
+    }
+    
+    /** 
+     *  Retrieves all GuestLog records from the database.
+     *  @return ArrayList<GuestLog> of the records
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    public synchronized ArrayList<GuestLog> getGuestLogs() throws SQLException {
+        ArrayList<GuestLog> logs = new ArrayList<GuestLog>();
+        GuestLog nextLog;
+        
+        ResultSet rs = executeQuery("SELECT GLID, EMAIL, IPADDRESS, TO_CHAR(LOGDATE, 'YYYY-MM-DD HH24:MI:SS') AS LDATE FROM GUESTLOG ORDER BY LDATE DESC ");
+        while(rs.next()) {
+            nextLog = new GuestLog( rs.getLong("GLID"), rs.getString("EMAIL"),
+                                    rs.getString("IPADDRESS"), rs.getString("LDATE") );
+            logs.add( nextLog );
+        }
+        
+        closeConnection(false);        
+        return logs;
+    }
+
+    /**  
+     *  Retrieves all GuestEntry records from the database.
+     *  @return ArrayList<GuestEntry> of the records
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    public synchronized ArrayList<GuestEntry> getGuestEntries() throws SQLException {
+        ArrayList<GuestEntry> entries = new ArrayList<GuestEntry>();
+        GuestEntry nextEntry;
+        
+        ResultSet rs = executeQuery("SELECT GEID, EMAIL, ENTRY, TO_CHAR(ENTRYDATE, 'YYYY-MM-DD HH24:MI:SS') AS EDATE FROM GUESTENTRY ORDER BY EDATE DESC ");
+        while(rs.next()) {
+            nextEntry = new GuestEntry( rs.getLong("GEID"), rs.getString("EMAIL"),
+                                        rs.getString("ENTRY"), rs.getString("EDATE") );
+            entries.add( nextEntry );
+        }
+        
+        closeConnection(false);        
+        return entries;
+    }    
+    
+    /** 
+     *  Retrieves the maximum GEID in the database
+     *  @return long indicating the maximum GEID
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    public long getMaxGEID() throws SQLException {
+        return getMaxID("GEID", "GuestEntry");
+    }    
+    
+    /** 
+     *  Retrieves the maximum GLID in the database
+     *  @return long indicating the maximum GLID
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    public long getMaxGLID() throws SQLException {
+        return getMaxID("GLID", "GuestLog");
+    }
+    
+    /** 
+     *  Allocates a GEID above the table's maximum and every GEID this handler has handed
+     *  out, so that entries added at once are not given the same one.
+     *  @return long the new GEID
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    public synchronized long nextGEID() throws SQLException {
+        lastGEID = Math.max( lastGEID, getMaxID("GEID", "GuestEntry") ) + 1;
+        return lastGEID;
+    }
+    
+    /** 
+     *  Allocates a GLID above the table's maximum and every GLID this handler has handed
+     *  out, so that logs added at once are not given the same one.
+     *  @return long the new GLID
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    public synchronized long nextGLID() throws SQLException {
+        lastGLID = Math.max( lastGLID, getMaxID("GLID", "GuestLog") ) + 1;
+        return lastGLID;
+    }
+    
+    /** 
+     *  Returns the highest ID from a table.
+     *  @param idName the name of the column to get the id from
+     *  @param table the table to query
+     *  @return long indicating the max ID in a relation
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    private synchronized long getMaxID(String idName, String table) throws SQLException {
+        long max = -1;
+        String query = "SELECT MAX(" + idName + ") FROM " + table + " ";
+        ResultSet rs = executeQuery(query);
+        
+        if (rs.next()) max = rs.getLong(1);
+        
+        closeConnection(false);        
+        return max;
+    }
+    
+    /** 
+     *  Streams the Guest table to an export.
+     *  @param out the export to write to
+     *  @throws SQLException if there is a problem accessing the database
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuests(ExportWriter out) throws SQLException, IOException {
+        export("SELECT * FROM Guest", NetUtils.EXPORT_GUESTS, out);
+    }
+    
+    /** 
+     *  Streams the GuestEntry table to an export, oldest first.
+     *  @param out the export to write to
+     *  @throws SQLException if there is a problem accessing the database
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuestEntries(ExportWriter out) throws SQLException, IOException {
+        export("SELECT GEID, EMAIL, ENTRY, TO_CHAR(ENTRYDATE, 'YYYY-MM-DD HH24:MI:SS') AS EDATE FROM GUESTENTRY ORDER BY GEID ",
+               NetUtils.EXPORT_ENTRIES, out);
+    }
+    
+    /** 
+     *  Streams the GuestLog table to an export, oldest first.
+     *  @param out the export to write to
+     *  @throws SQLException if there is a problem accessing the database
+     *  @throws IOException if the export cannot be written
+     */
+    public void exportGuestLogs(ExportWriter out) throws SQLException, IOException {
+        export("SELECT GLID, EMAIL, IPADDRESS, TO_CHAR(LOGDATE, 'YYYY-MM-DD HH24:MI:SS') AS LDATE FROM GUESTLOG ORDER BY GLID ",
+               NetUtils.EXPORT_LOGS, out);
+    }
+    
+    /** 
+     *  Runs an export query on a read-only connection of its own, so the handler is not
+     *  locked while the rows are sent, and writes each row as the cursor reaches it.
+     *  The cursor fetches EXPORT_FETCH_SIZE rows per round trip.
+     *  @param query the SELECT to run
+     *  @param table one of the NetUtils.EXPORT_TABLES, giving the row type
+     *  @param out the export to write to
+     *  @throws SQLException if there is a problem accessing the database
+     *  @throws IOException if the export cannot be written
+     */
+    private void export(String query, String table, ExportWriter out) throws SQLException, IOException {
+        String dbURL, dbUser, dbPass;
+        synchronized (this) {
+            dbURL = url;
+            dbUser = user;
+            dbPass = password;
+        }
+        
+        Connection conn = DriverManager.getConnection(dbURL, dbUser, dbPass);
+        try {
+            conn.setReadOnly(true);
+            Statement select = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            select.setFetchSize(EXPORT_FETCH_SIZE);
+            ResultSet rs = select.executeQuery(query);
+            
+            while (rs.next()) {
+                if ( table.equals(NetUtils.EXPORT_GUESTS) ) {
+                    out.writeGuest( new GuestInfo( rs.getString("NAME"), rs.getString("ADDRESS"), rs.getString("CITY"),
+                                                   rs.getString("POSTCODE"), rs.getString("TELEPHONE"),
+                                                   rs.getString("EMAIL"), rs.getString("PASSWORD") ) );
+                }
+                else if ( table.equals(NetUtils.EXPORT_ENTRIES) ) {
+                    out.writeEntry( new GuestEntry( rs.getLong("GEID"), rs.getString("EMAIL"),
+                                                    rs.getString("ENTRY"), rs.getString("EDATE") ) );
+                }
+                else {
+                    out.writeLog( new GuestLog( rs.getLong("GLID"), rs.getString("EMAIL"),
+                                                rs.getString("IPADDRESS"), rs.getString("LDATE") ) );
+                }
+            }
+            select.close();
+        }
+        finally {
+            conn.close();
+        }
+    }
+    
+    /** 
+     *  Attempts to create a connection to the indicated Oracle database.
+     *  @throws SQLException if there is a problem accessing the database
+     */
+    private synchronized void createConnection() throws SQLException {        
+        // Do not start work the client has stopped waiting for
+        if ( RequestDeadline.isExpired() ) {
+            throw new SQLTimeoutException("The client's deadline passed before the database was reached.");
+        }
+        
+        // Reuse the connection kept for the thread's batch
+        Connection kept = batchConn.get();
+        if (kept != null) {
+            guestConn = kept;
+            isOpen = true;
+            return;
+        }
+        
+        // Create the connection
+        try { guestConn = DriverManager.getConnection(url, user, password); }
+        catch (SQLException sqlEx) {
+            throw new SQLException( sqlEx.getMessage() + "\nSPECIFIC: Connection to database failed.");
+        }
+        
+        try { guestConn.setAutoCommit(false); }
+        catch (SQLException sqlEx) {
+            closeConnection(false);
+            throw new SQLException( sqlEx.getMessage() + "\nSPECIFIC: AutoCommit configuration failed.");    
+        }
+        
+        try { guestConn.setReadOnly(readOnly); }
+        catch (SQLException sqlEx) {
+            closeConnection(false);
+            throw new SQLException( sqlEx.getMessage() + "\nSPECIFIC: ReadOnly configuration failed.");
+        }
+        
+        // Only executed if the connection is successful
+        isOpen = true;  
+        if (batchDepth.get() > 0) batchConn.set(guestConn);
+    }
+    
+    /** 
+     *  Attempts to close the connection to the database
+     *  @param doCommit indicates whether or not a COMMIT should be performed on closing.
+     *  @throws SQLException if the database cannot be accessed
+     */
+    private synchronized void closeConnection(boolean doCommit) throws SQLException {
+        if (isOpen() == false) return;
+        
+        if (doCommit) guestConn.commit();
+        else guestConn.rollback();
+        
+        // A batch keeps its thread's connection, closing only the last statement
+        if (guestConn == batchConn.get()) {
+            try {
+                if (statement != null) statement.close();
+            }
+            finally {
+                statement = null;
+                guestConn = null;
+                isOpen = false;
+            }
+            return;
+        }
+        
+        try { guestConn.close(); }
+        catch (SQLException sqlEx) {
+            throw new SQLException(sqlEx.getMessage() + "\nSPECIFIC: Closing connection failed.");
+        }
+        
+        finally {
+            isOpen = false;
+        }
+    }
+    
+    /** 
+     *  Attempts to create a statement with the open connection.
+     *  @throws SQLException if the Statement cannot be created.
+     */
+    private synchronized void createStatement() throws SQLException {
+        if ( isOpen ) {
+            statement = guestConn.createStatement();
+            applyDeadline(statement);
+        }
+    }      
+    
+    /** 
+     *  Limits a statement to the time left before the RequestDeadline, if there is one.
+     *  @param s the statement
+     *  @throws SQLException if the deadline has passed
+     */
+    private static void applyDeadline(Statement s) throws SQLException {
+        if ( RequestDeadline.isExpired() ) {
+            throw new SQLTimeoutException("The client's deadline passed before the query was run.");
+        }
+        
+        int seconds = RequestDeadline.remainingSeconds();
+        if (seconds > 0) s.setQueryTimeout(seconds);
+    }
+}
@@ -0,0 +1,427 @@
+package guestbook.server;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import guestbook.shared.*;
+
+/**
+ *  A ReplicatedDatabaseHandler spreads the reads of an Oracle database across read
+ *  replicas, sending the writes to the primary, so that read volume can grow without
+ *  loading the primary.
+ *      A read goes to the healthy replica with the fewest reads in progress. If the read
+ *  fails and the replica cannot be connected to, the replica is marked down and the read
+ *  is run on the primary instead; a health checker tries to connect to the down replicas
+ *  every HEALTH_INTERVAL and brings them back once they answer. While every replica is
+ *  down, reads go to the primary.
+ *      A replica may lag behind the primary, so reads go to the primary when they must see
+ *  its latest state: the reads of a request in the write lane, such as the check of a
+ *  login or of a new guest's email; the allocation of IDs; and, for the read-your-writes
+ *  period after a session has written (see setReadYourWrites), every read of that session.
+ *  The session is the RequestSession of the request being serviced.
+ *      Each database is reached through a RealDatabaseHandler of its own, so a slow replica
+ *  holds up only the reads sent to it. The primary is given two: one for writes, and a
+ *  read-only one for the reads which are not sent to a replica.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class ReplicatedDatabaseHandler implements DatabaseHandler {
+    public static final int HEALTH_INTERVAL = 2000;                 // ms between checks of down replicas
+    public static final long DEFAULT_READ_YOUR_WRITES = 3000;       // ms a session reads from the primary after writing
+    private static final int MAX_SESSIONS = 10000;      // sessions remembered before the expired ones are forgotten
+
+    private DatabaseHandler primary;            // Writes, and reads which must see the latest state
+    private DatabaseHandler primaryReader;      // Other reads while no replica is up
+    private ArrayList<Replica> replicas = new ArrayList<Replica>();
+    private int next;                           // The replica choose starts from
+
+    private ConcurrentHashMap<String, Long> recentWriters = new ConcurrentHashMap<String, Long>();  // nanoTime each session may read from replicas again
+    private volatile long readYourWrites = DEFAULT_READ_YOUR_WRITES;
+
+    private AtomicLong replicaReads = new AtomicLong();
+    private AtomicLong primaryReads = new AtomicLong();
+
+    private ScheduledExecutorService healthChecker;     // Started when a replica first goes down
+    private boolean closed;
+
+    /**
+     *  @param primaryHandler the primary database, for writes
+     *  @param primaryReadHandler the primary database, for reads; may be primaryHandler
+     */
+    public ReplicatedDatabaseHandler(DatabaseHandler primaryHandler, DatabaseHandler primaryReadHandler) {
+        primary = primaryHandler;
+        primaryReader = primaryReadHandler;
+    }
+
+    /**
+     *  Adds a read replica, which should be read-only. A replica which cannot be connected
+     *  to is added as down.
+     *  @param replica the replica
+     */
+    public void addReplica(RealDatabaseHandler replica) {
+        Replica r = new Replica(replica);
+        boolean up = isReachable(r);
+        synchronized (this) {
+            replicas.add(r);
+        }
+        if (up == false) markDown(r);
+    }
+
+    /**
+     *  Sets how long after a session writes its reads go to the primary, so that it sees
+     *  its own writes even if the replicas are behind.
+     *  @param ms the period, or 0 to let every read go to a replica
+     *  @throws IllegalArgumentException if ms < 0
+     */
+    public void setReadYourWrites(long ms) throws IllegalArgumentException {
+        if (ms < 0) throw new IllegalArgumentException("Value '" + ms + "' is invalid. The read-your-writes period cannot be negative.");
+        readYourWrites = ms;
+        if (ms == 0) recentWriters.clear();
+    }
+
+    /**
+     *  @return long the ms after a session writes that its reads go to the primary
+     */
+    public long getReadYourWrites() { return readYourWrites; }
+
+    /**
+     *  @return int the number of replicas
+     */
+    public synchronized int getReplicaCount() { return replicas.size(); }
+
+    /**
+     *  @return int the number of replicas which are up
+     */
+    public synchronized int getHealthyReplicas() {
+        int healthy = 0;
+        for (Replica r : replicas) if (r.downSince == 0) healthy++;
+        return healthy;
+    }
+
+    /**
+     *  @return long the number of reads run on a replica
+     */
+    public long getReplicaReads() { return replicaReads.get(); }
+
+    /**
+     *  @return long the number of reads run on the primary
+     */
+    public long getPrimaryReads() { return primaryReads.get(); }
+
+    public void addRecord(GuestInfo info) throws Exception {
+        wrote();
+        primary.addRecord(info);
+    }
+
+    public boolean[] bulkAddRecords(List<GuestInfo> guests, int chunkSize) throws Exception {
+        wrote();
+        return primary.bulkAddRecords(guests, chunkSize);
+    }
+
+    public void updateRecord(GuestInfo updatedGuest) throws Exception {
+        wrote();
+        primary.updateRecord(updatedGuest);
+    }
+
+    public void deleteRecord(GuestInfo target) throws Exception {
+        wrote();
+        primary.deleteRecord(target);
+    }
+
+    public void addGuestLog(GuestLog log) throws Exception {
+        wrote();
+        primary.addGuestLog(log);
+    }
+
+    public void addGuestEntry(GuestEntry entry) throws Exception {
+        wrote();
+        primary.addGuestEntry(entry);
+    }
+
+    public GuestInfo retrieveRecord(GuestInfo target) throws Exception {
+        return read( db -> db.retrieveRecord(target), null );
+    }
+
+    public ArrayList<GuestInfo> retrieveUsers(GuestInfo criteria) throws Exception {
+        return read( db -> db.retrieveUsers(criteria), null );
+    }
+
+    public boolean userExists(String email) throws Exception {
+        return read( db -> db.userExists(email), null );
+    }
+
+    public boolean adminExists(String email) throws Exception {
+        return read( db -> db.adminExists(email), null );
+    }
+
+    public boolean validLogin(String email, String pass) throws Exception {
+        return read( db -> db.validLogin(email, pass), null );
+    }
+
+    public ArrayList<GuestLog> getGuestLogs() throws Exception {
+        return read( db -> db.getGuestLogs(), null );
+    }
+
+    public ArrayList<GuestEntry> getGuestEntries() throws Exception {
+        return read( db -> db.getGuestEntries(), null );
+    }
+
+    /**
+     *  IDs are allocated from the primary, as a replica may not have the latest.
+     */
+    public long getMaxGEID() throws Exception {
+        return primary.getMaxGEID();
+    }
+
+    /**
+     *  IDs are allocated from the primary, as a replica may not have the latest.
+     */
+    public long getMaxGLID() throws Exception {
+        return primary.getMaxGLID();
+    }
+
+    public long nextGEID() throws Exception {
+        return primary.nextGEID();
+    }
+
+    public long nextGLID() throws Exception {
+        return primary.nextGLID();
+    }
+
+    public void exportGuests(ExportWriter out) throws Exception {
+        read( db -> { db.exportGuests(out); return null; }, out );
+    }
+
+    public void exportGuestEntries(ExportWriter out) throws Exception {
+        read( db -> { db.exportGuestEntries(out); return null; }, out );
+    }
+
+    public void exportGuestLogs(ExportWriter out) throws Exception {
+        read( db -> { db.exportGuestLogs(out); return null; }, out );
+    }
+
+    /**
+     *  Batches the calls to the primary. Reads sent to a replica connect per call.
+     */
+    public void beginBatch() throws Exception {
+        primary.beginBatch();
+        if (primaryReader != primary) primaryReader.beginBatch();
+    }
+
+    public void endBatch() throws Exception {
+        try {
+            primary.endBatch();
+        }
+        finally {
+            if (primaryReader != primary) primaryReader.endBatch();
+        }
+    }
+
+    /**
+     *  Stops the health checker and closes every database.
+     */
+    public void close() throws Exception {
+        ArrayList<Replica> all;
+        synchronized (this) {
+            closed = true;
+            if (healthChecker != null) {
+                healthChecker.shutdownNow();
+                healthChecker = null;
+            }
+            all = new ArrayList<Replica>(replicas);
+        }
+
+        for (Replica r : all) r.handler.close();
+        if (primaryReader != primary) primaryReader.close();
+        primary.close();
+    }
+
+    /**
+     *  Runs a read on a replica, or on the primary if it must see the latest state or no
+     *  replica is up. A read which fails on a replica which then cannot be connected to is
+     *  run again on the primary, unless it has already written rows to an export.
+     *  @param query the read
+     *  @param out the export the read writes to, or null
+     *  @return T the result of the read
+     *  @throws Exception if the read fails
+     */
+    private <T> T read(Read<T> query, ExportWriter out) throws Exception {
+        if ( RequestSession.isWriting() || wroteRecently() ) return readPrimary(query);
+
+        Replica replica = choose();
+        if (replica == null) return readPrimary(query);
+
+        try {
+            T result = query.on(replica.handler);
+            replicaReads.incrementAndGet();
+            return result;
+        }
+        catch (SQLTimeoutException timeoutEx) {
+            throw timeoutEx;    // The client's deadline has passed, so there is no time to retry
+        }
+        catch (SQLException sqlEx) {
+            // Only a replica which cannot be reached is given up; a bad query would fail anywhere
+            if ( RequestDeadline.isExpired() || isReachable(replica) ) throw sqlEx;
+            markDown(replica);
+            if ( out != null && out.getRowCount() > 0 ) throw sqlEx;
+            return readPrimary(query);
+        }
+        finally {
+            synchronized (this) {
+                replica.reading--;
+            }
+        }
+    }
+
+    /**
+     *  @param query the read
+     *  @return T the result of the read, run on the primary
+     *  @throws Exception if the read fails
+     */
+    private <T> T readPrimary(Read<T> query) throws Exception {
+        primaryReads.incrementAndGet();
+        return query.on( RequestSession.isWriting() ? primary : primaryReader );
+    }
+
+    /**
+     *  Chooses the healthy replica with the fewest reads in progress, counting the read
+     *  about to be made. Ties are broken in turn, starting one replica further each time.
+     *  @return Replica the replica, or null if none is up
+     */
+    private synchronized Replica choose() {
+        Replica best = null;
+        int count = replicas.size();
+        if (count == 0) return null;
+        
+        next = (next + 1) % count;
+        for (int i = 0; i < count; i++) {
+            Replica r = replicas.get( (next + i) % count );
+            if (r.downSince != 0) continue;
+            if (best == null || r.reading < best.reading) best = r;
+        }
+        if (best != null) best.reading++;
+        return best;
+    }
+
+    /**
+     *  @param replica a replica
+     *  @return boolean true if a connection can be made to the replica
+     */
+    private boolean isReachable(Replica replica) {
+        try {
+            replica.handler.attemptConnection();
+            return true;
+        }
+        catch (SQLException sqlEx) {
+            return false;
+        }
+    }
+
+    /**
+     *  Marks a replica down, starting the health checker if it is not running.
+     *  @param replica the replica which failed
+     */
+    private synchronized void markDown(Replica replica) {
+        if (replica.downSince == 0) replica.downSince = System.currentTimeMillis();
+
+        if (healthChecker == null && closed == false) {
+            healthChecker = Executors.newSingleThreadScheduledExecutor( new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread checker = new Thread(r, "GuestBook replica checker");
+                    checker.setDaemon(true);
+                    return checker;
+                }
+            });
+            healthChecker.scheduleWithFixedDelay( new Runnable() {
+                public void run() { checkHealth(); }
+            }, HEALTH_INTERVAL, HEALTH_INTERVAL, TimeUnit.MILLISECONDS );
+        }
+    }
+
+    /**
+     *  Tries to connect to each down replica, bringing back those which answer.
+     */
+    private void checkHealth() {
+        ArrayList<Replica> down = new ArrayList<Replica>();
+        synchronized (this) {
+            for (Replica r : replicas) if (r.downSince != 0) down.add(r);
+        }
+
+        for (Replica replica : down) {
+            if ( isReachable(replica) == false ) continue;
+            synchronized (this) {
+                replica.downSince = 0;
+            }
+        }
+    }
+
+    /**
+     *  Notes that the current request's session has written, so that its reads go to the
+     *  primary for the read-your-writes period.
+     */
+    private void wrote() {
+        String session = RequestSession.get();
+        long period = readYourWrites;
+        if (session == null || period == 0) return;
+
+        long now = System.nanoTime();
+        recentWriters.put( session, now + period * 1000000L );
+
+        // Forget the sessions whose period is over, once there are many
+        if (recentWriters.size() > MAX_SESSIONS) {
+            recentWriters.values().removeIf( until -> until - now <= 0 );
+        }
+    }
+
+    /**
+     *  @return boolean true if the current request's session wrote within the
+     *  read-your-writes period
+     */
+    private boolean wroteRecently() {
+        String session = RequestSession.get();
+        if (session == null) return false;
+
+        Long until = recentWriters.get(session);
+        if (until == null) return false;
+        if (until - System.nanoTime() > 0) return true;
+
+        recentWriters.remove(session, until);
+        return false;
+    }
+
+    /**
+     *  A read to run on whichever database is chosen.
+     */
+    private interface Read<T> {
+        /**
+         *  @param db the database to read
+         *  @return T the result of the read
+         *  @throws Exception if the read fails
+         */
+        T on(DatabaseHandler db) throws Exception;
+    }
+
+    /**
+     *  A read replica.
+     */
+    private static class Replica {
+        private RealDatabaseHandler handler;
+        private int reading;        // reads in progress
+        private long downSince;     // ms the replica went down, or 0 if it is up
+
+        /**
+         *  @param h the replica's handler
+         */
+        Replica(RealDatabaseHandler h) { handler = h; }
+    }
+}
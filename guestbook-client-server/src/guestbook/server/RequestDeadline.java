@@ -0,0 +1,71 @@
+package guestbook.server;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ *  RequestDeadline holds the deadline of the request the current thread is servicing,
+ *  so that a DatabaseHandler can see how long the client will still wait without every
+ *  method taking it as a parameter. A ClientHandler sets the deadline from the timeout
+ *  a client sends with its request, counted from when the request arrived, and clears
+ *  it once the request has been answered. A thread with no deadline set has no limit.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class RequestDeadline {
+
+    // nanoTime by which the current request must be answered; absent if it has no deadline
+    private static final ThreadLocal<Long> deadline = new ThreadLocal<Long>();
+
+    /**
+     *  Sets the deadline of the current thread's request.
+     *  @param arrival the nanoTime at which the request arrived
+     *  @param timeout the ms the client will wait from then, or 0 if it will wait indefinitely
+     */
+    public static void set(long arrival, long timeout) {
+        if (timeout > 0) deadline.set( arrival + timeout * 1000000L );
+        else deadline.remove();
+    }
+
+    /**
+     *  Clears the deadline of the current thread's request.
+     */
+    public static void clear() {
+        deadline.remove();
+    }
+
+    /**
+     *  @return boolean true if the current request has a deadline which has passed
+     */
+    public static boolean isExpired() {
+        Long d = deadline.get();
+        return d != null && System.nanoTime() - d >= 0;
+    }
+
+    /**
+     *  @return long the ms left before the current request's deadline, or Long.MAX_VALUE
+     *  if it has none
+     */
+    public static long remainingMillis() {
+        Long d = deadline.get();
+        if (d == null) return Long.MAX_VALUE;
+        return Math.max( 0, (d - System.nanoTime()) / 1000000L );
+    }
+
+    /**
+     *  Rounds the time left up to whole seconds, for Statement.setQueryTimeout.
+     *  @return int the seconds left, at least 1, or 0 if the current request has no deadline
+     */
+    public static int remainingSeconds() {
+        long ms = remainingMillis();
+        if (ms == Long.MAX_VALUE) return 0;
+        return (int)Math.min( Integer.MAX_VALUE, Math.max(1, (ms + 999) / 1000) );
+    }
+
+    /**
+     *  @throws TimeoutException if the current request's deadline has passed
+     */
+    public static void check() throws TimeoutException {
+        if ( isExpired() ) throw new TimeoutException("The client's deadline passed before the request was serviced.");
+    }
+}
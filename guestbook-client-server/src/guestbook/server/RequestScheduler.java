@@ -0,0 +1,456 @@
+package guestbook.server;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import guestbook.shared.*;
+
+/**
+ *  A RequestScheduler decides when each request read by a ClientHandler is serviced, so
+ *  that cheap interactive requests are not queued behind expensive reports.
+ *      Every request falls into one of the CLASSES. At most getPermits() requests are
+ *  serviced at once, and at most the class's cap of any one class. A request which
+ *  cannot be serviced at once waits in its class's queue. As requests finish, the
+ *  waiting classes are served in proportion to their weights: each time a class is
+ *  served its pass advances by STRIDE / weight, and the eligible class with the lowest
+ *  pass is served next. A class which has been idle starts from the pass of the class
+ *  last served, so it cannot save up turns.
+ *      By default interactive requests weigh 8, standard requests 4 and reports 1, and
+ *  reports may take a quarter of the permits; setWeight and setCap change them.
+ *  setPermits changes the number of permits while requests are being serviced: more
+ *  waiting requests are let through at once if it grows, and if it shrinks, no more are
+ *  let through until enough of those running have been released. Default caps follow
+ *  the permits, and caps given to setCap are limited to them.
+ *  The request is serviced on the handler's own thread once it has been let through,
+ *  and must be released when it is done.
+ *      Requests also fall into one of the LANES, reads or writes, and the server gives
+ *  each lane a scheduler of its own, so that writes stalled on locks or commits hold
+ *  only the write lane's permits. setQueueLimit bounds how many requests may wait in a
+ *  scheduler; beyond it a request is rejected rather than holding a handler thread
+ *  which the other lane needs. getRunning, getQueued, getServed, getRejected and
+ *  getExpired measure how saturated the scheduler is.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class RequestScheduler {
+    // Request classes
+    public static final int CLASS_INTERACTIVE = 0;  // logins, single records and comments
+    public static final int CLASS_STANDARD = 1;     // the guest book, filtered user lists and batches
+    public static final int CLASS_REPORT = 2;       // logs, unfiltered user lists, bulk loads and exports
+    public static final String[] CLASSES = { "Interactive", "Standard", "Report" };
+
+    // Execution lanes
+    public static final int LANE_READ = 0;      // requests which only read the database
+    public static final int LANE_WRITE = 1;     // requests which change it, including logins, which are logged
+    public static final String[] LANES = { "Read", "Write" };
+
+    public static final int[] DEFAULT_WEIGHTS = { 8, 4, 1 };
+    private static final long STRIDE = 1 << 20;
+
+    private ReentrantLock lock = new ReentrantLock();
+    private int permits;            // requests serviced at once
+    private int running;            // requests being serviced
+    private int[] weights = DEFAULT_WEIGHTS.clone();
+    private int[] caps;             // requests of each class serviced at once
+    private int[] capSettings;      // caps given to setCap; 0 keeps the default
+    private int[] active;           // requests of each class being serviced
+    private long[] pass;            // the next turn of each class; the lowest is served first
+    private long virtualTime;       // the pass of the class last served
+    private ArrayDeque<Waiter>[] queues;
+    private int queueLimit = Integer.MAX_VALUE;     // requests which may wait at once
+
+    // Saturation metrics
+    private int queued;             // requests waiting
+    private long served;            // requests let through
+    private long rejected;          // requests turned away because the queue was full
+    private long expired;           // requests whose deadline passed while they waited
+
+    /**
+     *  @param totalPermits the number of requests serviced at once
+     *  @throws IllegalArgumentException if totalPermits < 1
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RequestScheduler(int totalPermits) throws IllegalArgumentException {
+        if (totalPermits < 1) throw new IllegalArgumentException("At least one request must be serviced at once.");
+        permits = totalPermits;
+
+        caps = new int[CLASSES.length];
+        capSettings = new int[CLASSES.length];
+        for (int c = 0; c < CLASSES.length; c++) caps[c] = capOf(c);
+
+        active = new int[CLASSES.length];
+        pass = new long[CLASSES.length];
+        queues = new ArrayDeque[CLASSES.length];
+        for (int c = 0; c < CLASSES.length; c++) queues[c] = new ArrayDeque<Waiter>();
+    }
+
+    /**
+     *  @param request a client's request
+     *  @return int the class of the request; a batch is in the heaviest class of its requests
+     */
+    public static int classify(ClientRequest request) {
+        String type = request.getType();
+        Object[] data = request.getData();
+
+        if ( type.equals(NetUtils.CR_GET_ENTRIES) ) return CLASS_STANDARD;
+        if ( type.equals(NetUtils.CR_GET_LOGS) || type.equals(NetUtils.CR_GET_LOGS_COLUMNAR) ) return CLASS_REPORT;
+        if ( type.equals(NetUtils.CR_BULK_LOAD) || type.equals(NetUtils.CR_EXPORT) ) return CLASS_REPORT;
+
+        if ( type.equals(NetUtils.CR_GET_USERS) || type.equals(NetUtils.CR_GET_USERS_COLUMNAR) ) {
+            return isUnfiltered( (GuestInfo)data[0] ) ? CLASS_REPORT : CLASS_STANDARD;
+        }
+
+        if ( type.equals(NetUtils.CR_BATCH) ) {
+            int heaviest = CLASS_STANDARD;
+            for (Object sub : data) {
+                // A nested batch is refused, so costs nothing
+                if ( ((ClientRequest)sub).getType().equals(NetUtils.CR_BATCH) == false ) {
+                    heaviest = Math.max( heaviest, classify((ClientRequest)sub) );
+                }
+            }
+            return heaviest;
+        }
+
+        return CLASS_INTERACTIVE;
+    }
+
+    /**
+     *  @param request a client's request
+     *  @return int the lane of the request; a batch is in the write lane if any of its
+     *  requests is
+     */
+    public static int lane(ClientRequest request) {
+        String type = request.getType();
+
+        if ( type.equals(NetUtils.CR_GUEST_RETRIEVE) || type.equals(NetUtils.CR_GET_ENTRIES) ) return LANE_READ;
+        if ( type.equals(NetUtils.CR_GET_LOGS) || type.equals(NetUtils.CR_GET_LOGS_COLUMNAR) ) return LANE_READ;
+        if ( type.equals(NetUtils.CR_GET_USERS) || type.equals(NetUtils.CR_GET_USERS_COLUMNAR) ) return LANE_READ;
+        if ( type.equals(NetUtils.CR_EXPORT) || type.equals(NetUtils.CR_PING) ) return LANE_READ;
+
+        if ( type.equals(NetUtils.CR_BATCH) ) {
+            for (Object sub : request.getData()) {
+                // A nested batch is refused, so writes nothing
+                ClientRequest r = (ClientRequest)sub;
+                if ( r.getType().equals(NetUtils.CR_BATCH) == false && lane(r) == LANE_WRITE ) return LANE_WRITE;
+            }
+            return LANE_READ;
+        }
+
+        return LANE_WRITE;
+    }
+
+    /**
+     *  @param criteria the criteria of a user list
+     *  @return boolean true if the criteria match every guest
+     */
+    private static boolean isUnfiltered(GuestInfo criteria) {
+        return criteria.getEmail().equals(RealDatabaseHandler.DUMMY_EMAIL)
+            && criteria.getName().equals("") && criteria.getAddress().equals("")
+            && criteria.getCity().equals("") && criteria.getPostcode().equals("")
+            && criteria.getTelephone().equals("");
+    }
+
+    /**
+     *  Waits until a request of the class may be serviced.
+     *  @param requestClass one of the CLASSES
+     *  @param timeout the ms to wait at most, or Long.MAX_VALUE to wait indefinitely
+     *  @throws TimeoutException if the request could not be serviced within the timeout
+     *  @throws RejectedExecutionException if the request would have to wait and the queue is full
+     *  @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void acquire(int requestClass, long timeout) throws TimeoutException, InterruptedException {
+        Waiter waiter = new Waiter( lock.newCondition() );
+        long nanos = (timeout == Long.MAX_VALUE) ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(timeout);
+
+        lock.lock();
+        try {
+            // A class which has been idle starts from the current turn
+            if ( queues[requestClass].isEmpty() ) pass[requestClass] = Math.max( pass[requestClass], virtualTime );
+            queues[requestClass].addLast(waiter);
+            queued++;
+            dispatch();
+
+            if (waiter.granted == false && queued > queueLimit) {
+                dequeue(requestClass, waiter);
+                rejected++;
+                throw new RejectedExecutionException("Too many requests are waiting to be serviced.");
+            }
+
+            try {
+                while (waiter.granted == false) {
+                    if (nanos <= 0) {
+                        dequeue(requestClass, waiter);
+                        expired++;
+                        throw new TimeoutException("The client's deadline passed while the request was queued.");
+                    }
+                    nanos = waiter.turn.awaitNanos(nanos);
+                }
+            }
+            catch (InterruptedException intEx) {
+                if (waiter.granted) release(requestClass);
+                else dequeue(requestClass, waiter);
+                throw intEx;
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Ends the servicing of a request let through by acquire, letting the next through.
+     *  @param requestClass the class given to acquire
+     */
+    public void release(int requestClass) {
+        lock.lock();
+        try {
+            running--;
+            active[requestClass]--;
+            dispatch();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Lets waiting requests through while there are permits, taking the eligible class
+     *  with the lowest pass each time. Called with the lock held.
+     */
+    private void dispatch() {
+        while (running < permits) {
+            int next = -1;
+            for (int c = 0; c < CLASSES.length; c++) {
+                if ( queues[c].isEmpty() || active[c] >= caps[c] ) continue;
+                if (next < 0 || pass[c] < pass[next]) next = c;
+            }
+            if (next < 0) return;
+
+            Waiter waiter = queues[next].pollFirst();
+            waiter.granted = true;
+            waiter.turn.signal();
+
+            queued--;
+            served++;
+            running++;
+            active[next]++;
+            virtualTime = pass[next];
+            pass[next] += STRIDE / weights[next];
+        }
+    }
+
+    /**
+     *  @param requestClass one of the CLASSES
+     *  @return int the cap of the class under the current permits: its setting, limited
+     *  to the permits, or by default the permits, or a quarter of them for reports
+     */
+    private int capOf(int requestClass) {
+        if (capSettings[requestClass] > 0) return Math.min(capSettings[requestClass], permits);
+        return (requestClass == CLASS_REPORT) ? Math.max(1, permits / 4) : permits;
+    }
+
+    /**
+     *  Removes a request which gave up waiting. Called with the lock held.
+     *  @param requestClass the class of the request
+     *  @param waiter the request
+     */
+    private void dequeue(int requestClass, Waiter waiter) {
+        queues[requestClass].remove(waiter);
+        queued--;
+    }
+
+    /**
+     *  Sets the share of the permits a class gets while other classes are waiting.
+     *  @param requestClass one of the CLASSES
+     *  @param weight the weight of the class
+     *  @throws IllegalArgumentException if weight < 1
+     */
+    public void setWeight(int requestClass, int weight) throws IllegalArgumentException {
+        if (weight < 1) throw new IllegalArgumentException("Value '" + weight + "' is invalid. A class weight must be at least 1.");
+        lock.lock();
+        try {
+            weights[requestClass] = weight;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Sets the most requests of a class which are serviced at once.
+     *  @param requestClass one of the CLASSES
+     *  @param cap the cap, which is limited to the number of permits
+     *  @throws IllegalArgumentException if cap < 1
+     */
+    public void setCap(int requestClass, int cap) throws IllegalArgumentException {
+        if (cap < 1) throw new IllegalArgumentException("Value '" + cap + "' is invalid. A class cap must be at least 1.");
+        lock.lock();
+        try {
+            capSettings[requestClass] = cap;
+            caps[requestClass] = capOf(requestClass);
+            dispatch();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Sets how many requests are serviced at once, recomputing the class caps. Requests
+     *  already let through are not affected.
+     *  @param totalPermits the number of requests serviced at once
+     *  @throws IllegalArgumentException if totalPermits < 1
+     */
+    public void setPermits(int totalPermits) throws IllegalArgumentException {
+        if (totalPermits < 1) throw new IllegalArgumentException("Value '" + totalPermits + "' is invalid. At least one request must be serviced at once.");
+        lock.lock();
+        try {
+            permits = totalPermits;
+            for (int c = 0; c < CLASSES.length; c++) caps[c] = capOf(c);
+            dispatch();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  Sets how many requests may wait at once. A request which would wait while the
+     *  limit is reached is rejected.
+     *  @param limit the limit
+     *  @throws IllegalArgumentException if limit < 0
+     */
+    public void setQueueLimit(int limit) throws IllegalArgumentException {
+        if (limit < 0) throw new IllegalArgumentException("Value '" + limit + "' is invalid. A queue limit cannot be negative.");
+        lock.lock();
+        try {
+            queueLimit = limit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  @return int the number of requests serviced at once
+     */
+    public int getPermits() {
+        lock.lock();
+        try {
+            return permits;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  @return int the number of requests which may wait at once
+     */
+    public int getQueueLimit() {
+        lock.lock();
+        try {
+            return queueLimit;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  @return int the number of requests being serviced
+     */
+    public int getRunning() {
+        lock.lock();
+        try {
+            return running;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  @return int the number of requests waiting to be serviced
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  @return long the number of requests let through so far
+     */
+    public long getServed() {
+        lock.lock();
+        try {
+            return served;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  @return long the number of requests rejected so far because the queue was full
+     */
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  @return long the number of requests whose deadline passed while they waited
+     */
+    public long getExpired() {
+        lock.lock();
+        try {
+            return expired;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  @param requestClass one of the CLASSES
+     *  @return int the number of requests of the class waiting to be serviced
+     */
+    public int getQueued(int requestClass) {
+        lock.lock();
+        try {
+            return queues[requestClass].size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     *  A request waiting to be let through.
+     */
+    private static class Waiter {
+        private Condition turn;     // signalled when the request is let through
+        private boolean granted;
+
+        /**
+         *  @param c the condition to wait on
+         */
+        Waiter(Condition c) { turn = c; }
+    }
+}
@@ -0,0 +1,73 @@
+package guestbook.server;
+
+/**
+ *  RequestSession holds the session of the request the current thread is servicing,
+ *  whether the request is in the write lane, and the guest whose session token it was
+ *  sent with, so that a DatabaseHandler can route the request's reads, and a batch's
+ *  requests can be authorized, without every method taking them as parameters.
+ *  A ClientHandler sets them from the request before servicing it, and clears them once
+ *  it has been answered. A thread with nothing set has no session, is not writing and
+ *  has not logged in.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class RequestSession {
+
+    // The session id the current request was sent with; absent if it has none
+    private static final ThreadLocal<String> session = new ThreadLocal<String>();
+
+    // Set if the current request is in the write lane
+    private static final ThreadLocal<Boolean> writing = new ThreadLocal<Boolean>();
+
+    // The guest the current request's token belongs to; absent if it has no valid token
+    private static final ThreadLocal<SessionTable.Session> user = new ThreadLocal<SessionTable.Session>();
+
+    /**
+     *  Sets the session of the current thread's request.
+     *  @param id the session id the request was sent with, or null
+     *  @param write true if the request is in the write lane
+     *  @param login the guest the request's token belongs to, or null
+     */
+    public static void set(String id, boolean write, SessionTable.Session login) {
+        if (id != null) session.set(id);
+        else session.remove();
+
+        if (write) writing.set(Boolean.TRUE);
+        else writing.remove();
+
+        if (login != null) user.set(login);
+        else user.remove();
+    }
+
+    /**
+     *  Clears the session of the current thread's request.
+     */
+    public static void clear() {
+        session.remove();
+        writing.remove();
+        user.remove();
+    }
+
+    /**
+     *  @return String the session id of the current request, or null if it has none
+     */
+    public static String get() {
+        return session.get();
+    }
+
+    /**
+     *  @return boolean true if the current request is in the write lane
+     */
+    public static boolean isWriting() {
+        return writing.get() != null;
+    }
+
+    /**
+     *  @return SessionTable.Session the guest the current request's token belongs to, or
+     *  null if it was sent without a valid token
+     */
+    public static SessionTable.Session getUser() {
+        return user.get();
+    }
+}
@@ -1,227 +1,334 @@
-
-package guestbook.server;
-
-import guestbook.shared.*;
-
-import javax.swing.JComponent;
-import javax.swing.BoxLayout;
-import javax.swing.Box;
-import javax.swing.JButton;
-import javax.swing.JFrame;
-import javax.swing.JLabel;
-import javax.swing.JTextField;
-import javax.swing.JPasswordField;
-import javax.swing.JPanel;
-
-import java.awt.Component;
-import java.awt.Dimension;
-import java.awt.FlowLayout;
-import java.awt.BorderLayout;
-import java.awt.Color;
-import java.awt.Font;
-
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-
-import java.sql.SQLException;
-import java.io.IOException;
-
-/**
- *  The ServerGUI provides a graphical user interface for
- *  interacting with a GuestBookServer.
- *              
- *  @author Joram Benham 200801274
- *  @version April 8, 2011
- */
-public class ServerGUI extends JFrame implements ActionListener {
-
-    private GuestBookServer server; // The server thread
-
-    private JLabel statusLabel; // Displays server status
-    
-    private JTextField waitField;   // Text field for how long the server waits for connection interval
-    private JTextField portField;   // Text field for server port number
-    private JTextField handlersField;   // Text field for number of client handlers
-    private JTextField urlField;   // Text field for the database URL
-    private JTextField usernameField;    // Text field for the username to access the database
-    private JPasswordField passField;    // Password field to enter the database password
-    
-    private JButton startButton;    // Click to start the server
-    private JButton stopButton;     // Click to stop the server
-
-    /** 
-     *  Initializes the ServerGUI
-     */
-    public ServerGUI() {
-        // Initialize the frame
-        super("GuestBookServer GUI");
-        setLayout( new FlowLayout() );
-        setSize( GUIUtils.MIN_SIZE );
-        setMinimumSize( GUIUtils.MIN_SIZE );
-        getContentPane().setBackground( GUIUtils.BG_COLOR );
-        setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE );
-                      
-        // Label initialization
-        statusLabel = GUIUtils.createStyledLabel("Stopped", GUIUtils.TEXT_FONT, Color.CYAN);
-        
-        // Text field initialization
-        int fieldSize = 25;
-        portField = new JTextField("9000", fieldSize);
-        handlersField = new JTextField("5", fieldSize);
-        waitField = new JTextField("100", fieldSize);
-        urlField = new JTextField("jdbc:oracle:thin:@xisbobcat.stfx.ca:1521:CSCI275", fieldSize);
-        usernameField = new JTextField("user", fieldSize);
-        passField = new JPasswordField(fieldSize);
-        
-        // Button initialization
-        startButton = new JButton("Start");
-        startButton.addActionListener( this );
-        stopButton = new JButton("Stop");
-        stopButton.addActionListener( this );
-        
-        // Title panel initialization
-        JPanel titlePanel = new JPanel();
-        titlePanel.setBackground( GUIUtils.BG_COLOR );
-        titlePanel.add( GUIUtils.createHeader("GuestBookServer Controller") );
-        
-        // Control panel initialization
-        JPanel controlPanel = new JPanel();
-        controlPanel.setLayout( new BoxLayout(controlPanel, BoxLayout.Y_AXIS) );
-        controlPanel.setBackground( GUIUtils.BG_COLOR );
-        
-        Dimension itemSizeMax = new Dimension(200, 20);
-        Dimension gap = new Dimension(10, 5);
-        GUIUtils.addBoxRow( controlPanel, 
-                            new JComponent[]{GUIUtils.createTitle("Port #"), portField}, 
-                            itemSizeMax, gap );
-        GUIUtils.addBoxRow( controlPanel, 
-                            new JComponent[]{GUIUtils.createTitle("Client Handlers"), handlersField},
-                            itemSizeMax, gap );
-        GUIUtils.addBoxRow( controlPanel, 
-                            new JComponent[]{GUIUtils.createTitle("Timeout Interval(ms)"), waitField},
-                            itemSizeMax, gap );
-        GUIUtils.addBoxRow( controlPanel, 
-                            new JComponent[]{GUIUtils.createTitle("Database URL"), urlField},
-                            itemSizeMax, gap );
-        GUIUtils.addBoxRow( controlPanel, 
-                            new JComponent[]{GUIUtils.createTitle("Database Username"), usernameField},
-                            itemSizeMax, gap );
-        GUIUtils.addBoxRow( controlPanel, 
-                            new JComponent[]{GUIUtils.createTitle("Database Password"), passField},
-                            itemSizeMax, new Dimension(10,35) );
-        GUIUtils.addBoxRow( controlPanel,
-                            new JComponent[]{startButton, stopButton},
-                            itemSizeMax, gap );
-        
-        // Status panel initialization
-        JPanel statusPanel = new JPanel();
-        statusPanel.setLayout( new BoxLayout(statusPanel, BoxLayout.Y_AXIS) );
-        statusPanel.setBackground( GUIUtils.BG_COLOR );
-        
-        JLabel statusTitle = GUIUtils.createTitle("Status: "); 
-        statusTitle.setAlignmentX(Component.LEFT_ALIGNMENT);
-        
-        GUIUtils.addBoxRow( statusPanel,
-                            new JComponent[]{ statusTitle, statusLabel },
-                            new Dimension(50, 20), new Dimension(10,10) );
-                            
-        // Display
-        Box contentBox = Box.createVerticalBox();
-        contentBox.add( titlePanel );
-        contentBox.add( Box.createVerticalStrut(20) );
-        contentBox.add( controlPanel );
-        contentBox.add( Box.createVerticalStrut(20) );
-        contentBox.add( statusPanel );
-        
-        add( contentBox );
-        setVisible(true);
-        
-        // Create server
-        try {
-            server = new GuestBookServer(statusLabel);
-        }
-        catch (ClassNotFoundException classEx) {
-            GUIUtils.showErrorMessage(null, "Database Error", "The JDBC-Oracle Driver could not be found.", classEx);
-        }
-    }
-
-    
-    /** 
-     *  Implements the actions taken when this listener receives an
-     *  ActionEvent.
-     *  @param ev the received ActionEvent
-     */
-    public void actionPerformed(ActionEvent ev) {
-        Object source = ev.getSource();
-        
-        // Case: source == startButton
-        if (source == startButton) {
-            try {
-                server = new GuestBookServer(statusLabel);
-                
-                // Try to connect to the database.
-                String url = urlField.getText();
-                String user = usernameField.getText();
-                String pass = String.valueOf( passField.getPassword() );            
-                server.initDatabase(user, pass, url);
-                
-                // Try to initialize the server
-                int thePort = Integer.parseInt( portField.getText() );
-                int handlers = Integer.parseInt( handlersField.getText() );
-                int wait = Integer.parseInt( waitField.getText() );
-                
-                if (server.init(thePort, handlers, wait)) {
-                    server.startListening();   
-                }
-
-                toggleInteractiveComponents( false );            
-            }
-            catch (ClassNotFoundException classEx) {
-                GUIUtils.showErrorMessage(null, "Driver Error", "A problem occurred with the Oracle driver.", classEx);
-            }
-            catch (SQLException sqlEx) {
-                GUIUtils.showErrorMessage(null, "SQL Error", "A problem occurred while accessing the database.", sqlEx);
-            }
-            catch (IOException ioEx) {
-                GUIUtils.showErrorMessage(null, "Server Error", "The server could not be established.", ioEx);
-            }
-            catch (NumberFormatException formatEx) {
-                GUIUtils.showErrorMessage(null, "Format Error", "Enter integers in the port, handlers, and timeout fields.", formatEx);    
-            }
-            catch (IllegalArgumentException argEx) {
-                GUIUtils.showErrorMessage(null, "Input Error", "An input value was illegal.", argEx);
-            }
-        }
-        
-        // Case: source == stopButton 
-        else if (source == stopButton) {
-            server.terminate();                        
-            toggleInteractiveComponents( true );            
-        }
-    }
-    
-    /** 
-     *  Toggles components to inactive/active states.
-     *  @param toggle: boolean used to set active/inactive states
-     */
-    private void toggleInteractiveComponents(boolean toggle) {
-            portField.setEditable( toggle );
-            handlersField.setEditable( toggle );
-            waitField.setEditable( toggle );
-            urlField.setEditable( toggle );
-            usernameField.setEditable( toggle );
-            passField.setEditable( toggle );
-            startButton.setEnabled( toggle );
-            
-            stopButton.setEnabled( !toggle );        
-    }
-
-//*****************************************************************************************************
-// main()
-//*****************************************************************************************************
-
-    public static void main(String[] args) {
-        ServerGUI sg = new ServerGUI();
-    }
-
-}
+
+package guestbook.server;
+
+import guestbook.shared.*;
+
+import javax.swing.JComponent;
+import javax.swing.BoxLayout;
+import javax.swing.Box;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JTextField;
+import javax.swing.JPasswordField;
+import javax.swing.JPanel;
+import javax.swing.Timer;
+
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.FlowLayout;
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Font;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import java.sql.SQLException;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ *  The ServerGUI provides a graphical user interface for
+ *  interacting with a GuestBookServer.
+ *  While the server runs, the handlers and timeout may still be edited, and further
+ *  settings entered as comma-separated "setting=value" pairs (see
+ *  GuestBookServer.SETTINGS); Apply changes them without restarting the server.
+ *  The guests listed as admins are made administrators when the server starts and
+ *  on each Apply, unless the database is an Oracle database.
+ *  Once stopped, the server drains; it cannot be started again until the drain has
+ *  finished and the database is released, after which the drain report is shown.
+ *              
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class ServerGUI extends JFrame implements ActionListener {
+
+    private static final int DRAIN_POLL = 250;  // ms between checks of a draining server
+
+    private GuestBookServer server; // The server thread
+
+    private JLabel statusLabel; // Displays server status
+    private JLabel drainLabel;  // Displays what the last drain abandoned
+    private Timer drainTimer;   // Polls a stopping server until it has drained
+    
+    private JTextField waitField;   // Text field for how long the server waits for connection interval
+    private JTextField portField;   // Text field for server port number
+    private JTextField handlersField;   // Text field for number of client handlers
+    private JComboBox<String> backendBox;   // Selects the database backend
+    private JTextField urlField;   // Text field for the database URL
+    private JTextField usernameField;    // Text field for the username to access the database
+    private JPasswordField passField;    // Password field to enter the database password
+    private JPasswordField keyField;     // Password field to enter the session key shared with other servers
+    private JTextField settingsField;   // Text field for settings to apply while running
+    private JTextField adminsField;     // Text field for the comma-separated emails of the admins
+    
+    private JButton startButton;    // Click to start the server
+    private JButton stopButton;     // Click to stop the server
+    private JButton applyButton;    // Click to apply settings while the server runs
+
+    /** 
+     *  Initializes the ServerGUI
+     */
+    public ServerGUI() {
+        // Initialize the frame
+        super("GuestBookServer GUI");
+        setLayout( new FlowLayout() );
+        setSize( GUIUtils.MIN_SIZE );
+        setMinimumSize( GUIUtils.MIN_SIZE );
+        getContentPane().setBackground( GUIUtils.BG_COLOR );
+        setDefaultCloseOperation( JFrame.EXIT_ON_CLOSE );
+                      
+        // Label initialization
+        statusLabel = GUIUtils.createStyledLabel("Stopped", GUIUtils.TEXT_FONT, Color.CYAN);
+        drainLabel = GUIUtils.createStyledLabel("", GUIUtils.TEXT_FONT, Color.CYAN);
+        
+        // Text field initialization
+        int fieldSize = 25;
+        portField = new JTextField("9000", fieldSize);
+        handlersField = new JTextField("5", fieldSize);
+        waitField = new JTextField("100", fieldSize);
+        urlField = new JTextField("jdbc:oracle:thin:@xisbobcat.stfx.ca:1521:CSCI275", fieldSize);
+        usernameField = new JTextField("user", fieldSize);
+        passField = new JPasswordField(fieldSize);
+        keyField = new JPasswordField(fieldSize);
+        settingsField = new JTextField("", fieldSize);
+        adminsField = new JTextField("", fieldSize);
+        
+        backendBox = new JComboBox<String>( GuestBookServer.BACKENDS );
+        
+        // Button initialization
+        startButton = new JButton("Start");
+        startButton.addActionListener( this );
+        stopButton = new JButton("Stop");
+        stopButton.addActionListener( this );
+        applyButton = new JButton("Apply");
+        applyButton.addActionListener( this );
+        applyButton.setEnabled( false );
+        
+        // Title panel initialization
+        JPanel titlePanel = new JPanel();
+        titlePanel.setBackground( GUIUtils.BG_COLOR );
+        titlePanel.add( GUIUtils.createHeader("GuestBookServer Controller") );
+        
+        // Control panel initialization
+        JPanel controlPanel = new JPanel();
+        controlPanel.setLayout( new BoxLayout(controlPanel, BoxLayout.Y_AXIS) );
+        controlPanel.setBackground( GUIUtils.BG_COLOR );
+        
+        Dimension itemSizeMax = new Dimension(200, 20);
+        Dimension gap = new Dimension(10, 5);
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Port #"), portField}, 
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Client Handlers"), handlersField},
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Timeout Interval(ms)"), waitField},
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Database Type"), backendBox},
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Database URL / File"), urlField},
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Database Username"), usernameField},
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Database Password"), passField},
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Session Key"), keyField},
+                            itemSizeMax, new Dimension(10,35) );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Live Settings"), settingsField},
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel, 
+                            new JComponent[]{GUIUtils.createTitle("Admins"), adminsField},
+                            itemSizeMax, gap );
+        GUIUtils.addBoxRow( controlPanel,
+                            new JComponent[]{startButton, stopButton, applyButton},
+                            itemSizeMax, gap );
+        
+        // Status panel initialization
+        JPanel statusPanel = new JPanel();
+        statusPanel.setLayout( new BoxLayout(statusPanel, BoxLayout.Y_AXIS) );
+        statusPanel.setBackground( GUIUtils.BG_COLOR );
+        
+        JLabel statusTitle = GUIUtils.createTitle("Status: "); 
+        statusTitle.setAlignmentX(Component.LEFT_ALIGNMENT);
+        
+        GUIUtils.addBoxRow( statusPanel,
+                            new JComponent[]{ statusTitle, statusLabel },
+                            new Dimension(50, 20), new Dimension(10,10) );
+        GUIUtils.addBoxRow( statusPanel,
+                            new JComponent[]{ drainLabel },
+                            new Dimension(50, 20), new Dimension(10,10) );
+                            
+        // Display
+        Box contentBox = Box.createVerticalBox();
+        contentBox.add( titlePanel );
+        contentBox.add( Box.createVerticalStrut(20) );
+        contentBox.add( controlPanel );
+        contentBox.add( Box.createVerticalStrut(20) );
+        contentBox.add( statusPanel );
+        
+        add( contentBox );
+        setVisible(true);
+        
+        // Create server
+        server = new GuestBookServer(statusLabel);
+        
+        // Re-enable the controls once a stopping server has drained
+        drainTimer = new Timer( DRAIN_POLL, this );
+    }
+
+    
+    /** 
+     *  Implements the actions taken when this listener receives an
+     *  ActionEvent.
+     *  @param ev the received ActionEvent
+     */
+    public void actionPerformed(ActionEvent ev) {
+        Object source = ev.getSource();
+        
+        // Case: source == startButton
+        if (source == startButton) {
+            try {
+                server = new GuestBookServer(statusLabel);
+                
+                // Try to connect to the database.
+                String backend = (String)backendBox.getSelectedItem();
+                String url = urlField.getText();
+                String user = usernameField.getText();
+                String pass = String.valueOf( passField.getPassword() );            
+                server.initDatabase(backend, user, pass, url);
+                addAdmins();
+                
+                // Try to initialize the server
+                int thePort = Integer.parseInt( portField.getText() );
+                int handlers = Integer.parseInt( handlersField.getText() );
+                int wait = Integer.parseInt( waitField.getText() );
+                
+                // Share session tokens with the other servers given the same key
+                String key = String.valueOf( keyField.getPassword() );
+                if (key.equals("") == false) server.setSessionKey( key );
+                
+                if (server.init(thePort, handlers, wait)) {
+                    server.startListening();   
+                }
+
+                toggleInteractiveComponents( false );            
+            }
+            catch (ClassNotFoundException classEx) {
+                GUIUtils.showErrorMessage(null, "Driver Error", "A problem occurred with the Oracle driver.", classEx);
+            }
+            catch (SQLException sqlEx) {
+                GUIUtils.showErrorMessage(null, "SQL Error", "A problem occurred while accessing the database.", sqlEx);
+            }
+            catch (IOException ioEx) {
+                GUIUtils.showErrorMessage(null, "Server Error", "The server could not be established.", ioEx);
+            }
+            catch (NumberFormatException formatEx) {
+                GUIUtils.showErrorMessage(null, "Format Error", "Enter integers in the port, handlers, and timeout fields.", formatEx);    
+            }
+            catch (IllegalArgumentException argEx) {
+                GUIUtils.showErrorMessage(null, "Input Error", "An input value was illegal.", argEx);
+            }
+            catch (Exception dbEx) {
+                GUIUtils.showErrorMessage(null, "Database Error", "The database could not be opened.", dbEx);
+            }
+        }
+        
+        // Case: source == stopButton 
+        else if (source == stopButton) {
+            server.terminate();
+            stopButton.setEnabled( false );
+            applyButton.setEnabled( false );
+            drainLabel.setText( "Draining..." );
+            drainTimer.start();
+        }
+        
+        // Case: source == drainTimer, while the stopped server drains
+        else if (source == drainTimer) {
+            if ( server.isRunning() ) return;
+            drainTimer.stop();
+            String report = server.getDrainReport();
+            drainLabel.setText( (report == null) ? "" : report );
+            toggleInteractiveComponents( true );
+        }
+        
+        // Case: source == applyButton
+        else if (source == applyButton) {
+            try {
+                server.setNumHandlers( Integer.parseInt( handlersField.getText() ) );
+                server.setTimeout( Integer.parseInt( waitField.getText() ) );
+                
+                String settings = settingsField.getText().trim();
+                String[] current = server.configure( settings.equals("") ? null : settings.split(",") );
+                GUIUtils.showInfoMessage(null, "Settings Applied", String.join("\n", current));
+                addAdmins();
+            }
+            catch (NumberFormatException formatEx) {
+                GUIUtils.showErrorMessage(null, "Format Error", "Enter integers in the handlers and timeout fields, and numbers in the settings.", formatEx);    
+            }
+            catch (IllegalArgumentException argEx) {
+                GUIUtils.showErrorMessage(null, "Input Error", "A setting was illegal; the settings before it were applied.", argEx);
+            }
+        }
+    }
+    
+    /** 
+     *  Gives the guests listed in the admins field administrator rights, reporting those
+     *  who are not guests yet; Apply adds them once they have registered.
+     */
+    private void addAdmins() {
+        String admins = adminsField.getText().trim();
+        if ( admins.equals("") ) return;
+        
+        ArrayList<String> missing = new ArrayList<String>();
+        try {
+            for (String email : admins.split(",")) {
+                if (server.addAdmin( email.trim() ) == false) missing.add( email.trim() );
+            }
+            if (missing.size() > 0) {
+                GUIUtils.showInfoMessage(null, "Admins Not Added", "These emails are not guests yet; Apply again once they have registered:\n" + String.join("\n", missing));
+            }
+        }
+        catch (IllegalStateException stateEx) {
+            GUIUtils.showErrorMessage(null, "Admin Error", "Admins cannot be added to this database.", stateEx);
+        }
+        catch (Exception dbEx) {
+            GUIUtils.showErrorMessage(null, "Database Error", "The admins could not be added.", dbEx);
+        }
+    }
+    
+    /** 
+     *  Toggles components to inactive/active states.
+     *  @param toggle: boolean used to set active/inactive states
+     */
+    private void toggleInteractiveComponents(boolean toggle) {
+            portField.setEditable( toggle );
+            backendBox.setEnabled( toggle );
+            urlField.setEditable( toggle );
+            usernameField.setEditable( toggle );
+            passField.setEditable( toggle );
+            keyField.setEditable( toggle );
+            startButton.setEnabled( toggle );
+            
+            stopButton.setEnabled( !toggle );        
+            applyButton.setEnabled( !toggle );
+    }
+
+//*****************************************************************************************************
+// main()
+//*****************************************************************************************************
+
+    public static void main(String[] args) {
+        ServerGUI sg = new ServerGUI();
+    }
+
+}
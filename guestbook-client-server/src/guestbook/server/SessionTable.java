@@ -0,0 +1,287 @@
+package guestbook.server;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ *  A SessionTable remembers who has logged in, so that a ClientHandler can tell who sent
+ *  a request, and whether they are an administrator, without querying the database.
+ *      A login is issued a token holding its claims: the guest's email, whether they are
+ *  an administrator, when they logged in and when the token expires. The claims are signed
+ *  with HMAC-SHA256, so a token is verified by its signature alone, and any server
+ *  signing with the same key accepts it; servers sharing a database and its clients
+ *  should be given the same key (setKey), and clocks which agree. Without one a table
+ *  makes a random key of its own, and its tokens are only accepted by its own server.
+ *      A token lasts for the TTL (see setTTL). A token used after half of its TTL has
+ *  passed is renewed (see renew), so a session lasts until it has gone unused for the TTL.
+ *  revoke ends the sessions of a guest logged in until then, but only on this server; the
+ *  others accept such a token until it goes unused for the TTL.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class SessionTable {
+    public static final long DEFAULT_TTL = 30 * 60 * 1000L;    // ms a session lasts unused
+    public static final int MIN_KEY_LENGTH = 16;    // characters in a shared key
+    private static final int PRUNE_SIZE = 10000;    // revocations held before the lapsed ones are removed
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    // Guests revoked, to the time from which their earlier tokens may be forgotten
+    private ConcurrentHashMap<String, Revocation> revoked = new ConcurrentHashMap<String, Revocation>();
+    private Mac mac;                        // Signs claims; used under the table's lock
+    private volatile long ttl = DEFAULT_TTL;
+    private volatile long longestTTL = DEFAULT_TTL; // Longest TTL a token may have been issued with
+
+    private AtomicLong issued = new AtomicLong();
+    private AtomicLong rejected = new AtomicLong();
+
+    /**
+     *  Makes a random signing key.
+     *  @throws IllegalStateException if HmacSHA256 is not available
+     */
+    public SessionTable() throws IllegalStateException {
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        mac = createMac(key);
+    }
+
+    /**
+     *  Signs tokens with a key shared with other servers. Tokens already issued are no
+     *  longer accepted.
+     *  @param secret the shared key
+     *  @throws IllegalArgumentException if the key is shorter than MIN_KEY_LENGTH
+     */
+    public void setKey(String secret) throws IllegalArgumentException {
+        if (secret == null || secret.length() < MIN_KEY_LENGTH) {
+            throw new IllegalArgumentException("Value is invalid. A session key must be at least " + MIN_KEY_LENGTH + " characters.");
+        }
+        Mac shared = createMac( secret.getBytes(StandardCharsets.UTF_8) );
+        synchronized (this) {
+            mac = shared;
+        }
+    }
+
+    /**
+     *  @param key the signing key
+     *  @return Mac a HmacSHA256 signer with the key
+     *  @throws IllegalStateException if HmacSHA256 is not available
+     */
+    private static Mac createMac(byte[] key) throws IllegalStateException {
+        try {
+            Mac signer = Mac.getInstance(MAC_ALGORITHM);
+            signer.init( new SecretKeySpec(key, MAC_ALGORITHM) );
+            return signer;
+        }
+        catch (GeneralSecurityException macEx) {
+            throw new IllegalStateException("Session tokens cannot be signed: " + macEx);
+        }
+    }
+
+    /**
+     *  Starts a session for a guest who has logged in.
+     *  @param email the guest's email
+     *  @param admin true if the guest is an administrator
+     *  @return String the session's token
+     */
+    public String issue(String email, boolean admin) {
+        long now = System.currentTimeMillis();
+        issued.incrementAndGet();
+        return encode( new Session(email, admin, now, now + ttl) );
+    }
+
+    /**
+     *  Finds the session of a token.
+     *  @param token a token given by issue, or null
+     *  @return Session the session, or null if the token is null, forged, expired or revoked
+     */
+    public Session verify(String token) {
+        if (token == null) return null;
+
+        int dot = token.indexOf('.');
+        if (dot < 0) return reject();
+        byte[] claims, signature;
+        try {
+            claims = Base64.getUrlDecoder().decode( token.substring(0, dot) );
+            signature = Base64.getUrlDecoder().decode( token.substring(dot + 1) );
+        }
+        catch (IllegalArgumentException encodingEx) {
+            return reject();
+        }
+        if ( MessageDigest.isEqual( sign(claims), signature ) == false ) return reject();
+
+        Session session;
+        try {
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream(claims) );
+            session = new Session( in.readUTF(), in.readBoolean(), in.readLong(), in.readLong() );
+        }
+        catch (IOException claimsEx) {
+            return reject();
+        }
+
+        if (session.expires <= System.currentTimeMillis()) return reject();
+        Revocation revocation = revoked.get( session.email );
+        if (revocation != null && session.issued <= revocation.at) return reject();
+        return session;
+    }
+
+    /**
+     *  Renews a session more than half of whose TTL has passed.
+     *  @param session a session returned by verify
+     *  @return String a token for the session lasting the TTL from now, or null if the
+     *  session does not need renewing yet
+     */
+    public String renew(Session session) {
+        long now = System.currentTimeMillis();
+        if (session.expires - now >= ttl / 2) return null;
+        return encode( new Session(session.email, session.admin, session.issued, now + ttl) );
+    }
+
+    /**
+     *  Ends every session of a guest logged in until now, such as one who has been deleted.
+     *  @param email the guest's email
+     */
+    public void revoke(String email) {
+        long now = System.currentTimeMillis();
+        revoked.put( email, new Revocation(now, now + longestTTL) );
+
+        // Forget the revocations whose tokens have all expired, once there are many
+        if (revoked.size() > PRUNE_SIZE) revoked.values().removeIf( r -> r.lapses <= now );
+    }
+
+    /**
+     *  Sets how long a session lasts unused. Tokens already issued keep their expiry
+     *  until they are renewed.
+     *  @param ms the TTL
+     *  @throws IllegalArgumentException if ms < 1
+     */
+    public void setTTL(long ms) throws IllegalArgumentException {
+        if (ms < 1) throw new IllegalArgumentException("Value '" + ms + "' is invalid. A session TTL must be at least 1 ms.");
+        ttl = ms;
+        if (ms > longestTTL) longestTTL = ms;
+    }
+
+    /**
+     *  @return long the ms a session lasts unused
+     */
+    public long getTTL() { return ttl; }
+
+    /**
+     *  @return int the number of guests whose sessions have been revoked and may not
+     *  have expired yet
+     */
+    public int getRevoked() { return revoked.size(); }
+
+    /**
+     *  @return long the number of sessions issued
+     */
+    public long getIssued() { return issued.get(); }
+
+    /**
+     *  @return long the number of tokens which were forged, expired or revoked
+     */
+    public long getRejected() { return rejected.get(); }
+
+    /**
+     *  @param session the claims to sign
+     *  @return String the claims and their signature, as a token
+     */
+    private String encode(Session session) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeUTF( session.email );
+            out.writeBoolean( session.admin );
+            out.writeLong( session.issued );
+            out.writeLong( session.expires );
+        }
+        catch (IOException writeEx) {
+            throw new IllegalStateException("Session claims cannot be encoded: " + writeEx);
+        }
+
+        byte[] claims = bytes.toByteArray();
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(claims) + "." + encoder.encodeToString( sign(claims) );
+    }
+
+    /**
+     *  @param claims encoded claims
+     *  @return byte[] the claims' signature
+     */
+    private synchronized byte[] sign(byte[] claims) {
+        return mac.doFinal(claims);
+    }
+
+    /**
+     *  @return Session null, counting the rejected token
+     */
+    private Session reject() {
+        rejected.incrementAndGet();
+        return null;
+    }
+
+    /**
+     *  The revocation of a guest's sessions.
+     */
+    private static class Revocation {
+        private long at;        // ms the sessions were revoked; tokens issued until then are rejected
+        private long lapses;    // ms by which every such token has expired
+
+        /**
+         *  @param a ms the sessions were revoked
+         *  @param l ms by which every token issued until then has expired
+         */
+        Revocation(long a, long l) {
+            at = a;
+            lapses = l;
+        }
+    }
+
+    /**
+     *  A guest who has logged in, as claimed by their token.
+     */
+    public static class Session {
+        private String email;
+        private boolean admin;
+        private long issued;    // ms the guest logged in; kept when the token is renewed
+        private long expires;   // ms the token expires
+
+        /**
+         *  @param e the guest's email
+         *  @param a true if the guest is an administrator
+         *  @param i the ms the guest logged in
+         *  @param ex the ms the token expires
+         */
+        Session(String e, boolean a, long i, long ex) {
+            email = e;
+            admin = a;
+            issued = i;
+            expires = ex;
+        }
+
+        /**
+         *  @return String the guest's email
+         */
+        public String getEmail() { return email; }
+
+        /**
+         *  @return boolean true if the guest is an administrator
+         */
+        public boolean isAdmin() { return admin; }
+    }
+}
@@ -1,224 +1,509 @@
-
-package guestbook.shared;
-
-import java.io.File;
-import java.io.BufferedReader;
-import java.io.FileReader;
-import java.io.FileInputStream;
-import java.io.ObjectInputStream;
-import java.io.FileOutputStream;
-import java.io.ObjectOutputStream;
-import java.io.IOException;
-import java.io.Serializable;
-import java.util.Vector;
-import java.util.Arrays;
-
-import javax.swing.JOptionPane;
-
-/**
- * 
- *  An AddressBook provides functionality for working with a virtual address 
- * book of guests, implemented as a vector of GuestInfo objects.
- *  Note that duplicate guests are not permitted in the address book, where
- * two guests are considered duplicates if they share the same ID.
- * 
- * @author Joram Benham, 200801274
- * @version April 8, 2011
- */
-public class AddressBook implements Serializable {
-        
-    public static final String ADD_SUCCESS = "Add successful.";
-    public static final String ADD_FAIL = "GuestInfo already exists";
-    public static final String UPDATE_SUCCESS = "Update successful.";
-    public static final String UPDATE_FAIL = "GuestInfo does not exist.";   
-    public static final String DELETE_SUCCESS = "Delete successful.";
-    public static final String DELETE_FAIL = "GuestInfo does not exist.";
-    public static final String IS_EMPTY = "Address book is empty.";
-        
-    private static final long serialVersionUID = 20110406; // yyyy/mm/dd
-    private Vector<GuestInfo> guests;   
-    
-    /**
-     * Default Constructor
-     */
-    public AddressBook() { guests = new Vector<GuestInfo>(); }
-    
-    /**
-     *  Adds a guest to the address book
-     *  @param newGuestInfo the guest to add
-     *  @return String indicating operation status
-     */
-    public String addGuestInfo(GuestInfo newGuestInfo) {        
-        if ( guests.contains( newGuestInfo ) ) return new String(ADD_FAIL);     
-        guests.add( newGuestInfo );     
-        return new String(ADD_SUCCESS);     
-    }
-    
-    /**
-     *  Updates a guest in the address book
-     * @param updatedGuestInfo the guest to be updated
-     * @return String indicating operation status
-     */
-    public String updateGuestInfo(GuestInfo updatedGuestInfo) {
-        if (guests.isEmpty()) return IS_EMPTY;
-        
-        if ( guests.contains( updatedGuestInfo ) ) {
-            guests.setElementAt( updatedGuestInfo, guests.indexOf(updatedGuestInfo) );
-            return new String(UPDATE_SUCCESS);
-        } 
-        
-        return new String(UPDATE_FAIL);
-    }
-    
-    /**
-     *  Deletes a guest from the address book.
-     * @param deletedGuestInfo the guest to be deleted
-     * @return String indicating operation status
-     */
-    public String deleteGuestInfo(GuestInfo deletedGuestInfo) {
-        if (guests.isEmpty()) return IS_EMPTY;      
-        if ( guests.remove(deletedGuestInfo) ) return new String(DELETE_SUCCESS);       
-        return new String(DELETE_FAIL);
-    }
-    
-    /** 
-     *  Takes a guest name as input and returns a reference to the GuestInfo
-     * @param target GuestInfo to view
-     * @return GuestInfo of requested record
-     */
-    public GuestInfo viewGuestInfo(GuestInfo target) {
-        if (target != null) {
-            for (GuestInfo c : guests) if ( c.equals(target) ) return c;
-        }
-        
-        return null;
-    }
-    
-    /**
-     *  Returns the number of guests in the address book
-     *  @return int the size of the AddressBook
-     */
-    public int size() { return guests.size(); }
-    
-    /**
-     *  Returns the guests in the AddressBook in String format.
-     *  @return String
-     */
-    public String toString() {
-        String bookAsString = "";       
-        for (GuestInfo c : guests) { bookAsString += c + "\n"; }        
-        return bookAsString;
-    }
-    
-    /**
-     * Returns an array of all names in the AddressBook
-     * @return String[]
-     */
-    public String[] getNames() {
-        String[] names = null;
-        
-        if ( !guests.isEmpty() ) {
-            names = new String[ guests.size() ];
-        
-            for (int i = 0; i < names.length; i++) {
-                names[i] = guests.elementAt(i).getName();
-            }
-        
-            Arrays.sort( names );   
-        }
-        
-        return names;
-    }
-    
-    /**
-     *  Writes an address book out as a binary file using ObjectOutputStream.
-     * @param saveFile the file to save to
-     * @throws IOException for file not found, or error with output stream
-     */
-    public void save(File saveFile) throws IOException {
-        ObjectOutputStream objectOut = null;        
-        objectOut = new ObjectOutputStream( new FileOutputStream( saveFile ) );
-
-        objectOut.writeObject( this );
-        
-        objectOut.close();
-    }
-    
-    /**
-     *  Loads an address book from a binary file and assigns its GuestInfo Vector
-     * to this address book.
-     * @param loadFile the file to load the address book from
-     * @throws IOException for file not found, or error with input stream
-     * @throws ClassNotFoundException for bad input file
-     */
-    public void load(File loadFile) throws IOException, ClassNotFoundException {
-        ObjectInputStream objectIn = null;
-        objectIn = new ObjectInputStream( new FileInputStream( loadFile ) );
-        
-        AddressBook loadedBook = (AddressBook)objectIn.readObject();
-        
-        objectIn.close();
-    
-        this.guests = loadedBook.guests;
-    }
-
-    
-    /**
-     *  Imports either new guests from an existing text file and adds them
-     * (if they are unique) to this AddressBook.
-     * @param importFile the file to load the new guests from
-     * @param recordDelimRegex the regex to split the file contents on, to get
-     *                          the separate guest records
-     * @param fieldDelimRegex the regex to split the records on, to get the 
-     *                          separate fields for a guest
-     */
-    public void importGuestInfos(File importFile, String recordDelimRegex, String fieldDelimRegex) throws IOException {
-        BufferedReader br = null;
-        br = new BufferedReader( new FileReader( importFile ) );
-        
-        // If the record delimiter is a line terminator, it needs to be added to
-        // the end of each line, as readLine() will not return it.
-        String endline = "";
-        if ( recordDelimRegex.matches( "\\n|\\r|\\r\\n" ) ) endline = recordDelimRegex;;
-        
-        // Read the file contents in.
-        String contents = "";
-        String line = ""; 
-        
-        while ( line != null ) {
-            contents += line + endline; // endline will be "" if the record
-            line =  br.readLine();      // delimiter is not a line terminator
-        }
-        
-        br.close(); // Close the BufferedReader.
-
-        String[] records, fields;
-        
-        // Add the new guests to the address book
-        if (contents != "") {           
-            records = contents.split( recordDelimRegex );
-            
-            for (String aRecord : records) {
-                fields = aRecord.split( fieldDelimRegex );
-                
-                // If there are 7 fields, create a new GuestInfo using the fields
-                if (fields.length == 7) {
-                    GuestInfo aGuestInfo;
-                    aGuestInfo = new GuestInfo( fields[0], 
-                                                fields[1], 
-                                                fields[2],
-                                                fields[3], 
-                                                fields[4], 
-                                                fields[5],
-                                                fields[6] );
-                
-                    // Try to add the guest to this address book
-                    this.addGuestInfo( aGuestInfo );
-                }
-            }
-        } 
-        // End adding the guests        
-    }
-            
-
-}
+
+package guestbook.shared;
+
+import java.io.File;
+import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.FileReader;
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.IOException;
+import java.io.ObjectStreamField;
+import java.io.Reader;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Vector;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.regex.Pattern;
+
+import javax.swing.JOptionPane;
+
+/**
+ * 
+ *  An AddressBook provides functionality for working with a virtual address 
+ * book of guests, implemented as a hash map of GuestInfo objects keyed by ID
+ * (the guest's email) which keeps the guests in the order they were added.
+ *  Note that duplicate guests are not permitted in the address book, where
+ * two guests are considered duplicates if they share the same ID.
+ *  Address books saved before the map was introduced hold a Vector of guests;
+ * they are converted to the map when loaded.
+ *  A saved address book is a header (SNAPSHOT_MAGIC, payload length, CRC32 of the
+ * payload) followed by the serialized book. It is written to a temporary file,
+ * forced to disk and atomically renamed over the target, so the target always holds
+ * a complete book. Files saved before the header was introduced are still loaded.
+ * 
+ * @author Joram Benham, 200801274
+ * @version April 8, 2011
+ */
+public class AddressBook implements Serializable {
+        
+    public static final String ADD_SUCCESS = "Add successful.";
+    public static final String ADD_FAIL = "GuestInfo already exists";
+    public static final String UPDATE_SUCCESS = "Update successful.";
+    public static final String UPDATE_FAIL = "GuestInfo does not exist.";   
+    public static final String DELETE_SUCCESS = "Delete successful.";
+    public static final String DELETE_FAIL = "GuestInfo does not exist.";
+    public static final String IS_EMPTY = "Address book is empty.";
+        
+    private static final long serialVersionUID = 20110406; // yyyy/mm/dd
+    private static final int SNAPSHOT_MAGIC = 0x47424B31;  // "GBK1"
+    public static final int IMPORT_CHUNK_SIZE = 4096;      // records read per parsing chunk
+    
+    // "guests" is a Vector in old files and a LinkedHashMap in new ones
+    private static final ObjectStreamField[] serialPersistentFields = {
+        new ObjectStreamField("guests", Object.class)
+    };
+    
+    private transient LinkedHashMap<String, GuestInfo> guests;   // Keyed by GuestInfo ID
+    
+    /**
+     * Default Constructor
+     */
+    public AddressBook() { guests = new LinkedHashMap<String, GuestInfo>(); }
+    
+    /**
+     *  Adds a guest to the address book
+     *  @param newGuestInfo the guest to add
+     *  @return String indicating operation status
+     */
+    public synchronized String addGuestInfo(GuestInfo newGuestInfo) {        
+        if ( guests.containsKey( newGuestInfo.getID() ) ) return ADD_FAIL;     
+        guests.put( newGuestInfo.getID(), newGuestInfo );     
+        return ADD_SUCCESS;     
+    }
+    
+    /**
+     *  Updates a guest in the address book. The guest keeps its place in the
+     *  address book's order.
+     * @param updatedGuestInfo the guest to be updated
+     * @return String indicating operation status
+     */
+    public synchronized String updateGuestInfo(GuestInfo updatedGuestInfo) {
+        if (guests.isEmpty()) return IS_EMPTY;
+        
+        if ( guests.containsKey( updatedGuestInfo.getID() ) ) {
+            guests.put( updatedGuestInfo.getID(), updatedGuestInfo );
+            return UPDATE_SUCCESS;
+        } 
+        
+        return UPDATE_FAIL;
+    }
+    
+    /**
+     *  Deletes a guest from the address book.
+     * @param deletedGuestInfo the guest to be deleted
+     * @return String indicating operation status
+     */
+    public synchronized String deleteGuestInfo(GuestInfo deletedGuestInfo) {
+        if (guests.isEmpty()) return IS_EMPTY;      
+        if ( guests.remove( deletedGuestInfo.getID() ) != null ) return DELETE_SUCCESS;       
+        return DELETE_FAIL;
+    }
+    
+    /** 
+     *  Takes a guest name as input and returns a reference to the GuestInfo
+     * @param target GuestInfo to view
+     * @return GuestInfo of requested record
+     */
+    public synchronized GuestInfo viewGuestInfo(GuestInfo target) {
+        if (target == null) return null;
+        return guests.get( target.getID() );
+    }
+    
+    /**
+     *  Returns the number of guests in the address book
+     *  @return int the size of the AddressBook
+     */
+    public synchronized int size() { return guests.size(); }
+    
+    /**
+     *  Returns a copy of the guests in the address book, in insertion order.
+     *  @return ArrayList<GuestInfo>
+     */
+    public synchronized ArrayList<GuestInfo> getGuestInfos() { return new ArrayList<GuestInfo>( guests.values() ); }
+    
+    /**
+     *  Returns the guests in the AddressBook in String format.
+     *  @return String
+     */
+    public synchronized String toString() {
+        StringBuilder bookAsString = new StringBuilder();       
+        for (GuestInfo c : guests.values()) { bookAsString.append(c).append("\n"); }        
+        return bookAsString.toString();
+    }
+    
+    /**
+     * Returns an array of all names in the AddressBook
+     * @return String[]
+     */
+    public synchronized String[] getNames() {
+        String[] names = null;
+        
+        if ( !guests.isEmpty() ) {
+            names = new String[ guests.size() ];
+        
+            int i = 0;
+            for (GuestInfo c : guests.values()) {
+                names[i++] = c.getName();
+            }
+        
+            Arrays.sort( names );   
+        }
+        
+        return names;
+    }
+    
+    /**
+     *  Writes an address book out as a binary file. The book is serialized into
+     * memory, written with its header to saveFile + ".tmp" through a FileChannel,
+     * forced to disk, and then renamed over saveFile in one atomic step.
+     * @param saveFile the file to save to
+     * @throws IOException for file not found, or error with output stream
+     */
+    public void save(File saveFile) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream( 64 + 128 * size() );
+        ObjectOutputStream objectOut = new ObjectOutputStream( bytes );
+        synchronized (this) {
+            objectOut.writeObject( this );
+        }
+        objectOut.close();
+        
+        byte[] payload = bytes.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update( payload, 0, payload.length );
+        
+        ByteBuffer header = ByteBuffer.allocate(16);
+        header.putInt( SNAPSHOT_MAGIC ).putInt( payload.length ).putLong( crc.getValue() );
+        header.flip();
+        ByteBuffer[] buffers = { header, ByteBuffer.wrap(payload) };
+        
+        Path target = saveFile.toPath();
+        Path temp = new File( saveFile.getPath() + ".tmp" ).toPath();
+        FileChannel channel = FileChannel.open( temp, StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE );
+        try {
+            while ( buffers[1].hasRemaining() ) channel.write( buffers );
+            channel.force( true );
+        }
+        finally {
+            channel.close();
+        }
+        
+        Files.move( temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+        syncDirectory( target.toAbsolutePath().getParent() );
+    }
+    
+    /**
+     *  Loads an address book from a binary file and assigns its GuestInfo map
+     * to this address book. The payload checksum is verified before the book
+     * is deserialized.
+     * @param loadFile the file to load the address book from
+     * @throws IOException for file not found, or error with input stream
+     * @throws StreamCorruptedException if the checksum does not match
+     * @throws ClassNotFoundException for bad input file
+     */
+    public void load(File loadFile) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( loadFile ) ) );
+        AddressBook loadedBook;
+        
+        try {
+            in.mark(4);
+            if ( in.readInt() != SNAPSHOT_MAGIC ) {
+                // Saved before the header was introduced: a bare serialized book
+                in.reset();
+                loadedBook = (AddressBook)new ObjectInputStream( in ).readObject();
+            }
+            else {
+                int length = in.readInt();
+                long checksum = in.readLong();
+                if (length < 0) throw new StreamCorruptedException("Invalid address book length in " + loadFile);
+                
+                byte[] payload = new byte[length];
+                in.readFully( payload );
+                
+                CRC32 crc = new CRC32();
+                crc.update( payload, 0, length );
+                if (crc.getValue() != checksum) {
+                    throw new StreamCorruptedException("Address book checksum mismatch in " + loadFile);
+                }
+                
+                loadedBook = (AddressBook)new ObjectInputStream( new ByteArrayInputStream( payload ) ).readObject();
+            }
+        }
+        finally {
+            in.close();
+        }
+    
+        synchronized (this) {
+            this.guests = loadedBook.guests;
+        }
+    }
+    
+    /**
+     *  Forces a directory entry change (such as a rename) to disk. Not every platform
+     * can open a directory; there the rename is left to the file system.
+     * @param dir the directory to sync
+     */
+    private static void syncDirectory(Path dir) {
+        if (dir == null) return;
+        try {
+            FileChannel dirChannel = FileChannel.open( dir, StandardOpenOption.READ );
+            try { dirChannel.force( true ); }
+            finally { dirChannel.close(); }
+        }
+        catch (IOException ioEx) {
+            // Directories cannot be opened as channels on this platform
+        }
+    }
+    
+    /**
+     *  Writes the guests map as the "guests" field.
+     * @param out the stream to write to
+     * @throws IOException for error with output stream
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("guests", guests);
+        out.writeFields();
+    }
+    
+    /**
+     *  Reads the "guests" field, converting the Vector used by old files into the map.
+     *  If an old file holds duplicate IDs, the first guest with each ID is kept.
+     * @param in the stream to read from
+     * @throws IOException for error with input stream
+     * @throws ClassNotFoundException for bad input file
+     */
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        Object stored = in.readFields().get("guests", null);
+        
+        if (stored instanceof LinkedHashMap) {
+            guests = (LinkedHashMap<String, GuestInfo>)stored;
+        }
+        else if (stored instanceof Vector) {
+            guests = new LinkedHashMap<String, GuestInfo>();
+            for (GuestInfo c : (Vector<GuestInfo>)stored) {
+                if ( guests.containsKey( c.getID() ) == false ) guests.put( c.getID(), c );
+            }
+        }
+        else throw new IOException("Address book has no guests field.");
+    }
+
+    
+    /**
+     *  Imports new guests from a text file and adds them (if they are unique) to
+     * this AddressBook. See importGuestInfos(File, String, String, ImportListener).
+     * @param importFile the file to load the new guests from
+     * @param recordDelimRegex the regex to split the file contents on, to get
+     *                          the separate guest records
+     * @param fieldDelimRegex the regex to split the records on, to get the 
+     *                          separate fields for a guest
+     * @return int the number of guests added
+     */
+    public int importGuestInfos(File importFile, String recordDelimRegex, String fieldDelimRegex) throws IOException {
+        return importGuestInfos(importFile, recordDelimRegex, fieldDelimRegex, null);
+    }
+    
+    /**
+     *  Imports new guests from a text file and adds them (if they are unique) to
+     * this AddressBook. The file is streamed in chunks of IMPORT_CHUNK_SIZE records.
+     * Each chunk is split into fields and validated in parallel on the common fork/join
+     * pool while the next chunk is read, and its guests are then added in file order.
+     *  A record which does not have 7 fields, fails GuestInfo's validation or
+     * duplicates an existing guest is reported to the listener and skipped; blank
+     * records are ignored. The escapes \t, \n, \r and \\ which a server's
+     * delimited export writes are read back as the characters they stand for; any
+     * other backslash is kept.
+     * @param importFile the file to load the new guests from
+     * @param recordDelimRegex the regex to split the file contents on, to get
+     *                          the separate guest records
+     * @param fieldDelimRegex the regex to split the records on, to get the 
+     *                          separate fields for a guest
+     * @param listener receives progress after each chunk and the failed records, may be null
+     * @return int the number of guests added
+     */
+    public int importGuestInfos(File importFile, String recordDelimRegex, String fieldDelimRegex,
+                                ImportListener listener) throws IOException {
+        return importGuestInfos( new BufferedReader( new FileReader( importFile ) ),
+                                 recordDelimRegex, fieldDelimRegex, listener );
+    }
+    
+    /**
+     *  Imports new guests from delimited text, as importGuestInfos(File, String, String,
+     * ImportListener) does. The reader is closed when the import finishes.
+     * @param importText the delimited guest records
+     * @param recordDelimRegex the regex separating the guest records
+     * @param fieldDelimRegex the regex separating the fields of a guest
+     * @param listener receives progress after each chunk and the failed records, may be null
+     * @return int the number of guests added
+     */
+    public int importGuestInfos(Reader importText, String recordDelimRegex, String fieldDelimRegex,
+                                ImportListener listener) throws IOException {
+        // A line terminator delimiter matches any line terminator, as readLine() would
+        if ( recordDelimRegex.matches( "\\n|\\r|\\r\\n" ) ) recordDelimRegex = "\\r\\n|\\r|\\n";
+        
+        Scanner scanner = new Scanner( importText );
+        scanner.useDelimiter( recordDelimRegex );
+        Pattern fieldDelim = Pattern.compile( fieldDelimRegex );
+        ForkJoinPool pool = ForkJoinPool.commonPool();     // Shared, so concurrent imports do not each start a thread per core
+        
+        int read = 0, added = 0;
+        try {
+            ParseTask pending = null;
+            while (pending != null || scanner.hasNext()) {
+                // Read the next chunk while the previous one is being parsed
+                ParseTask next = null;
+                if (scanner.hasNext()) {
+                    ArrayList<String> chunk = new ArrayList<String>(IMPORT_CHUNK_SIZE);
+                    while (chunk.size() < IMPORT_CHUNK_SIZE && scanner.hasNext()) chunk.add( scanner.next() );
+                    next = new ParseTask( chunk.toArray( new String[chunk.size()] ), fieldDelim, 0, chunk.size(), read );
+                    read += chunk.size();
+                    pool.execute(next);
+                }
+                
+                if (pending != null) {
+                    added += addParsed(pending, listener);
+                    if (listener != null) listener.importProgress( pending.first + pending.records.length, added );
+                }
+                pending = next;
+            }
+        }
+        finally {
+            scanner.close();
+        }
+        if (scanner.ioException() != null) throw scanner.ioException();
+        
+        return added;
+    }
+    
+    /**
+     *  Waits for a chunk to be parsed and adds its guests under a single lock.
+     * @param task the chunk's ParseTask
+     * @param listener the import's listener, may be null
+     * @return int the number of guests added
+     */
+    private int addParsed(ParseTask task, ImportListener listener) {
+        task.join();
+        int added = 0;
+        
+        synchronized (this) {
+            for (int i = 0; i < task.records.length; i++) {
+                GuestInfo g = task.parsed[i];
+                if (g == null) continue;
+                if ( guests.containsKey( g.getID() ) ) task.errors[i] = ADD_FAIL;
+                else {
+                    guests.put( g.getID(), g );
+                    added++;
+                }
+            }
+        }
+        
+        if (listener != null) {
+            for (int i = 0; i < task.records.length; i++) {
+                if (task.errors[i] != null) listener.recordFailed( task.first + i + 1, task.records[i], task.errors[i] );
+            }
+        }
+        return added;
+    }
+    
+    /**
+     *  Splits and validates a range of records, forking until the range holds
+     * at most PARSE_THRESHOLD records.
+     */
+    private static class ParseTask extends RecursiveAction {
+        private static final long serialVersionUID = 20110408; // yyyy/mm/dd
+        private static final int PARSE_THRESHOLD = 256;
+        
+        final String[] records;
+        final GuestInfo[] parsed;   // null where the record failed
+        final String[] errors;      // null where the record parsed, or was blank
+        final int first;            // number of records in the file before this chunk
+        private final Pattern fieldDelim;
+        private final int from, to;
+        
+        ParseTask(String[] records, Pattern fieldDelim, int from, int to, int first) {
+            this(records, new GuestInfo[records.length], new String[records.length], fieldDelim, from, to, first);
+        }
+        
+        private ParseTask(String[] records, GuestInfo[] parsed, String[] errors, Pattern fieldDelim,
+                          int from, int to, int first) {
+            this.records = records;
+            this.parsed = parsed;
+            this.errors = errors;
+            this.fieldDelim = fieldDelim;
+            this.from = from;
+            this.to = to;
+            this.first = first;
+        }
+        
+        protected void compute() {
+            if (to - from > PARSE_THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll( new ParseTask(records, parsed, errors, fieldDelim, from, mid, first),
+                           new ParseTask(records, parsed, errors, fieldDelim, mid, to, first) );
+                return;
+            }
+            
+            for (int i = from; i < to; i++) {
+                if (records[i].trim().equals("")) continue;
+                
+                String[] fields = fieldDelim.split( records[i] );
+                if (fields.length != 7) {
+                    errors[i] = "Expected 7 fields, found " + fields.length;
+                    continue;
+                }
+                for (int f = 0; f < fields.length; f++) fields[f] = unescape( fields[f] );
+                try {
+                    parsed[i] = new GuestInfo( fields[0], fields[1], fields[2], fields[3],
+                                               fields[4], fields[5], fields[6] );
+                }
+                catch (IllegalArgumentException argEx) {
+                    errors[i] = argEx.getMessage();
+                }
+            }
+        }
+        
+        /**
+         *  @param field a field which may hold the escapes of a delimited export
+         *  @return String the field with \t, \n, \r and \\ replaced by the
+         *  characters they stand for
+         */
+        private static String unescape(String field) {
+            if (field.indexOf('\\') < 0) return field;
+            
+            StringBuilder plain = new StringBuilder( field.length() );
+            for (int i = 0; i < field.length(); i++) {
+                char c = field.charAt(i);
+                char next = (i + 1 < field.length()) ? field.charAt(i + 1) : 0;
+                if (c == '\\' && next == 't') plain.append('\t');
+                else if (c == '\\' && next == 'n') plain.append('\n');
+                else if (c == '\\' && next == 'r') plain.append('\r');
+                else if (c == '\\' && next == '\\') plain.append('\\');
+                else {
+                    plain.append(c);
+                    continue;
+                }
+                i++;    // Skip the escaped character
+            }
+            return plain.toString();
+        }
+    }
+    
+}
@@ -0,0 +1,530 @@
+package guestbook.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+
+import java.util.HashMap;
+import java.util.List;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ *      A ColumnarTable carries a list of GuestLogs or GuestInfos from the server to the
+ *  client column by column, instead of as one object per row. The table is encoded once
+ *  by the server and sent as a single byte array; the client decodes it into a Model,
+ *  which a JTable can show directly.
+ *      Each column is written in one of these forms:
+ *      - COLUMN_ID: a long per row, written as the zigzag varint of its difference from
+ *        the row before, so ascending IDs take one byte each.
+ *      - COLUMN_DICTIONARY: the distinct values once, then a varint index per row. Used
+ *        for a string column when it has at most half as many distinct values as rows,
+ *        as emails, IP addresses, cities and postcodes usually do.
+ *      - COLUMN_TEXT: each value written with writeUTF, for the other string columns.
+ *      - COLUMN_TIMESTAMP: dates of the form y-m-d h:m:s, as GuestLog writes them, are
+ *        packed into seconds and written as the varint of their difference from the last
+ *        packed date. A tag byte per row records whether the date was zero padded, or
+ *        was some other string, which is then written as it is.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class ColumnarTable implements Serializable {
+    private static final long serialVersionUID = 20110408; // yyyy/mm/dd
+
+    // Column forms
+    public static final byte COLUMN_ID = 1;
+    public static final byte COLUMN_DICTIONARY = 2;
+    public static final byte COLUMN_TEXT = 3;
+    public static final byte COLUMN_TIMESTAMP = 4;
+
+    // Timestamp tags
+    private static final byte DATE_LITERAL = 0;     // Written as it is
+    private static final byte DATE_PLAIN = 1;       // y-m-d h:m:s without leading zeros
+    private static final byte DATE_PADDED = 2;      // yyyy-mm-dd hh:mm:ss
+
+    // Column headers, as the admin panel shows them
+    public static final String[] LOG_COLUMNS = { "Log ID", "Email", "IP Address", "Date" };
+    public static final String[] GUEST_COLUMNS = { "Email", "Password", "Name", "Address", "City", "Postcode", "Telephone" };
+
+    private int rows;
+    private byte[] encoded;
+
+    /**
+     *  @param rowCount the number of rows
+     *  @param bytes the encoded columns
+     */
+    private ColumnarTable(int rowCount, byte[] bytes) {
+        rows = rowCount;
+        encoded = bytes;
+    }
+
+    /**
+     *  Encodes server logs in the LOG_COLUMNS order.
+     *  @param logs the logs
+     *  @return ColumnarTable the encoded logs
+     */
+    public static ColumnarTable encodeLogs(List<GuestLog> logs) {
+        int n = logs.size();
+        long[] ids = new long[n];
+        String[] emails = new String[n];
+        String[] ips = new String[n];
+        String[] dates = new String[n];
+
+        for (int i = 0; i < n; i++) {
+            GuestLog l = logs.get(i);
+            ids[i] = l.getGLID();
+            emails[i] = l.getEmail();
+            ips[i] = l.getIP();
+            dates[i] = l.getDate();
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream( 64 + n * 8 );
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(LOG_COLUMNS.length);
+            writeIDs(out, LOG_COLUMNS[0], ids);
+            writeStrings(out, LOG_COLUMNS[1], emails);
+            writeStrings(out, LOG_COLUMNS[2], ips);
+            writeTimestamps(out, LOG_COLUMNS[3], dates);
+            out.flush();
+            return new ColumnarTable( n, bytes.toByteArray() );
+        }
+        catch (IOException ioEx) {
+            throw new IllegalArgumentException("A log could not be encoded: " + ioEx.getMessage());
+        }
+    }
+
+    /**
+     *  Encodes guests in the GUEST_COLUMNS order.
+     *  @param guests the guests
+     *  @return ColumnarTable the encoded guests
+     */
+    public static ColumnarTable encodeGuests(List<GuestInfo> guests) {
+        int n = guests.size();
+        String[][] columns = new String[GUEST_COLUMNS.length][n];
+
+        for (int i = 0; i < n; i++) {
+            GuestInfo g = guests.get(i);
+            columns[0][i] = g.getEmail();
+            columns[1][i] = g.getPassword();
+            columns[2][i] = g.getName();
+            columns[3][i] = g.getAddress();
+            columns[4][i] = g.getCity();
+            columns[5][i] = g.getPostcode();
+            columns[6][i] = g.getTelephone();
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream( 64 + n * 32 );
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeShort(GUEST_COLUMNS.length);
+            for (int c = 0; c < GUEST_COLUMNS.length; c++) writeStrings(out, GUEST_COLUMNS[c], columns[c]);
+            out.flush();
+            return new ColumnarTable( n, bytes.toByteArray() );
+        }
+        catch (IOException ioEx) {
+            throw new IllegalArgumentException("A guest could not be encoded: " + ioEx.getMessage());
+        }
+    }
+
+    /**
+     *  @return int the number of rows
+     */
+    public int getRowCount() { return rows; }
+
+    /**
+     *  @return int the size of the encoded columns in bytes
+     */
+    public int getEncodedSize() { return encoded.length; }
+
+    /**
+     *  Decodes the columns. IDs and timestamps are kept packed, and turned into
+     *  Strings only as the table asks for them.
+     *  @return Model the decoded table
+     *  @throws IllegalArgumentException if the encoding is corrupt
+     */
+    public Model decode() throws IllegalArgumentException {
+        DataInputStream in = new DataInputStream( new ByteArrayInputStream(encoded) );
+        try {
+            int count = in.readShort();
+            String[] names = new String[count];
+            Column[] columns = new Column[count];
+
+            for (int c = 0; c < count; c++) {
+                byte form = in.readByte();
+                names[c] = in.readUTF();
+                columns[c] = new Column(form, rows);
+                columns[c].read(in);
+            }
+
+            int[] all = new int[rows];
+            for (int i = 0; i < rows; i++) all[i] = i;
+            return new Model(names, columns, all);
+        }
+        catch (IOException ioEx) {
+            throw new IllegalArgumentException("The columnar table is corrupt: " + ioEx.getMessage());
+        }
+    }
+
+    /**
+     *  @param out the stream to write to
+     *  @param name the column name
+     *  @param ids the values
+     *  @throws IOException if the stream cannot be written
+     */
+    private static void writeIDs(DataOutputStream out, String name, long[] ids) throws IOException {
+        out.writeByte(COLUMN_ID);
+        out.writeUTF(name);
+
+        long last = 0;
+        for (long id : ids) {
+            writeVarLong( out, zigzag(id - last) );
+            last = id;
+        }
+    }
+
+    /**
+     *  Writes a string column as a dictionary if it has few distinct values, or as text.
+     *  @param out the stream to write to
+     *  @param name the column name
+     *  @param values the values
+     *  @throws IOException if the stream cannot be written
+     */
+    private static void writeStrings(DataOutputStream out, String name, String[] values) throws IOException {
+        HashMap<String, Integer> codes = new HashMap<String, Integer>();
+        int[] rowCodes = new int[values.length];
+        int limit = values.length / 2;
+
+        for (int i = 0; i < values.length && codes.size() <= limit; i++) {
+            Integer code = codes.get( values[i] );
+            if (code == null) {
+                code = Integer.valueOf( codes.size() );
+                codes.put( values[i], code );
+            }
+            rowCodes[i] = code.intValue();
+        }
+
+        if ( codes.size() > limit ) {
+            out.writeByte(COLUMN_TEXT);
+            out.writeUTF(name);
+            for (String v : values) out.writeUTF(v);
+            return;
+        }
+
+        String[] dictionary = new String[ codes.size() ];
+        for (int i = 0; i < values.length; i++) dictionary[ rowCodes[i] ] = values[i];
+
+        out.writeByte(COLUMN_DICTIONARY);
+        out.writeUTF(name);
+        writeVarLong(out, dictionary.length);
+        for (String v : dictionary) out.writeUTF(v);
+        for (int code : rowCodes) writeVarLong(out, code);
+    }
+
+    /**
+     *  @param out the stream to write to
+     *  @param name the column name
+     *  @param dates the values
+     *  @throws IOException if the stream cannot be written
+     */
+    private static void writeTimestamps(DataOutputStream out, String name, String[] dates) throws IOException {
+        out.writeByte(COLUMN_TIMESTAMP);
+        out.writeUTF(name);
+
+        long last = 0;
+        for (String d : dates) {
+            long seconds = parseDate(d);
+            byte tag = DATE_LITERAL;
+            if ( seconds != Long.MIN_VALUE ) {
+                if ( formatDate(seconds, false).equals(d) ) tag = DATE_PLAIN;
+                else if ( formatDate(seconds, true).equals(d) ) tag = DATE_PADDED;
+            }
+
+            out.writeByte(tag);
+            if (tag == DATE_LITERAL) out.writeUTF(d);
+            else {
+                writeVarLong( out, zigzag(seconds - last) );
+                last = seconds;
+            }
+        }
+    }
+
+    /**
+     *  Parses a date of the form y-m-d h:m:s into seconds since 1970-01-01 00:00:00,
+     *  without a time zone.
+     *  @param d the date
+     *  @return long the seconds, or Long.MIN_VALUE if the date is not of that form
+     */
+    private static long parseDate(String d) {
+        int[] parts = new int[6];
+        int part = 0, digits = 0, value = 0;
+        char[] separators = { '-', '-', ' ', ':', ':' };
+
+        for (int i = 0; i < d.length(); i++) {
+            char c = d.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (++digits > 4) return Long.MIN_VALUE;
+                value = value * 10 + (c - '0');
+            }
+            else if (part < 5 && c == separators[part] && digits > 0) {
+                parts[part++] = value;
+                digits = 0;
+                value = 0;
+            }
+            else return Long.MIN_VALUE;
+        }
+        if (part != 5 || digits == 0) return Long.MIN_VALUE;
+        parts[5] = value;
+
+        if (parts[0] < 1000 || parts[1] < 1 || parts[1] > 12 || parts[2] < 1 || parts[2] > 31
+                || parts[3] > 23 || parts[4] > 59 || parts[5] > 59) return Long.MIN_VALUE;
+
+        return daysFromCivil(parts[0], parts[1], parts[2]) * 86400L + parts[3] * 3600 + parts[4] * 60 + parts[5];
+    }
+
+    /**
+     *  @param seconds seconds since 1970-01-01 00:00:00
+     *  @param padded true to pad each field after the year to two digits
+     *  @return String the date as y-m-d h:m:s
+     */
+    private static String formatDate(long seconds, boolean padded) {
+        long days = seconds / 86400L;
+        if (seconds % 86400L < 0) days--;
+        int time = (int)(seconds - days * 86400L);
+
+        // Civil date from days since the epoch (proleptic Gregorian calendar)
+        long z = days + 719468;
+        long era = z / 146097;     // Years from 1000 on, so z is positive
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int)(doy - (153 * mp + 2) / 5 + 1);
+        int month = (int)(mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder s = new StringBuilder(19);
+        s.append(year).append('-');
+        appendField(s, month, padded).append('-');
+        appendField(s, day, padded).append(' ');
+        appendField(s, time / 3600, padded).append(':');
+        appendField(s, time / 60 % 60, padded).append(':');
+        appendField(s, time % 60, padded);
+        return s.toString();
+    }
+
+    /**
+     *  @param s the builder
+     *  @param value the field value, under 100
+     *  @param padded true to pad the value to two digits
+     *  @return StringBuilder s
+     */
+    private static StringBuilder appendField(StringBuilder s, int value, boolean padded) {
+        if (padded && value < 10) s.append('0');
+        return s.append(value);
+    }
+
+    /**
+     *  @param y the year
+     *  @param m the month, from 1
+     *  @param d the day of the month, from 1
+     *  @return long the days since 1970-01-01
+     */
+    private static long daysFromCivil(long y, int m, int d) {
+        y -= (m <= 2) ? 1 : 0;
+        long era = y / 400;
+        long yoe = y - era * 400;
+        long doy = (153 * (m > 2 ? m - 3 : m + 9) + 2) / 5 + d - 1;
+        long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+        return era * 146097 + doe - 719468;
+    }
+
+    /**
+     *  @param v a signed value
+     *  @return long v with its sign moved to the lowest bit
+     */
+    private static long zigzag(long v) {
+        return (v << 1) ^ (v >> 63);
+    }
+
+    /**
+     *  @param v a zigzagged value
+     *  @return long the signed value
+     */
+    private static long unzigzag(long v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     *  Writes an unsigned varint, seven bits per byte, low bits first.
+     *  @param out the stream to write to
+     *  @param v the value
+     *  @throws IOException if the stream cannot be written
+     */
+    private static void writeVarLong(DataOutputStream out, long v) throws IOException {
+        while ( (v & ~0x7FL) != 0 ) {
+            out.writeByte( (int)((v & 0x7F) | 0x80) );
+            v >>>= 7;
+        }
+        out.writeByte( (int)v );
+    }
+
+    /**
+     *  @param in the stream to read from
+     *  @return long the unsigned varint read
+     *  @throws IOException if the stream cannot be read or the varint is too long
+     */
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long)(b & 0x7F) << shift;
+            if ( (b & 0x80) == 0 ) return v;
+        }
+        throw new IOException("Varint is too long");
+    }
+
+    /**
+     *  A decoded column. Only the arrays for its form are used.
+     */
+    private static class Column {
+        private byte form;
+        private long[] values;      // IDs, or timestamp seconds
+        private byte[] tags;        // Timestamp tags
+        private int[] codes;        // Dictionary indexes
+        private String[] strings;   // Dictionary, text, or literal timestamps by row
+
+        /**
+         *  @param f the column form
+         *  @param rows the number of rows
+         *  @throws IOException if the form is unknown
+         */
+        Column(byte f, int rows) throws IOException {
+            form = f;
+            if (form == COLUMN_ID) values = new long[rows];
+            else if (form == COLUMN_DICTIONARY) codes = new int[rows];
+            else if (form == COLUMN_TEXT) strings = new String[rows];
+            else if (form == COLUMN_TIMESTAMP) {
+                values = new long[rows];
+                tags = new byte[rows];
+            }
+            else throw new IOException("Unknown column form " + form);
+        }
+
+        /**
+         *  @param in the stream to read the column from
+         *  @throws IOException if the stream cannot be read
+         */
+        void read(DataInputStream in) throws IOException {
+            if (form == COLUMN_ID) {
+                long last = 0;
+                for (int i = 0; i < values.length; i++) values[i] = last += unzigzag( readVarLong(in) );
+            }
+            else if (form == COLUMN_DICTIONARY) {
+                strings = new String[ (int)readVarLong(in) ];
+                for (int i = 0; i < strings.length; i++) strings[i] = in.readUTF();
+                for (int i = 0; i < codes.length; i++) {
+                    codes[i] = (int)readVarLong(in);
+                    if (codes[i] < 0 || codes[i] >= strings.length) throw new IOException("Dictionary index out of range");
+                }
+            }
+            else if (form == COLUMN_TEXT) {
+                for (int i = 0; i < strings.length; i++) strings[i] = in.readUTF();
+            }
+            else {
+                long last = 0;
+                for (int i = 0; i < tags.length; i++) {
+                    tags[i] = in.readByte();
+                    if (tags[i] == DATE_LITERAL) {
+                        if (strings == null) strings = new String[tags.length];
+                        strings[i] = in.readUTF();
+                    }
+                    else values[i] = last += unzigzag( readVarLong(in) );
+                }
+            }
+        }
+
+        /**
+         *  @param row the row
+         *  @return String the value in the row
+         */
+        String get(int row) {
+            if (form == COLUMN_ID) return String.valueOf( values[row] );
+            if (form == COLUMN_DICTIONARY) return strings[ codes[row] ];
+            if (form == COLUMN_TEXT) return strings[row];
+            if (tags[row] == DATE_LITERAL) return strings[row];
+            return formatDate( values[row], tags[row] == DATE_PADDED );
+        }
+    }
+
+    /**
+     *  A decoded ColumnarTable, showing some or all of its rows.
+     */
+    public static class Model extends AbstractTableModel {
+        private static final long serialVersionUID = 20110408; // yyyy/mm/dd
+
+        private String[] names;
+        private Column[] columns;
+        private int[] rows;     // The table rows shown, in order
+
+        /**
+         *  @param columnNames the column names
+         *  @param cols the decoded columns
+         *  @param shown the rows shown
+         */
+        private Model(String[] columnNames, Column[] cols, int[] shown) {
+            names = columnNames;
+            columns = cols;
+            rows = shown;
+        }
+
+        /**
+         *  Returns a Model showing only the rows of this one whose value in a column
+         *  equals, or starts with, the given value. A dictionary column is matched by
+         *  comparing indexes.
+         *  @param column the column
+         *  @param value the value to match
+         *  @param prefix true to match values starting with value
+         *  @return Model the matching rows
+         */
+        public Model select(int column, String value, boolean prefix) {
+            Column col = columns[column];
+            int[] matched = new int[rows.length];
+            int count = 0;
+
+            if (col.form == COLUMN_DICTIONARY && !prefix) {
+                int code = -1;
+                for (int i = 0; i < col.strings.length && code < 0; i++) {
+                    if ( col.strings[i].equals(value) ) code = i;
+                }
+                for (int r : rows) {
+                    if (col.codes[r] == code) matched[count++] = r;
+                }
+            }
+            else {
+                for (int r : rows) {
+                    String v = col.get(r);
+                    if ( prefix ? v.startsWith(value) : v.equals(value) ) matched[count++] = r;
+                }
+            }
+
+            int[] shown = new int[count];
+            System.arraycopy(matched, 0, shown, 0, count);
+            return new Model(names, columns, shown);
+        }
+
+        public int getRowCount() { return rows.length; }
+
+        public int getColumnCount() { return names.length; }
+
+        public String getColumnName(int column) { return names[column]; }
+
+        public Object getValueAt(int row, int column) {
+            return columns[column].get( rows[row] );
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package guestbook.shared;
+
+import java.io.Serializable;
+
+/** 
+ *  Carries a ServerResponse which NetUtils.sendResponse compressed because its
+ *  serialized form was at least NetUtils.COMPRESS_THRESHOLD bytes. It holds the name
+ *  of the PayloadCodec used, the length of the serialized response, and the
+ *  compressed bytes. NetUtils.getResponse replaces it with the response it carries.
+ *  A smaller response is carried serialized but uncompressed, with the codec name
+ *  NetUtils.CODEC_IDENTITY, so that it need not be serialized a second time.
+ *              
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class CompressedResponse implements Serializable {
+    private static final long serialVersionUID = 20110408; // yyyy/mm/dd
+    private String codec;
+    private int length;
+    private byte[] payload;
+    
+    /**
+     * Constructor
+     * @param codecName the name of the codec which compressed the response
+     * @param originalLength the length of the serialized response
+     * @param compressed the compressed response
+     */
+    public CompressedResponse(String codecName, int originalLength, byte[] compressed) {
+        codec = codecName;
+        length = originalLength;
+        payload = compressed;
+    }
+    
+    /** 
+     * @return String the codec name
+     */
+    public String getCodec() { return codec; }
+    
+    /** 
+     * @return int the length of the serialized response
+     */
+    public int getLength() { return length; }
+    
+    /** 
+     * @return byte[] the compressed response
+     */
+    public byte[] getPayload() { return payload; }
+}
@@ -0,0 +1,79 @@
+package guestbook.shared;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ *  A DeflateCodec compresses payloads with java.util.zip. Its Deflater and
+ *  Inflater are created on first use and reset between payloads, so a connection
+ *  pays for them once, and its output buffer is kept for the next payload.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class DeflateCodec implements PayloadCodec {
+
+    private Deflater deflater;
+    private Inflater inflater;
+    private byte[] buffer = new byte[8 * 1024];     // Compressed output, grown as needed
+
+    public String getName() { return NetUtils.CODEC_DEFLATE; }
+
+    public PayloadCodec create() { return new DeflateCodec(); }
+
+    /**
+     *  @param data the bytes to compress
+     *  @param length the number of bytes of data to compress, from the start
+     *  @return byte[] the compressed bytes
+     */
+    public byte[] compress(byte[] data, int length) {
+        if (deflater == null) deflater = new Deflater();
+        deflater.reset();
+        deflater.setInput(data, 0, length);
+        deflater.finish();
+
+        int size = 0;
+        while ( !deflater.finished() ) {
+            if (size == buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     *  @param data the compressed bytes
+     *  @param length the length of the bytes before compression
+     *  @return byte[] the decompressed bytes
+     *  @throws IOException if the bytes are corrupt or do not decompress to length bytes
+     */
+    public byte[] decompress(byte[] data, int length) throws IOException {
+        if (inflater == null) inflater = new Inflater();
+        inflater.reset();
+        inflater.setInput(data);
+
+        byte[] out = new byte[length];
+        int size = 0;
+        try {
+            while (size < length) {
+                int n = inflater.inflate(out, size, length - size);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) break;
+                size += n;
+            }
+        }
+        catch (DataFormatException formatEx) {
+            throw new IOException("Corrupt compressed payload: " + formatEx.getMessage());
+        }
+        if ( size != length || !inflater.finished() ) throw new IOException("Compressed payload has the wrong length.");
+        return out;
+    }
+
+    public void close() {
+        if (deflater != null) deflater.end();
+        if (inflater != null) inflater.end();
+        deflater = null;
+        inflater = null;
+    }
+}
@@ -1,259 +1,333 @@
-package guestbook.shared;
-import java.io.Serializable;
-
-/**
- *  Stores record information on a guest including:
- *  Name, address, city, postcode, telephone, email, and password
- *              
- *  @author Joram Benham 200801274
- *  @version April 6, 2011
- */
-public class GuestInfo implements Serializable
-{
-    private static final long serialVersionUID = 2011040602; // yyyy/mm/dd/version
-    private final String id;
-    
-    // fields for the details of the GuestInfo
-    private String name;
-    private String address; 
-    private String city; 
-    private String postcode; 
-    private String telephone; 
-    private String email;
-    private String password;
-    
-    /** 
-     *  Constructor which takes just the Email parameter
-     *  @param e the email
-     *  @throws IllegalArgumentException 
-     */
-    public GuestInfo(String e) throws IllegalArgumentException {
-        this(null, null, null, null, null, e, null);
-    }
-
-    /**
-     * Email and password Constructor
-     * @param e the email
-     * @param p the password
-     */
-    public GuestInfo(String e, String p) {
-        this(null, null, null, null, null, e, p);
-    }
-    
-    /**
-     * Constructor with no password
-     * @param n the name
-     * @param a the address
-     * @param c the city
-     * @param p the postcode
-     * @param tel the telephone number
-     * @param e the email
-     * @throws IllegalArgumentException 
-     */
-    public GuestInfo(String n, String a, String c, String p,
-                   String tel, String e) throws IllegalArgumentException {
-        
-        this(n, a, c, p, tel, e, "password");
-    }
-    
-    /**
-     * Constructor with all data fields
-     * @param n the name
-     * @param a the address
-     * @param c the city
-     * @param p the postcode
-     * @param tel the telephone number
-     * @param e the email
-     * @param pass the password
-     * @throws IllegalArgumentException 
-     */
-    public GuestInfo(String n, String a, String c, String p,
-                   String tel, String e, String pass) throws IllegalArgumentException {
-        
-        setName(n);
-        setAddress(a);
-        setCity(c); 
-        setPostcode(p);
-        setTelephone(tel);  
-        setEmail(e);
-        setPassword(pass);
-        
-        id = email;
-    }
-    
-    /**
-     * print out this contact's details prettily 
-     */
-    public void show() { System.out.println(this.toString()); }
-   
-    /** 
-     *  Compute a pretty string representation of this GuestInfo's details
-     *  @return String
-     */
-     public String toString() {
-        String s=""; 
-        s += "Name: \t" + name + "\n"; 
-        s += "Address: \t" + address + "\n"; 
-        s += "\t" + city + "\n"; 
-        s += "\t" + postcode + "\n"; 
-        s += "Tel: \t" + telephone + "\n"; 
-        s += "Email: \t" + email + "\n";
-        s += "Password: \t" + password + "\n";
-        return s; 
-     }
-     
-     /**
-      * Returns TRUE if two GuestInfo objects have the same name.
-      * @param rhs "right-hand side", the contact being compared against
-      * @return boolean
-      */
-     public boolean equals(Object rhs) {
-         return ( this.id.equals( ((GuestInfo)rhs).id) );
-     }
-     
-     /**
-      * Returns TRUE if a string is not null, and is not empty.
-      * @param target the String to check
-      * @return boolean
-      */
-     protected boolean hasValue(String target) {
-        if (target == null) return false;
-        if (target.equals("")) return false;
-        return true;
-     }
-     
-     /**
-      * Sets the name member if the argument is not null/empty.
-      * A name may contain: letters, -, ', and spaces.
-      * @param aName the candidate name
-      * @throws IllegalArgumentException 
-      */
-     public void setName(String aName) throws IllegalArgumentException {
-         if ( hasValue(aName) ) {
-            if ( aName.matches("[a-zA-z'\\-\\ ]+") ) {
-                name = new String(aName);
-            } else  throw new IllegalArgumentException("Invalid name value");
-        } else name = "";
-     }
-     
-     /**
-      *     Sets the address if the argument is not null/empty and if it
-      * contains only the following: digits, letters, -, ', or spaces.
-      * @param anAddress the candidate address value
-      * @throws IllegalArgumentException 
-      */
-     public void setAddress(String anAddress) throws IllegalArgumentException {
-        if ( hasValue(anAddress) ) {
-            if ( anAddress.matches("[0-9a-zA-Z\\-\\'\\ ]+") ) {
-                address = new String(anAddress);
-            } else throw new IllegalArgumentException("Invalid address value");
-        } else address = "";
-     }
-     
-     /**
-      *     Sets the city member if the argument is not null/empty.
-      * A city may contain: letters, -, ', and spaces.
-      * @param aCity the candidate city value  
-      * @throws IllegalArgumentException 
-      */
-     public void setCity(String aCity) throws IllegalArgumentException {
-        if ( hasValue(aCity) ) {
-            if (aCity.matches("[a-zA-z'\\-\\ ]+")) city = new String(aCity); 
-            else throw new IllegalArgumentException("Invalid city value");
-        } else city = "";
-     }
-  
-     /**
-      *     Sets the postcode member if the argument is not null/empty and is in
-      * the following form:
-      *  [letter][digit][letter][optional space][digit][letter][digit]
-      * @param aPostcode the candidate postcode value  
-      * @throws IllegalArgumentException 
-      */
-     public void setPostcode(String aPostcode) throws IllegalArgumentException {
-        if ( hasValue(aPostcode) ) { 
-            if (aPostcode.matches("[a-zA-Z][\\d][a-zA-Z][\\ ]?[\\d][a-zA-Z][\\d]")){
-                postcode = new String(aPostcode);
-            } else throw new IllegalArgumentException("Invalid postcode value");
-        } else postcode = "";
-     }
-     
-     /**
-      *     Sets the telephone member if the argument is not null/empty.
-      * A telephone number may contain: digits, -, (, )
-      * @param aNumber the candidate phone number value
-      * @throws IllegalArgumentException 
-      */
-     public void setTelephone(String aNumber) throws IllegalArgumentException {
-        if ( hasValue(aNumber) ) {
-            if (aNumber.matches("[\\d\\-\\(\\)\\ ]+")) telephone = new String(aNumber);
-            else throw new IllegalArgumentException("Invalid phone number value");
-        } else telephone = "";
-     }
-     
-     /**
-      *     Sets the email member if the argument is not null/empty.
-      * An email should be in the following format (simplified):
-      * [non-whitespace][@][non-whitespace].[non-whitespace]
-      * @param anEmail the candidate email value
-      * @throws IllegalArgumentException 
-      */
-     public void setEmail(String anEmail) throws IllegalArgumentException {
-        if ( hasValue(anEmail) && anEmail.matches("[\\S]+@[\\S]+\\.[\\S]+") ) {
-                email = new String(anEmail);
-        }
-        else throw new IllegalArgumentException("Invalid email value");
-     }
-     
-     /**
-      *     Sets the password member if the argument is not null/empty.
-      * A password can be any combination of characters.
-      * @param pass the password value
-      * @throws IllegalArgumentException 
-      */
-     public void setPassword(String pass) {
-        if ( hasValue(pass) ) {
-                password = new String(pass);
-        } else password = "";
-     }
-     
-    /** 
-     * @return String the ID
-     */
-    public String getID() { return id; }
-    
-    /** 
-     * @return String the name
-     */
-    public String getName() { return new String(name); }
-    
-    /** 
-     * @return String the address
-     */
-    public String getAddress() { return address; }
-    
-    /** 
-     * @return String the city
-     */
-    public String getCity() { return city; }
-    
-    /** 
-     * @return String the postcode
-     */
-    public String getPostcode() { return postcode; }
-    
-     /** 
-     * @return String the telephone number
-     */
-    public String getTelephone() { return telephone; }
-    
-    /** 
-     * @return String the email address
-     */
-    public String getEmail() { return email; }
-    
-    /** 
-     * @return String the password
-     */
-    public String getPassword() { return password; }
-}
+package guestbook.shared;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.Serializable;
+
+/**
+ *  Stores record information on a guest including:
+ *  Name, address, city, postcode, telephone, email, and password
+ *      A GuestInfo is immutable. Each field is validated once by the constructor and kept
+ *  as given, as Strings are immutable themselves; a changed record is a new GuestInfo.
+ *  The email identifies the guest, and equals and hashCode compare only the email, so a
+ *  GuestInfo can be used as a hash key.
+ *      A GuestInfo is serialized through its SerializedForm, which writes the seven fields
+ *  with writeUTF instead of the default field-by-field form. Streams written in the
+ *  default form by older versions, such as old address book files, are still read.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public final class GuestInfo implements Serializable
+{
+    // Kept from the default serialized form so that old streams can still be read
+    private static final long serialVersionUID = 2011040602; // yyyy/mm/dd/version
+
+    // fields for the details of the GuestInfo
+    private final String name;
+    private final String address;
+    private final String city;
+    private final String postcode;
+    private final String telephone;
+    private final String email;
+    private final String password;
+
+    /**
+     *  Constructor which takes just the Email parameter
+     *  @param e the email
+     *  @throws IllegalArgumentException
+     */
+    public GuestInfo(String e) throws IllegalArgumentException {
+        this(null, null, null, null, null, e, null);
+    }
+
+    /**
+     * Email and password Constructor
+     * @param e the email
+     * @param p the password
+     */
+    public GuestInfo(String e, String p) {
+        this(null, null, null, null, null, e, p);
+    }
+
+    /**
+     * Constructor with no password
+     * @param n the name
+     * @param a the address
+     * @param c the city
+     * @param p the postcode
+     * @param tel the telephone number
+     * @param e the email
+     * @throws IllegalArgumentException
+     */
+    public GuestInfo(String n, String a, String c, String p,
+                   String tel, String e) throws IllegalArgumentException {
+
+        this(n, a, c, p, tel, e, "password");
+    }
+
+    /**
+     * Constructor with all data fields
+     * @param n the name
+     * @param a the address
+     * @param c the city
+     * @param p the postcode
+     * @param tel the telephone number
+     * @param e the email
+     * @param pass the password
+     * @throws IllegalArgumentException
+     */
+    public GuestInfo(String n, String a, String c, String p,
+                   String tel, String e, String pass) throws IllegalArgumentException {
+
+        name = checkName(n);
+        address = checkAddress(a);
+        city = checkCity(c);
+        postcode = checkPostcode(p);
+        telephone = checkTelephone(tel);
+        email = checkEmail(e);
+        password = checkPassword(pass);
+    }
+
+    /**
+     * print out this contact's details prettily
+     */
+    public void show() { System.out.println(this.toString()); }
+
+    /**
+     *  Compute a pretty string representation of this GuestInfo's details
+     *  @return String
+     */
+     public String toString() {
+        String s="";
+        s += "Name: \t" + name + "\n";
+        s += "Address: \t" + address + "\n";
+        s += "\t" + city + "\n";
+        s += "\t" + postcode + "\n";
+        s += "Tel: \t" + telephone + "\n";
+        s += "Email: \t" + email + "\n";
+        s += "Password: \t" + password + "\n";
+        return s;
+     }
+
+     /**
+      * Returns TRUE if two GuestInfo objects have the same email.
+      * @param rhs "right-hand side", the contact being compared against
+      * @return boolean
+      */
+     public boolean equals(Object rhs) {
+         if (this == rhs) return true;
+         if ( !(rhs instanceof GuestInfo) ) return false;
+         return ( this.email.equals( ((GuestInfo)rhs).email) );
+     }
+
+     /**
+      * Returns the hash of the email, consistent with equals.
+      * @return int
+      */
+     public int hashCode() {
+         return email.hashCode();
+     }
+
+     /**
+      * Returns TRUE if a string is not null, and is not empty.
+      * @param target the String to check
+      * @return boolean
+      */
+     private static boolean hasValue(String target) {
+        if (target == null) return false;
+        if (target.equals("")) return false;
+        return true;
+     }
+
+     /**
+      * Checks a name, which may contain: letters, -, ', and spaces.
+      * @param aName the candidate name
+      * @return String the name, or "" if the argument is null/empty
+      * @throws IllegalArgumentException
+      */
+     private static String checkName(String aName) throws IllegalArgumentException {
+         if ( hasValue(aName) == false ) return "";
+         if ( ValidationUtils.isName(aName) ) return aName;
+         throw new IllegalArgumentException("Invalid name value");
+     }
+
+     /**
+      *     Checks an address, which may contain only the following:
+      * digits, letters, -, ', or spaces.
+      * @param anAddress the candidate address value
+      * @return String the address, or "" if the argument is null/empty
+      * @throws IllegalArgumentException
+      */
+     private static String checkAddress(String anAddress) throws IllegalArgumentException {
+        if ( hasValue(anAddress) == false ) return "";
+        if ( ValidationUtils.isAddress(anAddress) ) return anAddress;
+        throw new IllegalArgumentException("Invalid address value");
+     }
+
+     /**
+      *     Checks a city, which may contain: letters, -, ', and spaces.
+      * @param aCity the candidate city value
+      * @return String the city, or "" if the argument is null/empty
+      * @throws IllegalArgumentException
+      */
+     private static String checkCity(String aCity) throws IllegalArgumentException {
+        if ( hasValue(aCity) == false ) return "";
+        if ( ValidationUtils.isCity(aCity) ) return aCity;
+        throw new IllegalArgumentException("Invalid city value");
+     }
+
+     /**
+      *     Checks a postcode, which must be in the following form:
+      *  [letter][digit][letter][optional space][digit][letter][digit]
+      * @param aPostcode the candidate postcode value
+      * @return String the postcode, or "" if the argument is null/empty
+      * @throws IllegalArgumentException
+      */
+     private static String checkPostcode(String aPostcode) throws IllegalArgumentException {
+        if ( hasValue(aPostcode) == false ) return "";
+        if ( ValidationUtils.isPostcode(aPostcode) ) return aPostcode;
+        throw new IllegalArgumentException("Invalid postcode value");
+     }
+
+     /**
+      *     Checks a telephone number, which may contain: digits, -, (, )
+      * @param aNumber the candidate phone number value
+      * @return String the number, or "" if the argument is null/empty
+      * @throws IllegalArgumentException
+      */
+     private static String checkTelephone(String aNumber) throws IllegalArgumentException {
+        if ( hasValue(aNumber) == false ) return "";
+        if ( ValidationUtils.isTelephone(aNumber) ) return aNumber;
+        throw new IllegalArgumentException("Invalid phone number value");
+     }
+
+     /**
+      *     Checks an email, which is required and should be in the following
+      * format (simplified): [non-whitespace][@][non-whitespace].[non-whitespace]
+      * @param anEmail the candidate email value
+      * @return String the email
+      * @throws IllegalArgumentException
+      */
+     private static String checkEmail(String anEmail) throws IllegalArgumentException {
+        if ( hasValue(anEmail) && ValidationUtils.isEmail(anEmail) ) return anEmail;
+        throw new IllegalArgumentException("Invalid email value");
+     }
+
+     /**
+      *     A password can be any combination of characters.
+      * @param pass the password value
+      * @return String the password, or "" if the argument is null/empty
+      */
+     private static String checkPassword(String pass) {
+        if ( hasValue(pass) == false ) return "";
+        return pass;
+     }
+
+    /**
+     * @return String the ID, which is the email
+     */
+    public String getID() { return email; }
+
+    /**
+     * @return String the name
+     */
+    public String getName() { return name; }
+
+    /**
+     * @return String the address
+     */
+    public String getAddress() { return address; }
+
+    /**
+     * @return String the city
+     */
+    public String getCity() { return city; }
+
+    /**
+     * @return String the postcode
+     */
+    public String getPostcode() { return postcode; }
+
+     /**
+     * @return String the telephone number
+     */
+    public String getTelephone() { return telephone; }
+
+    /**
+     * @return String the email address
+     */
+    public String getEmail() { return email; }
+
+    /**
+     * @return String the password
+     */
+    public String getPassword() { return password; }
+
+    /**
+     *  Serializes this GuestInfo as a SerializedForm.
+     *  @return Object the serialized form
+     */
+    private Object writeReplace() {
+        return new SerializedForm(this);
+    }
+
+    /**
+     *  The serialized form of a GuestInfo: the seven fields written with writeUTF,
+     *  in constructor order. A GuestInfo read back is built by the constructor, so
+     *  a stream cannot hold a guest the constructor would reject.
+     */
+    private static final class SerializedForm implements Externalizable {
+        private static final long serialVersionUID = 20110408; // yyyy/mm/dd
+
+        private GuestInfo guest;
+
+        /**
+         *  Constructor used by deserialization
+         */
+        public SerializedForm() {}
+
+        /**
+         *  @param g the guest to serialize
+         */
+        SerializedForm(GuestInfo g) { guest = g; }
+
+        /**
+         *  @param out the stream to write to
+         *  @throws IOException for error with output stream
+         */
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeUTF(guest.name);
+            out.writeUTF(guest.address);
+            out.writeUTF(guest.city);
+            out.writeUTF(guest.postcode);
+            out.writeUTF(guest.telephone);
+            out.writeUTF(guest.email);
+            out.writeUTF(guest.password);
+        }
+
+        /**
+         *  @param in the stream to read from
+         *  @throws IOException for error with input stream, or if the guest is invalid
+         */
+        public void readExternal(ObjectInput in) throws IOException {
+            String n = in.readUTF(), a = in.readUTF(), c = in.readUTF(), p = in.readUTF(),
+                   tel = in.readUTF(), e = in.readUTF(), pass = in.readUTF();
+            try {
+                guest = new GuestInfo(n, a, c, p, tel, e, pass);
+            }
+            catch (IllegalArgumentException invalidEx) {
+                throw new InvalidObjectException( invalidEx.getMessage() );
+            }
+        }
+
+        /**
+         *  @return Object the GuestInfo read
+         */
+        private Object readResolve() {
+            return guest;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package guestbook.shared;
+
+/**
+ * The ImportListener interface receives the progress of an
+ * AddressBook.importGuestInfos call, and the records it could not import.
+ * Both methods are called on the importing thread.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public interface ImportListener {
+    /**
+     * @param recordsRead the number of records read from the file so far
+     * @param recordsAdded the number of guests added so far
+     */
+    public void importProgress(int recordsRead, int recordsAdded);
+
+    /**
+     * @param recordNumber the position of the record in the file, from 1
+     * @param record the text of the record
+     * @param reason why the record was not imported
+     */
+    public void recordFailed(int recordNumber, String record, String reason);
+}
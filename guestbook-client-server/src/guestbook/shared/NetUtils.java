@@ -1,144 +1,319 @@
-
-package guestbook.shared;
-
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.io.ObjectInputStream;
-
-import java.util.Arrays;
-
-/** 
- *  A utility class used for communication between a ClientHandler
- *  and a GuestBookClient.
- *  The class defines the types of communication headers which can be
- *  sent between ClientHandler and GuestBookClient, and provides methods
- *  for sending and receiving requests and responses.
- *              
- *  @author Joram Benham 200801274
- *  @version April 8, 2011
- */
-public class NetUtils {
-
-    // Type headers for the communications between client and server
-    // SR indicates "Server Response"
-    // CR indicates "Client Request"
-    public static final String CR_LOGIN = "Login request";
-    public static final String SR_LOGIN = "Login response";
-    
-    public static final String CR_REGISTER = "Register request";
-    public static final String SR_REGISTER = "Register response";
-    
-    public static final String CR_GUEST_UPDATE = "Guest update request";
-    public static final String SR_GUEST_UPDATE = "Guest update response";    
-    
-    public static final String CR_GUEST_RETRIEVE = "Guest retrieve request";
-    public static final String SR_GUEST_RETRIEVE = "Guest retrieve response"; 
-    
-    public static final String CR_GUEST_DELETE = "Guest delete request";
-    public static final String SR_GUEST_DELETE = "Guest delete response"; 
-    
-    public static final String CR_SUBMIT_COMMENT = "Submit comment request";
-    public static final String SR_SUBMIT_COMMENT = "Submit comment response"; 
-    
-    public static final String CR_GET_ENTRIES = "Get entries request";
-    public static final String SR_GET_ENTRIES = "Get entries response";
-    
-    public static final String CR_GET_LOGS = "Get logs request";
-    public static final String SR_GET_LOGS = "Get logs response";
-    
-    public static final String CR_GET_USERS = "Get users request";
-    public static final String SR_GET_USERS = "Get users response";
-    
-    public static final String SR_DB_ERROR = "Database error";
-    
-    public static final String[] CLIENT_REQUESTS = { CR_LOGIN, CR_REGISTER, CR_GUEST_UPDATE, CR_GUEST_RETRIEVE, CR_GUEST_DELETE, CR_SUBMIT_COMMENT, CR_GET_ENTRIES, CR_GET_LOGS, CR_GET_USERS };
-    public static final String[] SERVER_RESPONSES = { SR_LOGIN, SR_REGISTER, SR_GUEST_UPDATE, SR_GUEST_RETRIEVE, SR_GUEST_DELETE, SR_SUBMIT_COMMENT, SR_GET_ENTRIES, SR_GET_LOGS, SR_GET_USERS, SR_DB_ERROR };
-    
-    /** Determines if a String is a valid request type
-     * @param r string to check for validity
-     * @return boolean true if 'r' is a valid request type
-     */
-    public static boolean isValidRequest( String r ) {
-        if ( r == null ) return false;
-        if ( Arrays.asList( CLIENT_REQUESTS ).contains( r ) ) return true;
-        return false;
-    }
-    
-    /** Determines if a String is a valid response type
-     * @param r string to check for validity
-     * @return boolean true if 'r' is a valid response type
-     */
-    public static boolean isValidResponse( String r ) {
-        if (r == null) return false;
-        if ( Arrays.asList( SERVER_RESPONSES ).contains( r ) ) return true;
-        return false;
-    }
-
-    /** 
-     *  Sends a request to the server.
-     * @param request ClientRequest object to send to the server
-     * @param out the stream to send the request with
-     * @throws IOException
-     */
-    public static void sendRequest( ClientRequest request, ObjectOutputStream out ) throws IOException {
-        out.writeObject( request );
-    }
-    
-    /** 
-     *  Sends a response to the client.
-     * @param response ServerResponse object to send to the client
-     * @param out the stream to send the response with
-     * @throws IOException
-     */
-    public static void sendResponse( ServerResponse response, ObjectOutputStream out ) throws IOException {
-        out.writeObject( response );
-    }
-    
-    /** 
-     *  Used by the server to get a client's request
-     * @param in the stream to read the request from
-     * @return ClientRequest
-     * @throws IOException
-     */
-    public static ClientRequest getRequest( ObjectInputStream in ) throws IOException {
-        Object received;
-        
-        try {
-            received = in.readObject();
-        }
-        catch (ClassNotFoundException classEx) {
-            throw new IOException("NETWORK ERROR: Client did not send a valid request.");
-        }
-        
-        if ( received instanceof ClientRequest ) {
-            return (ClientRequest)(received);
-        }
-        else {
-            throw new IOException("NETWORK ERROR: Client's request was not of type ClientRequest.");
-        }
-    }  
-    
-    /** 
-     *  Used by a client to get the server's response
-     * @param in the stream to read the response from
-     * @return ServerResponse
-     * @throws IOException
-     */
-    public static ServerResponse getResponse( ObjectInputStream in ) throws IOException {
-        Object received;
-        
-        try {
-            received = in.readObject();
-        }
-        catch (ClassNotFoundException classEx) {
-            throw new IOException("NETWORK ERROR: Server did not send a valid response.");
-        }
-        
-        if ( received instanceof ServerResponse ) {
-            return (ServerResponse)(received);
-        }
-        else {
-            throw new IOException("NETWORK ERROR: Server's response was not of type ServerResponse.");
-        }
-    }
-}
+
+package guestbook.shared;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectInputStream;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** 
+ *  A utility class used for communication between a ClientHandler
+ *  and a GuestBookClient.
+ *  The class defines the types of communication headers which can be
+ *  sent between ClientHandler and GuestBookClient, and provides methods
+ *  for sending and receiving requests and responses.
+ *      A client lists the PayloadCodecs it can decode in each ClientRequest. If the
+ *  serialized response is at least COMPRESS_THRESHOLD bytes, the server may compress it
+ *  with one of them and send a CompressedResponse instead; a smaller response, which has
+ *  already been serialized to measure it, is sent as those bytes in a CompressedResponse
+ *  of the CODEC_IDENTITY, rather than serialized again. Neither side offers
+ *  compression over a loopback connection, where it would only cost time.
+ *              
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class NetUtils {
+
+    // Type headers for the communications between client and server
+    // SR indicates "Server Response"
+    // CR indicates "Client Request"
+    public static final String CR_LOGIN = "Login request";
+    public static final String SR_LOGIN = "Login response";
+    
+    public static final String CR_REGISTER = "Register request";
+    public static final String SR_REGISTER = "Register response";
+    
+    public static final String CR_GUEST_UPDATE = "Guest update request";
+    public static final String SR_GUEST_UPDATE = "Guest update response";    
+    
+    public static final String CR_GUEST_RETRIEVE = "Guest retrieve request";
+    public static final String SR_GUEST_RETRIEVE = "Guest retrieve response"; 
+    
+    public static final String CR_GUEST_DELETE = "Guest delete request";
+    public static final String SR_GUEST_DELETE = "Guest delete response"; 
+    
+    public static final String CR_SUBMIT_COMMENT = "Submit comment request";
+    public static final String SR_SUBMIT_COMMENT = "Submit comment response"; 
+    
+    public static final String CR_GET_ENTRIES = "Get entries request";
+    public static final String SR_GET_ENTRIES = "Get entries response";
+    
+    public static final String CR_GET_LOGS = "Get logs request";
+    public static final String SR_GET_LOGS = "Get logs response";
+    
+    public static final String CR_GET_USERS = "Get users request";
+    public static final String SR_GET_USERS = "Get users response";
+    
+    // The logs and users as a single ColumnarTable instead of one object per row
+    public static final String CR_GET_LOGS_COLUMNAR = "Get logs columnar request";
+    public static final String SR_GET_LOGS_COLUMNAR = "Get logs columnar response";
+    
+    public static final String CR_GET_USERS_COLUMNAR = "Get users columnar request";
+    public static final String SR_GET_USERS_COLUMNAR = "Get users columnar response";
+    
+    public static final String CR_BULK_LOAD = "Bulk load request";
+    public static final String SR_BULK_LOAD = "Bulk load response";
+    
+    // An export response is followed by the exported rows, then a second export
+    // response holding the row count (or a database error response)
+    public static final String CR_EXPORT = "Export request";
+    public static final String SR_EXPORT = "Export response";
+    
+    // Tables and formats which can be exported
+    public static final String EXPORT_GUESTS = "Guest";
+    public static final String EXPORT_ENTRIES = "GuestEntry";
+    public static final String EXPORT_LOGS = "GuestLog";
+    public static final String[] EXPORT_TABLES = { EXPORT_GUESTS, EXPORT_ENTRIES, EXPORT_LOGS };
+    public static final String EXPORT_DELIMITED = "Delimited";
+    public static final String EXPORT_BINARY = "Binary";
+    
+    // A ping asks the server to answer with an empty response, to check that it is up
+    public static final String CR_PING = "Ping request";
+    public static final String SR_PING = "Ping response";
+    
+    // A batch request carries other requests, which the server answers in order with one
+    // batch response holding a response for each; a failed request gets an SR_DB_ERROR
+    // response without stopping the rest. Batches and exports cannot be batched.
+    public static final String CR_BATCH = "Batch request";
+    public static final String SR_BATCH = "Batch response";
+    public static final int MAX_BATCH = 256;    // most requests in one batch
+    
+    // A configure request carries "setting=value" Strings, which an administrator's server
+    // applies while it runs; it answers with every setting's current "setting=value".
+    // It does not wait for a handler lane, so it gets through while the lanes are full.
+    public static final String CR_CONFIGURE = "Configure request";
+    public static final String SR_CONFIGURE = "Configure response";
+    
+    public static final String SR_DB_ERROR = "Database error";
+    
+    // Response compression
+    public static final String CODEC_DEFLATE = "Deflate";
+    public static final String CODEC_IDENTITY = "Identity";    // a CompressedResponse's payload is not compressed
+    public static final int COMPRESS_THRESHOLD = 8 * 1024;     // serialized bytes before a response is compressed
+    public static final int MAX_PAYLOAD = 256 * 1024 * 1024;   // largest compressed response accepted, uncompressed
+    
+    // Codecs which can be negotiated, by name, in order of preference
+    private static final Map<String, PayloadCodec> codecs = new LinkedHashMap<String, PayloadCodec>();
+    static {
+        registerCodec( new DeflateCodec() );
+    }
+    
+    public static final String[] CLIENT_REQUESTS = { CR_LOGIN, CR_REGISTER, CR_GUEST_UPDATE, CR_GUEST_RETRIEVE, CR_GUEST_DELETE, CR_SUBMIT_COMMENT, CR_GET_ENTRIES, CR_GET_LOGS, CR_GET_USERS, CR_GET_LOGS_COLUMNAR, CR_GET_USERS_COLUMNAR, CR_BULK_LOAD, CR_EXPORT, CR_BATCH, CR_PING, CR_CONFIGURE };
+    public static final String[] SERVER_RESPONSES = { SR_LOGIN, SR_REGISTER, SR_GUEST_UPDATE, SR_GUEST_RETRIEVE, SR_GUEST_DELETE, SR_SUBMIT_COMMENT, SR_GET_ENTRIES, SR_GET_LOGS, SR_GET_USERS, SR_GET_LOGS_COLUMNAR, SR_GET_USERS_COLUMNAR, SR_BULK_LOAD, SR_EXPORT, SR_BATCH, SR_PING, SR_CONFIGURE, SR_DB_ERROR };
+    
+    /** Determines if a String is a valid request type
+     * @param r string to check for validity
+     * @return boolean true if 'r' is a valid request type
+     */
+    public static boolean isValidRequest( String r ) {
+        if ( r == null ) return false;
+        if ( Arrays.asList( CLIENT_REQUESTS ).contains( r ) ) return true;
+        return false;
+    }
+    
+    /** Determines if a String is a valid response type
+     * @param r string to check for validity
+     * @return boolean true if 'r' is a valid response type
+     */
+    public static boolean isValidResponse( String r ) {
+        if (r == null) return false;
+        if ( Arrays.asList( SERVER_RESPONSES ).contains( r ) ) return true;
+        return false;
+    }
+
+    /** 
+     *  Makes a codec available for negotiation. Codecs are preferred in the order
+     *  they are registered; a codec registered again under the same name replaces
+     *  the first.
+     * @param prototype a codec, whose create method makes the codec for each connection
+     */
+    public static void registerCodec( PayloadCodec prototype ) {
+        synchronized (codecs) {
+            codecs.put( prototype.getName(), prototype );
+        }
+    }
+    
+    /** 
+     * @return String[] the names of the registered codecs, in order of preference
+     */
+    public static String[] getCodecNames() {
+        synchronized (codecs) {
+            return codecs.keySet().toArray( new String[codecs.size()] );
+        }
+    }
+    
+    /** 
+     *  Chooses the codec to answer a request with: the first registered codec
+     *  the client accepts.
+     * @param accepted the codec names from the ClientRequest, or null
+     * @return PayloadCodec a new codec, or null if none is shared
+     */
+    public static PayloadCodec chooseCodec( String[] accepted ) {
+        if (accepted == null) return null;
+        synchronized (codecs) {
+            for (PayloadCodec prototype : codecs.values()) {
+                if ( Arrays.asList(accepted).contains( prototype.getName() ) ) return prototype.create();
+            }
+        }
+        return null;
+    }
+    
+    /** 
+     * @param name a codec name
+     * @return PayloadCodec a new codec with the name, or null if none is registered
+     */
+    public static PayloadCodec createCodec( String name ) {
+        synchronized (codecs) {
+            PayloadCodec prototype = codecs.get(name);
+            return (prototype == null) ? null : prototype.create();
+        }
+    }
+
+    /** 
+     *  Sends a request to the server.
+     * @param request ClientRequest object to send to the server
+     * @param out the stream to send the request with
+     * @throws IOException
+     */
+    public static void sendRequest( ClientRequest request, ObjectOutputStream out ) throws IOException {
+        out.writeObject( request );
+    }
+    
+    /** 
+     *  Sends a response to the client.
+     * @param response ServerResponse object to send to the client
+     * @param out the stream to send the response with
+     * @throws IOException
+     */
+    public static void sendResponse( ServerResponse response, ObjectOutputStream out ) throws IOException {
+        out.writeObject( response );
+    }
+    
+    /** 
+     *  Sends a response to the client, compressed with the codec if its serialized
+     *  form is at least COMPRESS_THRESHOLD bytes. Otherwise the serialized form is sent
+     *  uncompressed, as a CompressedResponse of the CODEC_IDENTITY.
+     * @param response ServerResponse object to send to the client
+     * @param out the stream to send the response with
+     * @param codec the codec negotiated with the client, or null to send the response as it is
+     * @throws IOException
+     */
+    public static void sendResponse( ServerResponse response, ObjectOutputStream out, PayloadCodec codec ) throws IOException {
+        if (codec == null) {
+            sendResponse( response, out );
+            return;
+        }
+        
+        ExposedByteArrayOutputStream bytes = new ExposedByteArrayOutputStream();
+        ObjectOutputStream objectOut = new ObjectOutputStream( bytes );
+        objectOut.writeObject( response );
+        objectOut.close();
+        
+        if ( bytes.size() < COMPRESS_THRESHOLD ) out.writeObject( new CompressedResponse( CODEC_IDENTITY, bytes.size(), bytes.toByteArray() ) );
+        else out.writeObject( new CompressedResponse( codec.getName(), bytes.size(), codec.compress( bytes.getBuffer(), bytes.size() ) ) );
+    }
+    
+    /** 
+     *  Used by the server to get a client's request
+     * @param in the stream to read the request from
+     * @return ClientRequest
+     * @throws IOException
+     */
+    public static ClientRequest getRequest( ObjectInputStream in ) throws IOException {
+        Object received;
+        
+        try {
+            received = in.readObject();
+        }
+        catch (ClassNotFoundException classEx) {
+            throw new IOException("NETWORK ERROR: Client did not send a valid request.");
+        }
+        
+        if ( received instanceof ClientRequest ) {
+            return (ClientRequest)(received);
+        }
+        else {
+            throw new IOException("NETWORK ERROR: Client's request was not of type ClientRequest.");
+        }
+    }  
+    
+    /** 
+     *  Used by a client to get the server's response
+     * @param in the stream to read the response from
+     * @return ServerResponse
+     * @throws IOException
+     */
+    public static ServerResponse getResponse( ObjectInputStream in ) throws IOException {
+        return getResponse( in, null );
+    }
+    
+    /** 
+     *  Used by a client to get the server's response, decompressing it if the server
+     *  sent a CompressedResponse.
+     * @param in the stream to read the response from
+     * @param decoders the client's codecs by name, to which codecs are added as they are needed; 
+     * null if the client accepts no codecs
+     * @return ServerResponse
+     * @throws IOException
+     */
+    public static ServerResponse getResponse( ObjectInputStream in, Map<String, PayloadCodec> decoders ) throws IOException {
+        Object received;
+        
+        try {
+            received = in.readObject();
+            
+            if ( received instanceof CompressedResponse && decoders != null ) {
+                CompressedResponse compressed = (CompressedResponse)received;
+                if ( compressed.getLength() < 0 || compressed.getLength() > MAX_PAYLOAD ) {
+                    throw new IOException("NETWORK ERROR: Server's compressed response is too large.");
+                }
+                
+                byte[] payload = compressed.getPayload();
+                if ( compressed.getCodec().equals(CODEC_IDENTITY) == false ) {
+                    PayloadCodec codec = decoders.get( compressed.getCodec() );
+                    if (codec == null) {
+                        codec = createCodec( compressed.getCodec() );
+                        if (codec == null) throw new IOException("NETWORK ERROR: Server used an unknown codec: " + compressed.getCodec());
+                        decoders.put( compressed.getCodec(), codec );
+                    }
+                    payload = codec.decompress( payload, compressed.getLength() );
+                }
+                received = new ObjectInputStream( new ByteArrayInputStream(payload) ).readObject();
+            }
+        }
+        catch (ClassNotFoundException classEx) {
+            throw new IOException("NETWORK ERROR: Server did not send a valid response.");
+        }
+        
+        if ( received instanceof ServerResponse ) {
+            return (ServerResponse)(received);
+        }
+        else {
+            throw new IOException("NETWORK ERROR: Server's response was not of type ServerResponse.");
+        }
+    }
+    
+    /** 
+     *  A ByteArrayOutputStream whose buffer can be read without copying it.
+     */
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream() { super( COMPRESS_THRESHOLD ); }
+        
+        byte[] getBuffer() { return buf; }
+    }
+}
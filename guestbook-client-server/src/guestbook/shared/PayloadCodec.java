@@ -0,0 +1,46 @@
+package guestbook.shared;
+
+import java.io.IOException;
+
+/**
+ * The PayloadCodec interface compresses the serialized form of a large
+ * ServerResponse. A codec is used by one connection at a time, and may keep
+ * buffers or native state between calls; close releases them. Codecs are
+ * registered with NetUtils.registerCodec, and a client lists the names of the
+ * codecs it can decode in its ClientRequest.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public interface PayloadCodec {
+    /**
+     * @return String the name the codec is negotiated by
+     */
+    public String getName();
+
+    /**
+     * @return PayloadCodec a new codec of the same kind, for another connection
+     */
+    public PayloadCodec create();
+
+    /**
+     * @param data the bytes to compress
+     * @param length the number of bytes of data to compress, from the start
+     * @return byte[] the compressed bytes
+     * @throws IOException if the bytes cannot be compressed
+     */
+    public byte[] compress(byte[] data, int length) throws IOException;
+
+    /**
+     * @param data the compressed bytes
+     * @param length the length of the bytes before compression
+     * @return byte[] the decompressed bytes
+     * @throws IOException if the bytes are corrupt
+     */
+    public byte[] decompress(byte[] data, int length) throws IOException;
+
+    /**
+     * Releases any resources held by the codec.
+     */
+    public void close();
+}
@@ -0,0 +1,145 @@
+package guestbook.shared;
+
+/**
+ *  ValidationUtils checks the fields of GuestInfo, GuestEntry and GuestLog records.
+ *  Each check is a hand-written scan of the value which allocates nothing, and accepts
+ *  exactly the values the regular expression beside it accepts. The expressions are
+ *  the ones the setters used to pass to String.matches, which compiled them on every call.
+ *  The checks do not accept null.
+ *
+ *  @author Joram Benham 200801274
+ *  @version April 8, 2011
+ */
+public class ValidationUtils {
+
+    // The expressions the checks are equivalent to
+    public static final String NAME_REGEX = "[a-zA-z'\\-\\ ]+";
+    public static final String ADDRESS_REGEX = "[0-9a-zA-Z\\-\\'\\ ]+";
+    public static final String CITY_REGEX = "[a-zA-z'\\-\\ ]+";
+    public static final String POSTCODE_REGEX = "[a-zA-Z][\\d][a-zA-Z][\\ ]?[\\d][a-zA-Z][\\d]";
+    public static final String TELEPHONE_REGEX = "[\\d\\-\\(\\)\\ ]+";
+    public static final String EMAIL_REGEX = "[\\S]+@[\\S]+\\.[\\S]+";
+
+    /**
+     *  A name may contain letters, -, ', and spaces. The range A-z in NAME_REGEX
+     *  also takes in [ \ ] ^ _ and `, and they are accepted here as well.
+     *  @param s the value to check
+     *  @return boolean true if s matches NAME_REGEX
+     */
+    public static boolean isName(String s) {
+        int n = s.length();
+        if (n == 0) return false;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if ( (c >= 'A' && c <= 'z') || c == '\'' || c == '-' || c == ' ' ) continue;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     *  An address may contain digits, letters, -, ', and spaces.
+     *  @param s the value to check
+     *  @return boolean true if s matches ADDRESS_REGEX
+     */
+    public static boolean isAddress(String s) {
+        int n = s.length();
+        if (n == 0) return false;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if ( isDigit(c) || isLetter(c) || c == '\'' || c == '-' || c == ' ' ) continue;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     *  A city follows the same rule as a name.
+     *  @param s the value to check
+     *  @return boolean true if s matches CITY_REGEX
+     */
+    public static boolean isCity(String s) {
+        return isName(s);
+    }
+
+    /**
+     *  A postcode is [letter][digit][letter][optional space][digit][letter][digit].
+     *  @param s the value to check
+     *  @return boolean true if s matches POSTCODE_REGEX
+     */
+    public static boolean isPostcode(String s) {
+        int n = s.length();
+        if (n != 6 && n != 7) return false;
+        if ( !isLetter(s.charAt(0)) || !isDigit(s.charAt(1)) || !isLetter(s.charAt(2)) ) return false;
+
+        int i = 3;
+        if (n == 7) {
+            if (s.charAt(3) != ' ') return false;
+            i = 4;
+        }
+        return isDigit(s.charAt(i)) && isLetter(s.charAt(i + 1)) && isDigit(s.charAt(i + 2));
+    }
+
+    /**
+     *  A telephone number may contain digits, -, (, ), and spaces.
+     *  @param s the value to check
+     *  @return boolean true if s matches TELEPHONE_REGEX
+     */
+    public static boolean isTelephone(String s) {
+        int n = s.length();
+        if (n == 0) return false;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if ( isDigit(c) || c == '-' || c == '(' || c == ')' || c == ' ' ) continue;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     *  An email is [non-whitespace][@][non-whitespace].[non-whitespace]. The first @
+     *  after the first character is used as the split, as it leaves the most room for
+     *  the dot after it.
+     *  @param s the value to check
+     *  @return boolean true if s matches EMAIL_REGEX
+     */
+    public static boolean isEmail(String s) {
+        int n = s.length();
+        int at = -1;
+        boolean dot = false;
+
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if ( isWhitespace(c) ) return false;
+            if (at < 0) {
+                if (c == '@' && i >= 1) at = i;
+            }
+            else if (c == '.' && i >= at + 2 && i <= n - 2) dot = true;
+        }
+        return at > 0 && dot;
+    }
+
+    /**
+     *  @param c the char to check
+     *  @return boolean true if c is an ASCII digit, as \d matches
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     *  @param c the char to check
+     *  @return boolean true if c is an ASCII letter
+     */
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     *  @param c the char to check
+     *  @return boolean true if c is whitespace as \s defines it
+     */
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}